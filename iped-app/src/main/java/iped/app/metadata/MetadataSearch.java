@@ -7,9 +7,10 @@
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
 
-import org.apache.commons.lang.ArrayUtils;
+import org.apache.lucene.index.LeafReader;
 import org.apache.lucene.index.SortedDocValues;
 import org.apache.lucene.index.SortedSetDocValues;
 import org.apache.lucene.util.BytesRef;
@@ -18,7 +19,7 @@
 import iped.app.ui.App;
 import iped.app.ui.Messages;
 import iped.data.IItemId;
-import iped.engine.data.ItemId;
+import iped.engine.data.IPEDMultiSource;
 import iped.engine.search.MultiSearchResult;
 import iped.engine.search.TimelineResults.TimeItemId;
 import iped.engine.task.index.IndexItem;
@@ -51,8 +52,64 @@ public class MetadataSearch extends MetadataSearchable {
 
     volatile IMultiSearchResult ipedResult;
 
+    // ord counts of fields in current result, cleared when the result changes
+    private final ConcurrentHashMap<String, int[]> ordCountCache = new ConcurrentHashMap<>();
+    private volatile LeafReader ordCountReader;
+    private volatile int[] resultDocs;
+
     public void setIpedResult(IMultiSearchResult ipedResult2) {
+        IMultiSearchResult previous = this.ipedResult;
+        // assigned before clearing, so counts computed for the previous result
+        // are not cached after the clear
         this.ipedResult = ipedResult2;
+        if (ipedResult2 != previous) {
+            resultDocs = null;
+            ordCountCache.clear();
+        }
+    }
+
+    /**
+     * @return lucene ids of current result, in the result (index) order
+     */
+    private int[] getResultDocs() {
+        IMultiSearchResult result = ipedResult;
+        int[] docs = resultDocs;
+        if (docs != null) {
+            return docs;
+        }
+        IPEDMultiSource appCase = App.get().appCase;
+        docs = new int[result.getLength()];
+        if (result instanceof MultiSearchResult) {
+            MultiSearchResult msr = (MultiSearchResult) result;
+            for (int i = 0; i < docs.length; i++) {
+                docs[i] = appCase.getLuceneId(msr.getSourceId(i), msr.getId(i));
+            }
+        } else {
+            int i = 0;
+            for (IItemId item : result.getIterator()) {
+                docs[i++] = appCase.getLuceneId(item);
+            }
+        }
+        if (result == ipedResult) {
+            resultDocs = docs;
+        }
+        return docs;
+    }
+
+    private int[] countOrds(String docValuesField, boolean singleValued, int valueCount) throws IOException {
+        if (ordCountReader != reader) {
+            ordCountCache.clear();
+            ordCountReader = reader;
+        }
+        IMultiSearchResult result = ipedResult;
+        int[] counts = ordCountCache.get(docValuesField);
+        if (counts == null) {
+            counts = OrdCountTask.count(reader, docValuesField, singleValued, getResultDocs(), valueCount);
+            if (result == ipedResult) {
+                ordCountCache.put(docValuesField, counts);
+            }
+        }
+        return counts;
     }
 
     public MultiSearchResult getIdsWithOrd(MultiSearchResult result, String field, Set<Integer> ordsToGet) throws IOException {
@@ -65,8 +122,7 @@ public MultiSearchResult getIdsWithOrd(MultiSearchResult result, String field, S
         // must reset docValues to call advance again
         loadDocValues(field);
 
-        ArrayList<IItemId> items = new ArrayList<>();
-        ArrayList<Float> scores = new ArrayList<>();
+        MultiSearchResult.Builder builder = new MultiSearchResult.Builder();
         int k = 0;
         if (isNumeric && numValues != null && !noRanges) {
             for (IItemId item : result.getIterator()) {
@@ -113,8 +169,7 @@ else if (isDouble)
                         }
                     }
                     if (ordsToGet.contains(ord)) {
-                        items.add(item);
-                        scores.add(result.getScore(k));
+                        builder.add(item, result.getScore(k));
                     }
                 }
                 k++;
@@ -170,8 +225,7 @@ else if (isDouble)
                         }
                     }
                     if (ordsToGet.contains(ord)) {
-                        items.add(item);
-                        scores.add(result.getScore(k));
+                        builder.add(item, result.getScore(k));
                         break;
                     }
                 }
@@ -211,8 +265,7 @@ else if (isDouble)
                         else if (isDouble)
                             val = NumericUtils.sortableLongToDouble((long) val);
                         if (set.contains(val)) {
-                            items.add(item);
-                            scores.add(result.getScore(k));
+                            builder.add(item, result.getScore(k));
                             break;
                         }
                     }
@@ -253,8 +306,7 @@ else if (isDouble)
                         else if (isDouble)
                             val = NumericUtils.sortableLongToDouble((long) val);
                         if (set.contains(val)) {
-                            items.add(item);
-                            scores.add(result.getScore(k));
+                            builder.add(item, result.getScore(k));
                         }
                         k++;
                     }
@@ -265,8 +317,7 @@ else if (isDouble)
                 int doc = App.get().appCase.getLuceneId(item);
                 boolean adv = docValues.advanceExact(doc);
                 if (adv && ordsToGet.contains(docValues.ordValue())) {
-                    items.add(item);
-                    scores.add(result.getScore(k));
+                    builder.add(item, result.getScore(k));
                 }
                 k++;
             }
@@ -278,8 +329,7 @@ else if (isDouble)
                     long[] ords = getEventOrdsFromEventSet(docValuesSet, eventSet);
                     for (long ord : ords) {
                         if (ordsToGet.contains((int) ord)) {
-                            items.add(item);
-                            scores.add(result.getScore(k));
+                            builder.add(item, result.getScore(k));
                             break;
                         }
                     }
@@ -289,8 +339,7 @@ else if (isDouble)
                     long ord;
                     while (adv && (ord = docValuesSet.nextOrd()) != SortedSetDocValues.NO_MORE_ORDS) {
                         if (ordsToGet.contains((int) ord)) {
-                            items.add(item);
-                            scores.add(result.getScore(k));
+                            builder.add(item, result.getScore(k));
                             break;
                         }
                     }
@@ -299,7 +348,7 @@ else if (isDouble)
             }
         }
 
-        return new MultiSearchResult(items.toArray(new ItemId[0]), ArrayUtils.toPrimitive(scores.toArray(new Float[0])));
+        return builder.build();
     }
 
     private long[] getEventOrdsFromEventSet(SortedSetDocValues eventDocValues, String eventSet) throws IOException {
@@ -621,15 +670,9 @@ else if (isDouble)
             }
             list.addAll(l);
         } else if (docValues != null) {
-            valueCount = new int[docValues.getValueCount()];
-            for (IItemId item : ipedResult.getIterator()) {
-                int doc = App.get().appCase.getLuceneId(item);
-                boolean adv = docValues.advanceExact(doc);
-                if (adv) {
-                    int ord = docValues.ordValue();
-                    valueCount[ord]++;
-                }
-            }
+            valueCount = countOrds(field, true, docValues.getValueCount());
+        } else if (docValuesSet != null && !isTimeEvent) {
+            valueCount = countOrds(getDocValuesSetField(field), false, (int) docValuesSet.getValueCount());
         } else if (docValuesSet != null) {
             valueCount = new int[(int) docValuesSet.getValueCount()];
             for (IItemId item : ipedResult.getIterator()) {
@@ -697,12 +740,12 @@ else if (ord < logScaleHalf) {
                 }
             }
         } else if (docValues != null && (!isNumeric || !noRanges)) {
-            LookupOrd lo = new LookupOrdSDV(docValues);
+            LookupOrd lo = new LookupOrdSDV(reader, field);
             for (int ord = 0; ord < valueCount.length; ord++)
                 if (valueCount[ord] > 0)
                     list.add(new ValueCount(lo, ord, valueCount[ord]));
         } else if (docValuesSet != null && (!isNumeric || !noRanges)) {
-            LookupOrd lo = new LookupOrdSSDV(docValuesSet);
+            LookupOrd lo = new LookupOrdSSDV(reader, getDocValuesSetField(field));
             lo.setCategory(BasicProps.CATEGORY.equals(field));
             boolean isMoney = field.equals(MONEY_FIELD);
             for (int ord = 0; ord < valueCount.length; ord++)
@@ -734,38 +777,50 @@ public void setNoRanges(boolean b) {
 
 }
 
+/**
+ * Doc values lookups are not thread safe, so each thread gets its own doc
+ * values instance of the field.
+ */
 class LookupOrdSDV extends LookupOrd {
 
-    SortedDocValues sdv;
+    private final LeafReader reader;
+    private final String field;
+    private final ThreadLocal<SortedDocValues> threadDocValues = new ThreadLocal<>();
 
-    public LookupOrdSDV(SortedDocValues sdv) {
-        this.sdv = sdv;
+    public LookupOrdSDV(LeafReader reader, String field) {
+        this.reader = reader;
+        this.field = field;
     }
 
     @Override
     public String lookupOrd(int ord) throws IOException {
-        BytesRef ref;
-        synchronized (sdv) {
-            ref = sdv.lookupOrd(ord);
+        SortedDocValues sdv = threadDocValues.get();
+        if (sdv == null) {
+            sdv = reader.getSortedDocValues(field);
+            threadDocValues.set(sdv);
         }
-        return ref.utf8ToString();
+        return sdv.lookupOrd(ord).utf8ToString();
     }
 }
 
 class LookupOrdSSDV extends LookupOrd {
 
-    SortedSetDocValues ssdv;
+    private final LeafReader reader;
+    private final String field;
+    private final ThreadLocal<SortedSetDocValues> threadDocValues = new ThreadLocal<>();
 
-    public LookupOrdSSDV(SortedSetDocValues ssdv) {
-        this.ssdv = ssdv;
+    public LookupOrdSSDV(LeafReader reader, String field) {
+        this.reader = reader;
+        this.field = field;
     }
 
     @Override
     public String lookupOrd(int ord) throws IOException {
-        BytesRef ref;
-        synchronized (ssdv) {
-            ref = ssdv.lookupOrd(ord);
+        SortedSetDocValues ssdv = threadDocValues.get();
+        if (ssdv == null) {
+            ssdv = reader.getSortedSetDocValues(field);
+            threadDocValues.set(ssdv);
         }
-        return ref.utf8ToString();
+        return ssdv.lookupOrd(ord).utf8ToString();
     }
 }
@@ -39,8 +39,7 @@ protected void loadDocValues(String field) throws IOException {
         numValues = reader.getNumericDocValues(field);
         numValuesSet = reader.getSortedNumericDocValues(field);
         docValues = reader.getSortedDocValues(field);
-        String prefix = ExtraProperties.LOCATIONS.equals(field) ? IndexItem.GEO_SSDV_PREFIX : "";
-        docValuesSet = reader.getSortedSetDocValues(prefix + field);
+        docValuesSet = reader.getSortedSetDocValues(getDocValuesSetField(field));
         if (BasicProps.TIME_EVENT.equals(field)) {
             eventDocValuesSet = reader.getSortedSetDocValues(ExtraProperties.TIME_EVENT_GROUPS);
         }
@@ -48,6 +47,11 @@ protected void loadDocValues(String field) throws IOException {
         eventSetToOrdsCache.clear();
     }
 
+    protected static String getDocValuesSetField(String field) {
+        String prefix = ExtraProperties.LOCATIONS.equals(field) ? IndexItem.GEO_SSDV_PREFIX : "";
+        return prefix + field;
+    }
+
     public boolean isSingleValuedField() {
         return numValues != null || docValues != null;
     }
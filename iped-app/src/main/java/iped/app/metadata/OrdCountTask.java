@@ -0,0 +1,114 @@
+package iped.app.metadata;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.SortedDocValues;
+import org.apache.lucene.index.SortedSetDocValues;
+
+/**
+ * Counts how many docs of a result have each ord of a sorted or sorted set doc
+ * values field. The result docs are split in ranges counted in parallel, each
+ * one with its own doc values iterator and count array, which are summed at
+ * the end.
+ */
+class OrdCountTask extends RecursiveTask<int[]> {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final int MIN_DOCS_PER_TASK = 1 << 16;
+
+    // max number of counters allocated by concurrent tasks
+    private static final long MAX_COUNTERS = 1 << 26;
+
+    private final LeafReader reader;
+    private final String field;
+    private final boolean singleValued;
+    private final int[] docs;
+    private final int from, to, valueCount, docsPerTask;
+
+    private OrdCountTask(LeafReader reader, String field, boolean singleValued, int[] docs, int from, int to,
+            int valueCount, int docsPerTask) {
+        this.reader = reader;
+        this.field = field;
+        this.singleValued = singleValued;
+        this.docs = docs;
+        this.from = from;
+        this.to = to;
+        this.valueCount = valueCount;
+        this.docsPerTask = docsPerTask;
+    }
+
+    /**
+     * @param docs
+     *            lucene ids of the result, in increasing order
+     * @return the number of docs with each ord of the field
+     */
+    static int[] count(LeafReader reader, String field, boolean singleValued, int[] docs, int valueCount)
+            throws IOException {
+        int tasks = ForkJoinPool.getCommonPoolParallelism();
+        tasks = (int) Math.min(tasks, Math.max(1, MAX_COUNTERS / Math.max(1, valueCount)));
+        int docsPerTask = Math.max(MIN_DOCS_PER_TASK, (docs.length + tasks - 1) / tasks);
+        OrdCountTask task = new OrdCountTask(reader, field, singleValued, docs, 0, docs.length, valueCount,
+                docsPerTask);
+        try {
+            if (docs.length <= docsPerTask) {
+                return task.countRange();
+            }
+            return ForkJoinPool.commonPool().invoke(task);
+
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    @Override
+    protected int[] compute() {
+        if (to - from <= docsPerTask) {
+            try {
+                return countRange();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        int mid = (from + to) >>> 1;
+        OrdCountTask left = new OrdCountTask(reader, field, singleValued, docs, from, mid, valueCount, docsPerTask);
+        OrdCountTask right = new OrdCountTask(reader, field, singleValued, docs, mid, to, valueCount, docsPerTask);
+        left.fork();
+        int[] counts = right.compute();
+        int[] leftCounts = left.join();
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += leftCounts[i];
+        }
+        return counts;
+    }
+
+    private int[] countRange() throws IOException {
+        int[] counts = new int[valueCount];
+        if (singleValued) {
+            SortedDocValues sdv = reader.getSortedDocValues(field);
+            for (int i = from; sdv != null && i < to; i++) {
+                if (sdv.advanceExact(docs[i])) {
+                    counts[sdv.ordValue()]++;
+                }
+            }
+        } else {
+            SortedSetDocValues ssdv = reader.getSortedSetDocValues(field);
+            for (int i = from; ssdv != null && i < to; i++) {
+                if (ssdv.advanceExact(docs[i])) {
+                    long ord, prevOrd = -1;
+                    while ((ord = ssdv.nextOrd()) != SortedSetDocValues.NO_MORE_ORDS) {
+                        if (prevOrd != ord)
+                            counts[(int) ord]++;
+                        prevOrd = ord;
+                    }
+                }
+            }
+        }
+        return counts;
+    }
+
+}
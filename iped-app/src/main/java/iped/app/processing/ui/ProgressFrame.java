@@ -38,7 +38,9 @@
 import java.nio.file.Files;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
 
@@ -57,6 +59,7 @@
 import iped.data.IItem;
 import iped.engine.Version;
 import iped.engine.core.Statistics;
+import iped.engine.core.TaskTimeStats;
 import iped.engine.core.Worker;
 import iped.engine.core.Worker.STATE;
 import iped.engine.localization.Messages;
@@ -95,6 +98,7 @@ public class ProgressFrame extends JFrame implements PropertyChangeListener, Act
     private String decodingDir = null;
     private long physicalMemory;
     private static final Map<String, Long> timesPerParser = new TreeMap<String, Long>();
+    private static final int MEDIA_TYPE_TIMES_TO_SHOW = 10;
 
     private static class RestrictedSizeLabel extends JLabel {
 
@@ -378,10 +382,45 @@ private String getTaskTimes() {
             }
         }
 
+        addMediaTypeTimes(msg, totalTime);
+
         finishTable(msg);
         return msg.toString();
     }
 
+    /**
+     * Adds the (task, media type) pairs which took more time, to show which file
+     * types are slow to process.
+     */
+    private void addMediaTypeTimes(StringBuilder msg, long totalTime) {
+        Statistics s = Statistics.get();
+        if (s == null) {
+            return;
+        }
+        List<Object[]> times = new ArrayList<>();
+        for (TaskTimeStats taskStats : s.getAllTaskTimeStats()) {
+            for (TaskTimeStats.MediaTypeTime time : taskStats.getTimesPerMediaType()) {
+                times.add(new Object[] { taskStats.getTaskName() + " / " + time.getMediaType(), time.getTotal() });
+            }
+        }
+        if (times.isEmpty()) {
+            return;
+        }
+        times.sort((a, b) -> Long.compare((Long) b[1], (Long) a[1]));
+
+        skipRow(msg, 3);
+        addTitle(msg, 3, Messages.getString("ProgressFrame.MediaTypeTimes"));
+        for (int i = 0; i < Math.min(MEDIA_TYPE_TIMES_TO_SHOW, times.size()); i++) {
+            long time = (Long) times.get(i)[1];
+            long sec = time / (1000000 * workers.length);
+            int pct = (int) ((100 * time + totalTime / 2) / totalTime); // Round percentage
+
+            startRow(msg, times.get(i)[0], pct);
+            addCell(msg, nf.format(sec) + "s", Align.RIGHT);
+            finishRow(msg, pct + "%", Align.RIGHT);
+        }
+    }
+
     private String getParserTimes() {
         ParsingTask.copyTimesPerParser(timesPerParser);
         if (timesPerParser.isEmpty())
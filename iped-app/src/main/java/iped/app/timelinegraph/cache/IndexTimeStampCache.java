@@ -86,26 +86,41 @@ public void run() {
 
                 ArrayList<EventTimestampCache> cacheLoaders = new ArrayList<EventTimestampCache>();
 
-                String[] cachedEventNames = ipedChartsPanel.getOrdToEventName();
-
-                int ord = 0;
-                while (ord < cachedEventNames.length) {
-                    String eventType = cachedEventNames[ord];
-                    if (eventType != null && !eventType.isEmpty()) {
-                        cacheLoaders.add(new EventTimestampCache(ipedChartsPanel, resultsProvider, this, cachedEventNames[ord], ord));
-                    }
-                    ord++;
+                // time events written while indexing are much faster to load than doc values
+                boolean loadedFromFiles = false;
+                try {
+                    loadedFromFiles = new TimeEventFileCacheLoader(ipedChartsPanel, resultsProvider, this).load();
+                } catch (IOException e) {
+                    logger.warn("Error loading time event files, using index doc values", e);
+                    // discard events already loaded, they will be loaded again from doc values
+                    newCache = new TimeIndexedMap();
                 }
-                running.set(cacheLoaders.size());
+                if (loadedFromFiles) {
+                    logger.info("Time cache loaded from time event files");
+                } else {
+                    String[] cachedEventNames = ipedChartsPanel.getOrdToEventName();
+
+                    int ord = 0;
+                    while (ord < cachedEventNames.length) {
+                        String eventType = cachedEventNames[ord];
+                        if (eventType != null && !eventType.isEmpty()) {
+                            cacheLoaders.add(new EventTimestampCache(ipedChartsPanel, resultsProvider, this, cachedEventNames[ord], ord));
+                        }
+                        ord++;
+                    }
+                    running.set(cacheLoaders.size());
 
-                ExecutorService threadPool = Executors.newFixedThreadPool(1);
-                for (EventTimestampCache cacheLoader : cacheLoaders) {
-                    threadPool.execute(cacheLoader);
+                    ExecutorService threadPool = Executors.newFixedThreadPool(1);
+                    for (EventTimestampCache cacheLoader : cacheLoaders) {
+                        threadPool.execute(cacheLoader);
+                    }
                 }
 
                 try {
                     synchronized (monitor) {
-                        monitor.wait();
+                        if (!loadedFromFiles) {
+                            monitor.wait();
+                        }
 
                         if (Manager.getInstance() != null && Manager.getInstance().isProcessingFinished()) {
                         }
@@ -0,0 +1,119 @@
+package iped.app.timelinegraph.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+
+import org.jfree.data.time.TimePeriod;
+
+import iped.app.timelinegraph.DateUtil;
+import iped.app.timelinegraph.IpedChartsPanel;
+import iped.data.IIPEDSource;
+import iped.engine.data.IPEDMultiSource;
+import iped.engine.data.IPEDSource;
+import iped.engine.task.index.TimeEventFile;
+import iped.viewers.api.IMultiSearchResultProvider;
+
+/**
+ * Populates the timeline cache from the time event files written while
+ * indexing, instead of iterating over the timestamp doc values of each event
+ * type. Events are sorted by time in each file block, so the periods of an
+ * event are computed once per distinct second.
+ */
+public class TimeEventFileCacheLoader implements TimeEventFile.EventConsumer {
+
+    private IndexTimeStampCache timeStampCache;
+    private IpedChartsPanel ipedChartsPanel;
+    private IMultiSearchResultProvider resultsProvider;
+
+    private HashMap<String, Integer> eventOrds = new HashMap<>();
+    private List<Class<? extends TimePeriod>> periodClasses;
+    private Date[] periodDates;
+    private byte[] timeStamp = new byte[20];
+    private long lastSecond;
+
+    private IPEDSource atomicSource;
+    private int baseDoc;
+
+    public TimeEventFileCacheLoader(IpedChartsPanel ipedChartsPanel, IMultiSearchResultProvider resultsProvider,
+            IndexTimeStampCache timeStampCache) {
+        this.ipedChartsPanel = ipedChartsPanel;
+        this.resultsProvider = resultsProvider;
+        this.timeStampCache = timeStampCache;
+    }
+
+    /**
+     * @return false if some case has no complete time event files, in that case
+     *         nothing is added to the cache
+     */
+    public boolean load() throws IOException {
+        IIPEDSource source = resultsProvider.getIPEDSource();
+        List<IPEDSource> sources;
+        if (source instanceof IPEDMultiSource) {
+            sources = ((IPEDMultiSource) source).getAtomicSources();
+        } else if (source instanceof IPEDSource) {
+            sources = Collections.singletonList((IPEDSource) source);
+        } else {
+            return false;
+        }
+        File[][] files = new File[sources.size()][];
+        for (int i = 0; i < files.length; i++) {
+            files[i] = TimeEventFile.getFiles(sources.get(i).getModuleDir());
+            if (files[i] == null) {
+                return false;
+            }
+        }
+
+        String[] ordToEventName = IpedChartsPanel.getOrdToEventName();
+        for (int ord = 0; ord < ordToEventName.length; ord++) {
+            String eventType = ordToEventName[ord];
+            if (eventType != null && !eventType.isEmpty() && ipedChartsPanel.getTimeEventColumnName(eventType) != null) {
+                eventOrds.put(eventType, ord);
+            }
+        }
+        periodClasses = new ArrayList<>(timeStampCache.getPeriodClassesToCache());
+        periodDates = new Date[periodClasses.size()];
+
+        for (int i = 0; i < files.length; i++) {
+            atomicSource = sources.get(i);
+            baseDoc = source instanceof IPEDMultiSource ? ((IPEDMultiSource) source).getBaseLuceneId(atomicSource) : 0;
+            for (File file : files[i]) {
+                for (TimeEventFile.Block block : TimeEventFile.readBlocks(file)) {
+                    lastSecond = Long.MIN_VALUE;
+                    block.forEach(this);
+                }
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void accept(long epochSecond, String event, int itemId) {
+        Integer ord = eventOrds.get(event);
+        if (ord == null) {
+            return;
+        }
+        int luceneId = atomicSource.getLuceneId(itemId);
+        if (luceneId == -1) {
+            // item not committed or removed from the case
+            return;
+        }
+        if (epochSecond != lastSecond) {
+            TimeEventFile.formatTimeStamp(epochSecond, timeStamp);
+            for (int i = 0; i < periodDates.length; i++) {
+                periodDates[i] = DateUtil.ISO8601DateParse(periodClasses.get(i), timeStamp);
+            }
+            lastSecond = epochSecond;
+        }
+        for (int i = 0; i < periodDates.length; i++) {
+            if (periodDates[i] != null) {
+                timeStampCache.add(periodClasses.get(i), periodDates[i], ord, baseDoc + luceneId);
+            }
+        }
+    }
+
+}
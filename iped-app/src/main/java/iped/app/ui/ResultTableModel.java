@@ -43,6 +43,7 @@
 import iped.data.IItemId;
 import iped.engine.datasource.SleuthkitReader;
 import iped.engine.localization.CategoryLocalization;
+import iped.engine.search.MultiSearchResult;
 import iped.engine.search.TimelineResults.TimeItemId;
 import iped.engine.task.index.IndexItem;
 import iped.engine.util.Util;
@@ -232,8 +233,14 @@ public Object getValueAt(int row, int col) {
 
         String value = ""; //$NON-NLS-1$
 
-        IItemId item = App.get().ipedResult.getItem(row);
-        int docId = App.get().appCase.getLuceneId(item);
+        IMultiSearchResult ipedResult = App.get().ipedResult;
+        int docId;
+        if (ipedResult instanceof MultiSearchResult) {
+            MultiSearchResult multiResult = (MultiSearchResult) ipedResult;
+            docId = App.get().appCase.getLuceneId(multiResult.getSourceId(row), multiResult.getId(row));
+        } else {
+            docId = App.get().appCase.getLuceneId(ipedResult.getItem(row));
+        }
 
         if (docId != lastDocRead) {
             try {
@@ -257,12 +264,13 @@ public Object getValueAt(int row, int col) {
                 return Util.concatStrings(app.appCase.getMultiBookmarks().getBookmarkList(app.ipedResult.getItem(row)));
             }
 
-            if (item instanceof TimeItemId) {
-                TimeItemId timeItem = (TimeItemId) item;
-                if (field.equals(BasicProps.TIMESTAMP)) {
-                    return timeItem.getTimeStampValue();
-                }
-                if (field.equals(BasicProps.TIME_EVENT)) {
+            if (field.equals(BasicProps.TIMESTAMP) || field.equals(BasicProps.TIME_EVENT)) {
+                IItemId item = ipedResult.getItem(row);
+                if (item instanceof TimeItemId) {
+                    TimeItemId timeItem = (TimeItemId) item;
+                    if (field.equals(BasicProps.TIMESTAMP)) {
+                        return timeItem.getTimeStampValue();
+                    }
                     return timeItem.getTimeEventValue();
                 }
             }
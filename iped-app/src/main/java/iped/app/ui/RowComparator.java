@@ -36,11 +36,13 @@
 
 import iped.data.IItemId;
 import iped.engine.localization.CategoryLocalization;
+import iped.engine.search.MultiSearchResult;
 import iped.engine.search.TimelineResults.TimeItemId;
 import iped.engine.task.index.IndexItem;
 import iped.engine.util.Util;
 import iped.properties.BasicProps;
 import iped.properties.ExtraProperties;
+import iped.search.IMultiSearchResult;
 
 public class RowComparator implements Comparator<Integer> {
 
@@ -239,34 +241,46 @@ public final int compare(Integer a, Integer b) {
         if (scoreCol)
             return Float.compare(app.ipedResult.getScore(a), app.ipedResult.getScore(b));
 
-        IItemId itemA = app.ipedResult.getItem(a);
-        IItemId itemB = app.ipedResult.getItem(b);
+        IMultiSearchResult ipedResult = app.ipedResult;
 
-        a = app.appCase.getLuceneId(itemA);
-        b = app.appCase.getLuceneId(itemB);
+        if (col == 1 || bookmarkCol || isTimeStamp || isTimeEvent) {
+            IItemId itemA = ipedResult.getItem(a);
+            IItemId itemB = ipedResult.getItem(b);
 
-        if (col == 1) {
-            if (app.appCase.getMultiBookmarks().isChecked(itemA) == app.appCase.getMultiBookmarks().isChecked(itemB))
-                return 0;
-            else if (app.appCase.getMultiBookmarks().isChecked(itemA) == true)
-                return -1;
-            else
-                return 1;
+            if (col == 1) {
+                if (app.appCase.getMultiBookmarks().isChecked(itemA) == app.appCase.getMultiBookmarks().isChecked(itemB))
+                    return 0;
+                else if (app.appCase.getMultiBookmarks().isChecked(itemA) == true)
+                    return -1;
+                else
+                    return 1;
 
-        } else if (bookmarkCol) {
-            return Util.concatStrings(app.appCase.getMultiBookmarks().getBookmarkList(itemA)).compareTo(Util.concatStrings(app.appCase.getMultiBookmarks().getBookmarkList(itemB)));
+            } else if (bookmarkCol) {
+                return Util.concatStrings(app.appCase.getMultiBookmarks().getBookmarkList(itemA)).compareTo(Util.concatStrings(app.appCase.getMultiBookmarks().getBookmarkList(itemB)));
 
-        } else if (isTimeStamp && itemA instanceof TimeItemId) {
-            int ordA = ((TimeItemId) itemA).getTimeStampOrd();
-            int ordB = ((TimeItemId) itemB).getTimeStampOrd();
-            return Integer.compare(ordA, ordB);
+            } else if (isTimeStamp && itemA instanceof TimeItemId) {
+                int ordA = ((TimeItemId) itemA).getTimeStampOrd();
+                int ordB = ((TimeItemId) itemB).getTimeStampOrd();
+                return Integer.compare(ordA, ordB);
 
-        } else if (isTimeEvent && itemA instanceof TimeItemId) {
-            int ordA = ((TimeItemId) itemA).getTimeEventOrd();
-            int ordB = ((TimeItemId) itemB).getTimeEventOrd();
-            return Integer.compare(ordA, ordB);
+            } else if (isTimeEvent && itemA instanceof TimeItemId) {
+                int ordA = ((TimeItemId) itemA).getTimeEventOrd();
+                int ordB = ((TimeItemId) itemB).getTimeEventOrd();
+                return Integer.compare(ordA, ordB);
+            }
+        }
+
+        // avoids creating IItemId views of primitive results, this is called n*log(n) times
+        if (ipedResult instanceof MultiSearchResult) {
+            MultiSearchResult multiResult = (MultiSearchResult) ipedResult;
+            a = app.appCase.getLuceneId(multiResult.getSourceId(a), multiResult.getId(a));
+            b = app.appCase.getLuceneId(multiResult.getSourceId(b), multiResult.getId(b));
+        } else {
+            a = app.appCase.getLuceneId(ipedResult.getItem(a));
+            b = app.appCase.getLuceneId(ipedResult.getItem(b));
+        }
 
-        } else if (sdvOrds != null) {
+        if (sdvOrds != null) {
             return sdvOrds[a] - sdvOrds[b];
 
         } else if (ssdvOrds != null) {
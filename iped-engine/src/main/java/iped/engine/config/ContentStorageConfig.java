@@ -0,0 +1,81 @@
+package iped.engine.config;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream.Filter;
+import java.nio.file.Path;
+
+import iped.utils.UTF8Properties;
+
+public class ContentStorageConfig extends AbstractPropertiesConfigurable {
+
+    /**
+     * 
+     */
+    private static final long serialVersionUID = 1L;
+
+    private static final String CONF_FILE = "ContentStorageConfig.txt";
+
+    public static final String GZIP = "gzip";
+    public static final String ZSTD = "zstd";
+
+    private String compression = ZSTD;
+    private int chunkSize = 256 * 1024;
+    private int compressionLevel = 3;
+    private boolean dictionaryPerCategory = false;
+
+    public boolean isZstd() {
+        return ZSTD.equals(compression);
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    public boolean isDictionaryPerCategory() {
+        return dictionaryPerCategory;
+    }
+
+    @Override
+    public void processProperties(UTF8Properties properties) {
+
+        String value = properties.getProperty("compression"); //$NON-NLS-1$
+        if (value != null) {
+            value = value.trim().toLowerCase();
+            if (!GZIP.equals(value) && !ZSTD.equals(value)) {
+                throw new IllegalArgumentException("Invalid compression in " + CONF_FILE + ": " + value); //$NON-NLS-1$ //$NON-NLS-2$
+            }
+            compression = value;
+        }
+
+        value = properties.getProperty("chunkSize"); //$NON-NLS-1$
+        if (value != null) {
+            chunkSize = Integer.valueOf(value.trim());
+        }
+
+        value = properties.getProperty("compressionLevel"); //$NON-NLS-1$
+        if (value != null) {
+            compressionLevel = Integer.valueOf(value.trim());
+        }
+
+        value = properties.getProperty("dictionaryPerCategory"); //$NON-NLS-1$
+        if (value != null) {
+            dictionaryPerCategory = Boolean.valueOf(value.trim());
+        }
+
+    }
+
+    @Override
+    public Filter<Path> getResourceLookupFilter() {
+        return new Filter<Path>() {
+            @Override
+            public boolean accept(Path entry) throws IOException {
+                return entry.endsWith(CONF_FILE);
+            }
+        };
+    }
+
+}
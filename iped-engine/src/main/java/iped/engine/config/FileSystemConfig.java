@@ -20,6 +20,7 @@ public class FileSystemConfig extends AbstractPropertiesConfigurable {
     private boolean robustImageReading;
     // Adjusted to 1/6 rounded up (see #2480)
     private int numImageReaders = (Runtime.getRuntime().availableProcessors() + 5) / 6;
+    private int numImageDecoders = 1;
     private long unallocatedFragSize = 1 << 30;
     private long minOrphanSizeToIgnore = -1;
     private boolean ignoreHardLinks = true;
@@ -58,6 +59,11 @@ public void processProperties(UTF8Properties properties) {
             numImageReaders = Integer.valueOf(value);
         }
 
+        value = properties.getProperty("numImageDecoders"); //$NON-NLS-1$
+        if (value != null) {
+            numImageDecoders = Integer.valueOf(value.trim());
+        }
+
         value = properties.getProperty("unallocatedFragSize"); //$NON-NLS-1$
         if (value != null) {
             unallocatedFragSize = Long.valueOf(value.trim());
@@ -104,6 +110,10 @@ public int getNumImageReaders() {
         return numImageReaders;
     }
 
+    public int getNumImageDecoders() {
+        return numImageDecoders;
+    }
+
     public long getUnallocatedFragSize() {
         return unallocatedFragSize;
     }
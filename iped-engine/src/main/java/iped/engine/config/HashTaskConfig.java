@@ -15,10 +15,22 @@ public class HashTaskConfig extends AbstractTaskPropertiesConfig {
 
     private ArrayList<String> algorithms = new ArrayList<>();
 
+    private int readAheadBuffers = 2;
+
+    private boolean memoryMappedReads = false;
+
     public ArrayList<String> getAlgorithms() {
         return algorithms;
     }
 
+    public int getReadAheadBuffers() {
+        return readAheadBuffers;
+    }
+
+    public boolean isMemoryMappedReads() {
+        return memoryMappedReads;
+    }
+
     @Override
     public String getTaskEnableProperty() {
         return ENABLE_PARAM;
@@ -40,6 +52,16 @@ public void processProperties(UTF8Properties properties) {
             }
         }
 
+        String value = properties.getProperty("readAheadBuffers");
+        if (value != null && !value.isBlank()) {
+            readAheadBuffers = Integer.parseInt(value.trim());
+        }
+
+        value = properties.getProperty("memoryMappedReads");
+        if (value != null && !value.isBlank()) {
+            memoryMappedReads = Boolean.valueOf(value.trim());
+        }
+
     }
 
 }
@@ -22,6 +22,7 @@ public class ImageThumbTaskConfig extends AbstractTaskPropertiesConfig {
     private int timeoutPerMB = 2;
     private int thumbSize = 256;
     private int galleryThreads = 1;
+    private int externalConvProcesses = 0;
     private int lowResDensity = 96;
     private int highResDensity = 250;
     private int maxMPixelsInMemory = 32;
@@ -61,6 +62,10 @@ public int getGalleryThreads() {
         return galleryThreads;
     }
 
+    public int getExternalConvProcesses() {
+        return externalConvProcesses;
+    }
+
     public int getLowResDensity() {
         return lowResDensity;
     }
@@ -127,6 +132,13 @@ public void processProperties(UTF8Properties properties) {
             galleryThreads = Runtime.getRuntime().availableProcessors();
         }
 
+        value = properties.getProperty("externalConvProcesses"); //$NON-NLS-1$
+        if (value != null && !value.trim().equalsIgnoreCase("default")) { //$NON-NLS-1$
+            externalConvProcesses = Integer.valueOf(value.trim());
+        } else {
+            externalConvProcesses = Runtime.getRuntime().availableProcessors();
+        }
+
         value = properties.getProperty("imgThumbSize"); //$NON-NLS-1$
         if (value != null && !value.trim().isEmpty()) {
             thumbSize = Integer.valueOf(value.trim());
@@ -26,6 +26,10 @@ public class IndexTaskConfig extends AbstractTaskPropertiesConfig {
     private int maxTokenLength = 255;
     private int[] extraCharsToIndexArray;
     private int commitIntervalSeconds = 1800;
+    private int ramBufferSizeMB = 0;
+    private int mergeThreads = 0;
+    private boolean deferMerges = false;
+    private boolean indexImageSimilarityVectors = false;
 
     @Override
     public String getTaskEnableProperty() {
@@ -95,6 +99,26 @@ public void processProperties(UTF8Properties properties) {
             commitIntervalSeconds = Integer.parseInt(value.trim());
         }
 
+        value = properties.getProperty("ramBufferSizeMB"); //$NON-NLS-1$
+        if (value != null && !value.trim().isEmpty() && !value.trim().equalsIgnoreCase("auto")) { //$NON-NLS-1$
+            ramBufferSizeMB = Integer.parseInt(value.trim());
+        }
+
+        value = properties.getProperty("mergeThreads"); //$NON-NLS-1$
+        if (value != null && !value.trim().isEmpty() && !value.trim().equalsIgnoreCase("auto")) { //$NON-NLS-1$
+            mergeThreads = Integer.parseInt(value.trim());
+        }
+
+        value = properties.getProperty("deferMerges"); //$NON-NLS-1$
+        if (value != null && !value.trim().isEmpty()) {
+            deferMerges = Boolean.valueOf(value.trim());
+        }
+
+        value = properties.getProperty("indexImageSimilarityVectors"); //$NON-NLS-1$
+        if (value != null && !value.trim().isEmpty()) {
+            indexImageSimilarityVectors = Boolean.valueOf(value.trim());
+        }
+
     }
 
     private int[] convertExtraCharsToIndex(String chars) {
@@ -173,4 +197,28 @@ public int getCommitIntervalSeconds() {
         return commitIntervalSeconds;
     }
 
+    /**
+     * @return the configured IndexWriter RAM buffer in MB, or 0 if it should be
+     *         derived from heap size and number of workers
+     */
+    public int getRamBufferSizeMB() {
+        return ramBufferSizeMB;
+    }
+
+    /**
+     * @return the configured number of merge threads, or 0 if it should be
+     *         derived from the index storage throughput
+     */
+    public int getMergeThreads() {
+        return mergeThreads;
+    }
+
+    public boolean isDeferMerges() {
+        return deferMerges;
+    }
+
+    public boolean isIndexImageSimilarityVectors() {
+        return indexImageSimilarityVectors;
+    }
+
 }
@@ -24,6 +24,10 @@ public class ParsingTaskConfig extends AbstractTaskPropertiesConfig {
     private int timeOutPerMB = 2;
     private int minRawStringSize = 4;
     private boolean storeTextCacheOnDisk = true;
+    private int textCacheMaxMemoryChars = 10000000;
+    private boolean compressTextCacheOnDisk = true;
+    private int subitemSpoolMemoryMB = 16;
+    private int subitemSpoolMaxMemoryItemKB = 256;
     private boolean sortPDFChars;
     private boolean processImagesInPDFs = false;
     private String phoneParsersToUse;
@@ -95,6 +99,26 @@ public void processProperties(UTF8Properties properties) {
             storeTextCacheOnDisk = Boolean.valueOf(value.trim());
         }
 
+        value = properties.getProperty("textCacheMaxMemoryChars"); //$NON-NLS-1$
+        if (value != null && !value.trim().isEmpty()) {
+            textCacheMaxMemoryChars = Integer.valueOf(value.trim());
+        }
+
+        value = properties.getProperty("compressTextCacheOnDisk"); //$NON-NLS-1$
+        if (value != null && !value.trim().isEmpty()) {
+            compressTextCacheOnDisk = Boolean.valueOf(value.trim());
+        }
+
+        value = properties.getProperty("subitemSpoolMemoryMB"); //$NON-NLS-1$
+        if (value != null && !value.trim().isEmpty()) {
+            subitemSpoolMemoryMB = Integer.valueOf(value.trim());
+        }
+
+        value = properties.getProperty("subitemSpoolMaxMemoryItemKB"); //$NON-NLS-1$
+        if (value != null && !value.trim().isEmpty()) {
+            subitemSpoolMaxMemoryItemKB = Integer.valueOf(value.trim());
+        }
+
         value = properties.getProperty("sortPDFChars"); //$NON-NLS-1$
         if (value != null) {
             sortPDFChars = Boolean.valueOf(value.trim());
@@ -149,6 +173,26 @@ public boolean isStoreTextCacheOnDisk() {
         return storeTextCacheOnDisk;
     }
 
+    public int getTextCacheMaxMemoryChars() {
+        return textCacheMaxMemoryChars;
+    }
+
+    public boolean isCompressTextCacheOnDisk() {
+        return compressTextCacheOnDisk;
+    }
+
+    public int getSubitemSpoolMemory() {
+        return subitemSpoolMemoryMB << 20;
+    }
+
+    public int getSubitemSpoolMaxMemoryItemSize() {
+        return subitemSpoolMaxMemoryItemKB << 10;
+    }
+
+    public boolean isSubitemSpoolEnabled() {
+        return subitemSpoolMemoryMB > 0 && subitemSpoolMaxMemoryItemKB > 0;
+    }
+
     public boolean isSortPDFChars() {
         return sortPDFChars;
     }
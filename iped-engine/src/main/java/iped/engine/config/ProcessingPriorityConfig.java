@@ -12,8 +12,15 @@ public class ProcessingPriorityConfig extends AbstractPropertiesConfigurable {
 
     public static final String CONFIG_FILE = "conf/ProcessingPriorityConfig.txt";
 
+    public enum QueueEngine {
+        DEFAULT, WORK_STEALING
+    }
+
     private boolean randomOrder = true;
     private int maxQueueSize = 0;
+    private QueueEngine queueEngine = QueueEngine.DEFAULT;
+    private boolean spillToDisk = false;
+    private int spillWindow = 16384;
 
     public static final DirectoryStream.Filter<Path> filter = new Filter<Path>() {
         @Override
@@ -43,6 +50,28 @@ public void processProperties(UTF8Properties properties) {
                 maxQueueSize = Integer.parseInt(value.trim());
             }
         }
+
+        value = properties.getProperty("queueEngine");
+        if (value != null && !value.isBlank()) {
+            value = value.trim();
+            if (value.equalsIgnoreCase("workStealing")) {
+                queueEngine = QueueEngine.WORK_STEALING;
+            } else if (value.equalsIgnoreCase("default")) {
+                queueEngine = QueueEngine.DEFAULT;
+            } else {
+                throw new IllegalArgumentException("Invalid queueEngine value: " + value);
+            }
+        }
+
+        value = properties.getProperty("spillToDisk");
+        if (value != null && !value.isBlank()) {
+            spillToDisk = Boolean.valueOf(value.trim());
+        }
+
+        value = properties.getProperty("spillWindow");
+        if (value != null && !value.isBlank()) {
+            spillWindow = Integer.parseInt(value.trim());
+        }
     }
 
     public boolean isRandomOrder() {
@@ -52,4 +81,16 @@ public boolean isRandomOrder() {
     public int getMaxQueueSize() {
         return maxQueueSize;
     }
+
+    public QueueEngine getQueueEngine() {
+        return queueEngine;
+    }
+
+    public boolean isSpillToDisk() {
+        return spillToDisk;
+    }
+
+    public int getSpillWindow() {
+        return spillWindow;
+    }
 }
@@ -35,7 +35,6 @@
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.apache.lucene.document.IntPoint;
-import org.apache.lucene.index.ConcurrentMergeScheduler;
 import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.index.IndexCommit;
 import org.apache.lucene.index.IndexReader;
@@ -49,6 +48,7 @@
 import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.store.Directory;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.glassfish.grizzly.http.server.HttpServer;
 
 import iped.data.ICaseData;
 import iped.data.IItem;
@@ -73,6 +73,10 @@
 import iped.engine.localization.Messages;
 import iped.engine.lucene.ConfiguredFSDirectory;
 import iped.engine.lucene.CustomIndexDeletionPolicy;
+import iped.engine.lucene.DeferrableMergePolicy;
+import iped.engine.lucene.FlushCountingDirectory;
+import iped.engine.lucene.IndexWriterTuning;
+import iped.engine.lucene.InstrumentedMergeScheduler;
 import iped.engine.lucene.analysis.AppAnalyzer;
 import iped.engine.search.IPEDSearcher;
 import iped.engine.search.IndexerSimilarity;
@@ -80,6 +84,7 @@
 import iped.engine.search.LuceneSearchResult;
 import iped.engine.sleuthkit.SleuthkitClient;
 import iped.engine.sleuthkit.SleuthkitInputStreamFactory;
+import iped.engine.task.DuplicateTask;
 import iped.engine.task.ExportCSVTask;
 import iped.engine.task.ExportFileTask;
 import iped.engine.task.P2PBookmarker;
@@ -88,6 +93,7 @@
 import iped.engine.task.index.IndexTask;
 import iped.engine.util.UIPropertyListenerProvider;
 import iped.engine.util.Util;
+import iped.engine.webapi.Main;
 import iped.exception.IPEDException;
 import iped.properties.BasicProps;
 import iped.search.IItemSearcher;
@@ -136,6 +142,12 @@ public class Manager {
     private ItemProducer counter, producer;
     private Worker[] workers;
     private IndexWriter writer;
+    private FlushCountingDirectory flushCounter;
+    private InstrumentedMergeScheduler mergeScheduler;
+    private DeferrableMergePolicy deferrableMergePolicy;
+    private int mergeThreads = 0;
+    private int ramBufferMB;
+    private double indexWriteMBPerSec = -1;
 
     public Statistics stats;
     public volatile Exception exception;
@@ -153,6 +165,11 @@ public class Manager {
 
     private static final String appWinExeFileName = "IPED-SearchApp.exe";
 
+    private static final String METRICS_PORT_KEY = "metricsPort"; //$NON-NLS-1$
+    private static final String METRICS_HOST_KEY = "metricsHost"; //$NON-NLS-1$
+
+    private HttpServer metricsServer;
+
     static {
 
         // installs the AmazonCorrettoCryptoProvider if it is available
@@ -197,7 +214,7 @@ public Manager(List<File> sources, File output, File palavras) {
         this.palavrasChave = palavras;
 
         this.caseData = new CaseData();
-        this.processingQueues = new ProcessingQueues(caseData);
+        this.processingQueues = ProcessingQueues.create(caseData, localConfig.getNumThreads());
 
         for (File source : sources) {
             if (source.getName().toLowerCase().endsWith(Bookmarks.EXT)) {
@@ -237,6 +254,29 @@ public IndexWriter getIndexWriter() {
         return this.writer;
     }
 
+    FlushCountingDirectory getIndexFlushCounter() {
+        return flushCounter;
+    }
+
+    InstrumentedMergeScheduler getIndexMergeScheduler() {
+        return mergeScheduler;
+    }
+
+    int getIndexRAMBufferMB() {
+        return ramBufferMB;
+    }
+
+    int getIndexMergeThreads() {
+        return mergeThreads;
+    }
+
+    /**
+     * @return measured write throughput of the index storage, or -1 if unknown
+     */
+    double getIndexWriteMBPerSec() {
+        return indexWriteMBPerSec;
+    }
+
     public void process() throws Exception {
 
         stats.printSystemInfo();
@@ -278,6 +318,8 @@ public void process() throws Exception {
 
             initWorkers();
 
+            startMetricsServer();
+
             status.addProcessingEvidences(args);
             status.save();
 
@@ -296,10 +338,14 @@ public void process() throws Exception {
         } catch (Exception e) {
             e.printStackTrace();
             interruptProcessing();
+            stopMetricsServer();
             throw e;
 
         } finally {
             closeItemProducers();
+            if (processingQueues != null) {
+                processingQueues.close();
+            }
         }
 
         filterKeywords();
@@ -318,11 +364,34 @@ public void process() throws Exception {
 
         stats.logStatistics(this);
 
+        stopMetricsServer();
+
         status.addSuccessfulEvidences(args);
         status.save();
 
     }
 
+    private void startMetricsServer() {
+        String port = args.getExtraParams().get(METRICS_PORT_KEY);
+        if (port == null) {
+            return;
+        }
+        String host = args.getExtraParams().getOrDefault(METRICS_HOST_KEY, "localhost"); //$NON-NLS-1$
+        try {
+            metricsServer = Main.startMetricsServer(host, Integer.parseInt(port.trim()));
+            LOGGER.info("Processing metrics available at http://{}:{}/metrics", host, port.trim()); //$NON-NLS-1$
+        } catch (Exception e) {
+            LOGGER.warn("Error starting metrics server on port " + port, e); //$NON-NLS-1$
+        }
+    }
+
+    private void stopMetricsServer() {
+        if (metricsServer != null) {
+            metricsServer.shutdownNow();
+            metricsServer = null;
+        }
+    }
+
     private void closeItemProducers() {
         if (counter != null) {
             try {
@@ -407,13 +476,24 @@ private IndexWriterConfig getIndexWriterConfig() {
 
         conf.setCommitOnClose(true);
         conf.setSimilarity(new IndexerSimilarity());
-        ConcurrentMergeScheduler mergeScheduler = new ConcurrentMergeScheduler();
-        mergeScheduler.disableAutoIOThrottle();
-        if ((localConfig.isIndexTempOnSSD() && indexDir != finalIndexDir) || localConfig.isOutputOnSSD()) {
-            mergeScheduler.setMaxMergesAndThreads(8, 4);
+        InstrumentedMergeScheduler scheduler = new InstrumentedMergeScheduler();
+        scheduler.disableAutoIOThrottle();
+        if (mergeThreads == 0) {
+            boolean ssd = (localConfig.isIndexTempOnSSD() && indexDir != finalIndexDir) || localConfig.isOutputOnSSD();
+            if (indexConfig.getMergeThreads() == 0) {
+                indexWriteMBPerSec = IndexWriterTuning.getWriteThroughput(indexDir,
+                        new File(output, Configuration.CONF_DIR));
+            }
+            mergeThreads = IndexWriterTuning.getMergeThreads(indexConfig.getMergeThreads(), indexWriteMBPerSec, ssd);
         }
-        conf.setMergeScheduler(mergeScheduler);
-        conf.setRAMBufferSizeMB(64);
+        scheduler.setMaxMergesAndThreads(mergeThreads + 5, mergeThreads);
+        conf.setMergeScheduler(scheduler);
+
+        int numWorkers = localConfig.getNumThreads();
+        ramBufferMB = IndexWriterTuning.getRAMBufferSizeMB(indexConfig.getRamBufferSizeMB(), numWorkers);
+        conf.setRAMBufferSizeMB(ramBufferMB);
+        conf.setRAMPerThreadHardLimitMB(IndexWriterTuning.getRAMPerThreadHardLimitMB(ramBufferMB, numWorkers));
+        LOGGER.info("Index writer RAM buffer: {} MB, merge threads: {}", ramBufferMB, mergeThreads); //$NON-NLS-1$
         TieredMergePolicy tieredPolicy = new TieredMergePolicy();
         /*
          * Seta tamanho máximo dos subíndices. Padrão é 5GB. Poucos subíndices grandes
@@ -472,6 +552,9 @@ private void removeEvidence(String evidenceName, EvidenceStatus status) throws E
         // remove item data from storage or file system
         ExportFileTask.deleteIgnoredItemData(caseData, output, true, writer);
 
+        // persisted hashes would include removed items
+        DuplicateTask.deletePersistedHashes(output);
+
         // clear bookmarks pointing to deleted items
         try (IPEDSource ipedCase = new IPEDSource(output.getParentFile(), writer)) {
             ipedCase.clearOldBookmarks();
@@ -512,9 +595,15 @@ private void openIndex() throws IOException {
 
         boolean newIndex = !indexDir.exists();
         LOGGER.info((newIndex ? "Creating" : "Opening") + " index: {}", indexDir.getAbsoluteFile());
-        Directory directory = ConfiguredFSDirectory.open(indexDir);
+        flushCounter = new FlushCountingDirectory(ConfiguredFSDirectory.open(indexDir));
+        Directory directory = flushCounter;
         IndexWriterConfig config = getIndexWriterConfig();
-        
+        mergeScheduler = (InstrumentedMergeScheduler) config.getMergeScheduler();
+        if (indexConfig.isDeferMerges()) {
+            deferrableMergePolicy = new DeferrableMergePolicy(config.getMergePolicy(), true);
+            config.setMergePolicy(deferrableMergePolicy);
+        }
+
         if (args.isRestart()) {
             List<IndexCommit> commits = DirectoryReader.listCommits(directory);
             config.setIndexCommit(commits.get(0));
@@ -690,6 +779,12 @@ private void finishProcessing() throws Exception {
             workers[k].finish();
         }
 
+        if (deferrableMergePolicy != null && deferrableMergePolicy.isDeferred()) {
+            LOGGER.info("Merging deferred index segments..."); //$NON-NLS-1$
+            deferrableMergePolicy.setDeferred(false);
+            writer.maybeMerge();
+        }
+
         if (indexConfig.isForceMerge()) {
             UIPropertyListenerProvider.getInstance().firePropertyChange("mensagem", "", Messages.getString("Manager.Optimizing")); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
             LOGGER.info("Optimizing Index..."); //$NON-NLS-1$
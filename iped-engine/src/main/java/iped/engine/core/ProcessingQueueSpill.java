@@ -0,0 +1,391 @@
+package iped.engine.core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nustaq.serialization.FSTConfiguration;
+
+import iped.data.IItem;
+import iped.datasource.IDataSource;
+import iped.engine.data.Item;
+import iped.engine.data.QueuedItem;
+import iped.engine.sleuthkit.SleuthkitInputStreamFactory;
+import iped.io.ISeekableInputStreamFactory;
+import iped.utils.IOUtil;
+
+/**
+ * Disk overflow of the processing queues. When the in memory queue of a
+ * priority reaches the window size, new items are serialized to an append only
+ * log of that priority, and read back in FIFO order when workers drain the
+ * queue. Data sources and input stream factories are not serialized, they are
+ * kept in a small table shared by all spilled items, each entry is removed
+ * when the last item referencing it is read back. Items holding resources
+ * that can not be detached from them (temp files, open streams) or with non
+ * serializable attributes stay in memory.
+ */
+class ProcessingQueueSpill {
+
+    private static Logger logger = LogManager.getLogger(ProcessingQueueSpill.class);
+
+    // items referencing more distinct objects than this stay in memory
+    private static final int MAX_REFERENCES = 1 << 16;
+
+    private static final int WRITE_BUFFER_SIZE = 1 << 20;
+
+    private static final int READ_BUFFER_SIZE = 4 << 20;
+
+    private static final int RECORD_HEADER_SIZE = 12;
+
+    interface ItemSink {
+        void add(IItem item) throws InterruptedException;
+    }
+
+    private final FSTConfiguration serializer = FSTConfiguration.createDefaultConfiguration();
+
+    private final int window;
+
+    private final File dir;
+
+    private final ConcurrentHashMap<Integer, SpillLog> logs = new ConcurrentHashMap<>();
+
+    private final ReentrantLock refillLock = new ReentrantLock();
+
+    // id 0 is null and is not counted
+    private final ArrayList<SpillReference> references = new ArrayList<>();
+    private final IdentityHashMap<Object, SpillReference> referenceIds = new IdentityHashMap<>();
+    private final ArrayDeque<Integer> freeReferenceIds = new ArrayDeque<>();
+
+    private volatile boolean warnedNotSerializable = false;
+
+    private volatile boolean closed = false;
+
+    ProcessingQueueSpill(int window) throws IOException {
+        this.window = window;
+        this.dir = Files.createTempDirectory(new File(System.getProperty("java.io.tmpdir")).toPath(), "queueSpill") //$NON-NLS-1$
+                .toFile();
+        references.add(null);
+    }
+
+    int getWindow() {
+        return window;
+    }
+
+    File getDir() {
+        return dir;
+    }
+
+    /**
+     * @return number of objects in the reference table
+     */
+    int getReferenceCount() {
+        synchronized (references) {
+            return referenceIds.size();
+        }
+    }
+
+    /**
+     * @return number of items of the given priority which are out of memory
+     */
+    int getSize(int priority) {
+        SpillLog log = logs.get(priority);
+        return log != null ? log.size.get() : 0;
+    }
+
+    /**
+     * Writes the item to the log of the given priority, if the in memory queue is
+     * full or if previous items of the same priority are already in the log.
+     *
+     * @param queueSize
+     *            number of items in the in memory queue of the priority
+     * @return true if the item was spilled, false if it must be kept in memory
+     */
+    boolean offer(IItem item, int priority, int queueSize) {
+        if (closed || !(item instanceof Item) || item.isQueueEnd()) {
+            return false;
+        }
+        SpillLog log = logs.get(priority);
+        if ((log == null || log.size.get() == 0) && queueSize < window) {
+            return false;
+        }
+        Item it = (Item) item;
+        QueuedItem state = it.toQueuedItem();
+        if (state == null) {
+            return false;
+        }
+        ISeekableInputStreamFactory factory = it.getInputStreamFactory();
+        if (factory instanceof SleuthkitInputStreamFactory) {
+            // do not keep the per item sleuthkit content alive
+            factory = ((SleuthkitInputStreamFactory) factory).getSharedFactory();
+        }
+        byte[] bytes;
+        try {
+            bytes = serializer.asByteArray(state);
+        } catch (Exception e) {
+            // FST may also rethrow checked exceptions
+            if (!warnedNotSerializable) {
+                warnedNotSerializable = true;
+                logger.warn("Keeping in memory queued items not serializable: {}", e.toString()); //$NON-NLS-1$
+            }
+            return false;
+        }
+        int dataSourceRef = getReference(it.getDataSource());
+        if (dataSourceRef < 0) {
+            return false;
+        }
+        int factoryRef = getReference(factory);
+        if (factoryRef < 0) {
+            releaseReference(dataSourceRef);
+            return false;
+        }
+        if (log == null) {
+            log = logs.computeIfAbsent(priority, p -> new SpillLog(new File(dir, "priority" + p + ".log"))); //$NON-NLS-1$ //$NON-NLS-2$
+        }
+        boolean appended;
+        try {
+            appended = log.append(dataSourceRef, factoryRef, bytes);
+
+        } catch (IOException e) {
+            throw new RuntimeException("Error writing processing queue to disk", e); //$NON-NLS-1$
+        }
+        if (!appended) {
+            // closed concurrently
+            releaseReference(dataSourceRef);
+            releaseReference(factoryRef);
+        }
+        return appended;
+    }
+
+    /**
+     * @return the id of the object in the reference table, counting one more item
+     *         referencing it, or -1 if the table is full
+     */
+    private int getReference(Object o) {
+        if (o == null) {
+            return 0;
+        }
+        synchronized (references) {
+            SpillReference ref = referenceIds.get(o);
+            if (ref == null) {
+                Integer id = freeReferenceIds.poll();
+                if (id == null) {
+                    if (references.size() >= MAX_REFERENCES) {
+                        return -1;
+                    }
+                    id = references.size();
+                    references.add(null);
+                }
+                ref = new SpillReference(id, o);
+                references.set(id, ref);
+                referenceIds.put(o, ref);
+            }
+            ref.count++;
+            return ref.id;
+        }
+    }
+
+    /**
+     * @return the referenced object, removing it from the table if no other
+     *         spilled item references it
+     */
+    private Object releaseReference(int id) {
+        if (id == 0) {
+            return null;
+        }
+        synchronized (references) {
+            SpillReference ref = references.get(id);
+            if (--ref.count == 0) {
+                references.set(id, null);
+                referenceIds.remove(ref.object);
+                freeReferenceIds.add(id);
+            }
+            return ref.object;
+        }
+    }
+
+    /**
+     * Deletes the spilled items not read back, if any, and the spill folder. Items
+     * offered after this stay in memory.
+     */
+    void close() {
+        closed = true;
+        for (SpillLog log : logs.values()) {
+            log.close();
+        }
+        try {
+            IOUtil.deleteDirectory(dir, false);
+        } catch (IOException e) {
+            logger.warn("Error deleting processing queue spill folder {}: {}", dir, e.toString()); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Moves up to maxItems from the log of the given priority back to memory. Only
+     * one thread refills at a time, other callers return immediately.
+     */
+    void refill(int priority, int maxItems, ItemSink sink) throws InterruptedException {
+        SpillLog log = logs.get(priority);
+        if (log == null || log.size.get() == 0 || maxItems <= 0 || !refillLock.tryLock()) {
+            return;
+        }
+        try {
+            List<ByteBuffer> records;
+            try {
+                records = log.read(maxItems);
+            } catch (IOException e) {
+                throw new RuntimeException("Error reading processing queue from disk", e); //$NON-NLS-1$
+            }
+            for (ByteBuffer record : records) {
+                int len = record.getInt(0);
+                byte[] bytes = new byte[len];
+                record.position(RECORD_HEADER_SIZE);
+                record.get(bytes);
+                Item item = Item.fromQueuedItem((QueuedItem) serializer.asObject(bytes));
+                item.setDataSource((IDataSource) releaseReference(record.getInt(4)));
+                item.setInputStreamFactory((ISeekableInputStreamFactory) releaseReference(record.getInt(8)));
+                sink.add(item);
+                // decremented after the item is visible in memory, so it is always counted
+                log.size.decrementAndGet();
+            }
+        } finally {
+            refillLock.unlock();
+        }
+    }
+
+    private static class SpillReference {
+
+        private final int id;
+        private final Object object;
+        private int count = 0;
+
+        private SpillReference(int id, Object object) {
+            this.id = id;
+            this.object = object;
+        }
+    }
+
+    private static class SpillLog {
+
+        private final File file;
+        private final AtomicInteger size = new AtomicInteger();
+        private final ByteArrayOutputStream writeBuffer = new ByteArrayOutputStream(WRITE_BUFFER_SIZE);
+        private final DataOutputStream out = new DataOutputStream(writeBuffer);
+        private FileChannel channel;
+        private long writePos = 0;
+        private long readPos = 0;
+        private boolean closed = false;
+
+        private SpillLog(File file) {
+            this.file = file;
+        }
+
+        /**
+         * @return false if the log was already closed
+         */
+        private synchronized boolean append(int dataSourceRef, int factoryRef, byte[] bytes) throws IOException {
+            if (closed) {
+                return false;
+            }
+            out.writeInt(bytes.length);
+            out.writeInt(dataSourceRef);
+            out.writeInt(factoryRef);
+            out.write(bytes);
+            size.incrementAndGet();
+            if (writeBuffer.size() >= WRITE_BUFFER_SIZE) {
+                flush();
+            }
+            return true;
+        }
+
+        private void flush() throws IOException {
+            if (writeBuffer.size() == 0) {
+                return;
+            }
+            if (channel == null) {
+                channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                        StandardOpenOption.WRITE);
+            }
+            ByteBuffer bb = ByteBuffer.wrap(writeBuffer.toByteArray());
+            while (bb.hasRemaining()) {
+                writePos += channel.write(bb, writePos);
+            }
+            writeBuffer.reset();
+        }
+
+        private void readFully(ByteBuffer bb, long pos) throws IOException {
+            while (bb.hasRemaining()) {
+                int n = channel.read(bb, pos);
+                if (n < 0) {
+                    throw new EOFException("Unexpected end of processing queue file " + file); //$NON-NLS-1$
+                }
+                pos += n;
+            }
+            bb.flip();
+        }
+
+        private synchronized List<ByteBuffer> read(int maxItems) throws IOException {
+            List<ByteBuffer> records = new ArrayList<>();
+            if (closed) {
+                return records;
+            }
+            if (readPos == writePos) {
+                flush();
+            }
+            while (records.size() < maxItems && readPos < writePos) {
+                ByteBuffer chunk = ByteBuffer.allocate((int) Math.min(READ_BUFFER_SIZE, writePos - readPos));
+                readFully(chunk, readPos);
+                int parsed = 0;
+                while (records.size() < maxItems && chunk.remaining() >= RECORD_HEADER_SIZE) {
+                    int recordSize = RECORD_HEADER_SIZE + chunk.getInt(chunk.position());
+                    if (chunk.remaining() < recordSize) {
+                        break;
+                    }
+                    ByteBuffer record = chunk.slice();
+                    record.limit(recordSize);
+                    records.add(record);
+                    chunk.position(chunk.position() + recordSize);
+                    parsed += recordSize;
+                }
+                if (parsed == 0) {
+                    // record larger than the read buffer
+                    int recordSize = RECORD_HEADER_SIZE + chunk.getInt(0);
+                    ByteBuffer record = ByteBuffer.allocate(recordSize);
+                    readFully(record, readPos);
+                    records.add(record);
+                    parsed = recordSize;
+                }
+                readPos += parsed;
+            }
+            if (readPos == writePos && writeBuffer.size() == 0 && channel != null) {
+                // everything was read, reclaim disk space
+                channel.truncate(0);
+                readPos = writePos = 0;
+            }
+            return records;
+        }
+
+        private synchronized void close() {
+            closed = true;
+            writeBuffer.reset();
+            IOUtil.closeQuietly(channel);
+            channel = null;
+            file.delete();
+        }
+    }
+
+}
@@ -1,10 +1,7 @@
 package iped.engine.core;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.LinkedList;
-import java.util.SplittableRandom;
-import java.util.TreeMap;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -12,45 +9,43 @@
 import iped.data.IItem;
 import iped.engine.config.ConfigurationManager;
 import iped.engine.config.ProcessingPriorityConfig;
+import iped.engine.config.ProcessingPriorityConfig.QueueEngine;
 import iped.engine.data.CaseData;
 import iped.engine.util.Util;
 
-public class ProcessingQueues {
-    /*
-     The LinkedList's are used for prioritized items, inserted on the top of the
-     queue. They can be used for the rest of the items if the selected behavior is
-     the same used before #2541 (FIFO). The ArrayList's are used for the rest of
-     the items, if random order is enabled (default). In such case, items are
-     selected randomly from the active queue, to "spread" items, minimizing the
-     situation of having all workers dealing with similar items, that would
-     compete for the same type of resources.
-     */
-    private TreeMap<Integer, LinkedList<IItem>> queuesTop;
-    private TreeMap<Integer, ArrayList<IItem>> queuesRest;
-
-    private volatile Integer currentQueuePriority = 0;
-
-    private CaseData caseData;
-
-    private int maxQueueSize;
-    private boolean randomOrder;
+/**
+ * Base class of the processing queues. There is one queue for each processing
+ * priority (see {@link QueuesProcessingOrder}), and workers only take items
+ * from the current one. Concrete engines are selected by the "queueEngine"
+ * option of {@link ProcessingPriorityConfig}.
+ */
+public abstract class ProcessingQueues {
 
     private static Logger logger = LogManager.getLogger(ProcessingQueues.class);
 
-    private int totalItemsBeingProcessed = 0;
+    protected final CaseData caseData;
 
-    private final SplittableRandom rnd = new SplittableRandom();
+    protected final int maxQueueSize;
+    protected final boolean randomOrder;
 
-    public ProcessingQueues(CaseData caseData) {
-        this.caseData = caseData;
-        initConfig();
-        initQueues();
-    }
+    private final ProcessingQueueSpill spill;
 
-    private void initConfig() {
+    public static ProcessingQueues create(CaseData caseData, int numWorkers) {
         ProcessingPriorityConfig config = ConfigurationManager.get().findObject(ProcessingPriorityConfig.class);
-        randomOrder = config.isRandomOrder();
-        maxQueueSize = config.getMaxQueueSize();
+        QueueEngine engine = config.getQueueEngine();
+        logger.info("Processing Queue Engine: {}", engine);
+        switch (engine) {
+            case WORK_STEALING:
+                return new WorkStealingProcessingQueues(caseData, config, numWorkers);
+            default:
+                return new SynchronizedProcessingQueues(caseData, config);
+        }
+    }
+
+    protected ProcessingQueues(CaseData caseData, ProcessingPriorityConfig config) {
+        this.caseData = caseData;
+        this.randomOrder = config.isRandomOrder();
+        int maxQueueSize = config.getMaxQueueSize();
         boolean auto = false;
         if (maxQueueSize == 0) {
             // If the queue maximum size is not explicitly defined, set it based on the
@@ -59,34 +54,35 @@ private void initConfig() {
             auto = true;
         }
         // Enforce a very minimal size
-        maxQueueSize = Math.max(1024, maxQueueSize);
+        this.maxQueueSize = Math.max(1024, maxQueueSize);
 
-        logger.info("Maximum Processing Queue Size: {}{}", maxQueueSize, auto ? " (auto)" : "");
+        logger.info("Maximum Processing Queue Size: {}{}", this.maxQueueSize, auto ? " (auto)" : "");
         logger.info("Processing Queue Random Order: {}", randomOrder ? "enabled" : "disabled");
-    }
 
-    private void initQueues() {
-        queuesTop = new TreeMap<Integer, LinkedList<IItem>>();
-        queuesTop.put(0, new LinkedList<IItem>());
-        queuesRest = new TreeMap<Integer, ArrayList<IItem>>();
-        queuesRest.put(0, new ArrayList<IItem>());
-        for (Integer priority : QueuesProcessingOrder.getProcessingQueues()) {
-            queuesTop.put(priority, new LinkedList<IItem>());
-            queuesRest.put(priority, new ArrayList<IItem>());
+        ProcessingQueueSpill spill = null;
+        if (config.isSpillToDisk()) {
+            int window = Math.min(this.maxQueueSize, config.getSpillWindow());
+            try {
+                spill = new ProcessingQueueSpill(window);
+                logger.info("Processing Queue Spill to Disk: enabled, {} items in memory per priority", window);
+            } catch (IOException e) {
+                logger.error("Error creating processing queue spill folder, spill to disk disabled", e);
+            }
         }
+        this.spill = spill;
     }
 
     public void addItem(IItem item) throws InterruptedException {
-        addItemToQueue(item, currentQueuePriority, false, true);
+        addItemToQueue(item, getCurrentQueuePriority(), false, true);
     }
 
     public void addItemFirst(IItem item) throws InterruptedException {
-        addItemToQueue(item, currentQueuePriority, true, true);
+        addItemToQueue(item, getCurrentQueuePriority(), true, true);
     }
 
     public void addItemNonBlocking(IItem item) {
         try {
-            addItemToQueue(item, currentQueuePriority, false, false);
+            addItemToQueue(item, getCurrentQueuePriority(), false, false);
         } catch (InterruptedException e) {
             throw new RuntimeException(e);
         }
@@ -94,7 +90,7 @@ public void addItemNonBlocking(IItem item) {
 
     public void addItemFirstNonBlocking(IItem item) {
         try {
-            addItemToQueue(item, currentQueuePriority, true, false);
+            addItemToQueue(item, getCurrentQueuePriority(), true, false);
         } catch (InterruptedException e) {
             throw new RuntimeException(e);
         }
@@ -109,94 +105,101 @@ private void addItemToQueue(IItem item, int queuePriority, boolean addFirst, boo
 
         Util.calctrackIDAndUpdateID(caseData, item);
 
-        LinkedList<IItem> q1 = queuesTop.get(queuePriority);
-        ArrayList<IItem> q2 = queuesRest.get(queuePriority);
-        boolean sleep = false;
-        while (true) {
-            if (sleep) {
-                sleep = false;
-                Thread.sleep(1000);
-            }
-            synchronized (this) {
-                if (blockIfFull && queuePriority == 0 && q1.size() + q2.size() >= maxQueueSize) {
-                    sleep = true;
-                    continue;
-                } else {
-                    if (addFirst) {
-                        q1.addFirst(item);
-                    } else {
-                        if (randomOrder) {
-                            q2.add(item);
-                        } else {
-                            // If "random order" is disabled, FIFO is used, and new items are placed in the
-                            // end of the LinkedList queue.
-                            q1.addLast(item);
-                        }
-                    }
-                    break;
-                }
-            }
+        if (spill != null && !addFirst && spill.offer(item, queuePriority, getQueueSize(queuePriority))) {
+            return;
         }
-    }
 
-    public synchronized int getItemsBeingProcessed() {
-        return totalItemsBeingProcessed;
+        enqueue(item, queuePriority, addFirst, blockIfFull);
     }
 
-    public synchronized void incItemsBeingProcessed() {
-        totalItemsBeingProcessed++;
+    /**
+     * Inserts the item into the queue with the given priority. If blockIfFull is
+     * true and the target is the first queue, waits while it is full.
+     */
+    protected abstract void enqueue(IItem item, int queuePriority, boolean addFirst, boolean blockIfFull)
+            throws InterruptedException;
+
+    /**
+     * Retrieves the next item from the current queue, waiting up to the given time
+     * if it is empty. If the returned item is not a queue end, it is atomically
+     * counted as being processed, so {@link #isNoItemInQueueOrBeingProcessed()}
+     * never misses an item in transit from the queue to a worker.
+     *
+     * @return the next item or null if the queue remained empty
+     */
+    public IItem takeFromCurrentQueue(long timeout, TimeUnit unit) throws InterruptedException {
+        if (spill != null) {
+            refillCurrentQueue();
+        }
+        return takeItem(timeout, unit);
     }
 
-    public synchronized void decItemsBeingProcessed() {
-        totalItemsBeingProcessed--;
+    private void refillCurrentQueue() throws InterruptedException {
+        Integer priority = getCurrentQueuePriority();
+        if (priority == null || spill.getSize(priority) == 0) {
+            return;
+        }
+        int queueSize = getQueueSize(priority);
+        if (queueSize <= spill.getWindow() / 2) {
+            spill.refill(priority, spill.getWindow() - queueSize, item -> enqueue(item, priority, false, false));
+        }
     }
 
-    public synchronized boolean isNoItemInQueueOrBeingProcessed() {
-        return totalItemsBeingProcessed == 0 && getItemQueueTop().isEmpty() && getItemQueueRest().isEmpty();
+    /**
+     * @see #takeFromCurrentQueue(long, TimeUnit)
+     */
+    protected abstract IItem takeItem(long timeout, TimeUnit unit) throws InterruptedException;
+
+    public boolean isNoItemInQueueOrBeingProcessed() {
+        // spilled items are checked first, they are moved to memory before leaving
+        // the spill count
+        Integer priority = getCurrentQueuePriority();
+        if (spill != null && priority != null && spill.getSize(priority) > 0) {
+            return false;
+        }
+        return isNoItemInMemoryOrBeingProcessed();
     }
 
-    public synchronized IItem pollFromCurrentQueue() throws InterruptedException {
-        LinkedList<IItem> q1 = getItemQueueTop();
-        if (!q1.isEmpty()) {
-            return q1.pollFirst();
-        }
-        ArrayList<IItem> q2 = getItemQueueRest();
-        if (q2.size() > 2) {
-            int pos = rnd.nextInt(q2.size() - 1);
-            IItem item = q2.get(pos);
-            Collections.swap(q2, pos, q2.size() - 2);
-            q2.remove(q2.size() - 2);
-            return item;
+    /**
+     * @return true if the in memory current queue is empty and no item is being
+     *         processed
+     */
+    protected abstract boolean isNoItemInMemoryOrBeingProcessed();
+
+    public int getCurrentQueueSize() {
+        Integer priority = getCurrentQueuePriority();
+        if (priority == null) {
+            return 0;
         }
-        return q2.isEmpty() ? null : q2.remove(0);
+        return getQueueSize(priority) + (spill != null ? spill.getSize(priority) : 0);
     }
 
-    public synchronized void addToCurrentQueue(IItem item) throws InterruptedException {
-        getItemQueueRest().add(item);
-    }
+    /**
+     * @return number of items in the in memory queue of the given priority
+     */
+    protected abstract int getQueueSize(int priority);
 
-    public synchronized IItem peekItemFromCurrentQueue() {
-        return getItemQueueTop().isEmpty() ? getItemQueueRest().get(0) : getItemQueueTop().peekFirst();
-    }
+    public abstract int getItemsBeingProcessed();
 
-    public synchronized int getCurrentQueueSize() {
-        return getItemQueueTop().size() + getItemQueueRest().size();
-    }
+    public abstract void incItemsBeingProcessed();
 
-    public Integer changeToNextQueue() {
-        currentQueuePriority = queuesTop.ceilingKey(currentQueuePriority + 1);
-        return currentQueuePriority;
-    }
+    public abstract void decItemsBeingProcessed();
 
-    public Integer getCurrentQueuePriority() {
-        return currentQueuePriority;
-    }
+    public abstract void addToCurrentQueue(IItem item) throws InterruptedException;
 
-    private ArrayList<IItem> getItemQueueRest() {
-        return queuesRest.get(currentQueuePriority);
-    }
+    public abstract IItem peekItemFromCurrentQueue();
+
+    public abstract Integer changeToNextQueue();
 
-    private LinkedList<IItem> getItemQueueTop() {
-        return queuesTop.get(currentQueuePriority);
+    public abstract Integer getCurrentQueuePriority();
+
+    /**
+     * Releases the disk space used by the queues, if they were spilled to disk.
+     */
+    public void close() {
+        if (spill != null) {
+            spill.close();
+        }
     }
+
 }
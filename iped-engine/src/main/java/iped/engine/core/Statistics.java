@@ -8,10 +8,15 @@
 import java.io.ObjectOutputStream;
 import java.lang.management.ManagementFactory;
 import java.lang.management.RuntimeMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 import javax.swing.JOptionPane;
 
@@ -34,6 +39,8 @@
 import iped.engine.config.PluginConfig;
 import iped.engine.localization.Messages;
 import iped.engine.lucene.ConfiguredFSDirectory;
+import iped.engine.lucene.FlushCountingDirectory;
+import iped.engine.lucene.InstrumentedMergeScheduler;
 import iped.engine.task.ExportFileTask;
 import iped.engine.task.ParsingTask;
 import iped.engine.task.carver.BaseCarveTask;
@@ -57,6 +64,8 @@ public class Statistics {
 
     private static final float IO_ERROR_RATE_TO_WARN = 0.05f;
 
+    private static final int TOP_MEDIA_TYPE_TIMES = 30;
+
     private HashMap<HashValue, Integer> ignoredMap = new HashMap<>();
 
     ICaseData caseData;
@@ -64,18 +73,21 @@ public class Statistics {
 
     // EstatÃ­sticas
     Date start = new Date();
-    int splits = 0;
-    int timeouts = 0;
-    int processed = 0;
-    int activeProcessed = 0;
-    long volumeIndexed = 0;
-    int lastId = -1;
-    int corruptCarveIgnored = 0;
-    int ignored = 0;
+    // counters are updated by all workers for every item, so they are striped
+    LongAdder splits = new LongAdder();
+    LongAdder timeouts = new LongAdder();
+    LongAdder processed = new LongAdder();
+    LongAdder activeProcessed = new LongAdder();
+    LongAdder volumeIndexed = new LongAdder();
+    AtomicInteger lastId = new AtomicInteger(-1);
+    LongAdder corruptCarveIgnored = new LongAdder();
+    LongAdder ignored = new LongAdder();
     int previousIndexedFiles = 0;
-    int ioerrors = 0;
+    LongAdder ioerrors = new LongAdder();
     AtomicInteger subitensDiscovered = new AtomicInteger();
 
+    private final ConcurrentHashMap<String, TaskTimeStats> taskTimeStats = new ConcurrentHashMap<>();
+
     public static Statistics get(ICaseData caseData, File indexDir) {
         if (instance == null) {
             instance = new Statistics(caseData, indexDir);
@@ -141,82 +153,108 @@ public void commit() throws IOException {
         Util.fsync(file.toPath());
     }
 
-    synchronized public int getSplits() {
-        return splits;
+    public int getSplits() {
+        return splits.intValue();
     }
 
-    synchronized public void incSplits() {
-        splits++;
+    public void incSplits() {
+        splits.increment();
     }
 
-    synchronized public int getTimeouts() {
-        return timeouts;
+    public int getTimeouts() {
+        return timeouts.intValue();
     }
 
-    synchronized public void incTimeouts() {
-        timeouts++;
+    public void incTimeouts() {
+        timeouts.increment();
     }
 
-    synchronized public void incProcessed() {
-        processed++;
+    public void incProcessed() {
+        processed.increment();
     }
 
-    synchronized public int getProcessed() {
-        return processed;
+    public int getProcessed() {
+        return processed.intValue();
     }
 
-    synchronized public void incIoErrors() {
-        ioerrors++;
+    public void incIoErrors() {
+        ioerrors.increment();
     }
 
-    synchronized public int getIoErrors() {
-        return ioerrors;
+    public int getIoErrors() {
+        return ioerrors.intValue();
     }
 
-    synchronized public void incActiveProcessed() {
-        activeProcessed++;
+    public void incActiveProcessed() {
+        activeProcessed.increment();
     }
 
-    synchronized public int getActiveProcessed() {
-        return activeProcessed;
+    public int getActiveProcessed() {
+        return activeProcessed.intValue();
     }
 
-    synchronized public void addVolume(long volume) {
-        volumeIndexed += volume;
+    public void addVolume(long volume) {
+        volumeIndexed.add(volume);
     }
 
-    synchronized public long getVolume() {
-        return volumeIndexed;
+    public long getVolume() {
+        return volumeIndexed.sum();
     }
 
-    synchronized public int getCorruptCarveIgnored() {
-        return corruptCarveIgnored;
+    public int getCorruptCarveIgnored() {
+        return corruptCarveIgnored.intValue();
     }
 
-    private synchronized void incCorruptCarveIgnored() {
-        corruptCarveIgnored++;
+    private void incCorruptCarveIgnored() {
+        corruptCarveIgnored.increment();
     }
 
-    synchronized public int getIgnored() {
-        return ignored;
+    public int getIgnored() {
+        return ignored.intValue();
     }
 
-    synchronized public void incIgnored() {
-        ignored++;
+    public void incIgnored() {
+        ignored.increment();
     }
 
-    synchronized public void updateLastId(int id) {
-        if (id > lastId) {
-            lastId = id;
+    public void updateLastId(int id) {
+        // plain read first, most items do not change the max
+        if (id > lastId.get()) {
+            lastId.accumulateAndGet(id, Math::max);
         }
     }
 
-    synchronized public int getLastId() {
-        return lastId;
+    public int getLastId() {
+        return lastId.get();
+    }
+
+    public void setLastId(int id) {
+        lastId.set(id);
+    }
+
+    /**
+     * @return processing times of the task with the given name, created on first
+     *         use and shared by all workers
+     */
+    public TaskTimeStats getTaskTimeStats(String taskName) {
+        TaskTimeStats stats = taskTimeStats.get(taskName);
+        if (stats == null) {
+            stats = taskTimeStats.computeIfAbsent(taskName, TaskTimeStats::new);
+        }
+        return stats;
     }
 
-    synchronized public void setLastId(int id) {
-        lastId = id;
+    /**
+     * @return processing times of all tasks sorted by descending total time
+     */
+    public List<TaskTimeStats> getAllTaskTimeStats() {
+        HashMap<TaskTimeStats, Long> totals = new HashMap<>();
+        for (TaskTimeStats stats : taskTimeStats.values()) {
+            totals.put(stats, stats.getHistogram().getTotal());
+        }
+        List<TaskTimeStats> list = new ArrayList<>(totals.keySet());
+        list.sort((a, b) -> Long.compare(totals.get(b), totals.get(a)));
+        return list;
     }
 
     public void incSubitemsDiscovered() {
@@ -269,6 +307,8 @@ public void logStatistics(Manager manager) throws Exception {
             sb.setLength(0);
         }
 
+        logTaskTimesPerMediaType(localConfig.getNumThreads());
+
         // Processing times per parser
         TreeMap<String, Long> timesPerParser = new TreeMap<String, Long>();
         ParsingTask.copyTimesPerParser(timesPerParser);
@@ -308,6 +348,7 @@ public void logStatistics(Manager manager) throws Exception {
         }
 
         LOGGER.info("Partial commits took {} seconds", manager.partialCommitsTime.get());
+        logIndexWriterStatistics(manager);
         LOGGER.info("Index internal docs: {}", numDocs); //$NON-NLS-1$
         LOGGER.info("Text Splits: {}", getSplits()); //$NON-NLS-1$
         LOGGER.info("Timeouts: {}", getTimeouts()); //$NON-NLS-1$
@@ -356,6 +397,58 @@ public void logStatistics(Manager manager) throws Exception {
             LOGGER.error("Warning: IO Errors happened while reading {} items from {}!", getIoErrors(), processed); //$NON-NLS-1$
     }
 
+    private void logTaskTimesPerMediaType(int numThreads) {
+        List<String[]> rows = new ArrayList<>();
+        List<Long> times = new ArrayList<>();
+        for (TaskTimeStats task : getAllTaskTimeStats()) {
+            for (TaskTimeStats.MediaTypeTime time : task.getTimesPerMediaType()) {
+                times.add(time.getTotal());
+                rows.add(new String[] { task.getTaskName(), time.getMediaType(), Long.toString(time.getCount()),
+                        Long.toString(time.getTotal() / (1000000L * numThreads)),
+                        Long.toString(time.getTotal() / Math.max(1, time.getCount()) / 1000),
+                        Long.toString(time.getMax() / 1000) });
+            }
+        }
+        if (rows.isEmpty()) {
+            return;
+        }
+        Integer[] order = new Integer[rows.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(times.get(b), times.get(a)));
+
+        LOGGER.info("Top Processing Times per Task and Media Type:");
+        String format = "%-30s %-50s %9s %7s %9s %9s"; //$NON-NLS-1$
+        LOGGER.info(String.format(format, "TASK", "MEDIA TYPE", "ITEMS", "TIME(s)", "AVG(ms)", "MAX(ms)"));
+        LOGGER.info(String.format(format, "=".repeat(30), "=".repeat(50), "=".repeat(9), "=".repeat(7), //$NON-NLS-1$
+                "=".repeat(9), "=".repeat(9)));
+        for (int i = 0; i < Math.min(TOP_MEDIA_TYPE_TIMES, order.length); i++) {
+            LOGGER.info(String.format(format, (Object[]) rows.get(order[i])));
+        }
+    }
+
+    private void logIndexWriterStatistics(Manager manager) {
+        double writeMBPerSec = manager.getIndexWriteMBPerSec();
+        LOGGER.info("Index writer RAM buffer: {} MB, merge threads: {}, storage write throughput: {}", //$NON-NLS-1$
+                manager.getIndexRAMBufferMB(), manager.getIndexMergeThreads(),
+                writeMBPerSec >= 0 ? Math.round(writeMBPerSec) + " MB/s" : "not measured"); //$NON-NLS-1$ //$NON-NLS-2$
+        FlushCountingDirectory flushCounter = manager.getIndexFlushCounter();
+        if (flushCounter != null) {
+            long flushes = flushCounter.getFlushCount();
+            long avgMB = flushes == 0 ? 0 : flushCounter.getFlushedBytes() / flushes / (1024 * 1024);
+            LOGGER.info("Index segments flushed: {} (average {} MB)", flushes, avgMB); //$NON-NLS-1$
+        }
+        InstrumentedMergeScheduler mergeScheduler = manager.getIndexMergeScheduler();
+        if (mergeScheduler != null) {
+            LOGGER.info("Index segment merges: {} ({} MB at {} MB/s per merge thread)", //$NON-NLS-1$
+                    mergeScheduler.getMergeCount(), mergeScheduler.getMergedBytes() / (1024 * 1024),
+                    Math.round(mergeScheduler.getMergeMBPerSec()));
+            LOGGER.info("Indexing threads stalled waiting merges: {} seconds", //$NON-NLS-1$
+                    mergeScheduler.getStallNanos() / 1000000000L);
+        }
+    }
+
     public void printSystemInfo() throws Exception {
         LocalConfig localConfig = ConfigurationManager.get().findObject(LocalConfig.class);
         LOGGER.info("Operating System: {}", System.getProperty("os.name")); //$NON-NLS-1$ //$NON-NLS-2$
@@ -0,0 +1,172 @@
+package iped.engine.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.SplittableRandom;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import iped.data.IItem;
+import iped.engine.config.ProcessingPriorityConfig;
+import iped.engine.data.CaseData;
+
+/**
+ * Original processing queues implementation, all operations are guarded by this
+ * object monitor.
+ */
+public class SynchronizedProcessingQueues extends ProcessingQueues {
+    /*
+     The LinkedList's are used for prioritized items, inserted on the top of the
+     queue. They can be used for the rest of the items if the selected behavior is
+     the same used before #2541 (FIFO). The ArrayList's are used for the rest of
+     the items, if random order is enabled (default). In such case, items are
+     selected randomly from the active queue, to "spread" items, minimizing the
+     situation of having all workers dealing with similar items, that would
+     compete for the same type of resources.
+     */
+    private TreeMap<Integer, LinkedList<IItem>> queuesTop;
+    private TreeMap<Integer, ArrayList<IItem>> queuesRest;
+
+    private volatile Integer currentQueuePriority = 0;
+
+    private int totalItemsBeingProcessed = 0;
+
+    private final SplittableRandom rnd = new SplittableRandom();
+
+    public SynchronizedProcessingQueues(CaseData caseData, ProcessingPriorityConfig config) {
+        super(caseData, config);
+        initQueues();
+    }
+
+    private void initQueues() {
+        queuesTop = new TreeMap<Integer, LinkedList<IItem>>();
+        queuesTop.put(0, new LinkedList<IItem>());
+        queuesRest = new TreeMap<Integer, ArrayList<IItem>>();
+        queuesRest.put(0, new ArrayList<IItem>());
+        for (Integer priority : QueuesProcessingOrder.getProcessingQueues()) {
+            queuesTop.put(priority, new LinkedList<IItem>());
+            queuesRest.put(priority, new ArrayList<IItem>());
+        }
+    }
+
+    @Override
+    protected void enqueue(IItem item, int queuePriority, boolean addFirst, boolean blockIfFull)
+            throws InterruptedException {
+
+        LinkedList<IItem> q1 = queuesTop.get(queuePriority);
+        ArrayList<IItem> q2 = queuesRest.get(queuePriority);
+        boolean sleep = false;
+        while (true) {
+            if (sleep) {
+                sleep = false;
+                Thread.sleep(1000);
+            }
+            synchronized (this) {
+                if (blockIfFull && queuePriority == 0 && q1.size() + q2.size() >= maxQueueSize) {
+                    sleep = true;
+                    continue;
+                } else {
+                    if (addFirst) {
+                        q1.addFirst(item);
+                    } else {
+                        if (randomOrder) {
+                            q2.add(item);
+                        } else {
+                            // If "random order" is disabled, FIFO is used, and new items are placed in the
+                            // end of the LinkedList queue.
+                            q1.addLast(item);
+                        }
+                    }
+                    break;
+                }
+            }
+        }
+    }
+
+    @Override
+    public synchronized int getItemsBeingProcessed() {
+        return totalItemsBeingProcessed;
+    }
+
+    @Override
+    public synchronized void incItemsBeingProcessed() {
+        totalItemsBeingProcessed++;
+    }
+
+    @Override
+    public synchronized void decItemsBeingProcessed() {
+        totalItemsBeingProcessed--;
+    }
+
+    @Override
+    protected synchronized boolean isNoItemInMemoryOrBeingProcessed() {
+        return totalItemsBeingProcessed == 0 && getItemQueueTop().isEmpty() && getItemQueueRest().isEmpty();
+    }
+
+    @Override
+    protected IItem takeItem(long timeout, TimeUnit unit) throws InterruptedException {
+        synchronized (this) {
+            IItem item = pollFromCurrentQueue();
+            if (item != null) {
+                if (!item.isQueueEnd()) {
+                    totalItemsBeingProcessed++;
+                }
+                return item;
+            }
+        }
+        // this should be very rare
+        unit.sleep(timeout);
+        return null;
+    }
+
+    public synchronized IItem pollFromCurrentQueue() throws InterruptedException {
+        LinkedList<IItem> q1 = getItemQueueTop();
+        if (!q1.isEmpty()) {
+            return q1.pollFirst();
+        }
+        ArrayList<IItem> q2 = getItemQueueRest();
+        if (q2.size() > 2) {
+            int pos = rnd.nextInt(q2.size() - 1);
+            IItem item = q2.get(pos);
+            Collections.swap(q2, pos, q2.size() - 2);
+            q2.remove(q2.size() - 2);
+            return item;
+        }
+        return q2.isEmpty() ? null : q2.remove(0);
+    }
+
+    @Override
+    public synchronized void addToCurrentQueue(IItem item) throws InterruptedException {
+        getItemQueueRest().add(item);
+    }
+
+    @Override
+    public synchronized IItem peekItemFromCurrentQueue() {
+        return getItemQueueTop().isEmpty() ? getItemQueueRest().get(0) : getItemQueueTop().peekFirst();
+    }
+
+    @Override
+    protected synchronized int getQueueSize(int priority) {
+        return queuesTop.get(priority).size() + queuesRest.get(priority).size();
+    }
+
+    @Override
+    public Integer changeToNextQueue() {
+        currentQueuePriority = queuesTop.ceilingKey(currentQueuePriority + 1);
+        return currentQueuePriority;
+    }
+
+    @Override
+    public Integer getCurrentQueuePriority() {
+        return currentQueuePriority;
+    }
+
+    private ArrayList<IItem> getItemQueueRest() {
+        return queuesRest.get(currentQueuePriority);
+    }
+
+    private LinkedList<IItem> getItemQueueTop() {
+        return queuesTop.get(currentQueuePriority);
+    }
+}
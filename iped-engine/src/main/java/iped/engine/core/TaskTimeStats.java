@@ -0,0 +1,99 @@
+package iped.engine.core;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.tika.mime.MediaType;
+
+import iped.engine.util.TimeHistogram;
+
+/**
+ * Processing times of one task summed over all workers, with a histogram of
+ * the time per item and the times split by item media type. Times are in
+ * microseconds and do not include the time spent processing subitems.
+ */
+public class TaskTimeStats {
+
+    private static final String UNKNOWN_MEDIA_TYPE = "unknown"; //$NON-NLS-1$
+
+    private final String taskName;
+
+    private final TimeHistogram histogram = new TimeHistogram();
+
+    private final ConcurrentHashMap<String, MediaTypeTime> timesPerMediaType = new ConcurrentHashMap<>();
+
+    public static class MediaTypeTime {
+
+        private final String mediaType;
+        private final LongAdder count = new LongAdder();
+        private final LongAdder total = new LongAdder();
+        private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+        private MediaTypeTime(String mediaType) {
+            this.mediaType = mediaType;
+        }
+
+        private void record(long micros) {
+            count.increment();
+            total.add(micros);
+            max.accumulate(micros);
+        }
+
+        public String getMediaType() {
+            return mediaType;
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        public long getTotal() {
+            return total.sum();
+        }
+
+        public long getMax() {
+            return max.get();
+        }
+    }
+
+    TaskTimeStats(String taskName) {
+        this.taskName = taskName;
+    }
+
+    public void record(MediaType mediaType, long micros) {
+        histogram.record(micros);
+        String type = mediaType != null ? mediaType.getBaseType().toString() : UNKNOWN_MEDIA_TYPE;
+        MediaTypeTime time = timesPerMediaType.get(type);
+        if (time == null) {
+            time = timesPerMediaType.computeIfAbsent(type, MediaTypeTime::new);
+        }
+        time.record(micros);
+    }
+
+    public String getTaskName() {
+        return taskName;
+    }
+
+    public TimeHistogram getHistogram() {
+        return histogram;
+    }
+
+    /**
+     * @return media type times sorted by descending total time
+     */
+    public List<MediaTypeTime> getTimesPerMediaType() {
+        // totals are snapshotted, they may change while sorting
+        HashMap<MediaTypeTime, Long> totals = new HashMap<>();
+        for (MediaTypeTime time : timesPerMediaType.values()) {
+            totals.put(time, time.getTotal());
+        }
+        List<MediaTypeTime> list = new ArrayList<>(totals.keySet());
+        list.sort((a, b) -> Long.compare(totals.get(b), totals.get(a)));
+        return list;
+    }
+
+}
@@ -0,0 +1,367 @@
+package iped.engine.core;
+
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import iped.data.IItem;
+import iped.engine.config.ProcessingPriorityConfig;
+import iped.engine.data.CaseData;
+
+/**
+ * Lock-free processing queues, with one set of deques per worker in each
+ * priority lane. Workers take items from their own deques and steal from the
+ * others when they run out of work. The lock is only used to park idle workers
+ * or producers blocked by a full queue, instead of sleep polling.
+ *
+ * Items added to the top of the queue by a worker (e.g. subitems) go to the
+ * head of its own priority deque, so they are processed first by the same
+ * worker. Other items are distributed among workers: if random order is
+ * enabled, they go to a random deque and are taken from a random end of it, to
+ * "spread" similar items among workers, otherwise they are distributed in a
+ * round robin fashion and taken in FIFO order.
+ */
+public class WorkStealingProcessingQueues extends ProcessingQueues {
+
+    /**
+     * Time to wait for regular items before handing the queue end to a worker
+     * while other workers are still processing, avoids spinning on it.
+     */
+    private static final long QUEUE_END_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private static class Lane {
+
+        // items inserted on the top by non worker threads
+        private final ConcurrentLinkedDeque<IItem> top = new ConcurrentLinkedDeque<>();
+
+        // items inserted on the top by each worker
+        private final ConcurrentLinkedDeque<IItem>[] workerTop;
+
+        // the rest of the items
+        private final ConcurrentLinkedDeque<IItem>[] workerRest;
+
+        private final AtomicReference<IItem> queueEnd = new AtomicReference<>();
+
+        private final AtomicInteger size = new AtomicInteger();
+
+        private final AtomicInteger nextDeque = new AtomicInteger();
+
+        @SuppressWarnings("unchecked")
+        private Lane(int numDeques) {
+            workerTop = new ConcurrentLinkedDeque[numDeques];
+            workerRest = new ConcurrentLinkedDeque[numDeques];
+            for (int i = 0; i < numDeques; i++) {
+                workerTop[i] = new ConcurrentLinkedDeque<>();
+                workerRest[i] = new ConcurrentLinkedDeque<>();
+            }
+        }
+    }
+
+    private final TreeMap<Integer, Lane> lanes = new TreeMap<>();
+
+    private final int numDeques;
+
+    private volatile Integer currentQueuePriority = 0;
+
+    private volatile Lane currentLane;
+
+    private final AtomicInteger itemsBeingProcessed = new AtomicInteger();
+
+    // items in the current queue plus items being processed
+    private final AtomicLong pendingItems = new AtomicLong();
+
+    // updates of pendingItems hold the read lock, the current lane switch holds the
+    // write lock, so items are not counted twice or missed while switching
+    private final ReentrantReadWriteLock laneSwitchLock = new ReentrantReadWriteLock();
+
+    private final int lowWatermark;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+
+    private final AtomicInteger waitingConsumers = new AtomicInteger();
+    private final AtomicInteger waitingProducers = new AtomicInteger();
+
+    public WorkStealingProcessingQueues(CaseData caseData, ProcessingPriorityConfig config, int numWorkers) {
+        super(caseData, config);
+        this.numDeques = numWorkers > 0 ? numWorkers : Runtime.getRuntime().availableProcessors();
+        this.lowWatermark = maxQueueSize - (maxQueueSize >> 4);
+        lanes.put(0, new Lane(numDeques));
+        for (Integer priority : QueuesProcessingOrder.getProcessingQueues()) {
+            lanes.put(priority, new Lane(numDeques));
+        }
+        currentLane = lanes.get(0);
+    }
+
+    @Override
+    protected void enqueue(IItem item, int queuePriority, boolean addFirst, boolean blockIfFull)
+            throws InterruptedException {
+
+        Lane lane = lanes.get(queuePriority);
+        if (blockIfFull && queuePriority == 0 && lane.size.get() >= maxQueueSize) {
+            awaitNotFull(lane);
+        }
+        enqueue(lane, item, addFirst);
+    }
+
+    private void enqueue(Lane lane, IItem item, boolean addFirst) {
+        // counters are updated before the item becomes visible to consumers
+        laneSwitchLock.readLock().lock();
+        try {
+            lane.size.incrementAndGet();
+            if (lane == currentLane) {
+                pendingItems.incrementAndGet();
+            }
+        } finally {
+            laneSwitchLock.readLock().unlock();
+        }
+        if (item.isQueueEnd() && lane.queueEnd.compareAndSet(null, item)) {
+            signalNotEmpty(true);
+            return;
+        }
+        if (addFirst) {
+            int slot = getWorkerSlot();
+            if (slot >= 0) {
+                lane.workerTop[slot].addFirst(item);
+            } else {
+                lane.top.addFirst(item);
+            }
+        } else if (randomOrder) {
+            lane.workerRest[ThreadLocalRandom.current().nextInt(numDeques)].addLast(item);
+        } else {
+            lane.workerRest[Math.floorMod(lane.nextDeque.getAndIncrement(), numDeques)].addLast(item);
+        }
+        signalNotEmpty(item.isQueueEnd());
+    }
+
+    private int getWorkerSlot() {
+        Thread thread = Thread.currentThread();
+        if (thread instanceof Worker) {
+            return ((Worker) thread).id % numDeques;
+        }
+        return -1;
+    }
+
+    private IItem pollRest(ConcurrentLinkedDeque<IItem> deque) {
+        if (randomOrder && ThreadLocalRandom.current().nextBoolean()) {
+            return deque.pollLast();
+        }
+        return deque.pollFirst();
+    }
+
+    private IItem poll(boolean allowQueueEnd) {
+        Lane lane = currentLane;
+        if (lane == null) {
+            return null;
+        }
+        IItem item = lane.top.pollFirst();
+        if (item == null) {
+            int slot = getWorkerSlot();
+            if (slot < 0) {
+                slot = ThreadLocalRandom.current().nextInt(numDeques);
+            }
+            item = lane.workerTop[slot].pollFirst();
+            if (item == null) {
+                item = pollRest(lane.workerRest[slot]);
+            }
+            // steal from other workers, starting from a random one
+            int start = ThreadLocalRandom.current().nextInt(numDeques);
+            for (int i = 0; item == null && i < numDeques; i++) {
+                int victim = (start + i) % numDeques;
+                if (victim != slot) {
+                    item = lane.workerTop[victim].pollLast();
+                    if (item == null) {
+                        item = pollRest(lane.workerRest[victim]);
+                    }
+                }
+            }
+        }
+        if (item == null && allowQueueEnd) {
+            item = lane.queueEnd.getAndSet(null);
+        }
+        if (item != null) {
+            if (item.isQueueEnd()) {
+                laneSwitchLock.readLock().lock();
+                try {
+                    if (lane == currentLane) {
+                        pendingItems.decrementAndGet();
+                    }
+                } finally {
+                    laneSwitchLock.readLock().unlock();
+                }
+            } else {
+                itemsBeingProcessed.incrementAndGet();
+            }
+            int size = lane.size.decrementAndGet();
+            if (size <= lowWatermark && waitingProducers.get() > 0) {
+                signalNotFull();
+            }
+        }
+        return item;
+    }
+
+    @Override
+    protected IItem takeItem(long timeout, TimeUnit unit) throws InterruptedException {
+        IItem item = poll(false);
+        if (item != null) {
+            return item;
+        }
+        if (itemsBeingProcessed.get() > 0) {
+            item = awaitItem(QUEUE_END_WAIT_NANOS, false);
+            if (item != null) {
+                return item;
+            }
+        }
+        item = poll(true);
+        if (item != null) {
+            return item;
+        }
+        return awaitItem(unit.toNanos(timeout), true);
+    }
+
+    private IItem awaitItem(long nanos, boolean allowQueueEnd) throws InterruptedException {
+        waitingConsumers.incrementAndGet();
+        try {
+            lock.lockInterruptibly();
+            try {
+                IItem item;
+                while ((item = poll(allowQueueEnd)) == null && nanos > 0) {
+                    nanos = notEmpty.awaitNanos(nanos);
+                }
+                return item;
+            } finally {
+                lock.unlock();
+            }
+        } finally {
+            waitingConsumers.decrementAndGet();
+        }
+    }
+
+    private void awaitNotFull(Lane lane) throws InterruptedException {
+        waitingProducers.incrementAndGet();
+        try {
+            lock.lockInterruptibly();
+            try {
+                while (lane.size.get() >= maxQueueSize) {
+                    notFull.await(1, TimeUnit.SECONDS);
+                }
+            } finally {
+                lock.unlock();
+            }
+        } finally {
+            waitingProducers.decrementAndGet();
+        }
+    }
+
+    private void signalNotEmpty(boolean all) {
+        if (waitingConsumers.get() > 0) {
+            lock.lock();
+            try {
+                if (all) {
+                    notEmpty.signalAll();
+                } else {
+                    notEmpty.signal();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private void signalNotFull() {
+        lock.lock();
+        try {
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int getItemsBeingProcessed() {
+        return itemsBeingProcessed.get();
+    }
+
+    @Override
+    public void incItemsBeingProcessed() {
+        laneSwitchLock.readLock().lock();
+        try {
+            pendingItems.incrementAndGet();
+            itemsBeingProcessed.incrementAndGet();
+        } finally {
+            laneSwitchLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void decItemsBeingProcessed() {
+        laneSwitchLock.readLock().lock();
+        try {
+            itemsBeingProcessed.decrementAndGet();
+            pendingItems.decrementAndGet();
+        } finally {
+            laneSwitchLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    protected boolean isNoItemInMemoryOrBeingProcessed() {
+        return pendingItems.get() == 0;
+    }
+
+    @Override
+    public void addToCurrentQueue(IItem item) throws InterruptedException {
+        enqueue(currentLane, item, false);
+    }
+
+    @Override
+    public IItem peekItemFromCurrentQueue() {
+        Lane lane = currentLane;
+        IItem item = lane.top.peekFirst();
+        for (int i = 0; item == null && i < numDeques; i++) {
+            item = lane.workerTop[i].peekFirst();
+            if (item == null) {
+                item = lane.workerRest[i].peekFirst();
+            }
+        }
+        return item != null ? item : lane.queueEnd.get();
+    }
+
+    @Override
+    protected int getQueueSize(int priority) {
+        return lanes.get(priority).size.get();
+    }
+
+    @Override
+    public Integer changeToNextQueue() {
+        Integer next = lanes.ceilingKey(currentQueuePriority + 1);
+        laneSwitchLock.writeLock().lock();
+        try {
+            if (next != null) {
+                Lane lane = lanes.get(next);
+                pendingItems.set(itemsBeingProcessed.get() + lane.size.get());
+                currentLane = lane;
+            } else {
+                currentLane = null;
+            }
+            currentQueuePriority = next;
+        } finally {
+            laneSwitchLock.writeLock().unlock();
+        }
+        return next;
+    }
+
+    @Override
+    public Integer getCurrentQueuePriority() {
+        return currentQueuePriority;
+    }
+
+}
@@ -21,6 +21,7 @@
 import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.lucene.index.IndexWriter;
 import org.slf4j.Logger;
@@ -239,23 +240,12 @@ public void run() {
 
             try {
                 evidence = null;
-                boolean sleep = false;
                 while (evidence == null) {
-                    if (sleep) {
-                        // this should be very rare
-                        sleep = false;
-                        Thread.sleep(100);
-                    }
-                    synchronized (manager.getProcessingQueues()) {
-                        evidence = manager.getProcessingQueues().pollFromCurrentQueue();
-                        if (evidence == null) {
-                            sleep = true;
-                            continue;
-                        }
-                        if (!evidence.isQueueEnd()) {
-                            incItemsBeingProcessed();
-                        }
-                    }
+                    // items taken from queue are already counted as being processed there
+                    evidence = manager.getProcessingQueues().takeFromCurrentQueue(100, TimeUnit.MILLISECONDS);
+                }
+                if (!evidence.isQueueEnd()) {
+                    itemsBeingProcessed++;
                 }
 
 
@@ -4,6 +4,7 @@
 import java.io.IOException;
 import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
@@ -33,7 +34,11 @@ public class IPEDMultiSource extends IPEDSource {
 
     private static Logger LOGGER = LoggerFactory.getLogger(IPEDMultiSource.class);
 
-    private static ArrayList<Integer> baseDocCache = new ArrayList<Integer>();
+    /**
+     * First lucene id of each case in the MultiReader, plus total maxDoc at the
+     * end
+     */
+    private int[] baseDocs;
 
     List<IPEDSource> cases = new ArrayList<>();
 
@@ -147,8 +152,9 @@ public void init() {
         for (IPEDSource iCase : cases)
             totalItens += iCase.totalItens;
 
-        for (IIPEDSource iCase : cases)
-            baseDocCache.add(getBaseLuceneId(iCase));
+        baseDocs = new int[cases.size() + 1];
+        for (int k = 0; k < cases.size(); k++)
+            baseDocs[k + 1] = baseDocs[k] + cases.get(k).reader.maxDoc();
 
         loadCategories();
 
@@ -225,13 +231,17 @@ public void checkImagePaths() throws IPEDException, TskCoreException {
     }
 
     final public IIPEDSource getAtomicSource(int luceneId) {
-        int maxDoc = 0;
-        for (IPEDSource iCase : cases) {
-            maxDoc += iCase.reader.maxDoc();
-            if (luceneId < maxDoc)
-                return iCase;
+        if (luceneId < 0 || luceneId >= baseDocs[cases.size()])
+            return null;
+        int k = Arrays.binarySearch(baseDocs, luceneId);
+        if (k < 0) {
+            k = -k - 2;
+        } else {
+            // skips empty cases starting at same lucene id
+            while (baseDocs[k + 1] == luceneId)
+                k++;
         }
-        return null;
+        return cases.get(k);
     }
 
     final public IPEDSource getAtomicSourceBySourceId(int sourceId) {
@@ -243,6 +253,9 @@ final public List<IPEDSource> getAtomicSources() {
     }
 
     public final int getBaseLuceneId(IIPEDSource atomicCase) {
+        int sourceId = atomicCase.getSourceId();
+        if (sourceId >= 0 && sourceId < cases.size() && cases.get(sourceId) == atomicCase)
+            return baseDocs[sourceId];
         int maxDoc = 0;
         for (IPEDSource iCase : cases) {
             if (atomicCase == iCase)
@@ -295,10 +308,13 @@ final public int getLuceneId(int id) {
     }
 
     final public int getLuceneId(IItemId id) {
-        int sourceid = id.getSourceId();
-        IIPEDSource atomicCase = getAtomicSourceBySourceId(sourceid);
-        int baseDoc = baseDocCache.get(sourceid);
-        return atomicCase.getLuceneId(id.getId()) + baseDoc;
+        return getLuceneId(id.getSourceId(), id.getId());
+    }
+
+    final public int getLuceneId(int sourceId, int id) {
+        IIPEDSource atomicCase = getAtomicSourceBySourceId(sourceId);
+        int baseDoc = baseDocs[sourceId];
+        return atomicCase.getLuceneId(id) + baseDoc;
     }
     
     @SuppressWarnings("resource")
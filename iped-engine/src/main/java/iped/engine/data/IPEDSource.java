@@ -22,7 +22,6 @@
 import java.io.IOException;
 import java.nio.file.Files;
 import java.util.ArrayList;
-import java.util.BitSet;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -41,15 +40,12 @@
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.LeafReader;
-import org.apache.lucene.index.NumericDocValues;
 import org.apache.lucene.index.SortedDocValues;
 import org.apache.lucene.index.Terms;
 import org.apache.lucene.index.TermsEnum;
 import org.apache.lucene.search.BooleanQuery;
-import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.store.Directory;
-import org.apache.lucene.util.Bits;
 import org.sleuthkit.datamodel.SleuthkitCase;
 import org.sleuthkit.datamodel.TskCoreException;
 import org.slf4j.Logger;
@@ -118,8 +114,7 @@ public class IPEDSource implements IIPEDSource {
     private IBookmarks bookmarks;
     IMultiBookmarks multiBookmarks;
 
-    private int[] ids, docs;
-    private BitSet parentDocs;
+    private volatile LuceneIdMap idMap;
 
     protected int sourceId = -1;
 
@@ -224,7 +219,6 @@ public IPEDSource(File casePath, IndexWriter iw, boolean askImagePathIfNotFound)
             analyzer = AppAnalyzer.get();
 
             populateLuceneIdToIdMap();
-            invertIdToLuceneIdArray();
             populateEvidenceUUIDs();
             countTotalItems();
 
@@ -262,7 +256,7 @@ public IPEDSource(File casePath, IndexWriter iw, boolean askImagePathIfNotFound)
     public void clearOldBookmarks() {
         ArrayList<Integer> idsToRemove = new ArrayList<>();
         for (int id = 0; id <= lastId; id++) {
-            if (docs[id] == -1) {
+            if (idMap.getLuceneId(id) == -1) {
                 idsToRemove.add(id);
             }
         }
@@ -279,45 +273,13 @@ public void clearOldBookmarks() {
     }
 
     public void populateLuceneIdToIdMap() throws IOException {
-
-        LOGGER.info("Creating LuceneId to ID mapping..."); //$NON-NLS-1$
-        ids = new int[reader.maxDoc()];
-        for (int i = 0; i < ids.length; i++) {
-            ids[i] = -1;
-        }
-        
-        parentDocs = new BitSet(ids.length);
-
-        NumericDocValues ndv = atomicReader.getNumericDocValues(IndexItem.ID);
-        if (ndv == null) {
-            // no items in index
-            return;
-        }
-
-        Bits liveDocs = atomicReader.getLiveDocs();
-
-        int i;
-        while ((i = ndv.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
-            if (liveDocs != null && !liveDocs.get(i)) {
-                continue;
-            }
-            ids[i] = (int) ndv.longValue();
-            parentDocs.set(i);
-            if (ids[i] > lastId)
-                lastId = ids[i];
-        }
-    }
-
-    protected void invertIdToLuceneIdArray() {
-        docs = new int[lastId + 1];
-        for (int i = 0; i < docs.length; i++) {
-            docs[i] = -1;
-        }
-        for (int i = 0; i < ids.length; i++) {
-            if (ids[i] > -1) {
-                docs[ids[i]] = i;
-            }
-        }
+        // persisted just if the index is not being written
+        File dataDir = iw == null ? new File(moduleDir, DATA_DIR) : null;
+        LuceneIdMap prevMap = idMap;
+        idMap = LuceneIdMap.load(reader, dataDir);
+        lastId = idMap.getLastId();
+        // safe even if other threads are still reading the previous map
+        IOUtil.closeQuietly(prevMap);
     }
 
     private void populateEvidenceUUIDs() throws IOException {
@@ -512,6 +474,7 @@ protected void openSearcher() {
     public void close() {
         try {
             IOUtil.closeQuietly(reader);
+            IOUtil.closeQuietly(idMap);
 
             if (searchExecutorService != null)
                 searchExecutorService.shutdown();
@@ -537,12 +500,13 @@ public IItem getItemByLuceneID(int docID) {
     }
 
     public IItem getItemByID(int id) {
-        return getItemByLuceneID(docs[id]);
+        return getItemByLuceneID(idMap.getLuceneId(id));
     }
 
     public void reopen() throws IOException {
         close();
         openIndex(index, iw);
+        populateLuceneIdToIdMap();
     }
 
     public void checkImagePaths() throws IPEDException, TskCoreException {
@@ -709,19 +673,19 @@ public File getCaseDir() {
     }
 
     public int getId(int luceneId) {
-        return ids[luceneId];
+        return idMap.getId(luceneId);
     }
     
     public IntStream getLuceneIdStream() {
-    	return parentDocs.stream();
+        return idMap.getLuceneIdStream();
     }
 
     public int getLuceneId(IItemId itemId) {
-        return docs[itemId.getId()];
+        return idMap.getLuceneId(itemId.getId());
     }
 
     public int getLuceneId(int id) {
-        return docs[id];
+        return idMap.getLuceneId(id);
     }
 
     public int getParentId(int id) {
@@ -38,6 +38,7 @@
 import iped.datasource.IDataSource;
 import iped.engine.core.Statistics;
 import iped.engine.io.ReferencedFile;
+import iped.engine.io.SubitemSpool.SpooledContent;
 import iped.engine.lucene.analysis.CategoryTokenizer;
 import iped.engine.task.index.IndexItem;
 import iped.engine.tika.SyncMetadata;
@@ -195,6 +196,8 @@ public static void setStartID(int start) {
 
     private TemporaryResources tmpResources;
 
+    private SpooledContent spooledContent;
+
     private long startOffset = -1, parentOffset = -1;
 
     private String idInDataSource;
@@ -1234,6 +1237,39 @@ public boolean hasParentTmpFile() {
         return parentTmpFile != null && parentOffset != -1;
     }
 
+    /**
+     * Holds a reference to the spooled content of this item, or of its parent in
+     * case of carved items, until it is released. It is not released by
+     * {@link #dispose()}, because items are disposed before being re-enqueued.
+     */
+    public void setSpooledContent(SpooledContent spooledContent) {
+        releaseSpooledContent();
+        this.spooledContent = spooledContent;
+    }
+
+    /**
+     * Carved items read the parent content, which may be still spooled.
+     */
+    public void retainParentSpooledContent(Item parent) {
+        if (parent.spooledContent != null) {
+            setSpooledContent(parent.spooledContent.retain());
+        }
+    }
+
+    /**
+     * @return true if the content of this item is read from the subitem spool
+     */
+    public boolean isContentSpooled() {
+        return spooledContent != null && inputStreamFactory == spooledContent && startOffset == -1;
+    }
+
+    public void releaseSpooledContent() {
+        if (spooledContent != null) {
+            spooledContent.close();
+            spooledContent = null;
+        }
+    }
+
     public void setParentTmpFile(File parentTmpFile, Item parent) {
         this.parentTmpFile = parentTmpFile;
         if (parent.refTmpFile != null) {
@@ -1309,6 +1345,110 @@ public IItem createChildItem() {
         return child;
     }
 
+    /**
+     * @return the state of this item to be stored out of the heap while it waits
+     *         in the processing queue, or null if it holds resources (temp files,
+     *         streams, text cache) which can not be detached from it
+     */
+    public QueuedItem toQueuedItem() {
+        if (isQueueEnd || tmpFile != null || parentTmpFile != null || refTmpFile != null || tmpResources != null
+                || spooledContent != null || tis != null || textCache != null) {
+            return null;
+        }
+        QueuedItem q = new QueuedItem();
+        q.name = name;
+        q.extension = extension;
+        q.path = path;
+        q.type = type;
+        q.mediaType = mediaType;
+        q.id = id;
+        q.parentId = parentId;
+        q.subitemId = subitemId;
+        q.parentIds = parentIds;
+        q.extraAttributes = extraAttributes;
+        q.tempAttributes = tempAttributes;
+        q.creationDate = creationDate;
+        q.modificationDate = modificationDate;
+        q.accessDate = accessDate;
+        q.changeDate = changeDate;
+        q.length = length;
+        q.viewFile = viewFile;
+        q.categories = categories;
+        q.labels = labels;
+        q.metadata = metadata;
+        q.hash = hash;
+        q.idInDataSource = idInDataSource;
+        q.startOffset = startOffset;
+        q.parentOffset = parentOffset;
+        q.thumb = thumb;
+        q.data = data;
+        q.flags = toFlags(deleted, timeOut, isSubItem, hasChildren, isDir, isRoot, sumVolume, toIgnore, addToCase,
+                isToExtract, allowGetId, carved, parsed);
+        return q;
+    }
+
+    /**
+     * Recreates an item from its queued state, data source and input stream
+     * factory must be set by the caller.
+     */
+    public static Item fromQueuedItem(QueuedItem q) {
+        Item item = new Item();
+        item.name = q.name;
+        item.extension = q.extension;
+        item.path = q.path;
+        item.type = q.type;
+        item.mediaType = q.mediaType;
+        item.id = q.id;
+        item.parentId = q.parentId;
+        item.subitemId = q.subitemId;
+        item.parentIds = q.parentIds;
+        item.creationDate = q.creationDate;
+        item.modificationDate = q.modificationDate;
+        item.accessDate = q.accessDate;
+        item.changeDate = q.changeDate;
+        item.length = q.length;
+        item.viewFile = q.viewFile;
+        item.categories = q.categories;
+        item.labels = q.labels;
+        item.metadata = q.metadata;
+        item.hash = q.hash;
+        item.idInDataSource = q.idInDataSource;
+        item.startOffset = q.startOffset;
+        item.parentOffset = q.parentOffset;
+        item.thumb = q.thumb;
+        item.data = q.data;
+        item.extraAttributes = q.extraAttributes;
+        item.tempAttributes = q.tempAttributes;
+        item.deleted = isFlagSet(q.flags, 0);
+        item.timeOut = isFlagSet(q.flags, 1);
+        item.isSubItem = isFlagSet(q.flags, 2);
+        item.hasChildren = isFlagSet(q.flags, 3);
+        item.isDir = isFlagSet(q.flags, 4);
+        item.isRoot = isFlagSet(q.flags, 5);
+        item.sumVolume = isFlagSet(q.flags, 6);
+        item.toIgnore = isFlagSet(q.flags, 7);
+        item.addToCase = isFlagSet(q.flags, 8);
+        item.isToExtract = isFlagSet(q.flags, 9);
+        item.allowGetId = isFlagSet(q.flags, 10);
+        item.carved = isFlagSet(q.flags, 11);
+        item.parsed = isFlagSet(q.flags, 12);
+        return item;
+    }
+
+    private static int toFlags(boolean... values) {
+        int flags = 0;
+        for (int i = 0; i < values.length; i++) {
+            if (values[i]) {
+                flags |= 1 << i;
+            }
+        }
+        return flags;
+    }
+
+    private static boolean isFlagSet(int flags, int i) {
+        return (flags & (1 << i)) != 0;
+    }
+
     public Object getTempAttribute(String key) {
         return tempAttributes.get(key);
     }
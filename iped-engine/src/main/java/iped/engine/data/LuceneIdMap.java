@@ -0,0 +1,354 @@
+package iped.engine.data;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import org.apache.lucene.codecs.CodecUtil;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.store.MMapDirectory;
+import org.apache.lucene.store.NIOFSDirectory;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.LongValues;
+import org.apache.lucene.util.packed.DirectReader;
+import org.apache.lucene.util.packed.DirectWriter;
+import org.apache.lucene.util.packed.PackedInts;
+import org.apache.lucene.util.packed.PackedLongValues;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import iped.engine.config.ConfigurationManager;
+import iped.engine.config.IndexTaskConfig;
+import iped.engine.task.index.IndexItem;
+
+/**
+ * Mapping between lucene ids and item ids of a case, stored as bit packed
+ * values with just the bits needed by the largest id. The mapping is persisted
+ * in the case data folder and memory mapped when the case is opened again, so
+ * it is not rebuilt from the index doc values and does not use java heap. It
+ * is rebuilt if the index commit changed.
+ *
+ * The mapping can be closed while other threads are still reading it, e.g.
+ * when the case is reopened. The file is never unmapped explicitly, the
+ * mapping is released by GC after the last reader drops the closed map.
+ */
+public class LuceneIdMap implements Closeable {
+
+    private static Logger LOGGER = LoggerFactory.getLogger(LuceneIdMap.class);
+
+    public static final String FILE_NAME = "luceneIdMap.dat"; //$NON-NLS-1$
+
+    private static final String CODEC = "IPEDLuceneIdMap"; //$NON-NLS-1$
+
+    private static final int VERSION = 1;
+
+    /**
+     * generation, version, maxDoc, numDocs, lastId, idsBits, docsBits,
+     * idsOffset, docsOffset
+     */
+    private static final int META_SIZE = 8 + 8 + 4 + 4 + 4 + 4 + 4 + 8 + 8;
+
+    private final Directory directory;
+    private final IndexInput input;
+    private final int maxDoc;
+    private final int lastId;
+
+    /**
+     * lucene id -> item id + 1, 0 if the doc has no id or is deleted
+     */
+    private final LongValues ids;
+
+    /**
+     * item id -> lucene id + 1, 0 if the item is not in the index
+     */
+    private final LongValues docs;
+
+    private LuceneIdMap(Directory directory, IndexInput input, int maxDoc, int lastId, LongValues ids,
+            LongValues docs) {
+        this.directory = directory;
+        this.input = input;
+        this.maxDoc = maxDoc;
+        this.lastId = lastId;
+        this.ids = ids;
+        this.docs = docs;
+    }
+
+    /**
+     * Opens the mapping persisted in dataDir if it matches the reader commit,
+     * or builds it from the reader doc values.
+     *
+     * @param dataDir
+     *            case data folder where the mapping is persisted, null to not
+     *            persist it, e.g. while the index is being written
+     */
+    public static LuceneIdMap load(IndexReader reader, File dataDir) throws IOException {
+        long[] commit = getCommitKey(reader);
+        if (dataDir != null && commit != null) {
+            LuceneIdMap map = openPersisted(reader, dataDir, commit);
+            if (map != null) {
+                LOGGER.info("LuceneId to ID mapping loaded from {}", dataDir.getAbsolutePath()); //$NON-NLS-1$
+                return map;
+            }
+        }
+        LOGGER.info("Creating LuceneId to ID mapping..."); //$NON-NLS-1$
+        ByteBuffersDirectory memDir = new ByteBuffersDirectory();
+        build(reader, memDir, commit != null ? commit : new long[2]);
+        if (dataDir != null && commit != null) {
+            persist(memDir, dataDir);
+        }
+        return open(memDir, reader, commit);
+    }
+
+    /**
+     * @return generation and version of the reader commit, or null if it is not
+     *         a DirectoryReader
+     */
+    private static long[] getCommitKey(IndexReader reader) throws IOException {
+        if (!(reader instanceof DirectoryReader)) {
+            return null;
+        }
+        DirectoryReader dirReader = (DirectoryReader) reader;
+        return new long[] { dirReader.getIndexCommit().getGeneration(), dirReader.getVersion() };
+    }
+
+    private static LuceneIdMap openPersisted(IndexReader reader, File dataDir, long[] commit) {
+        File file = new File(dataDir, FILE_NAME);
+        if (!file.isFile()) {
+            return null;
+        }
+        Directory dir = null;
+        try {
+            ConfigurationManager configManager = ConfigurationManager.get();
+            IndexTaskConfig config = configManager != null ? configManager.findObject(IndexTaskConfig.class) : null;
+            if (config != null && config.isUseNIOFSDirectory()) {
+                // not mapped, e.g. case on a network share, loads it in heap
+                dir = new ByteBuffersDirectory();
+                try (Directory fsDir = new NIOFSDirectory(dataDir.toPath())) {
+                    dir.copyFrom(fsDir, FILE_NAME, FILE_NAME, IOContext.READONCE);
+                }
+            } else {
+                MMapDirectory mmapDir = new MMapDirectory(dataDir.toPath());
+                // unmapping while other threads still read it would crash them
+                mmapDir.setUseUnmap(false);
+                dir = mmapDir;
+            }
+            LuceneIdMap map = open(dir, reader, commit);
+            if (map == null) {
+                dir.close();
+            }
+            return map;
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Error opening {}, it will be rebuilt: {}", file.getAbsolutePath(), e.toString()); //$NON-NLS-1$
+            try {
+                if (dir != null) {
+                    dir.close();
+                }
+            } catch (IOException e1) {
+                // ignore
+            }
+            return null;
+        }
+    }
+
+    private static LuceneIdMap open(Directory dir, IndexReader reader, long[] commit) throws IOException {
+        IndexInput in = dir.openInput(FILE_NAME, IOContext.DEFAULT);
+        boolean success = false;
+        try {
+            CodecUtil.checkHeader(in, CODEC, VERSION, VERSION);
+            CodecUtil.retrieveChecksum(in);
+            in.seek(in.length() - CodecUtil.footerLength() - META_SIZE);
+            long generation = in.readLong();
+            long version = in.readLong();
+            int maxDoc = in.readInt();
+            int numDocs = in.readInt();
+            if (commit != null && (generation != commit[0] || version != commit[1] || maxDoc != reader.maxDoc()
+                    || numDocs != reader.numDocs())) {
+                return null;
+            }
+            int lastId = in.readInt();
+            int idsBits = in.readInt();
+            int docsBits = in.readInt();
+            long idsOffset = in.readLong();
+            long docsOffset = in.readLong();
+            LongValues ids = DirectReader.getInstance(in.randomAccessSlice(idsOffset, docsOffset - idsOffset),
+                    idsBits);
+            LongValues docs = DirectReader.getInstance(
+                    in.randomAccessSlice(docsOffset, in.length() - CodecUtil.footerLength() - META_SIZE - docsOffset),
+                    docsBits);
+            success = true;
+            return new LuceneIdMap(dir, in, maxDoc, lastId, ids, docs);
+        } finally {
+            if (!success) {
+                in.close();
+            }
+        }
+    }
+
+    /**
+     * Writes to a temp file renamed at the end, so other processes opening the
+     * same case never see a partial file.
+     */
+    private static void persist(ByteBuffersDirectory memDir, File dataDir) {
+        String tmpName = FILE_NAME + ".tmp"; //$NON-NLS-1$
+        try (Directory fsDir = new NIOFSDirectory(dataDir.toPath())) {
+            Files.deleteIfExists(new File(dataDir, tmpName).toPath());
+            fsDir.copyFrom(memDir, FILE_NAME, tmpName, IOContext.DEFAULT);
+            fsDir.sync(Collections.singleton(tmpName));
+            fsDir.rename(tmpName, FILE_NAME);
+        } catch (IOException | RuntimeException e) {
+            // e.g. read only case, the mapping is just kept in memory
+            LOGGER.warn("Could not save LuceneId to ID mapping to {}: {}", dataDir.getAbsolutePath(), e.toString()); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Reads the item ids of each index segment in parallel, keeping them as
+     * delta packed values, then writes both directions of the mapping.
+     */
+    private static void build(IndexReader reader, Directory dir, long[] commit) throws IOException {
+        List<LeafReaderContext> leaves = reader.leaves();
+        PackedLongValues[] leafIds = new PackedLongValues[leaves.size()];
+        int[] leafLastIds = new int[leaves.size()];
+        try {
+            IntStream.range(0, leaves.size()).parallel().forEach(i -> {
+                try {
+                    LeafReader leaf = leaves.get(i).reader();
+                    PackedLongValues.Builder builder = PackedLongValues.deltaPackedBuilder(PackedInts.COMPACT);
+                    int last = -1;
+                    int next = 0;
+                    NumericDocValues ndv = leaf.getNumericDocValues(IndexItem.ID);
+                    if (ndv != null) {
+                        Bits liveDocs = leaf.getLiveDocs();
+                        int doc;
+                        while ((doc = ndv.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+                            if (liveDocs != null && !liveDocs.get(doc)) {
+                                continue;
+                            }
+                            for (; next < doc; next++) {
+                                builder.add(0);
+                            }
+                            int id = (int) ndv.longValue();
+                            builder.add(id + 1L);
+                            next++;
+                            if (id > last) {
+                                last = id;
+                            }
+                        }
+                    }
+                    for (; next < leaf.maxDoc(); next++) {
+                        builder.add(0);
+                    }
+                    leafIds[i] = builder.build();
+                    leafLastIds[i] = last;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        int maxDoc = reader.maxDoc();
+        int lastId = -1;
+        for (int last : leafLastIds) {
+            lastId = Math.max(lastId, last);
+        }
+        int idsBits = DirectWriter.unsignedBitsRequired(lastId + 1L);
+        int docsBits = DirectWriter.unsignedBitsRequired(maxDoc);
+
+        PackedInts.Mutable inverse = PackedInts.getMutable(lastId + 1, PackedInts.bitsRequired(maxDoc),
+                PackedInts.COMPACT);
+
+        try (IndexOutput out = dir.createOutput(FILE_NAME, IOContext.DEFAULT)) {
+            CodecUtil.writeHeader(out, CODEC, VERSION);
+
+            long idsOffset = out.getFilePointer();
+            DirectWriter idsWriter = DirectWriter.getInstance(out, maxDoc, idsBits);
+            for (int i = 0; i < leaves.size(); i++) {
+                int docBase = leaves.get(i).docBase;
+                PackedLongValues.Iterator it = leafIds[i].iterator();
+                for (int doc = docBase; it.hasNext(); doc++) {
+                    long value = it.next();
+                    idsWriter.add(value);
+                    if (value != 0) {
+                        inverse.set((int) (value - 1), doc + 1);
+                    }
+                }
+                leafIds[i] = null;
+            }
+            idsWriter.finish();
+
+            long docsOffset = out.getFilePointer();
+            DirectWriter docsWriter = DirectWriter.getInstance(out, lastId + 1, docsBits);
+            for (int id = 0; id <= lastId; id++) {
+                docsWriter.add(inverse.get(id));
+            }
+            docsWriter.finish();
+
+            out.writeLong(commit[0]);
+            out.writeLong(commit[1]);
+            out.writeInt(maxDoc);
+            out.writeInt(reader.numDocs());
+            out.writeInt(lastId);
+            out.writeInt(idsBits);
+            out.writeInt(docsBits);
+            out.writeLong(idsOffset);
+            out.writeLong(docsOffset);
+            CodecUtil.writeFooter(out);
+        }
+    }
+
+    /**
+     * @return the item id of the lucene doc, or -1 if it has no id or it is
+     *         deleted
+     */
+    public int getId(int luceneId) {
+        if (luceneId < 0 || luceneId >= maxDoc) {
+            return -1;
+        }
+        return (int) ids.get(luceneId) - 1;
+    }
+
+    /**
+     * @return the lucene id of the item, or -1 if the item is not in the index
+     */
+    public int getLuceneId(int id) {
+        if (id < 0 || id > lastId) {
+            return -1;
+        }
+        return (int) docs.get(id) - 1;
+    }
+
+    public int getLastId() {
+        return lastId;
+    }
+
+    /**
+     * @return ascending lucene ids of all live docs with an item id
+     */
+    public IntStream getLuceneIdStream() {
+        return IntStream.range(0, maxDoc).filter(luceneId -> ids.get(luceneId) != 0);
+    }
+
+    @Override
+    public void close() throws IOException {
+        input.close();
+        directory.close();
+    }
+
+}
@@ -0,0 +1,53 @@
+package iped.engine.data;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.mime.MediaType;
+
+/**
+ * Serializable state of an {@link Item} waiting in the processing queue, used
+ * to keep queued items out of the heap. References to the data source and to
+ * the input stream factory are not included, they must be kept by the caller.
+ *
+ * @see Item#toQueuedItem()
+ * @see Item#fromQueuedItem(QueuedItem)
+ */
+public class QueuedItem implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    String name;
+    String extension;
+    String path;
+    String type;
+    MediaType mediaType;
+    int id;
+    Integer parentId;
+    Integer subitemId;
+    List<Integer> parentIds;
+    Map<String, Object> extraAttributes;
+    Map<String, Object> tempAttributes;
+    Date creationDate;
+    Date modificationDate;
+    Date accessDate;
+    Date changeDate;
+    Long length;
+    File viewFile;
+    HashSet<String> categories;
+    List<String> labels;
+    Metadata metadata;
+    String hash;
+    String idInDataSource;
+    long startOffset;
+    long parentOffset;
+    byte[] thumb;
+    byte[] data;
+    int flags;
+
+}
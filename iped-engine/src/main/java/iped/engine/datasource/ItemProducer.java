@@ -136,6 +136,12 @@ public void run() {
                 }
 
             }
+            for (DataSourceReader srcReader : instantiatedReaders) {
+                if (srcReader instanceof SleuthkitReader) {
+                    // images may be decoded and listed in background
+                    ((SleuthkitReader) srcReader).waitBackgroundRead();
+                }
+            }
             if (!listOnly) {
                 Item evidence = new Item();
                 evidence.setPath("[queue-end]");
@@ -30,15 +30,18 @@
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map.Entry;
 import java.util.Properties;
+import java.util.Set;
 import java.util.TimeZone;
 import java.util.TreeSet;
 import java.util.UUID;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
@@ -110,19 +113,33 @@ public class SleuthkitReader extends DataSourceReader {
     private static boolean tskChecked = false;
     private static boolean isTskPatched = false;
     
-    private static ExecutorService executor = Executors.newFixedThreadPool(1);
+    private static final long PROGRESS_LOG_INTERVAL = 60000;
 
+    private static ExecutorService executor = Executors.newCachedThreadPool();
+
+    // first and last TSK ids of each image, followed by the image (data source) id
+    // if its objects may be interleaved with objects of other images
     private static ConcurrentHashMap<File, Long[]> idRangeMap = new ConcurrentHashMap<>();
     private static ConcurrentHashMap<File, Future<Void>> addImageFuture = new ConcurrentHashMap<>();
     private static ConcurrentHashMap<File, Exception> exception = new ConcurrentHashMap<>();
+    private static ConcurrentHashMap<File, String> deviceIds = new ConcurrentHashMap<>();
+
+    // this limits the number of producers populating the DB at the same time (e.g.
+    // when decoding embedded disks recursively), just one by default
+    private static Semaphore decodeImageSemaphore;
+    private static boolean parallelDecoding = false;
 
-    // this guarantees just one producer populates the DB at a time (e.g. when
-    // decoding embedded disks recursively)
-    private static Semaphore decodeImageSemaphore = new Semaphore(1);
+    // decodes and lists images in background when decoding images in parallel
+    private static ExecutorService backgroundReadExecutor;
 
     private CmdLineArgs args;
     private Long firstId, lastId;
 
+    // set if objects of other images may be interleaved with this image objects
+    private Long dataSourceId;
+
+    private Future<Void> backgroundRead;
+
     private ArrayList<Integer> sleuthIdToId = new ArrayList<Integer>();
 
     // chamada content.getParent() é custosa, entao os valores já mapeados são
@@ -303,12 +320,35 @@ public static synchronized boolean isTSKPatched() throws Exception {
         return isTskPatched;
     }
 
+    private static synchronized void initImageDecoding(CmdLineArgs args, File output) {
+        if (decodeImageSemaphore == null) {
+            if (args.isContinue()) {
+                checkNoImageDecodingInParallel(output);
+            }
+            FileSystemConfig fsConfig = ConfigurationManager.get().findObject(FileSystemConfig.class);
+            int permits = Math.max(1, fsConfig.getNumImageDecoders());
+            if (permits > 1 && args.isContinue()) {
+                // the last image not completely decoded is deleted and decoded again, it must
+                // get the same TSK ids, so it can not be interleaved with other images
+                LOGGER.info("Decoding one image at a time when resuming processing."); //$NON-NLS-1$
+                permits = 1;
+            }
+            decodeImageSemaphore = new Semaphore(permits, true);
+            parallelDecoding = permits > 1;
+            if (parallelDecoding) {
+                backgroundReadExecutor = Executors.newFixedThreadPool(permits);
+                LOGGER.info("Decoding up to {} images in parallel.", permits); //$NON-NLS-1$
+            }
+        }
+    }
+
     @Override
     public void read(File image, Item parent) throws Exception {
 
         checkTSKVersion();
 
         args = (CmdLineArgs) caseData.getCaseObject(CmdLineArgs.class.getName());
+        initImageDecoding(args, output);
         if (args.getProfile() != null) {
             if (args.getProfile().equals("fastmode")) //$NON-NLS-1$ //$NON-NLS-2$
                 fastmode = true;
@@ -385,7 +425,7 @@ public void read(File image, Item parent) throws Exception {
             if (range != null && args.isContinue()) {
                 synchronized (idRangeMap) {
                     idRangeMap.put(image, range);
-                    idRangeMap.notify();
+                    idRangeMap.notifyAll();
                 }
             } else if (image.getName().equals(DB_NAME)) {
                 firstId = 0L;
@@ -394,39 +434,78 @@ public void read(File image, Item parent) throws Exception {
                 synchronized (idRangeMap) {
                     Long[] ids = { firstId, lastId };
                     idRangeMap.put(image, ids);
-                    idRangeMap.notify();
+                    idRangeMap.notifyAll();
                 }
+            } else if (parallelDecoding && listOnly && !embeddedDisk) {
+                // decodes and lists this image in background, so next images can be decoded
+                // at the same time
+                final String tz = timezone;
+                backgroundRead = backgroundReadExecutor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        try {
+                            decodeImage(image, tz, sectorSize);
+                            readAddedItems(image);
+                            return null;
+
+                        } catch (Exception e) {
+                            exception.putIfAbsent(image, e);
+                            synchronized (idRangeMap) {
+                                idRangeMap.notifyAll();
+                            }
+                            throw e;
+                        }
+                    }
+                });
+                return;
+
             } else {
+                decodeImage(image, timezone, sectorSize);
+            }
 
-                // get permit before any DB changes and getting last obj ID
-                decodeImageSemaphore.acquire();
+        }
 
-                if (args.isContinue() && !embeddedDisk) {
-                    Long tskID = deleteDatasource(image);
-                    if (tskID != null) {
-                        removeDecodedRangeAfterId(tskID, output);
-                    }
-                }
+        readAddedItems(image);
+    }
 
-                UIPropertyListenerProvider.getInstance().firePropertyChange("mensagem", "", //$NON-NLS-1$ //$NON-NLS-2$
-                        Messages.getString("SleuthkitReader.WaitDecode") + image.getAbsolutePath()); //$NON-NLS-1$
-                LOGGER.info("Decoding image {}", image.getAbsolutePath()); //$NON-NLS-1$
+    private void decodeImage(File image, String timezone, int sectorSize) throws Exception {
 
-                firstId = sleuthCase.getLastObjectId() + 1;
+        // get permit before any DB changes and getting last obj ID
+        decodeImageSemaphore.acquire();
 
-                synchronized (idRangeMap) {
-                    Long[] ids = { firstId, null };
-                    idRangeMap.put(image, ids);
-                    idRangeMap.notify();
-                }
+        if (args.isContinue() && !embeddedDisk) {
+            Long tskID = deleteDatasource(image);
+            if (tskID != null) {
+                removeDecodedRangeAfterId(tskID, output);
+            }
+        }
 
-                addImage = sleuthCase.makeAddImageProcess(timezone, true, false, "");
-                addImageInBackground(addImage, image, sectorSize);
+        UIPropertyListenerProvider.getInstance().firePropertyChange("mensagem", "", //$NON-NLS-1$ //$NON-NLS-2$
+                Messages.getString("SleuthkitReader.WaitDecode") + image.getAbsolutePath()); //$NON-NLS-1$
+        LOGGER.info("Decoding image {}", image.getAbsolutePath()); //$NON-NLS-1$
 
-            }
+        String deviceId = UUID.randomUUID().toString();
+        firstId = sleuthCase.getLastObjectId() + 1;
 
+        synchronized (idRangeMap) {
+            if (parallelDecoding) {
+                // other images may be decoded at the same time, so their objects are filtered
+                // out using the image id, found by the device id
+                saveDecodingStartId(image, firstId, output);
+                deviceIds.put(image, deviceId);
+                idRangeMap.put(image, new Long[] { firstId, null, null });
+            } else {
+                idRangeMap.put(image, new Long[] { firstId, null });
+            }
+            idRangeMap.notifyAll();
         }
 
+        addImage = sleuthCase.makeAddImageProcess(timezone, true, false, "");
+        addImageInBackground(addImage, image, deviceId, sectorSize);
+    }
+
+    private void readAddedItems(File image) throws Exception {
+
         java.util.logging.Logger.getLogger("org.sleuthkit").setLevel(java.util.logging.Level.SEVERE); //$NON-NLS-1$
 
         if (!(listOnly && fastmode) || embeddedDisk) {
@@ -443,6 +522,30 @@ public void read(File image, Item parent) throws Exception {
             addImageFuture.get(image).get();
 
     }
+
+    /**
+     * Waits for the image being decoded and listed in background, when decoding
+     * images in parallel.
+     */
+    public void waitBackgroundRead() throws Exception {
+        if (backgroundRead != null) {
+            try {
+                backgroundRead.get();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof Exception) {
+                    throw (Exception) e.getCause();
+                }
+                throw e;
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (backgroundRead != null) {
+            backgroundRead.cancel(true);
+        }
+    }
     
     /**
      * Deleting previous incomplete TSK entries is needed when resuming processing,
@@ -457,6 +560,7 @@ private Long deleteDatasource(File image) throws TskCoreException, SQLException
             }
         }
         if(sourceId != null) {
+            checkNotDecodedInParallel(image, sourceId, output);
             String queries[] = {
                     "DELETE FROM tsk_files WHERE obj_id >= '" + sourceId + "';",
                     "DELETE FROM tsk_vs_info WHERE obj_id >= '" + sourceId + "';",
@@ -560,7 +664,79 @@ private static synchronized void removeDecodedRangeAfterId(Long id, File output)
         }
     }
 
-    private static synchronized void saveDecodedRangeId(File image, Long start, Long last, File output) {
+    /**
+     * Objects of images decoded in parallel are interleaved in the DB, so deleting
+     * objects after the start of an image not completely decoded would delete
+     * objects of other images, and they would get different ids if decoded again.
+     */
+    private static synchronized void checkNotDecodedInParallel(File image, Long id, File output) {
+        File file = new File(output, RANGE_ID_FILE);
+        if (file.exists()) {
+            UTF8Properties props = new UTF8Properties();
+            try {
+                props.load(file);
+            } catch (IOException e) {
+                e.printStackTrace();
+                return;
+            }
+            for (String key : props.stringPropertyNames()) {
+                if (key.endsWith(":datasourceid")) { //$NON-NLS-1$
+                    String prefix = key.substring(0, key.length() - ":datasourceid".length()); //$NON-NLS-1$
+                    String last = props.getProperty(prefix + ":lastid"); //$NON-NLS-1$
+                    if (last != null && Long.valueOf(last.trim()) >= id) {
+                        throw new IPEDException("Image " + image.getAbsolutePath() //$NON-NLS-1$
+                                + " was not completely decoded and was decoded in parallel with " + prefix //$NON-NLS-1$
+                                + ", processing can not be resumed, please use --restart."); //$NON-NLS-1$
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * If processing is interrupted while images are decoded in parallel, the
+     * objects of images not completely decoded are interleaved with objects of
+     * other images, so they can not be deleted and decoded again with the same
+     * ids.
+     */
+    private static synchronized void checkNoImageDecodingInParallel(File output) {
+        File file = new File(output, RANGE_ID_FILE);
+        if (file.exists()) {
+            UTF8Properties props = new UTF8Properties();
+            try {
+                props.load(file);
+            } catch (IOException e) {
+                e.printStackTrace();
+                return;
+            }
+            for (String key : props.stringPropertyNames()) {
+                if (key.endsWith(":decodingstartid")) { //$NON-NLS-1$
+                    String image = key.substring(0, key.length() - ":decodingstartid".length()); //$NON-NLS-1$
+                    throw new IPEDException("Image " + image //$NON-NLS-1$
+                            + " was not completely decoded and was decoded in parallel with other images" //$NON-NLS-1$
+                            + ", processing can not be resumed, please use --restart."); //$NON-NLS-1$
+                }
+            }
+        }
+    }
+
+    private static synchronized void saveDecodingStartId(File image, Long start, File output) {
+        File file = new File(output, RANGE_ID_FILE);
+        UTF8Properties props = new UTF8Properties();
+        try {
+            if (file.exists()) {
+                props.load(file);
+            }
+            props.setProperty(image.getCanonicalPath() + ":decodingstartid", start.toString());
+            props.store(file);
+
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static synchronized void saveDecodedRangeId(File image, Long start, Long last, Long dataSourceId,
+            File output) {
         File file = new File(output, RANGE_ID_FILE);
         UTF8Properties props = new UTF8Properties();
         try {
@@ -569,6 +745,10 @@ private static synchronized void saveDecodedRangeId(File image, Long start, Long
             }
             props.setProperty(image.getCanonicalPath() + ":startid", start.toString());
             props.setProperty(image.getCanonicalPath() + ":lastid", last.toString());
+            if (dataSourceId != null) {
+                props.setProperty(image.getCanonicalPath() + ":datasourceid", dataSourceId.toString());
+            }
+            props.remove(image.getCanonicalPath() + ":decodingstartid");
             props.store(file);
 
         } catch (IOException e) {
@@ -584,7 +764,12 @@ private static synchronized Long[] getDecodedRangeId(File image, File output) {
                 props.load(file);
                 String start = props.getProperty(image.getCanonicalPath() + ":startid");
                 String last = props.getProperty(image.getCanonicalPath() + ":lastid");
+                String dataSourceId = props.getProperty(image.getCanonicalPath() + ":datasourceid");
                 if (start != null && last != null) {
+                    if (dataSourceId != null) {
+                        return new Long[] { Long.valueOf(start.trim()), Long.valueOf(last.trim()),
+                                Long.valueOf(dataSourceId.trim()) };
+                    }
                     return new Long[] { Long.valueOf(start.trim()), Long.valueOf(last.trim()) };
                 }
             } catch (Exception e) {
@@ -594,10 +779,11 @@ private static synchronized Long[] getDecodedRangeId(File image, File output) {
         return null;
     }
 
-    private void addImageBlocking(AddImageProcess addImage, File image, int sectorSize)
+    private void addImageBlocking(AddImageProcess addImage, File image, String deviceId, int sectorSize)
             throws TskCoreException, TskDataException {
+        long start = System.currentTimeMillis();
         try {
-           addImage.run(UUID.randomUUID().toString(), new String[] { image.getAbsolutePath() }, sectorSize);
+           addImage.run(deviceId, new String[] { image.getAbsolutePath() }, sectorSize);
 
         } catch (Throwable e) {
             e.printStackTrace();
@@ -623,58 +809,90 @@ private void addImageBlocking(AddImageProcess addImage, File image, int sectorSi
             }
         }
 
-        LOGGER.info("Image decoded: {}", image.getAbsolutePath()); //$NON-NLS-1$
-
         Long lastId = null;
+        Long dataSourceId = null;
         try {
             lastId = sleuthCase.getLastObjectId();
-        } catch (TskCoreException e) {
+            if (parallelDecoding) {
+                dataSourceId = findDataSourceId(deviceId);
+            }
+        } catch (TskCoreException | SQLException e) {
             exception.put(image, e);
         }
 
         // release permit after DB changes and getting last obj ID
         decodeImageSemaphore.release();
 
+        LOGGER.info("Image decoded in {}s: {}", (System.currentTimeMillis() - start) / 1000, //$NON-NLS-1$
+                image.getAbsolutePath());
+
         if (lastId != null) {
-            saveDecodedRangeId(image, firstId, lastId, output);
+            saveDecodedRangeId(image, firstId, lastId, dataSourceId, output);
         }
 
         synchronized (idRangeMap) {
-            Long[] ids = { firstId, lastId };
+            Long[] ids = parallelDecoding ? new Long[] { firstId, lastId, dataSourceId }
+                    : new Long[] { firstId, lastId };
             idRangeMap.put(image, ids);
-            idRangeMap.notify();
+            idRangeMap.notifyAll();
         }
     }
 
-    private void addImageInBackground(AddImageProcess addImage, File image, int sectorSize) {
+    private void addImageInBackground(AddImageProcess addImage, File image, String deviceId, int sectorSize) {
         addImageFuture.put(image, executor.submit(new Callable<Void>() {
             @Override
             public Void call() throws Exception {
-                addImageBlocking(addImage, image, sectorSize);
+                addImageBlocking(addImage, image, deviceId, sectorSize);
                 return null;
             }
         }));
     }
 
+    /**
+     * @return the id of the image added with the device id, or null if it was not
+     *         added to the DB yet
+     */
+    private static Long findDataSourceId(String deviceId) throws TskCoreException, SQLException {
+        CaseDbQuery dbQuery = sleuthCase
+                .executeQuery("SELECT obj_id FROM data_source_info WHERE device_id = '" + deviceId + "'"); //$NON-NLS-1$ //$NON-NLS-2$
+        try {
+            ResultSet rs = dbQuery.getResultSet();
+            return rs.next() ? rs.getLong(1) : null;
+        } finally {
+            dbQuery.close();
+        }
+    }
+
     /**
      * Processa os itens em grupos, conforme vão sendo adicionados ao sqlite pelo
      * loadDb, caso seja utilizado loaddb com patch de concorrência
      */
     private void readItensAdded(File file) throws Exception {
 
+        boolean filterDataSource;
         synchronized (idRangeMap) {
             while ((idRangeMap.get(file)) == null) {
+                if (exception.get(file) != null) {
+                    throw exception.get(file);
+                }
                 idRangeMap.wait();
             }
             firstId = idRangeMap.get(file)[0];
+            filterDataSource = idRangeMap.get(file).length > 2;
         }
 
+        long startTime = System.currentTimeMillis();
+        long lastLogTime = startTime;
         Long endId, startId = firstId;
         do {
             endId = sleuthCase.getLastObjectId();
 
             if (lastId == null) {
-                lastId = idRangeMap.get(file)[1];
+                Long[] ids = idRangeMap.get(file);
+                lastId = ids[1];
+                if (filterDataSource && dataSourceId == null) {
+                    dataSourceId = ids[2];
+                }
                 if (exception.get(file) != null) {
                     throw exception.get(file);
                 }
@@ -683,6 +901,27 @@ private void readItensAdded(File file) throws Exception {
                 endId = lastId;
             }
 
+            if (filterDataSource && dataSourceId == null) {
+                String deviceId = deviceIds.get(file);
+                if (deviceId != null) {
+                    dataSourceId = findDataSourceId(deviceId);
+                }
+                if (dataSourceId == null) {
+                    if (lastId != null) {
+                        // image not added to the DB
+                        break;
+                    }
+                    Thread.sleep(1000);
+                    continue;
+                }
+            }
+
+            if (listOnly && System.currentTimeMillis() - lastLogTime >= PROGRESS_LOG_INTERVAL) {
+                lastLogTime = System.currentTimeMillis();
+                LOGGER.info("Decoding {}: {} items found in {}s", file.getAbsolutePath(), itemCount, //$NON-NLS-1$
+                        (lastLogTime - startTime) / 1000);
+            }
+
             if (startId > endId) {
                 Thread.sleep(1000);
                 continue;
@@ -694,6 +933,12 @@ private void readItensAdded(File file) throws Exception {
             startId = endId + 1;
 
         } while (!endId.equals(lastId));
+
+        if (listOnly) {
+            long millis = Math.max(1, System.currentTimeMillis() - startTime);
+            LOGGER.info("Image listed in {}s: {} items ({} items/s) in {}", millis / 1000, itemCount, //$NON-NLS-1$
+                    itemCount * 1000L / millis, file.getAbsolutePath());
+        }
     }
 
     private void addItems(long start, long last) throws Exception {
@@ -714,18 +959,29 @@ private void addItems(long start, long last) throws Exception {
             if (id < last)
                 where.append(",");
         }
-        where.append(") ORDER BY obj_id;");
+        where.append(")");
+        if (dataSourceId != null) {
+            where.append(" AND data_source_obj_id = ").append(dataSourceId);
+        }
+        where.append(" ORDER BY obj_id;");
 
         List<AbstractFile> absFiles = findFilesWhere(where.toString());
         where = null;
 
         idSet.removeAll(absFiles.stream().map(a -> (int) a.getId()).collect(Collectors.toSet()));
+        if (dataSourceId != null) {
+            idSet.removeAll(getFileIdsFromOtherDataSources(start, last));
+        }
 
         for (int id : idSet) {
             Content content = getContentById(id);
             if (content == null) {
                 continue;
             }
+            if (dataSourceId != null && !(content instanceof OsAccount) && content.getDataSource() != null
+                    && content.getDataSource().getId() != dataSourceId) {
+                continue;
+            }
             addContent(content);
         }
 
@@ -787,6 +1043,24 @@ private void handleTskCoreException(TskCoreException e, long start) throws TskCo
             throw e;
     }
 
+    /**
+     * @return ids of files from other images decoded at the same time
+     */
+    private Set<Integer> getFileIdsFromOtherDataSources(long start, long last) throws TskCoreException, SQLException {
+        Set<Integer> ids = new HashSet<>();
+        CaseDbQuery dbQuery = sleuthCase.executeQuery("SELECT obj_id FROM tsk_files WHERE obj_id BETWEEN " + start //$NON-NLS-1$
+                + " AND " + last + " AND data_source_obj_id <> " + dataSourceId); //$NON-NLS-1$ //$NON-NLS-2$
+        try {
+            ResultSet rs = dbQuery.getResultSet();
+            while (rs.next()) {
+                ids.add(rs.getInt(1));
+            }
+        } finally {
+            dbQuery.close();
+        }
+        return ids;
+    }
+
     private Integer getTskParentId(long id) throws TskCoreException, SQLException {
         Integer parent = tskParentIds.get((int) id);
         if (parent == null)
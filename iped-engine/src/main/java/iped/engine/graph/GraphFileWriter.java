@@ -34,10 +34,15 @@
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.zip.GZIPInputStream;
@@ -60,12 +65,21 @@ public class GraphFileWriter implements Closeable, Flushable {
     private static final String SUFFIX = "iped";
     private static final String ARG_FILE_NAME = GraphImportRunner.ARGS_FILE_NAME + "-" + SUFFIX + ".txt";
 
-    private Map<String, CSVWriter> nodeWriters = new HashMap<>();
-    private Map<String, CSVWriter> relationshipWriters = new HashMap<>();
+    // heap fraction (1/n) used by concurrent node CSV normalizations
+    private static final int NORMALIZE_MEMORY_DIVISOR = 2;
+
+    private Map<String, CSVWriter> nodeWriters = new ConcurrentHashMap<>();
+    private Map<String, CSVWriter> relationshipWriters = new ConcurrentHashMap<>();
 
     private Map<String, String> replaces = new HashMap<>();
+    // replaces are just queued by writers and applied to the map when flushing
+    private ConcurrentLinkedQueue<String[]> pendingReplaces = new ConcurrentLinkedQueue<>();
     private File replaceFile;
 
+    private LongAdder nodeRecords = new LongAdder();
+    private LongAdder relationshipRecords = new LongAdder();
+    private LongAdder writeNanos = new LongAdder();
+
     private File root;
 
     public GraphFileWriter(File root, String defaultEntity) throws Exception {
@@ -157,25 +171,56 @@ private CSVWriter openRelationshipWriter(RelationshipType type) throws IOExcepti
         return writer;
     }
 
-    private synchronized CSVWriter getRelationshipWriter(RelationshipType type) throws IOException {
+    private CSVWriter getRelationshipWriter(RelationshipType type) throws IOException {
         CSVWriter out = relationshipWriters.get(type.name());
         if (out == null) {
-            out = openRelationshipWriter(type);
-            relationshipWriters.put(type.name(), out);
+            synchronized (this) {
+                out = relationshipWriters.get(type.name());
+                if (out == null) {
+                    out = openRelationshipWriter(type);
+                    relationshipWriters.put(type.name(), out);
+                }
+            }
         }
         return out;
     }
 
-    private synchronized CSVWriter getNodeWriter(Label... labels) throws IOException {
+    private CSVWriter getNodeWriter(Label... labels) throws IOException {
         String labelsNames = CSVWriter.join(labels);
         CSVWriter out = nodeWriters.get(labelsNames);
         if (out == null) {
-            out = openNodeWriter(labels);
-            nodeWriters.put(labelsNames, out);
+            synchronized (this) {
+                out = nodeWriters.get(labelsNames);
+                if (out == null) {
+                    out = openNodeWriter(labels);
+                    nodeWriters.put(labelsNames, out);
+                }
+            }
         }
         return out;
     }
 
+    /**
+     * @return number of node records written by this instance
+     */
+    public long getNodeRecords() {
+        return nodeRecords.sum();
+    }
+
+    /**
+     * @return number of relationship records written by this instance
+     */
+    public long getRelationshipRecords() {
+        return relationshipRecords.sum();
+    }
+
+    /**
+     * @return total time spent by all threads formatting and buffering CSV records
+     */
+    public long getWriteMillis() {
+        return writeNanos.sum() / 1000000;
+    }
+
     public void writeArgsFile() throws IOException {
         File file = new File(root, ARG_FILE_NAME);
         file.delete();
@@ -239,8 +284,7 @@ public String writeCreateNode(String uniquePropertyName, Object uniquePropertyVa
         record.put("label", labelsNames);
         record.putAll(properties);
 
-        CSVWriter out = getNodeWriter(label);
-        out.write(record);
+        writeNodeRecord(getNodeWriter(label), record);
         return id;
     }
 
@@ -282,9 +326,17 @@ public void writeRelationship(String uniqueId1, Label label2, String idProperty2
         record.put("type", relationshipType.name());
         record.putAll(properties);
 
-        CSVWriter out = getRelationshipWriter(relationshipType);
-        out.write(record);
+        long start = System.nanoTime();
+        getRelationshipWriter(relationshipType).write(record);
+        relationshipRecords.increment();
+        writeNanos.add(System.nanoTime() - start);
+    }
 
+    private void writeNodeRecord(CSVWriter out, Map<String, Object> record) throws IOException {
+        long start = System.nanoTime();
+        out.write(record);
+        nodeRecords.increment();
+        writeNanos.add(System.nanoTime() - start);
     }
 
     private static String getLastReplace(Map<String, String> replaces, String id) {
@@ -297,10 +349,17 @@ private static String getLastReplace(Map<String, String> replaces, String id) {
 
     public void writeNodeReplace(Label label, String propName, Object propValue, String nodeId) throws IOException {
         String uniqueId1 = uniqueId(label, propName, propValue.toString());
+        if (!uniqueId1.equals(nodeId)) {
+            pendingReplaces.add(new String[] { uniqueId1, nodeId });
+        }
+    }
+
+    private void applyPendingReplaces() {
         synchronized (replaces) {
-            if (!uniqueId1.equals(nodeId)) {
-                String key = getLastReplace(replaces, uniqueId1);
-                String replace = getLastReplace(replaces, nodeId);
+            String[] pending;
+            while ((pending = pendingReplaces.poll()) != null) {
+                String key = getLastReplace(replaces, pending[0]);
+                String replace = getLastReplace(replaces, pending[1]);
                 if (!key.equals(replace)) {
                     replaces.put(key, replace);
                 }
@@ -463,8 +522,7 @@ private void writeNodeId(String id, Label label, Map<String, Object> properties)
         record.put("label", label.name());
         record.putAll(properties);
 
-        CSVWriter out = getNodeWriter(label);
-        out.write(record);
+        writeNodeRecord(getNodeWriter(label), record);
     }
 
     private static String uniqueId(Label label, String uniquePropertyName, String uniquePropertyValue) {
@@ -474,13 +532,41 @@ private static String uniqueId(Label label, String uniquePropertyName, String un
     }
 
     public void normalize() throws IOException {
-        normalize(nodeWriters.values());
-        normalize(relationshipWriters.values());
-    }
-
-    private void normalize(Collection<CSVWriter> writers) throws IOException {
-        for (CSVWriter writer : writers) {
-            writer.normalize(replaces);
+        List<CSVWriter> writers = new ArrayList<>(nodeWriters.values());
+        writers.addAll(relationshipWriters.values());
+        // each CSV is normalized independently, node ones are loaded in memory, so
+        // they are run concurrently just while their estimated memory fits in the
+        // budget, a node CSV bigger than that is normalized alone
+        int budgetMB = (int) Math.max(1, Runtime.getRuntime().maxMemory() / NORMALIZE_MEMORY_DIVISOR >> 20);
+        Semaphore memory = new Semaphore(budgetMB, true);
+        int threads = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            ArrayList<Future<?>> futures = new ArrayList<>();
+            for (CSVWriter writer : writers) {
+                int neededMB = (int) Math.min(budgetMB, writer.getNormalizeMemory() >> 20);
+                futures.add(executor.submit(() -> {
+                    memory.acquire(neededMB);
+                    try {
+                        writer.normalize(replaces);
+                    } finally {
+                        memory.release(neededMB);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> f : futures) {
+                f.get();
+            }
+        } catch (InterruptedException e) {
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        } finally {
+            executor.shutdown();
         }
     }
 
@@ -538,6 +624,7 @@ private synchronized void flush(Collection<? extends Flushable> flushables) thro
     }
 
     private void flushReplaceWriter() throws IOException {
+        applyPendingReplaces();
         synchronized (replaces) {
             try (Writer replaceWriter = new BufferedWriter(
                     new OutputStreamWriter(new FileOutputStream(replaceFile), Charset.forName("UTF-8")))) {
@@ -561,27 +648,65 @@ private static class CSVWriter implements Closeable, Flushable {
         private static final Pattern LINE_BREAK_PATTERN = Pattern.compile("\r|\n");
 
         /**
-         * 5MB buffer size
+         * Chars buffered by each thread before appending them to the file
+         */
+        private static final int BATCH_SIZE = 64 * 1024;
+
+        /**
+         * Recent node records shared by all threads, used to skip duplicates
+         */
+        private static final int PREV_NODE_RECORDS = 10000;
+
+        /**
+         * The recent node records are split by hash in LRU stripes, each with twice
+         * its share of PREV_NODE_RECORDS, so unbalanced stripes rarely evict
+         * records earlier than a single LRU would
          */
-        private static final int MIN_SIZE_TO_FLUSH = 5 * 1024 * 1024;
+        private static final int PREV_NODE_STRIPES = 16;
 
         private Writer out;
-        private StringBuilder sb = new StringBuilder();
         private LinkedHashSet<String> fieldPositions = new LinkedHashSet<>();
         private HashMap<String, String> fieldTypes = new HashMap<>();
+        private volatile FieldsSnapshot fieldsSnapshot;
+
+        // each writing thread buffers its records in its own shard, without
+        // contention, all of them are drained on flush
+        private final List<Shard> shards = new ArrayList<>();
+        private final ThreadLocal<Shard> threadShard = ThreadLocal.withInitial(() -> {
+            Shard shard = new Shard();
+            synchronized (shards) {
+                shards.add(shard);
+            }
+            return shard;
+        });
 
-        private Set<String> prevNodeRecords = Collections
-                .newSetFromMap(new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
-                    /**
-					 * 
-					 */
-					private static final long serialVersionUID = 1L;
+        private static class Shard {
 
-					@Override
-                    protected boolean removeEldestEntry(Entry<String, Boolean> entry) {
-                        return this.size() > 10000;
-                    }
-                });
+            private StringBuilder sb = new StringBuilder();
+        }
+
+        private final List<Set<String>> prevNodeRecords = new ArrayList<>(PREV_NODE_STRIPES);
+
+        /**
+         * @return false if the node record was recently written
+         */
+        private boolean addNodeRecord(String record) {
+            Set<String> stripe = prevNodeRecords.get((record.hashCode() & 0x7fffffff) % PREV_NODE_STRIPES);
+            synchronized (stripe) {
+                return stripe.add(record);
+            }
+        }
+
+        private static class FieldsSnapshot {
+
+            private final String[] fields;
+            private final Set<String> fieldSet;
+
+            private FieldsSnapshot(Set<String> fieldPositions) {
+                this.fields = fieldPositions.toArray(new String[fieldPositions.size()]);
+                this.fieldSet = new HashSet<>(fieldPositions);
+            }
+        }
 
         private String prefix;
         private String name;
@@ -615,26 +740,35 @@ public CSVWriter(File root, String prefix, String name, String suffix) throws IO
             this.name = name;
             this.suffix = suffix;
             this.isNodeWriter = prefix.equals(NODE_CSV_PREFIX);
+            for (int i = 0; isNodeWriter && i < PREV_NODE_STRIPES; i++) {
+                prevNodeRecords.add(Collections.newSetFromMap(new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+                    private static final long serialVersionUID = 1L;
+
+                    @Override
+                    protected boolean removeEldestEntry(Entry<String, Boolean> entry) {
+                        return this.size() > 2 * PREV_NODE_RECORDS / PREV_NODE_STRIPES;
+                    }
+                }));
+            }
             loadFieldData();
         }
 
-        @SuppressWarnings("unchecked")
-        public void write(Map<String, Object> record) throws IOException {
-            String data = null;
-            synchronized (this) {
-                if (sb.length() >= MIN_SIZE_TO_FLUSH) {
-                    data = sb.toString();
-                    sb = new StringBuilder();
-                }
-            }
-            if (data != null) {
-                flush(data, false);
+        private String[] getFields(Set<String> recordFields) {
+            FieldsSnapshot snapshot = fieldsSnapshot;
+            if (snapshot != null && snapshot.fieldSet.containsAll(recordFields)) {
+                return snapshot.fields;
             }
-            String[] fields;
             synchronized (fieldPositions) {
-                fieldPositions.addAll(record.keySet());
-                fields = fieldPositions.toArray(new String[fieldPositions.size()]);
+                fieldPositions.addAll(recordFields);
+                snapshot = new FieldsSnapshot(fieldPositions);
+                fieldsSnapshot = snapshot;
             }
+            return snapshot.fields;
+        }
+
+        @SuppressWarnings("unchecked")
+        public void write(Map<String, Object> record) throws IOException {
+            String[] fields = getFields(record.keySet());
 
             StringBuilder line = new StringBuilder();
             for (int i = 0; i < fields.length; i++) {
@@ -660,11 +794,29 @@ public void write(Map<String, Object> record) throws IOException {
                 }
             }
             line.append("\r\n");
-            synchronized (this) {
-                if (!isNodeWriter || prevNodeRecords.add(line.toString())) {
-                    sb.append(line);
+            if (isNodeWriter && !addNodeRecord(line.toString())) {
+                return;
+            }
+            String data = null;
+            Shard shard = threadShard.get();
+            synchronized (shard) {
+                shard.sb.append(line);
+                if (shard.sb.length() >= BATCH_SIZE) {
+                    data = shard.sb.toString();
+                    shard.sb = new StringBuilder();
                 }
             }
+            if (data != null) {
+                flush(data, false);
+            }
+        }
+
+        /**
+         * @return estimated heap used to normalize this CSV, node ones are loaded
+         *         in memory as java strings, relationship ones are streamed
+         */
+        public long getNormalizeMemory() {
+            return isNodeWriter ? output.length() * 4 : 0;
         }
 
         public void normalize(Map<String, String> replaces) throws IOException {
@@ -781,13 +933,17 @@ private String[] split(String string, String pattern) {
 
         @Override
         public void flush() throws IOException {
-            String data = null;
-            synchronized (this) {
-                data = sb.toString();
-                sb = new StringBuilder();
+            StringBuilder data = new StringBuilder();
+            synchronized (shards) {
+                for (Shard shard : shards) {
+                    synchronized (shard) {
+                        data.append(shard.sb);
+                        shard.sb = new StringBuilder();
+                    }
+                }
             }
             flushFieldData();
-            flush(data, true);
+            flush(data.toString(), true);
         }
 
         private void flush(String data, boolean commit) throws IOException {
@@ -103,6 +103,7 @@ public void run(File neo4jHome, String dbName, boolean highIO) throws IOExceptio
         processBuilder.environment().put("NEO4J_HOME", neo4jHome.getAbsolutePath());
         processBuilder.environment().put("NEO4J_CONF", emptyConf.getParent());
         processBuilder.directory(new File(neo4jHome, GraphTask.CSVS_DIR));
+        long start = System.currentTimeMillis();
         Process process = processBuilder.start();
         try {
             executorService = Executors.newFixedThreadPool(1);
@@ -111,6 +112,7 @@ public void run(File neo4jHome, String dbName, boolean highIO) throws IOExceptio
             if (result != 0) {
                 throw new RuntimeException("Could not import graph database.");
             }
+            LOGGER.info("Graph database import finished in {}ms.", System.currentTimeMillis() - start);
         } catch (InterruptedException e) {
             throw new RuntimeException(e);
         } finally {
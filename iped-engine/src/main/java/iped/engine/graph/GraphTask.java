@@ -148,19 +148,21 @@ public void init(ConfigurationManager configurationManager) throws Exception {
     public static void commit() throws IOException {
         if (graphFileWriter != null) {
             logger.info("Commiting graph CSVs...");
+            long start = System.currentTimeMillis();
             graphFileWriter.flush();
-            logger.info("Commiting graph CSVs finished.");
+            logger.info("Commiting graph CSVs finished in {}ms.", System.currentTimeMillis() - start);
         }
     }
 
     private void finishGraphGeneration() throws IOException {
         UIPropertyListenerProvider.getInstance().firePropertyChange("mensagem", "", "Generating graph database...");
         logger.info("Generating graph database...");
+        long start = System.currentTimeMillis();
         File graphDbHome = new File(output, DB_HOME_DIR);
         File graphCSVs = new File(output, CSVS_PATH);
         GraphGenerator graphGenerator = new GraphGenerator();
         graphGenerator.generate(graphDbHome, graphCSVs);
-        logger.info("Generating graph database finished.");
+        logger.info("Generating graph database finished in {}ms.", System.currentTimeMillis() - start);
     }
 
     @Override
@@ -168,6 +170,10 @@ public void finish() throws Exception {
         if (graphFileWriter != null) {
             UIPropertyListenerProvider.getInstance().firePropertyChange("mensagem", "", "Finishing graph CSVs...");
             logger.info("Finishing graph CSVs...");
+            logger.info("Graph CSVs: {} node and {} relationship records written, {}ms spent by workers writing them.",
+                    graphFileWriter.getNodeRecords(), graphFileWriter.getRelationshipRecords(),
+                    graphFileWriter.getWriteMillis());
+            long start = System.currentTimeMillis();
             List<File> srcCases = (List<File>) caseData.getCaseObject(IPEDReader.REPORTING_CASES);
             // TODO merge multicase nodes, copying nodes from single case reports for now
             if (caseData.isIpedReport() && srcCases != null && srcCases.size() == 1) {
@@ -187,12 +193,13 @@ public void finish() throws Exception {
             } else {
                 graphFileWriter.close();
             }
-            logger.info("Finishing graph CSVs finished.");
+            logger.info("Finishing graph CSVs finished in {}ms.", System.currentTimeMillis() - start);
             finishGraphGeneration();
             UIPropertyListenerProvider.getInstance().firePropertyChange("mensagem", "", "Compressing graph CSVs...");
             logger.info("Compressing graph CSVs...");
+            start = System.currentTimeMillis();
             graphFileWriter.compressGeneratedCSVFiles();
-            logger.info("Compressing graph CSVs finished.");
+            logger.info("Compressing graph CSVs finished in {}ms.", System.currentTimeMillis() - start);
             graphFileWriter = null;
         }
     }
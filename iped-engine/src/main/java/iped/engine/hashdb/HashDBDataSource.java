@@ -31,6 +31,7 @@ public class HashDBDataSource {
     private PreparedStatement stmtSelectMD5;
     private boolean[] presentHashes;
     private final Map<Integer, String> propertyIdToName = new HashMap<Integer, String>();
+    private final HashDBIndex index;
 
     private static final String ledFileLength = "fileLength";
     private static final String ledFileExt = "fileExt";
@@ -45,6 +46,16 @@ public class HashDBDataSource {
     private static final String pedoStatus = "pedo";
 
     public HashDBDataSource(File dbFile) throws Exception {
+        this(dbFile, null);
+    }
+
+    /**
+     * @param index
+     *            compiled index of the database, shared by all data sources,
+     *            used to find hashes without querying the database. May be null.
+     */
+    public HashDBDataSource(File dbFile, HashDBIndex index) throws Exception {
+        this.index = index;
         connect(dbFile);
         prepare();
         loadProperties();
@@ -292,7 +303,7 @@ public synchronized LedHashDB readLedHashDB() throws Exception {
         return ledHashDB;
     }
 
-    public synchronized List<String> lookupSets(String algorithm, String hash) throws Exception {
+    public List<String> lookupSets(String algorithm, String hash) throws Exception {
         int idx = HashDB.hashType(algorithm);
         if (idx < 0)
             return null;
@@ -319,7 +330,33 @@ public synchronized List<String> lookupSets(String algorithm, String hash) throw
         return pedo ? hashSets : null;
     }
 
-    public synchronized void lookup(byte[][] hashes, Map<String, String> properties) throws Exception {
+    public void lookup(byte[][] hashes, Map<String, String> properties) throws Exception {
+        if (index == null) {
+            lookupDB(hashes, properties);
+            return;
+        }
+        int[] hashIds = null;
+        int numIds = 0;
+        NEXT: for (int i = 0; i < hashes.length; i++) {
+            if (hashes[i] != null && presentHashes[i]) {
+                int hashId = index.find(i, hashes[i]);
+                if (hashId < 0)
+                    continue;
+                if (hashIds == null)
+                    hashIds = new int[hashes.length];
+                for (int j = 0; j < numIds; j++) {
+                    if (hashIds[j] == hashId)
+                        continue NEXT;
+                }
+                hashIds[numIds++] = hashId;
+            }
+        }
+        for (int i = 0; i < numIds; i++) {
+            addProperties(hashIds[i], properties);
+        }
+    }
+
+    private synchronized void lookupDB(byte[][] hashes, Map<String, String> properties) throws Exception {
         int mask = 0;
         for (int i = 0; i < hashes.length; i++) {
             if (hashes[i] != null && presentHashes[i]) {
@@ -337,24 +374,27 @@ public synchronized void lookup(byte[][] hashes, Map<String, String> properties)
         }
         ResultSet rs1 = stmtSelect.executeQuery();
         while (rs1.next()) {
-            int hashId = rs1.getInt(1);
-            stmtSelectHashProperties.setInt(1, hashId);
-            ResultSet rs2 = stmtSelectHashProperties.executeQuery();
-            while (rs2.next()) {
-                int propertyId = rs2.getInt(1);
-                String propertyName = propertyIdToName.get(propertyId);
-                if (propertyName != null) {
-                    String propertyValue = rs2.getString(2);
-                    String prev = properties.get(propertyName);
-                    if (prev != null) {
-                        propertyValue = HashDB.mergeProperties(propertyValue, prev);
-                    }
-                    properties.put(propertyName, propertyValue);
+            addProperties(rs1.getInt(1), properties);
+        }
+        rs1.close();
+    }
+
+    private synchronized void addProperties(int hashId, Map<String, String> properties) throws Exception {
+        stmtSelectHashProperties.setInt(1, hashId);
+        ResultSet rs = stmtSelectHashProperties.executeQuery();
+        while (rs.next()) {
+            int propertyId = rs.getInt(1);
+            String propertyName = propertyIdToName.get(propertyId);
+            if (propertyName != null) {
+                String propertyValue = rs.getString(2);
+                String prev = properties.get(propertyName);
+                if (prev != null) {
+                    propertyValue = HashDB.mergeProperties(propertyValue, prev);
                 }
+                properties.put(propertyName, propertyValue);
             }
-            rs2.close();
         }
-        rs1.close();
+        rs.close();
     }
 
     public synchronized void close() {
@@ -0,0 +1,193 @@
+package iped.engine.hashdb;
+
+import static iped.engine.hashdb.HashDB.hashBytesLen;
+import static iped.engine.hashdb.HashDB.hashTypes;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Blocked Bloom filter with the hashes of one type of a hash database, stored
+ * next to the database file. Each key sets K bits inside a single 512 bits
+ * block (a cache line), so a lookup touches one block of the memory mapped
+ * filter. As the keys are already cryptographic hashes, their own bytes are
+ * used to choose the block and the bits, no hashing is needed.
+ *
+ * With BITS_PER_KEY = 12 and K = 8, about 0.5% of the hashes not in the
+ * database are false positives. Like {@link HashDBIndex}, the filter is not
+ * used if the database changed after it was built. It is built from the index,
+ * so the database is read just once.
+ */
+public class HashDBFilter {
+
+    private static final long MAGIC = 0x4950454442464C54L; // IPEDBFLT
+
+    private static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 64;
+
+    private static final int BITS_PER_KEY = 12;
+
+    private static final int K = 8;
+
+    private static final int BLOCK_LONGS = 8;
+
+    private static final int BLOCK_BYTES = BLOCK_LONGS * 8;
+
+    private static final int MAX_BLOCKS = Integer.MAX_VALUE / BLOCK_BYTES;
+
+    private final int hashType;
+    private final long count;
+    private final int numBlocks;
+    private final ByteBuffer blocks;
+
+    private HashDBFilter(int hashType, long count, int numBlocks, ByteBuffer blocks) {
+        this.hashType = hashType;
+        this.count = count;
+        this.numBlocks = numBlocks;
+        this.blocks = blocks;
+    }
+
+    public static File getFilterFile(File dbFile, int hashType) {
+        return new File(dbFile.getPath() + "." + hashTypes[hashType].toLowerCase() + ".bloom");
+    }
+
+    /**
+     * Opens the filters of all hash types of the given database.
+     *
+     * @return array indexed by hash type, with null for types whose filter does
+     *         not exist or is outdated
+     */
+    public static HashDBFilter[] open(File dbFile) throws IOException {
+        HashDBFilter[] filters = new HashDBFilter[hashTypes.length];
+        for (int i = 0; i < hashTypes.length; i++) {
+            filters[i] = open(dbFile, i);
+        }
+        return filters;
+    }
+
+    private static HashDBFilter open(File dbFile, int hashType) throws IOException {
+        File filterFile = getFilterFile(dbFile, hashType);
+        if (!filterFile.isFile()) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(filterFile.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE) {
+                return null;
+            }
+            ByteBuffer header = channel.map(MapMode.READ_ONLY, 0, HEADER_SIZE);
+            if (header.getLong() != MAGIC || header.getInt() != VERSION) {
+                return null;
+            }
+            if (header.getLong() != dbFile.length()
+                    || header.getInt() != HashDBIndex.readChangeCounter(dbFile)) {
+                return null;
+            }
+            long count = header.getLong();
+            int numBlocks = header.getInt();
+            if (numBlocks <= 0 || HEADER_SIZE + (long) numBlocks * BLOCK_BYTES > channel.size()) {
+                return null;
+            }
+            ByteBuffer blocks = channel.map(MapMode.READ_ONLY, HEADER_SIZE, (long) numBlocks * BLOCK_BYTES);
+            return new HashDBFilter(hashType, count, numBlocks, blocks);
+        }
+    }
+
+    public int getHashType() {
+        return hashType;
+    }
+
+    public long size() {
+        return count;
+    }
+
+    /**
+     * Thread safe membership test.
+     *
+     * @return false if the hash is certainly not in the database, true if it
+     *         may be
+     */
+    public boolean mightContain(byte[] hash) {
+        if (hash.length != hashBytesLen[hashType]) {
+            return false;
+        }
+        long h1 = readLong(hash, 0);
+        long h2 = readLong(hash, 8);
+        int off = (int) Long.remainderUnsigned(h1, numBlocks) * BLOCK_BYTES;
+        long step = Long.rotateLeft(h1, 32) | 1;
+        for (int i = 0; i < K; i++) {
+            int bit = (int) ((h2 + i * step) >>> 55);
+            if ((blocks.getLong(off + ((bit >>> 6) << 3)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void set(long[] bits, int numBlocks, byte[] hash) {
+        long h1 = readLong(hash, 0);
+        long h2 = readLong(hash, 8);
+        int off = (int) Long.remainderUnsigned(h1, numBlocks) * BLOCK_LONGS;
+        long step = Long.rotateLeft(h1, 32) | 1;
+        for (int i = 0; i < K; i++) {
+            int bit = (int) ((h2 + i * step) >>> 55);
+            bits[off + (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    private static long readLong(byte[] b, int off) {
+        long v = 0;
+        for (int i = 0; i < 8; i++) {
+            v = (v << 8) | (b[off + i] & 255);
+        }
+        return v;
+    }
+
+    /**
+     * Builds (or rebuilds) the filters of all hash types of the given
+     * database. It must be called after its {@link HashDBIndex} was built.
+     */
+    public static void build(File dbFile) throws IOException {
+        try (HashDBIndex index = HashDBIndex.open(dbFile)) {
+            if (index == null) {
+                throw new IOException("Index of " + dbFile.getAbsolutePath() + " not found or outdated");
+            }
+            for (int i = 0; i < hashTypes.length; i++) {
+                build(dbFile, index, i);
+            }
+        }
+    }
+
+    private static void build(File dbFile, HashDBIndex index, int hashType) throws IOException {
+        File filterFile = getFilterFile(dbFile, hashType);
+        long count = index.size(hashType);
+        // an empty filter is still written, rejecting all hashes of a type not present in the database
+        int numBlocks = (int) Math.max(1, Math.min(MAX_BLOCKS, (count * BITS_PER_KEY + 511) / 512));
+        long[] bits = new long[numBlocks * BLOCK_LONGS];
+        index.forEachHash(hashType, hash -> set(bits, numBlocks, hash));
+
+        File tmp = new File(filterFile.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 1 << 20))) {
+            out.writeLong(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(dbFile.length());
+            out.writeInt(HashDBIndex.readChangeCounter(dbFile));
+            out.writeLong(count);
+            out.writeInt(numBlocks);
+            out.write(new byte[HEADER_SIZE - 36]);
+            for (long v : bits) {
+                out.writeLong(v);
+            }
+        }
+        Files.move(tmp.toPath(), filterFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+}
@@ -0,0 +1,261 @@
+package iped.engine.hashdb;
+
+import static iped.engine.hashdb.HashDB.hashBytesLen;
+import static iped.engine.hashdb.HashDB.hashTypes;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.function.Consumer;
+
+import org.sqlite.SQLiteConfig;
+import org.sqlite.SQLiteConfig.Encoding;
+import org.sqlite.SQLiteConfig.JournalMode;
+import org.sqlite.SQLiteConfig.SynchronousMode;
+
+/**
+ * Compiled, read only, index of a hash database, stored next to the database
+ * file. For each hash type it keeps a sorted array of fixed width entries
+ * (hash bytes followed by its HASH_ID), so lookups are binary searches over
+ * memory mapped data, without any lock, and the database itself is queried
+ * only to read the properties of the hashes that were found.
+ *
+ * The index records the database file length and the SQLite file change
+ * counter when it was built, so an index left outdated by a later change in
+ * the database is not used.
+ */
+public class HashDBIndex implements Closeable {
+
+    private static final String EXTENSION = ".idx";
+
+    private static final long MAGIC = 0x4950454448494458L; // IPEDHIDX
+
+    private static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 4096;
+
+    private static final int MAX_SEGMENT_SIZE = 1 << 30;
+
+    /** Offset of the "file change counter" in the SQLite database header. */
+    static final int SQLITE_CHANGE_COUNTER_OFFSET = 24;
+
+    private final long[] counts = new long[hashTypes.length];
+    private final int[] entriesPerSegment = new int[hashTypes.length];
+    private final ByteBuffer[][] segments = new ByteBuffer[hashTypes.length][];
+
+    private volatile boolean closed = false;
+
+    private HashDBIndex() {
+    }
+
+    public static File getIndexFile(File dbFile) {
+        return new File(dbFile.getPath() + EXTENSION);
+    }
+
+    /**
+     * Opens the index of the given database.
+     *
+     * @return the index, or null if it does not exist or is outdated
+     */
+    public static HashDBIndex open(File dbFile) throws IOException {
+        File indexFile = getIndexFile(dbFile);
+        if (!indexFile.isFile()) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(indexFile.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE) {
+                return null;
+            }
+            ByteBuffer header = channel.map(MapMode.READ_ONLY, 0, HEADER_SIZE);
+            if (header.getLong() != MAGIC || header.getInt() != VERSION) {
+                return null;
+            }
+            if (header.getLong() != dbFile.length() || header.getInt() != readChangeCounter(dbFile)) {
+                return null;
+            }
+            HashDBIndex index = new HashDBIndex();
+            for (int i = 0; i < hashTypes.length; i++) {
+                long count = header.getLong();
+                long offset = header.getLong();
+                int entrySize = hashBytesLen[i] + 4;
+                if (offset + count * entrySize > channel.size()) {
+                    return null;
+                }
+                int perSegment = MAX_SEGMENT_SIZE / entrySize;
+                int numSegments = (int) ((count + perSegment - 1) / perSegment);
+                ByteBuffer[] buffers = new ByteBuffer[numSegments];
+                for (int j = 0; j < numSegments; j++) {
+                    long first = (long) j * perSegment;
+                    long size = Math.min(perSegment, count - first) * entrySize;
+                    buffers[j] = channel.map(MapMode.READ_ONLY, offset + first * entrySize, size);
+                }
+                index.counts[i] = count;
+                index.entriesPerSegment[i] = perSegment;
+                index.segments[i] = buffers;
+            }
+            return index;
+        }
+    }
+
+    public boolean isEmpty(int hashType) {
+        return counts[hashType] == 0;
+    }
+
+    public long size(int hashType) {
+        return counts[hashType];
+    }
+
+    /**
+     * Thread safe lookup of a hash.
+     *
+     * @return the HASH_ID of the hash, or -1 if it is not in the database
+     * @throws IllegalStateException
+     *             if the index was closed
+     */
+    public int find(int hashType, byte[] hash) {
+        checkNotClosed();
+        int width = hashBytesLen[hashType];
+        if (hash.length != width) {
+            return -1;
+        }
+        ByteBuffer[] buffers = segments[hashType];
+        int perSegment = entriesPerSegment[hashType];
+        int entrySize = width + 4;
+        long low = 0;
+        long high = counts[hashType] - 1;
+        while (low <= high) {
+            long mid = (low + high) >>> 1;
+            ByteBuffer buffer = buffers[(int) (mid / perSegment)];
+            int off = (int) (mid % perSegment) * entrySize;
+            int cmp = 0;
+            for (int i = 0; i < width && cmp == 0; i++) {
+                cmp = Integer.compare(buffer.get(off + i) & 255, hash[i] & 255);
+            }
+            if (cmp == 0) {
+                return buffer.getInt(off + width);
+            }
+            if (cmp < 0) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Iterates over the hashes of a type, in ascending order, without querying
+     * the database. The array passed to the consumer is reused between calls.
+     */
+    public void forEachHash(int hashType, Consumer<byte[]> consumer) {
+        checkNotClosed();
+        int width = hashBytesLen[hashType];
+        int entrySize = width + 4;
+        byte[] hash = new byte[width];
+        for (ByteBuffer segment : segments[hashType]) {
+            ByteBuffer buffer = segment.duplicate();
+            while (buffer.remaining() >= entrySize) {
+                buffer.get(hash);
+                buffer.getInt();
+                consumer.accept(hash);
+            }
+        }
+    }
+
+    private void checkNotClosed() {
+        if (closed) {
+            // a closed index must not be taken as a miss
+            throw new IllegalStateException("Hash database index already closed"); //$NON-NLS-1$
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        // mapped buffers are released when garbage collected
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = new ByteBuffer[0];
+            counts[i] = 0;
+        }
+    }
+
+    /**
+     * Builds (or rebuilds) the index of the given database. It must be called
+     * after all changes to the database were committed.
+     */
+    public static void build(File dbFile) throws Exception {
+        File indexFile = getIndexFile(dbFile);
+        File tmp = new File(indexFile.getPath() + ".tmp");
+        long[] counts = new long[hashTypes.length];
+        long[] offsets = new long[hashTypes.length];
+
+        SQLiteConfig config = new SQLiteConfig();
+        config.setEncoding(Encoding.UTF8);
+        config.setSynchronous(SynchronousMode.OFF);
+        config.setJournalMode(JournalMode.OFF);
+        config.setReadOnly(true);
+        try (Connection connection = config.createConnection("jdbc:sqlite:" + dbFile.getAbsolutePath());
+                DataOutputStream out = new DataOutputStream(
+                        new BufferedOutputStream(new FileOutputStream(tmp), 1 << 20))) {
+            out.write(new byte[HEADER_SIZE]);
+            long offset = HEADER_SIZE;
+            for (int i = 0; i < hashTypes.length; i++) {
+                offsets[i] = offset;
+                int width = hashBytesLen[i];
+                try (Statement stmt = connection.createStatement()) {
+                    stmt.setFetchSize(1024);
+                    // blobs are compared with memcmp, so the unique index returns the hashes in
+                    // the same unsigned order used by find()
+                    ResultSet rs = stmt.executeQuery("select " + hashTypes[i] + ", HASH_ID from HASHES where "
+                            + hashTypes[i] + " is not null order by " + hashTypes[i]);
+                    while (rs.next()) {
+                        byte[] hash = rs.getBytes(1);
+                        if (hash == null || hash.length != width) {
+                            continue;
+                        }
+                        out.write(hash);
+                        out.writeInt(rs.getInt(2));
+                        counts[i]++;
+                    }
+                    rs.close();
+                }
+                offset += counts[i] * (width + 4);
+            }
+        }
+
+        try (RandomAccessFile raf = new RandomAccessFile(tmp, "rw")) {
+            raf.writeLong(MAGIC);
+            raf.writeInt(VERSION);
+            raf.writeLong(dbFile.length());
+            raf.writeInt(readChangeCounter(dbFile));
+            for (int i = 0; i < hashTypes.length; i++) {
+                raf.writeLong(counts[i]);
+                raf.writeLong(offsets[i]);
+            }
+        }
+        Files.move(tmp.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    static int readChangeCounter(File dbFile) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(dbFile, "r")) {
+            if (raf.length() < SQLITE_CHANGE_COUNTER_OFFSET + 4) {
+                return -1;
+            }
+            raf.seek(SQLITE_CHANGE_COUNTER_OFFSET);
+            return raf.readInt();
+        }
+    }
+}
@@ -113,7 +113,7 @@ public class HashDBTool {
     private Map<Integer, String> nsrlProdCodeToName;
     private ProcessMode mode = ProcessMode.UNDEFINED;
     private int totIns, totRem, totUpd, totSkip, totComb, totIgn, totNoProd, totInvHash;
-    private boolean dbExists = true, skipOpt, inputFolderUsed;
+    private boolean dbExists = true, skipOpt, skipIndex, indexOnly, inputFolderUsed;
     private String delimiter;
     private final Set<String> skipCols = new HashSet<String>();
     private final Map<String, String> renameCols = new HashMap<String, String>();
@@ -133,6 +133,13 @@ public HashDBTool() {
     public boolean run(String[] args) {
         if (!parseParameters(args))
             return false;
+        if (indexOnly) {
+            if (!output.isFile()) {
+                System.out.println("ERROR: Database file '" + output.getPath() + "' not found.");
+                return false;
+            }
+            return true;
+        }
         if (!checkInputFiles())
             return false;
         if (inputs.isEmpty())
@@ -1854,7 +1861,7 @@ private String endTime(long start) {
 
     void finish(boolean success) {
         try {
-            if (success) {
+            if (success && connection != null) {
                 long t = System.currentTimeMillis();
                 System.out.println("\nCommiting changes...");
                 connection.commit();
@@ -1923,6 +1930,30 @@ void finish(boolean success) {
             }
         } catch (Exception e) {
         }
+        if (success && !skipIndex) {
+            buildIndex();
+        }
+    }
+
+    private void buildIndex() {
+        long t = System.currentTimeMillis();
+        System.out.println("\nBuilding hashes index...");
+        try {
+            HashDBIndex.build(output);
+            System.out.println("Index built in " + endTime(t));
+        } catch (Exception e) {
+            System.out.println("ERROR: Index could not be built, lookups will query the database directly.");
+            e.printStackTrace();
+        }
+        t = System.currentTimeMillis();
+        System.out.println("\nBuilding hashes filters...");
+        try {
+            HashDBFilter.build(output);
+            System.out.println("Filters built in " + endTime(t));
+        } catch (Exception e) {
+            System.out.println("ERROR: Filters could not be built, all lookups will search the index or database.");
+            e.printStackTrace();
+        }
     }
 
     private boolean prepare() {
@@ -2117,12 +2148,16 @@ private boolean parseParameters(String[] args) {
                 mode = ProcessMode.REMOVE_ALL;
             } else if (arg.equalsIgnoreCase("-noOpt")) {
                 skipOpt = true;
+            } else if (arg.equalsIgnoreCase("-noIndex")) {
+                skipIndex = true;
+            } else if (arg.equalsIgnoreCase("-indexOnly")) {
+                indexOnly = true;
             } else {
                 System.out.println("ERROR: unknown parameter '" + arg + "'.");
                 return false;
             }
         }
-        if (inputs.isEmpty()) {
+        if (inputs.isEmpty() && !indexOnly) {
             System.out.println("ERROR: No input file/folder defined (-d <input file or folder>).");
             return false;
         }
@@ -2146,7 +2181,7 @@ private void usage() {
         System.out.println("    imported directly.");
         System.out.println();
         System.out.println("Usage: java -jar iped-hashdb.jar -d <input file or folder> -o <output DB file>");
-        System.out.println("            [-replace | -replaceAll | -remove | -removeAll] [-noOpt]");
+        System.out.println("            [-replace | -replaceAll | -remove | -removeAll] [-noOpt] [-noIndex]");
         System.out.println("            [-delimiter <char>] [-addCol <column name> <fixed value>]");
         System.out.println("            [-renameCol <current name> <new name>] [-skipCol <column name>]");
         System.out.println("            [-mapValue <column name> <current value> <new value>]");
@@ -2181,6 +2216,13 @@ private void usage() {
         System.out.println("  -noOpt");
         System.out.println("    Skip optimizations (reclaim empty space and database analisys) executed");
         System.out.println("    after processing input file(s).");
+        System.out.println("  -noIndex");
+        System.out.println("    Skip building the hashes index file (<output DB file>.idx) and the hashes");
+        System.out.println("    filter files (<output DB file>.<hash type>.bloom), used during processing");
+        System.out.println("    to find hashes, or reject missing ones, without querying the database.");
+        System.out.println("  -indexOnly");
+        System.out.println("    Only (re)build the hashes index and filters of an existing database, no");
+        System.out.println("    input file is needed. Usage: java -jar iped-hashdb.jar -o <DB file> -indexOnly");
         System.out.println("  -delimiter <char>");
         System.out.println("    Specify the column delimiter used in the CSV files to be imported. Default");
         System.out.println("    delimiter is comma (,).");
@@ -0,0 +1,85 @@
+package iped.engine.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+
+/**
+ * Read only channel over a ByteBuffer, like a memory mapped region of a file.
+ * The buffer is duplicated, so many channels can share the same buffer.
+ */
+public class ByteBufferSeekableByteChannel implements SeekableByteChannel {
+
+    private ByteBuffer buffer;
+    private boolean closed = false;
+
+    public ByteBufferSeekableByteChannel(ByteBuffer buffer) {
+        this.buffer = buffer.duplicate();
+        this.buffer.rewind();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return !closed;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        ensureOpen();
+        if (!buffer.hasRemaining()) {
+            return -1;
+        }
+        int len = Math.min(dst.remaining(), buffer.remaining());
+        ByteBuffer src = buffer.slice();
+        src.limit(len);
+        dst.put(src);
+        buffer.position(buffer.position() + len);
+        return len;
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public long position() throws IOException {
+        ensureOpen();
+        return buffer.position();
+    }
+
+    @Override
+    public SeekableByteChannel position(long newPosition) throws IOException {
+        ensureOpen();
+        if (newPosition < 0) {
+            throw new IllegalArgumentException("Negative position " + newPosition); //$NON-NLS-1$
+        }
+        buffer.position((int) Math.min(newPosition, buffer.limit()));
+        return this;
+    }
+
+    @Override
+    public long size() throws IOException {
+        ensureOpen();
+        return buffer.limit();
+    }
+
+    @Override
+    public SeekableByteChannel truncate(long size) throws IOException {
+        throw new NonWritableChannelException();
+    }
+
+    private void ensureOpen() throws ClosedChannelException {
+        if (closed) {
+            throw new ClosedChannelException();
+        }
+    }
+
+}
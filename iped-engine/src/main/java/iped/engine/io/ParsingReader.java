@@ -98,7 +98,7 @@ public class ParsingReader extends Reader {
      */
     private volatile Throwable throwable;
 
-    private FastPipedReader pipedReader;
+    private RingPipedReader pipedReader;
 
     /**
      * Creates a reader for the text content of the given binary stream with the
@@ -144,9 +144,9 @@ public ParsingReader(Parser parser, InputStream stream, Metadata metadata, Parse
         ParsingTaskConfig parsingConfig = ConfigurationManager.get().findObject(ParsingTaskConfig.class);
         timeOutBySize = (int) (length / 1000000) * parsingConfig.getTimeOutPerMB();
 
-        pipedReader = new FastPipedReader(128 * 1024, parsingConfig.getTimeOut(), timeOutBySize);
+        pipedReader = new RingPipedReader(128 * 1024, parsingConfig.getTimeOut(), timeOutBySize);
         this.reader = new BufferedReader(pipedReader);
-        this.writer = new FastPipedWriter(pipedReader);
+        this.writer = new RingPipedWriter(pipedReader);
 
         String timeout = metadata.get(StandardParser.INDEXER_TIMEOUT);
         String mediaType = metadata.get(StandardParser.INDEXER_CONTENT_TYPE);
@@ -0,0 +1,293 @@
+package iped.engine.io;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Single producer, single consumer pipe: a ring buffer where the writer thread
+ * only advances the write position and the reader thread only advances the
+ * read position, so chars are transferred in bulk without any lock. A side
+ * only parks when the ring is empty (reader) or full (writer), and is
+ * unparked by the other side when it makes progress.
+ *
+ * Keeps the timeout behavior of {@link FastPipedReader}: read() throws a
+ * {@link TimeoutException} after waiting for data, while the timeout is not
+ * paused, for minTimeout + timeOutBySize seconds since the last chars read.
+ */
+public class RingPipedReader extends Reader {
+
+    private static Logger LOGGER = LoggerFactory.getLogger(RingPipedReader.class);
+
+    private static final long WAIT_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * Spins before parking, since the other side usually makes progress in a
+     * few microseconds and an unpark costs much more than that. Useless with a
+     * single processor, where the other side can not run while spinning.
+     */
+    private static final int SPINS = Runtime.getRuntime().availableProcessors() > 1 ? 256 : 0;
+
+    private final char[] buffer;
+    private final int mask;
+
+    /**
+     * Write and read positions, 128 bytes apart so each side updates its own
+     * cache line.
+     */
+    private final AtomicLongArray positions = new AtomicLongArray(32);
+    private static final int WRITE_POS = 0;
+    private static final int READ_POS = 16;
+
+    private volatile boolean readerWaiting = false;
+    private volatile boolean writerWaiting = false;
+
+    volatile boolean closedByWriter = false;
+    volatile boolean closedByReader = false;
+    volatile boolean connected = false;
+
+    private volatile Thread readSide;
+    private volatile Thread writeSide;
+
+    private final int timeOutBySize;
+    private final int minTimeout;
+    private volatile boolean timeoutPaused = false;
+    private volatile boolean timedOut = false;
+    private long waitedNanos = 0;
+
+    private final char[] singleChar = new char[1];
+
+    /** Last read position seen by the writer, avoids reading it on every write. */
+    private long cachedReadPos = 0;
+
+    /**
+     * @param pipeSize
+     *            the size of the ring, rounded up to a power of 2
+     * @param minTimeout
+     *            min timeout in seconds
+     * @param timeOutBySize
+     *            timeout in seconds to add to minTimeout
+     */
+    public RingPipedReader(int pipeSize, int minTimeout, int timeOutBySize) {
+        if (pipeSize <= 0) {
+            throw new IllegalArgumentException("Pipe size <= 0"); //$NON-NLS-1$
+        }
+        int capacity = Integer.highestOneBit(pipeSize);
+        if (capacity < pipeSize) {
+            capacity <<= 1;
+        }
+        this.buffer = new char[capacity];
+        this.mask = capacity - 1;
+        this.minTimeout = minTimeout;
+        this.timeOutBySize = timeOutBySize;
+    }
+
+    public boolean setTimeoutPaused(boolean paused) {
+        this.timeoutPaused = paused;
+        return !timedOut;
+    }
+
+    public int getTotalTimeout() {
+        return minTimeout + timeOutBySize;
+    }
+
+    /**
+     * Writes chars into the ring, blocking while it is full. Must be called only
+     * by the writer thread.
+     */
+    void receive(char cbuf[], int off, int len) throws IOException {
+        if (!connected) {
+            throw new IOException("Pipe not connected"); //$NON-NLS-1$
+        } else if (closedByWriter || closedByReader) {
+            throw new IOException("Pipe closed"); //$NON-NLS-1$
+        }
+        // fields shared by both sides are only written when changed, avoiding cache
+        // line invalidations on each call. A dead reader is detected when the ring
+        // gets full.
+        Thread current = Thread.currentThread();
+        if (writeSide != current) {
+            writeSide = current;
+        }
+
+        long w = positions.get(WRITE_POS);
+        int spins = SPINS;
+        while (len > 0) {
+            int free = buffer.length - (int) (w - cachedReadPos);
+            if (free < len) {
+                cachedReadPos = positions.get(READ_POS);
+                free = buffer.length - (int) (w - cachedReadPos);
+            }
+            if (free == 0 && spins-- > 0) {
+                Thread.onSpinWait();
+                continue;
+            }
+            if (free == 0) {
+                if (closedByReader) {
+                    throw new IOException("Pipe closed"); //$NON-NLS-1$
+                }
+                if (readSide != null && !readSide.isAlive()) {
+                    throw new IOException("Pipe broken"); //$NON-NLS-1$
+                }
+                writerWaiting = true;
+                // checks again after publishing the flag, so an unpark is not missed
+                if (w - positions.get(READ_POS) == buffer.length && !closedByReader) {
+                    LockSupport.parkNanos(this, WAIT_NANOS);
+                }
+                writerWaiting = false;
+                if (Thread.interrupted()) {
+                    throw new InterruptedIOException();
+                }
+                spins = SPINS;
+                continue;
+            }
+            int n = Math.min(len, free);
+            int start = (int) w & mask;
+            int first = Math.min(n, buffer.length - start);
+            System.arraycopy(cbuf, off, buffer, start, first);
+            if (first < n) {
+                System.arraycopy(cbuf, off + first, buffer, 0, n - first);
+            }
+            w += n;
+            off += n;
+            len -= n;
+            positions.set(WRITE_POS, w);
+            if (readerWaiting) {
+                LockSupport.unpark(readSide);
+            }
+        }
+    }
+
+    /**
+     * Wakes the reader if it is waiting for chars already in the ring.
+     */
+    void flush() {
+        if (readerWaiting) {
+            LockSupport.unpark(readSide);
+        }
+    }
+
+    /**
+     * Signals that the last char of data was written.
+     */
+    void receivedLast() {
+        closedByWriter = true;
+        Thread reader = readSide;
+        if (reader != null) {
+            LockSupport.unpark(reader);
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        int read = read(singleChar, 0, 1);
+        return read < 0 ? -1 : singleChar[0];
+    }
+
+    /**
+     * Reads the chars available in the ring, up to len, blocking until at least
+     * one is available or the writer closes the pipe. Must be called only by the
+     * reader thread.
+     */
+    @Override
+    public int read(char cbuf[], int off, int len) throws IOException {
+        if (!connected) {
+            throw new IOException("Pipe not connected"); //$NON-NLS-1$
+        } else if (closedByReader) {
+            throw new IOException("Pipe closed"); //$NON-NLS-1$
+        } else if (!closedByWriter && positions.get(WRITE_POS) == positions.get(READ_POS) && writeSide != null
+                && !writeSide.isAlive()) {
+            throw new IOException("Write end dead"); //$NON-NLS-1$
+        }
+        if ((off < 0) || (off > cbuf.length) || (len < 0) || ((off + len) > cbuf.length) || ((off + len) < 0)) {
+            throw new IndexOutOfBoundsException();
+        } else if (len == 0) {
+            return 0;
+        }
+        Thread current = Thread.currentThread();
+        if (readSide != current) {
+            readSide = current;
+        }
+
+        long r = positions.get(READ_POS);
+        long w;
+        int trials = 10;
+        int spins = SPINS;
+        while ((w = positions.get(WRITE_POS)) == r) {
+            if (spins-- > 0 && !closedByWriter) {
+                Thread.onSpinWait();
+                continue;
+            }
+            if (closedByWriter) {
+                // chars may have been written just before closing
+                if (positions.get(WRITE_POS) == r) {
+                    return -1;
+                }
+                continue;
+            }
+            Thread writer = writeSide;
+            if (writer != null && !writer.isAlive() && --trials < 0) {
+                LOGGER.warn("Pipe broken, writer thread {} is dead?", writer.getName()); //$NON-NLS-1$
+                closedByWriter = true;
+                continue;
+            }
+            readerWaiting = true;
+            long t = System.nanoTime();
+            // checks again after publishing the flag, so an unpark is not missed
+            if (positions.get(WRITE_POS) == r && !closedByWriter) {
+                LockSupport.parkNanos(this, WAIT_NANOS);
+            }
+            readerWaiting = false;
+            if (Thread.interrupted()) {
+                throw new InterruptedIOException();
+            }
+            if (!timeoutPaused) {
+                waitedNanos += System.nanoTime() - t;
+                if (waitedNanos >= getTotalTimeout() * WAIT_NANOS) {
+                    timedOut = true;
+                    throw new TimeoutException();
+                }
+            }
+        }
+        if (waitedNanos != 0) {
+            waitedNanos = 0;
+        }
+
+        int n = (int) Math.min(len, w - r);
+        int start = (int) r & mask;
+        int first = Math.min(n, buffer.length - start);
+        System.arraycopy(buffer, start, cbuf, off, first);
+        if (first < n) {
+            System.arraycopy(buffer, 0, cbuf, off + first, n - first);
+        }
+        positions.set(READ_POS, r + n);
+        if (writerWaiting) {
+            LockSupport.unpark(writeSide);
+        }
+        return n;
+    }
+
+    @Override
+    public boolean ready() throws IOException {
+        if (!connected) {
+            throw new IOException("Pipe not connected"); //$NON-NLS-1$
+        } else if (closedByReader) {
+            throw new IOException("Pipe closed"); //$NON-NLS-1$
+        }
+        return positions.get(WRITE_POS) != positions.get(READ_POS);
+    }
+
+    @Override
+    public void close() throws IOException {
+        closedByReader = true;
+        Thread writer = writeSide;
+        if (writer != null) {
+            LockSupport.unpark(writer);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package iped.engine.io;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Write end of a {@link RingPipedReader}. Must be used by a single thread.
+ */
+public class RingPipedWriter extends Writer {
+
+    private RingPipedReader sink;
+
+    private boolean closed = false;
+
+    private final char[] singleChar = new char[1];
+
+    public RingPipedWriter(RingPipedReader snk) throws IOException {
+        connect(snk);
+    }
+
+    public synchronized void connect(RingPipedReader snk) throws IOException {
+        if (snk == null) {
+            throw new NullPointerException();
+        } else if (sink != null || snk.connected) {
+            throw new IOException("Already connected"); //$NON-NLS-1$
+        } else if (snk.closedByReader || closed) {
+            throw new IOException("Pipe closed"); //$NON-NLS-1$
+        }
+        sink = snk;
+        snk.connected = true;
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        if (sink == null) {
+            throw new IOException("Pipe not connected"); //$NON-NLS-1$
+        }
+        singleChar[0] = (char) c;
+        sink.receive(singleChar, 0, 1);
+    }
+
+    @Override
+    public void write(char cbuf[], int off, int len) throws IOException {
+        if (sink == null) {
+            throw new IOException("Pipe not connected"); //$NON-NLS-1$
+        } else if ((off | len | (off + len) | (cbuf.length - (off + len))) < 0) {
+            throw new IndexOutOfBoundsException();
+        }
+        sink.receive(cbuf, off, len);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (sink != null) {
+            if (sink.closedByReader || closed) {
+                throw new IOException("Pipe closed"); //$NON-NLS-1$
+            }
+            sink.flush();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        if (sink != null) {
+            sink.receivedLast();
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package iped.engine.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import iped.io.SeekableInputStream;
+import iped.utils.SeekableFileInputStream;
+import iped.utils.SeekableInputStreamFactory;
+
+/**
+ * Temporary storage for the content of small subitems extracted from
+ * containers, while they wait to be processed. Contents are kept in an off-heap
+ * arena owned by a processing worker. Contents bigger than the limit are not
+ * accepted and should be extracted right away to the case storage, so they are
+ * written just once.
+ *
+ * The arena is divided in pages, each page is reused after all contents stored
+ * into it are released. Contents can be released by any thread.
+ */
+public class SubitemSpool {
+
+    private static Logger LOGGER = LoggerFactory.getLogger(SubitemSpool.class);
+
+    private static final int MIN_PAGE_SIZE = 1 << 20;
+
+    private static final AtomicLong itemsSpooled = new AtomicLong();
+
+    private final int maxItemSize;
+
+    private ByteBuffer arena;
+    private int pageSize;
+    private int[] pageRefs;
+    private ArrayDeque<Integer> freePages = new ArrayDeque<>();
+    private int currentPage = -1;
+    private int pagePos;
+
+    /**
+     * @param memorySize
+     *            size of the off-heap arena
+     * @param maxItemSize
+     *            max size of contents kept in the arena
+     */
+    public SubitemSpool(int memorySize, int maxItemSize) {
+        if (memorySize > 0 && maxItemSize > 0) {
+            pageSize = Math.min(Math.max(maxItemSize, MIN_PAGE_SIZE), memorySize);
+            int numPages = memorySize / pageSize;
+            try {
+                arena = ByteBuffer.allocateDirect(numPages * pageSize);
+            } catch (OutOfMemoryError e) {
+                LOGGER.warn("Could not allocate {} bytes to spool subitems in memory: {}", numPages * pageSize, //$NON-NLS-1$
+                        e.toString());
+            }
+            if (arena != null) {
+                pageRefs = new int[numPages];
+                for (int i = 0; i < numPages; i++) {
+                    freePages.add(i);
+                }
+            }
+        }
+        this.maxItemSize = arena != null ? Math.min(maxItemSize, pageSize) : 0;
+    }
+
+    /**
+     * @return max size of contents accepted by this spool
+     */
+    public int getMaxItemSize() {
+        return maxItemSize;
+    }
+
+    /**
+     * Stores a content in this spool.
+     *
+     * @return the spooled content, which must be closed when it is not needed
+     *         anymore, or null if the content is bigger than the spool limit or
+     *         the arena is full
+     */
+    public SpooledContent spool(byte[] buf, int len) {
+        if (arena == null || len > maxItemSize) {
+            return null;
+        }
+        int page, offset;
+        synchronized (this) {
+            if (currentPage == -1 || pagePos + len > pageSize) {
+                if (currentPage != -1) {
+                    releasePage(currentPage);
+                }
+                Integer next = freePages.poll();
+                if (next == null) {
+                    // arena full, the page is not reused until something is released
+                    currentPage = -1;
+                    return null;
+                }
+                currentPage = next;
+                pageRefs[currentPage] = 1;
+                pagePos = 0;
+            }
+            page = currentPage;
+            offset = page * pageSize + pagePos;
+            pagePos += len;
+            pageRefs[page]++;
+        }
+        ByteBuffer dst = arena.duplicate();
+        dst.position(offset);
+        dst.put(buf, 0, len);
+        dst.position(offset).limit(offset + len);
+        itemsSpooled.incrementAndGet();
+        return new SpooledContent(this, page, dst.slice());
+    }
+
+    private synchronized void releasePage(int page) {
+        if (--pageRefs[page] == 0) {
+            freePages.add(page);
+        }
+    }
+
+    /**
+     * @return number of contents spooled by all workers
+     */
+    public static long getItemsSpooled() {
+        return itemsSpooled.get();
+    }
+
+    /**
+     * Content stored in the spool, also used as the input stream factory of the
+     * item while it is spooled. It is reference counted, each holder must close
+     * it once.
+     */
+    public static class SpooledContent extends SeekableInputStreamFactory implements Closeable {
+
+        public static final String ID = "spooled"; //$NON-NLS-1$
+
+        private final AtomicInteger refs = new AtomicInteger(1);
+
+        private final SubitemSpool spool;
+        private final int page;
+        private final ByteBuffer buffer;
+
+        private SpooledContent(SubitemSpool spool, int page, ByteBuffer buffer) {
+            super(null);
+            this.spool = spool;
+            this.page = page;
+            this.buffer = buffer;
+        }
+
+        public long getLength() {
+            return buffer.limit();
+        }
+
+        /**
+         * Adds a reference to this content, which must be closed by the new holder.
+         */
+        public SpooledContent retain() {
+            refs.incrementAndGet();
+            return this;
+        }
+
+        @Override
+        public SeekableInputStream getSeekableInputStream(String identifier) throws IOException {
+            if (refs.get() <= 0) {
+                throw new IOException("Spooled content already released"); //$NON-NLS-1$
+            }
+            return new SeekableFileInputStream(new ByteBufferSeekableByteChannel(buffer));
+        }
+
+        @Override
+        public void close() {
+            if (refs.decrementAndGet() == 0) {
+                spool.releasePage(page);
+            }
+        }
+    }
+
+}
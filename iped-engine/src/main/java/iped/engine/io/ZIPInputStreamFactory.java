@@ -1,28 +1,42 @@
 package iped.engine.io;
 
-import java.io.ByteArrayOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
 import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
 import java.nio.channels.SeekableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipEntry;
 
+import org.apache.commons.compress.archivers.EntryStreamOffsets;
 import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
 import org.apache.commons.compress.archivers.zip.ZipFile;
 import org.apache.commons.compress.archivers.zip.ZipSplitReadOnlySeekableByteChannel;
@@ -35,10 +49,24 @@
 import iped.utils.SeekableFileInputStream;
 import iped.utils.SeekableInputStreamFactory;
 
+/**
+ * Reads entries of ZIP (and UFDR) files, possibly split in many segments. The
+ * central directory is parsed once by a shared {@link ZipFile}, but STORED and
+ * DEFLATED entries are read through a pool of independent readers over the
+ * segments, so many threads can decompress different entries at the same time
+ * without locking the shared channel. Large STORED entries are memory mapped.
+ */
 public class ZIPInputStreamFactory extends SeekableInputStreamFactory implements Closeable {
 
     private static final int MAX_BYTES_CACHED = 1 << 27;
 
+    // entries up to this size are cached in striped caches, to reduce contention
+    private static final int SMALL_ENTRY_SIZE = 1 << 20;
+
+    private static final int SMALL_BYTES_CACHED = 1 << 25;
+
+    private static final int CACHE_STRIPES = 16;
+
     private static final int MAX_FILES_CACHED = 1 << 9;
 
     private static final int UFDR_BUF_SIZE = 1 << 16;
@@ -47,24 +75,22 @@ public class ZIPInputStreamFactory extends SeekableInputStreamFactory implements
 
     private SeekableByteChannel sbc;
 
-    private int bytesCached = 0;
+    private File[] segments;
 
-    private Map<String, byte[]> bytesCache = new LinkedHashMap<String, byte[]>(128, 0.75f, true);
+    // global offset of each segment, followed by the total size
+    private long[] segmentStarts;
 
-    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private FileChannel[] segmentChannels;
 
-    private void removeEldestBytes() {
-        synchronized (bytesCache) {
-            if (bytesCached > MAX_BYTES_CACHED) {
-                Iterator<byte[]> i = bytesCache.values().iterator();
-                while (bytesCached > MAX_BYTES_CACHED && i.hasNext()) {
-                    byte[] eldest = i.next();
-                    i.remove();
-                    bytesCached -= eldest.length;
-                }
-            }
-        }
-    }
+    private final BytesCache[] smallBytesCaches = new BytesCache[CACHE_STRIPES];
+
+    private final BytesCache largeBytesCache = new BytesCache(MAX_BYTES_CACHED - SMALL_BYTES_CACHED);
+
+    private final ConcurrentLinkedQueue<SegmentsReader> idleReaders = new ConcurrentLinkedQueue<>();
+
+    private final Set<SegmentsReader> readers = ConcurrentHashMap.newKeySet();
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
 
     private Map<String, Path> filesCache = new LinkedHashMap<String, Path>(128, 0.75f, true) {
         private static final long serialVersionUID = 1L;
@@ -85,6 +111,9 @@ protected boolean removeEldestEntry(Map.Entry<String, Path> eldest) {
 
     public ZIPInputStreamFactory(Path dataSource) {
         super(dataSource.toUri());
+        for (int i = 0; i < smallBytesCaches.length; i++) {
+            smallBytesCaches[i] = new BytesCache(SMALL_BYTES_CACHED / CACHE_STRIPES);
+        }
     }
 
     private synchronized void init() throws IOException {
@@ -95,21 +124,30 @@ private synchronized void init() throws IOException {
                 throw new IOException("ZIP file must have extension!");
             }
             String namePrefix = file.getName().substring(0, idx);
-            ArrayList<SeekableByteChannel> channels = new ArrayList<>();
+            ArrayList<File> files = new ArrayList<>();
             int num = 0;
             // search for ufdr parts
             while (true) {
                 File segment = new File(file.getParentFile(), namePrefix + ".z" + String.format("%02d", ++num));
                 if (segment.exists()) {
-                    BufferedRandomAccessFile braf = new BufferedRandomAccessFile(segment, "r", UFDR_BUF_SIZE);
-                    channels.add(new ReadOnlyRAFSeekableByteChannel(braf));
+                    files.add(segment);
                 } else {
                     break;
                 }
             }
             // main ufdr should be the last one
-            BufferedRandomAccessFile braf = new BufferedRandomAccessFile(file, "r", UFDR_BUF_SIZE);
-            channels.add(new ReadOnlyRAFSeekableByteChannel(braf));
+            files.add(file);
+
+            ArrayList<SeekableByteChannel> channels = new ArrayList<>();
+            long[] starts = new long[files.size() + 1];
+            for (int i = 0; i < files.size(); i++) {
+                BufferedRandomAccessFile braf = new BufferedRandomAccessFile(files.get(i), "r", UFDR_BUF_SIZE);
+                channels.add(new ReadOnlyRAFSeekableByteChannel(braf));
+                starts[i + 1] = starts[i] + files.get(i).length();
+            }
+            segments = files.toArray(new File[0]);
+            segmentStarts = starts;
+            segmentChannels = new FileChannel[segments.length];
 
             if (channels.size() == 1) {
                 sbc = channels.get(0);
@@ -146,19 +184,30 @@ public long getEntrySize(String path) {
         return -1;
     }
 
+    private BytesCache getBytesCache(String path, long size) {
+        if (size <= SMALL_ENTRY_SIZE) {
+            return smallBytesCaches[(path.hashCode() & Integer.MAX_VALUE) % CACHE_STRIPES];
+        }
+        return largeBytesCache;
+    }
+
     @SuppressWarnings("resource")
     @Override
     public SeekableInputStream getSeekableInputStream(String path) throws IOException {
-        Path tmp = null;
-        byte[] bytes = null;
-        synchronized (bytesCache) {
-            bytes = bytesCache.get(path);
+        if (zip == null) {
+            init();
+        }
+        ZipArchiveEntry zae = zip.getEntry(path);
+        if (zae == null) {
+            return new SeekableFileInputStream(new SeekableInMemoryByteChannel(new byte[0]));
         }
+        BytesCache bytesCache = getBytesCache(path, zae.getSize());
+        byte[] bytes = bytesCache.get(path);
         if (bytes != null) {
             return new SeekableFileInputStream(new SeekableInMemoryByteChannel(bytes));
         }
         synchronized (filesCache) {
-            tmp = filesCache.get(path);
+            Path tmp = filesCache.get(path);
             if (tmp != null) {
                 try {
                     return new SeekableFileInputStream(tmp.toFile());
@@ -169,51 +218,34 @@ public SeekableInputStream getSeekableInputStream(String path) throws IOExceptio
             }
         }
 
-        ZipArchiveEntry zae;
-        try {
-            if (zip == null) {
-                init();
-            }
-            zae = zip.getEntry(path);
-        } catch (IOException e1) {
-            throw e1;
-        }
-        if (zae == null) {
-            return new SeekableFileInputStream(new SeekableInMemoryByteChannel(new byte[0]));
-        }
         AtomicBoolean canceled = new AtomicBoolean(false);
         // see #1199: call in background to avoid closing the channel if interrupted
-        Future<Pair<Path, byte[]>> future = executor.submit(new Callable<Pair<Path, byte[]>>() {
+        Future<Pair<Path, ByteBuffer>> future = executor.submit(new Callable<Pair<Path, ByteBuffer>>() {
             @Override
-            public Pair<Path, byte[]> call() throws Exception {
+            public Pair<Path, ByteBuffer> call() throws Exception {
                 Path tmp = null;
-                byte[] bytes = null;
                 InputStream is = null;
                 try {
-                    // ZipFile.getInputStream(ze) isn't thread safe as of COMPRESS 1.21 if ZipFile
-                    // 'ignoreLocalFileHeader' constructor flag is enabled. We must synchronize on
-                    // SeekableByteChannel used in constructor (COMPRESS 1.21 specific!), otherwise
-                    // this won't work with splitted archives with COMPRESS 1.21, see COMPRESS-618
-                    synchronized (sbc) {
-                        is = zip.getInputStream(zae);
+                    ByteBuffer mapped = mapStoredEntry(zae);
+                    if (mapped != null) {
+                        return Pair.of(null, mapped);
                     }
-                    if (zae.getSize() <= MAX_BYTES_CACHED) {
-                        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-                        int read;
-                        byte[] buf = new byte[UFDR_BUF_SIZE];
-                        while ((read = is.read(buf, 0, buf.length)) >= 0) {
+                    is = getEntryInputStream(zae);
+                    if (zae.getSize() >= 0 && zae.getSize() <= largeBytesCache.maxBytes) {
+                        byte[] bytes = new byte[(int) zae.getSize()];
+                        int total = 0, read;
+                        while (total < bytes.length
+                                && (read = is.read(bytes, total, Math.min(UFDR_BUF_SIZE, bytes.length - total))) >= 0) {
                             if (canceled.get()) {
                                 return null;
                             }
-                            baos.write(buf, 0, read);
+                            total += read;
                         }
-                        bytes = baos.toByteArray();
-                        baos = null;
-                        synchronized (bytesCache) {
-                            bytesCache.put(path, bytes);
-                            bytesCached += bytes.length;
-                            removeEldestBytes();
+                        if (total < bytes.length) {
+                            bytes = Arrays.copyOf(bytes, total);
                         }
+                        bytesCache.put(path, bytes);
+                        return Pair.of(null, ByteBuffer.wrap(bytes));
                     } else {
                         tmp = Files.createTempFile("zip-stream", null);
                         try (OutputStream out = Files.newOutputStream(tmp)) {
@@ -232,7 +264,7 @@ public Pair<Path, byte[]> call() throws Exception {
                             filesCache.put(path, tmp);
                         }
                     }
-                    return Pair.of(tmp, bytes);
+                    return Pair.of(tmp, null);
 
                 } catch (ClosedChannelException e) {
                     if (zip != null) {
@@ -251,19 +283,126 @@ public Pair<Path, byte[]> call() throws Exception {
             }
 
         });
-        Pair<Path, byte[]> result;
+        Pair<Path, ByteBuffer> result;
         try {
             result = future.get();
         } catch (InterruptedException | ExecutionException e) {
             canceled.set(true);
             throw new IOException(e);
         }
-        bytes = result.getRight();
-        if (bytes != null) {
-            return new SeekableFileInputStream(new SeekableInMemoryByteChannel(bytes));
+        ByteBuffer buffer = result.getRight();
+        if (buffer != null) {
+            return new SeekableFileInputStream(new ByteBufferSeekableByteChannel(buffer));
+        }
+        return new SeekableFileInputStream(result.getLeft().toFile());
+    }
+
+    private static boolean isReadableWithoutZipFile(ZipArchiveEntry zae) {
+        int method = zae.getMethod();
+        return (method == ZipEntry.STORED || method == ZipEntry.DEFLATED)
+                && !zae.getGeneralPurposeBit().usesEncryption() && zae.getSize() >= 0
+                && zae.getCompressedSize() >= 0;
+    }
+
+    /**
+     * @return the global offset of the entry data in the segments
+     */
+    private long getDataOffset(ZipArchiveEntry zae) throws IOException {
+        long offset = zae.getDataOffset();
+        if (offset == EntryStreamOffsets.OFFSET_UNKNOWN) {
+            // local file headers are not read when opening the ZipFile, getting a stream
+            // reads the header of this entry using the shared channel and sets its data
+            // offset, no entry data is read before the stream is used
+            synchronized (sbc) {
+                zip.getInputStream(zae).close();
+            }
+            offset = zae.getDataOffset();
+        }
+        return offset;
+    }
+
+    /**
+     * @return large STORED entries mapped into memory, or null if not possible
+     */
+    private ByteBuffer mapStoredEntry(ZipArchiveEntry zae) throws IOException {
+        long size = zae.getSize();
+        if (zae.getMethod() != ZipEntry.STORED || !isReadableWithoutZipFile(zae) || size <= SMALL_ENTRY_SIZE
+                || size > Integer.MAX_VALUE) {
+            return null;
+        }
+        long offset = getDataOffset(zae);
+        if (offset < 0) {
+            return null;
+        }
+        int segment = getSegment(offset);
+        if (offset + size > segmentStarts[segment + 1]) {
+            // entry split between segments
+            return null;
+        }
+        return getSegmentChannel(segment).map(MapMode.READ_ONLY, offset - segmentStarts[segment], size);
+    }
+
+    private synchronized FileChannel getSegmentChannel(int segment) throws IOException {
+        if (segmentChannels[segment] == null) {
+            segmentChannels[segment] = FileChannel.open(segments[segment].toPath(), StandardOpenOption.READ);
+        }
+        return segmentChannels[segment];
+    }
+
+    private int getSegment(long offset) {
+        int segment = 0;
+        while (segment < segments.length - 1 && offset >= segmentStarts[segment + 1]) {
+            segment++;
+        }
+        return segment;
+    }
+
+    private InputStream getEntryInputStream(ZipArchiveEntry zae) throws IOException {
+        long offset = isReadableWithoutZipFile(zae) ? getDataOffset(zae) : -1;
+        if (offset < 0) {
+            // ZipFile.getInputStream(ze) isn't thread safe as of COMPRESS 1.21 if ZipFile
+            // 'ignoreLocalFileHeader' constructor flag is enabled. We must synchronize on
+            // SeekableByteChannel used in constructor (COMPRESS 1.21 specific!), otherwise
+            // this won't work with splitted archives with COMPRESS 1.21, see COMPRESS-618
+            synchronized (sbc) {
+                return zip.getInputStream(zae);
+            }
+        }
+        InputStream raw = new EntryRawInputStream(borrowReader(), offset, zae.getCompressedSize());
+        if (zae.getMethod() == ZipEntry.STORED) {
+            return raw;
+        }
+        Inflater inflater = new Inflater(true);
+        // an extra dummy byte is needed by Inflater in 'nowrap' mode, like ZipFile does
+        InputStream in = new SequenceInputStream(raw, new ByteArrayInputStream(new byte[1]));
+        return new InflaterInputStream(in, inflater, UFDR_BUF_SIZE) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    inflater.end();
+                }
+            }
+        };
+    }
+
+    private SegmentsReader borrowReader() {
+        SegmentsReader reader = idleReaders.poll();
+        if (reader == null) {
+            reader = new SegmentsReader(segments, segmentStarts);
+            readers.add(reader);
+        }
+        return reader;
+    }
+
+    private void releaseReader(SegmentsReader reader) {
+        if (zip != null) {
+            idleReaders.add(reader);
+        } else {
+            readers.remove(reader);
+            reader.close();
         }
-        tmp = result.getLeft();
-        return new SeekableFileInputStream(tmp.toFile());
     }
 
     @Override
@@ -273,9 +412,25 @@ public void close() throws IOException {
             zip.close();
             zip = null;
         }
-        synchronized (bytesCache) {
+        idleReaders.clear();
+        for (SegmentsReader reader : readers) {
+            reader.close();
+        }
+        readers.clear();
+        synchronized (this) {
+            if (segmentChannels != null) {
+                for (FileChannel channel : segmentChannels) {
+                    if (channel != null) {
+                        channel.close();
+                    }
+                }
+                Arrays.fill(segmentChannels, null);
+            }
+        }
+        for (BytesCache bytesCache : smallBytesCaches) {
             bytesCache.clear();
         }
+        largeBytesCache.clear();
         Path[] paths;
         synchronized (filesCache) {
             paths = filesCache.values().toArray(new Path[0]);
@@ -298,4 +453,149 @@ public void close() throws IOException {
         }
     }
 
+    /**
+     * LRU cache of entry contents limited by the total number of bytes.
+     */
+    private static class BytesCache {
+
+        private final long maxBytes;
+
+        private long bytesCached = 0;
+
+        private final Map<String, byte[]> map = new LinkedHashMap<String, byte[]>(128, 0.75f, true);
+
+        private BytesCache(long maxBytes) {
+            this.maxBytes = maxBytes;
+        }
+
+        private synchronized byte[] get(String path) {
+            return map.get(path);
+        }
+
+        private synchronized void put(String path, byte[] bytes) {
+            byte[] prev = map.put(path, bytes);
+            if (prev != null) {
+                bytesCached -= prev.length;
+            }
+            bytesCached += bytes.length;
+            Iterator<byte[]> i = map.values().iterator();
+            while (bytesCached > maxBytes && i.hasNext()) {
+                byte[] eldest = i.next();
+                i.remove();
+                bytesCached -= eldest.length;
+            }
+        }
+
+        private synchronized void clear() {
+            map.clear();
+            bytesCached = 0;
+        }
+    }
+
+    /**
+     * Reader of the segments used by one thread at a time, files are opened when
+     * first needed.
+     */
+    private static class SegmentsReader implements Closeable {
+
+        private final File[] segments;
+
+        private final long[] segmentStarts;
+
+        private final RandomAccessFile[] files;
+
+        private SegmentsReader(File[] segments, long[] segmentStarts) {
+            this.segments = segments;
+            this.segmentStarts = segmentStarts;
+            this.files = new RandomAccessFile[segments.length];
+        }
+
+        private int read(long offset, byte[] b, int off, int len) throws IOException {
+            int segment = 0;
+            while (segment < segments.length - 1 && offset >= segmentStarts[segment + 1]) {
+                segment++;
+            }
+            len = (int) Math.min(len, segmentStarts[segment + 1] - offset);
+            if (len <= 0) {
+                return -1;
+            }
+            if (files[segment] == null) {
+                files[segment] = new RandomAccessFile(segments[segment], "r");
+            }
+            files[segment].seek(offset - segmentStarts[segment]);
+            return files[segment].read(b, off, len);
+        }
+
+        @Override
+        public void close() {
+            for (int i = 0; i < files.length; i++) {
+                if (files[i] != null) {
+                    try {
+                        files[i].close();
+                    } catch (IOException e) {
+                        // ignore
+                    }
+                    files[i] = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Raw (possibly compressed) data of an entry, read with a borrowed
+     * {@link SegmentsReader} which is given back when this is closed.
+     */
+    private class EntryRawInputStream extends InputStream {
+
+        private SegmentsReader reader;
+
+        private long position;
+
+        private final long end;
+
+        private EntryRawInputStream(SegmentsReader reader, long offset, long length) {
+            this.reader = reader;
+            this.position = offset;
+            this.end = offset + length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == 1 ? b[0] & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (reader == null) {
+                throw new IOException("Stream closed"); //$NON-NLS-1$
+            }
+            if (len == 0) {
+                return 0;
+            }
+            if (position >= end) {
+                return -1;
+            }
+            int read = reader.read(position, b, off, (int) Math.min(len, end - position));
+            if (read <= 0) {
+                return -1;
+            }
+            position += read;
+            return read;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(Integer.MAX_VALUE, end - position);
+        }
+
+        @Override
+        public void close() {
+            if (reader != null) {
+                releaseReader(reader);
+                reader = null;
+            }
+        }
+    }
+
 }
@@ -0,0 +1,237 @@
+package iped.engine.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdDictCompress;
+import com.github.luben.zstd.ZstdDictDecompress;
+
+import iped.io.SeekableInputStream;
+
+/**
+ * Compressed content format where data is split into fixed size chunks, each
+ * one compressed independently with zstd, optionally using a dictionary. A
+ * chunk offset table after the header allows reading any position inflating
+ * just the chunk holding it. Layout (big endian):
+ *
+ * <pre>
+ * int magic, int chunkSize, long length, int dictId (0 if none), int numChunks,
+ * int[numChunks + 1] chunk offsets from the blob start, chunks
+ * </pre>
+ *
+ * Chunks that zstd could not shrink are stored uncompressed, they are detected
+ * because their stored size is equal to their uncompressed size.
+ */
+public class ZstdChunkedContent {
+
+    // "IZC1", can not be confused with the gzip magic 0x1f8b
+    private static final int MAGIC = 0x495A4331;
+
+    private static final int HEADER_SIZE = 24;
+
+    public static boolean isChunked(byte[] blob) {
+        return blob != null && blob.length >= HEADER_SIZE && ByteBuffer.wrap(blob).getInt(0) == MAGIC;
+    }
+
+    public static int getDictId(byte[] blob) {
+        return ByteBuffer.wrap(blob).getInt(16);
+    }
+
+    public static byte[] compress(byte[] buf, int off, int len, int chunkSize, int level) throws IOException {
+        return compress(buf, off, len, chunkSize, level, null, 0);
+    }
+
+    /**
+     * @param dict
+     *            dictionary to compress chunks, null if none
+     * @param dictId
+     *            id stored in the header to find the dictionary when reading
+     */
+    public static byte[] compress(byte[] buf, int off, int len, int chunkSize, int level, ZstdDictCompress dict,
+            int dictId) throws IOException {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Invalid chunk size " + chunkSize); //$NON-NLS-1$
+        }
+        int numChunks = (len + chunkSize - 1) / chunkSize;
+        int dataStart = HEADER_SIZE + 4 * (numChunks + 1);
+        byte[] out = new byte[(int) Math.min(Integer.MAX_VALUE - 8,
+                dataStart + numChunks * Zstd.compressBound(Math.min(len, chunkSize)))];
+        ByteBuffer header = ByteBuffer.wrap(out);
+        header.putInt(MAGIC).putInt(chunkSize).putLong(len).putInt(dict != null ? dictId : 0).putInt(numChunks);
+
+        int pos = dataStart;
+        header.putInt(pos);
+        for (int i = 0; i < numChunks; i++) {
+            int start = off + i * chunkSize;
+            int size = Math.min(chunkSize, off + len - start);
+            long r;
+            if (dict != null) {
+                r = Zstd.compressFastDict(out, pos, buf, start, size, dict);
+            } else {
+                r = Zstd.compressByteArray(out, pos, out.length - pos, buf, start, size, level);
+            }
+            if (Zstd.isError(r)) {
+                throw new IOException("Zstd compression error: " + Zstd.getErrorName(r)); //$NON-NLS-1$
+            }
+            if (r >= size) {
+                System.arraycopy(buf, start, out, pos, size);
+                r = size;
+            }
+            pos += (int) r;
+            header.putInt(pos);
+        }
+        return Arrays.copyOf(out, pos);
+    }
+
+    /**
+     * Stream over a chunked blob, keeping just the last used chunk inflated.
+     */
+    public static class ChunkedInputStream extends SeekableInputStream {
+
+        private final byte[] blob;
+        private final ZstdDictDecompress dict;
+        private final int chunkSize;
+        private final long length;
+        private final int numChunks;
+
+        private byte[] chunk;
+        private int chunkIndex = -1;
+        private int chunkLen;
+        private long pos = 0;
+        private boolean closed = false;
+
+        /**
+         * @param dict
+         *            dictionary with the id returned by {@link #getDictId(byte[])},
+         *            null if that id is 0
+         */
+        public ChunkedInputStream(byte[] blob, ZstdDictDecompress dict) throws IOException {
+            if (!isChunked(blob)) {
+                throw new IOException("Not a chunked zstd content"); //$NON-NLS-1$
+            }
+            ByteBuffer header = ByteBuffer.wrap(blob);
+            this.blob = blob;
+            this.chunkSize = header.getInt(4);
+            this.length = header.getLong(8);
+            this.numChunks = header.getInt(20);
+            if (getDictId(blob) != 0 && dict == null) {
+                throw new IOException("Missing zstd dictionary " + getDictId(blob)); //$NON-NLS-1$
+            }
+            this.dict = dict;
+        }
+
+        private int chunkOffset(int index) {
+            int i = HEADER_SIZE + 4 * index;
+            return ((blob[i] & 0xFF) << 24) | ((blob[i + 1] & 0xFF) << 16) | ((blob[i + 2] & 0xFF) << 8)
+                    | (blob[i + 3] & 0xFF);
+        }
+
+        private void loadChunk(int index) throws IOException {
+            if (index == chunkIndex) {
+                return;
+            }
+            int start = chunkOffset(index);
+            int size = chunkOffset(index + 1) - start;
+            int expected = (int) Math.min(chunkSize, length - (long) index * chunkSize);
+            if (chunk == null) {
+                chunk = new byte[(int) Math.min(chunkSize, length)];
+            }
+            if (size == expected) {
+                System.arraycopy(blob, start, chunk, 0, size);
+            } else {
+                long r;
+                if (dict != null) {
+                    r = Zstd.decompressFastDict(chunk, 0, blob, start, size, dict);
+                } else {
+                    r = Zstd.decompressByteArray(chunk, 0, chunk.length, blob, start, size);
+                }
+                if (Zstd.isError(r) || r != expected) {
+                    chunkIndex = -1;
+                    throw new IOException("Zstd decompression error in chunk " + index + ": " //$NON-NLS-1$ //$NON-NLS-2$
+                            + (Zstd.isError(r) ? Zstd.getErrorName(r) : "unexpected size " + r)); //$NON-NLS-1$
+                }
+            }
+            chunkIndex = index;
+            chunkLen = expected;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            checkIfClosed();
+            if (len == 0) {
+                return 0;
+            }
+            if (pos >= length) {
+                return -1;
+            }
+            int index = (int) (pos / chunkSize);
+            if (index >= numChunks) {
+                return -1;
+            }
+            loadChunk(index);
+            int chunkPos = (int) (pos - (long) index * chunkSize);
+            int n = Math.min(len, chunkLen - chunkPos);
+            System.arraycopy(chunk, chunkPos, b, off, n);
+            pos += n;
+            return n;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            int i = read(b, 0, 1);
+            return i == -1 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            checkIfClosed();
+            long newPos = Math.max(0, Math.min(length, pos + n));
+            long skipped = newPos - pos;
+            pos = newPos;
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            checkIfClosed();
+            return (int) Math.min(length - pos, Integer.MAX_VALUE);
+        }
+
+        @Override
+        public void seek(long pos) throws IOException {
+            checkIfClosed();
+            if (pos < 0) {
+                throw new IOException("Negative position " + pos); //$NON-NLS-1$
+            }
+            this.pos = pos;
+        }
+
+        @Override
+        public long position() throws IOException {
+            checkIfClosed();
+            return pos;
+        }
+
+        @Override
+        public long size() throws IOException {
+            return length;
+        }
+
+        @Override
+        public void close() throws IOException {
+            closed = true;
+            chunk = null;
+        }
+
+        private void checkIfClosed() throws IOException {
+            if (closed) {
+                throw new IOException("Stream is closed"); //$NON-NLS-1$
+            }
+        }
+
+    }
+
+}
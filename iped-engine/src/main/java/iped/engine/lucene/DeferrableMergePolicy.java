@@ -0,0 +1,55 @@
+package iped.engine.lucene;
+
+import java.io.IOException;
+
+import org.apache.lucene.index.FilterMergePolicy;
+import org.apache.lucene.index.MergePolicy;
+import org.apache.lucene.index.MergeTrigger;
+import org.apache.lucene.index.SegmentInfos;
+
+/**
+ * Merge policy that does not select natural merges while deferred, so flushed
+ * segments are only merged after processing, when CPU and disk are no longer
+ * shared with processing tasks. Forced merges are never deferred.
+ */
+public class DeferrableMergePolicy extends FilterMergePolicy {
+
+    private volatile boolean deferred;
+
+    public DeferrableMergePolicy(MergePolicy in, boolean deferred) {
+        super(in);
+        this.deferred = deferred;
+    }
+
+    public boolean isDeferred() {
+        return deferred;
+    }
+
+    /**
+     * Enables or disables deferral. After disabling it,
+     * {@link org.apache.lucene.index.IndexWriter#maybeMerge()} should be called
+     * to start the pending merges.
+     */
+    public void setDeferred(boolean deferred) {
+        this.deferred = deferred;
+    }
+
+    @Override
+    public MergeSpecification findMerges(MergeTrigger mergeTrigger, SegmentInfos segmentInfos,
+            MergeContext mergeContext) throws IOException {
+        if (deferred) {
+            return null;
+        }
+        return super.findMerges(mergeTrigger, segmentInfos, mergeContext);
+    }
+
+    @Override
+    public MergeSpecification findFullFlushMerges(MergeTrigger mergeTrigger, SegmentInfos segmentInfos,
+            MergeContext mergeContext) throws IOException {
+        if (deferred) {
+            return null;
+        }
+        return super.findFullFlushMerges(mergeTrigger, segmentInfos, mergeContext);
+    }
+
+}
@@ -0,0 +1,84 @@
+package iped.engine.lucene;
+
+import java.io.IOException;
+
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.ConstantScoreScorer;
+import org.apache.lucene.search.ConstantScoreWeight;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.QueryVisitor;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.util.BitSetIterator;
+import org.apache.lucene.util.FixedBitSet;
+import org.roaringbitmap.PeekableIntIterator;
+import org.roaringbitmap.RoaringBitmap;
+
+/**
+ * Query matching a fixed set of top level lucene doc ids, like the items of a
+ * search result, to be used as a filter by other queries.
+ */
+public class DocIdSetQuery extends Query {
+
+    private final RoaringBitmap docs;
+
+    public DocIdSetQuery(RoaringBitmap docs) {
+        this.docs = docs;
+    }
+
+    @Override
+    public Weight createWeight(IndexSearcher searcher, ScoreMode scoreMode, float boost) throws IOException {
+        return new ConstantScoreWeight(this, boost) {
+
+            @Override
+            public Scorer scorer(LeafReaderContext context) throws IOException {
+                int docBase = context.docBase;
+                int maxDoc = context.reader().maxDoc();
+                FixedBitSet bits = new FixedBitSet(maxDoc);
+                int cardinality = 0;
+                PeekableIntIterator iterator = docs.getIntIterator();
+                iterator.advanceIfNeeded(docBase);
+                while (iterator.hasNext()) {
+                    int doc = iterator.next() - docBase;
+                    if (doc >= maxDoc) {
+                        break;
+                    }
+                    bits.set(doc);
+                    cardinality++;
+                }
+                if (cardinality == 0) {
+                    return null;
+                }
+                return new ConstantScoreScorer(this, score(), scoreMode, new BitSetIterator(bits, cardinality));
+            }
+
+            @Override
+            public boolean isCacheable(LeafReaderContext ctx) {
+                return false;
+            }
+        };
+    }
+
+    @Override
+    public void visit(QueryVisitor visitor) {
+        visitor.visitLeaf(this);
+    }
+
+    @Override
+    public String toString(String field) {
+        return "DocIdSetQuery(" + docs.getCardinality() + " docs)"; //$NON-NLS-1$ //$NON-NLS-2$
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return sameClassAs(other) && docs.equals(((DocIdSetQuery) other).docs);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * classHash() + docs.hashCode();
+    }
+
+}
@@ -0,0 +1,46 @@
+package iped.engine.lucene;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FilterDirectory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexOutput;
+
+/**
+ * Directory counting the segments flushed by an IndexWriter and their size.
+ * Each flushed segment writes exactly one segment info file, created with a
+ * FLUSH context carrying the estimated segment size.
+ */
+public class FlushCountingDirectory extends FilterDirectory {
+
+    private static final String SEGMENT_INFO_EXT = ".si"; //$NON-NLS-1$
+
+    private final LongAdder flushes = new LongAdder();
+    private final LongAdder flushedBytes = new LongAdder();
+
+    public FlushCountingDirectory(Directory in) {
+        super(in);
+    }
+
+    @Override
+    public IndexOutput createOutput(String name, IOContext context) throws IOException {
+        if (context.context == IOContext.Context.FLUSH && name.endsWith(SEGMENT_INFO_EXT)) {
+            flushes.increment();
+            if (context.flushInfo != null) {
+                flushedBytes.add(context.flushInfo.estimatedSegmentSize);
+            }
+        }
+        return super.createOutput(name, context);
+    }
+
+    public long getFlushCount() {
+        return flushes.sum();
+    }
+
+    public long getFlushedBytes() {
+        return flushedBytes.sum();
+    }
+
+}
@@ -0,0 +1,184 @@
+package iped.engine.lucene;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Properties;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Derives IndexWriter settings from the machine when they are not configured.
+ */
+public class IndexWriterTuning {
+
+    private static Logger LOGGER = LoggerFactory.getLogger(IndexWriterTuning.class);
+
+    /**
+     * Old fixed RAM buffer, kept as lower bound.
+     */
+    private static final int MIN_RAM_BUFFER_MB = 64;
+
+    /**
+     * Each indexing thread fills its own in-memory segment (DWPT) and the
+     * largest one is flushed when all of them together exceed the RAM buffer,
+     * so segments are flushed with about ramBuffer / threads MB.
+     */
+    private static final int RAM_BUFFER_MB_PER_WORKER = 64;
+
+    /**
+     * Lucene does not allow larger per thread buffers.
+     */
+    private static final int MAX_RAM_BUFFER_MB = 1945;
+
+    private static final int PROBE_SIZE_MB = 64;
+
+    /**
+     * Write throughput, in MB/s, handled by each merge thread. Lower throughput
+     * usually means a spinning disk, where concurrent merges just add seeks.
+     */
+    private static final int MB_PER_SEC_PER_MERGE_THREAD = 250;
+
+    private static final int MAX_MERGE_THREADS = 16;
+
+    /**
+     * Measured write throughputs, by probed folder, saved in the case config
+     * folder, so the probe runs just once per case and storage.
+     */
+    public static final String THROUGHPUT_CACHE_FILE = "indexWriteThroughput.txt"; //$NON-NLS-1$
+
+    /**
+     * @param configuredMB
+     *            the configured RAM buffer, 0 to derive it
+     * @param numWorkers
+     *            number of processing threads adding documents
+     * @return the total IndexWriter RAM buffer size in MB
+     */
+    public static int getRAMBufferSizeMB(int configuredMB, int numWorkers) {
+        if (configuredMB > 0) {
+            return configuredMB;
+        }
+        long maxHeapMB = Runtime.getRuntime().maxMemory() / (1024 * 1024);
+        long ramBuffer = Math.min((long) numWorkers * RAM_BUFFER_MB_PER_WORKER, maxHeapMB / 8);
+        return (int) Math.max(MIN_RAM_BUFFER_MB, ramBuffer);
+    }
+
+    /**
+     * @return per indexing thread hard limit, so a single huge document does not
+     *         exhaust the whole RAM buffer
+     */
+    public static int getRAMPerThreadHardLimitMB(int ramBufferMB, int numWorkers) {
+        int perWorker = ramBufferMB / Math.max(1, numWorkers);
+        return Math.min(MAX_RAM_BUFFER_MB, Math.max(4 * perWorker, MIN_RAM_BUFFER_MB * 4));
+    }
+
+    /**
+     * @param configured
+     *            the configured number of merge threads, 0 to derive it
+     * @param writeMBPerSec
+     *            write throughput of the index storage, or a negative value if
+     *            it is unknown
+     * @param ssdHint
+     *            used if the throughput is unknown
+     * @return the max number of concurrent merge threads
+     */
+    public static int getMergeThreads(int configured, double writeMBPerSec, boolean ssdHint) {
+        if (configured > 0) {
+            return configured;
+        }
+        int cpus = Runtime.getRuntime().availableProcessors();
+        int maxThreads = Math.max(1, Math.min(MAX_MERGE_THREADS, cpus / 2));
+        int threads;
+        if (writeMBPerSec >= 0) {
+            threads = (int) Math.round(writeMBPerSec / MB_PER_SEC_PER_MERGE_THREAD);
+        } else {
+            threads = ssdHint ? 4 : 1;
+        }
+        return Math.max(1, Math.min(maxThreads, threads));
+    }
+
+    /**
+     * Returns the write throughput of the folder where the index will be
+     * written, measured by a previous processing of the case or measured now.
+     *
+     * @param indexDir
+     *            where the index will be written, the write throughput is
+     *            measured in its parent folder
+     * @param confDir
+     *            case config folder, where measured throughputs are saved
+     * @return write throughput in MB/s, or -1 if it could not be measured
+     */
+    public static double getWriteThroughput(File indexDir, File confDir) {
+        File probeDir = indexDir.getAbsoluteFile().getParentFile();
+        String key = probeDir.getAbsolutePath();
+        File cacheFile = new File(confDir, THROUGHPUT_CACHE_FILE);
+        Properties cache = new Properties();
+        if (cacheFile.isFile()) {
+            try (InputStream is = new FileInputStream(cacheFile)) {
+                cache.load(is);
+                String value = cache.getProperty(key);
+                if (value != null) {
+                    double mbPerSec = Double.parseDouble(value);
+                    LOGGER.info("Index storage write throughput: {} MB/s (measured before)", (int) mbPerSec); //$NON-NLS-1$
+                    return mbPerSec;
+                }
+            } catch (IOException | NumberFormatException e) {
+                LOGGER.warn("Error reading {}: {}", cacheFile.getAbsolutePath(), e.toString()); //$NON-NLS-1$
+            }
+        }
+        double mbPerSec;
+        try {
+            mbPerSec = measureWriteThroughput(probeDir);
+            LOGGER.info("Index storage write throughput: {} MB/s", (int) mbPerSec); //$NON-NLS-1$
+        } catch (IOException e) {
+            LOGGER.warn("Could not measure index storage write throughput: {}", e.toString()); //$NON-NLS-1$
+            return -1;
+        }
+        cache.setProperty(key, Double.toString(mbPerSec));
+        try (OutputStream os = new FileOutputStream(cacheFile)) {
+            cache.store(os, null);
+        } catch (IOException e) {
+            LOGGER.warn("Error saving {}: {}", cacheFile.getAbsolutePath(), e.toString()); //$NON-NLS-1$
+        }
+        return mbPerSec;
+    }
+
+    /**
+     * Writes and syncs a temp file, so the page cache does not hide the device
+     * speed.
+     *
+     * @return write throughput in MB/s
+     */
+    public static double measureWriteThroughput(File dir) throws IOException {
+        dir.mkdirs();
+        File probe = File.createTempFile("iped-write-probe", ".tmp", dir); //$NON-NLS-1$ //$NON-NLS-2$
+        try (FileChannel channel = FileChannel.open(probe.toPath(), StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20);
+            // non zero data, avoids optimizations of file systems for zeroed blocks
+            while (buffer.hasRemaining()) {
+                buffer.put((byte) buffer.position());
+            }
+            long start = System.nanoTime();
+            for (int i = 0; i < PROBE_SIZE_MB; i++) {
+                buffer.clear();
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+            channel.force(true);
+            long nanos = Math.max(1, System.nanoTime() - start);
+            return PROBE_SIZE_MB / (nanos / 1e9);
+        } finally {
+            Files.deleteIfExists(probe.toPath());
+        }
+    }
+
+}
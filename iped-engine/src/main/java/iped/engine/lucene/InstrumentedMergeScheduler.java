@@ -0,0 +1,77 @@
+package iped.engine.lucene;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.lucene.index.ConcurrentMergeScheduler;
+import org.apache.lucene.index.MergePolicy.OneMerge;
+
+/**
+ * ConcurrentMergeScheduler collecting the number of merges, merged bytes, time
+ * spent merging and time indexing threads were stalled waiting for pending
+ * merges, to be reported at the end of processing.
+ */
+public class InstrumentedMergeScheduler extends ConcurrentMergeScheduler {
+
+    private final LongAdder merges = new LongAdder();
+    private final LongAdder mergedBytes = new LongAdder();
+    private final LongAdder mergeNanos = new LongAdder();
+    private final LongAdder stallNanos = new LongAdder();
+
+    @Override
+    protected void doMerge(MergeSource mergeSource, OneMerge merge) throws IOException {
+        long start = System.nanoTime();
+        try {
+            super.doMerge(mergeSource, merge);
+        } finally {
+            mergeNanos.add(System.nanoTime() - start);
+        }
+        merges.increment();
+        mergedBytes.add(merge.totalBytesSize());
+    }
+
+    @Override
+    protected synchronized boolean maybeStall(MergeSource mergeSource) {
+        long start = System.nanoTime();
+        try {
+            return super.maybeStall(mergeSource);
+        } finally {
+            stallNanos.add(System.nanoTime() - start);
+        }
+    }
+
+    public long getMergeCount() {
+        return merges.sum();
+    }
+
+    public long getMergedBytes() {
+        return mergedBytes.sum();
+    }
+
+    /**
+     * @return time spent merging summed over all merge threads, in nanoseconds
+     */
+    public long getMergeNanos() {
+        return mergeNanos.sum();
+    }
+
+    /**
+     * @return time indexing threads were blocked because merges were falling
+     *         behind, in nanoseconds
+     */
+    public long getStallNanos() {
+        return stallNanos.sum();
+    }
+
+    /**
+     * @return merge throughput per merge thread, in MB/s
+     */
+    public double getMergeMBPerSec() {
+        long nanos = getMergeNanos();
+        if (nanos == 0) {
+            return 0;
+        }
+        return getMergedBytes() / (1024.0 * 1024.0) / (nanos / 1e9);
+    }
+
+}
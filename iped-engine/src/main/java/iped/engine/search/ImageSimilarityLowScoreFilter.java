@@ -1,9 +1,5 @@
 package iped.engine.search;
 
-import java.util.ArrayList;
-import java.util.List;
-
-import iped.data.IItemId;
 import iped.search.IMultiSearchResult;
 
 public class ImageSimilarityLowScoreFilter {
@@ -13,27 +9,24 @@ public static MultiSearchResult filter(IMultiSearchResult result) {
     }
 
     public static MultiSearchResult filter(IMultiSearchResult result, float minScore) {
-        ArrayList<IItemId> filteredItems = new ArrayList<IItemId>();
-        ArrayList<Float> scores = new ArrayList<Float>();
+        MultiSearchResult.Builder filtered = new MultiSearchResult.Builder();
         int len = result.getLength();
-        for (int i = 0; i < len; i++) {
-            float score = result.getScore(i);
-            if (score > minScore) {
-                filteredItems.add(result.getItem(i));
-                scores.add(score);
+        if (result instanceof MultiSearchResult) {
+            MultiSearchResult multiResult = (MultiSearchResult) result;
+            for (int i = 0; i < len; i++) {
+                if (multiResult.getScore(i) > minScore) {
+                    filtered.add(multiResult, i);
+                }
+            }
+        } else {
+            for (int i = 0; i < len; i++) {
+                float score = result.getScore(i);
+                if (score > minScore) {
+                    filtered.add(result.getItem(i), score);
+                }
             }
         }
-        return new MultiSearchResult(filteredItems.toArray(new IItemId[0]), toPrimitive(scores));
+        return filtered.build();
     }
 
-    private static float[] toPrimitive(List<Float> list) {
-        if (list == null) {
-            return null;
-        }
-        final float[] result = new float[list.size()];
-        for (int i = 0; i < result.length; i++) {
-            result[i] = list.get(i).floatValue();
-        }
-        return result;
-    }
 }
@@ -11,12 +11,20 @@
 
 import org.apache.lucene.document.Document;
 import org.apache.lucene.index.BinaryDocValues;
+import org.apache.lucene.index.FieldInfo;
 import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.KnnVectorQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
 import org.apache.lucene.util.BytesRef;
+import org.roaringbitmap.RoaringBitmap;
 
 import iped.data.IItem;
-import iped.data.IItemId;
+import iped.engine.data.IPEDMultiSource;
 import iped.engine.data.IPEDSource;
+import iped.engine.lucene.DocIdSetQuery;
 import iped.engine.lucene.DocValuesUtil;
 import iped.engine.task.similarity.ImageSimilarity;
 import iped.engine.task.similarity.ImageSimilarityTask;
@@ -56,6 +64,17 @@ public class ImageSimilarityScorer {
      */
     private static final float minScore = 1;
 
+    /**
+     * Results with at least this number of images are first restricted to the
+     * (knnHits) images of the result nearest to the reference one found by the knn
+     * vector index (HNSW graph) of the quantized features, then just those are
+     * scored, plus the images of segments indexed without the vectors. Smaller
+     * results are fully scored, as cases indexed without the vectors or when the
+     * knn search finds less than (maxTop) images.
+     */
+    private static final int minResultsToUseKnn = 100000;
+    private static final int knnHits = maxTop << 2;
+
     private float cut = minScore;
 
     private final IPEDSource ipedCase;
@@ -81,6 +100,7 @@ public void score() throws IOException {
             return;
         }
         LeafReader leafReader = ipedCase.getLeafReader();
+        RoaringBitmap candidates = len >= minResultsToUseKnn ? getKnnCandidates() : null;
         int numThreads = Runtime.getRuntime().availableProcessors();
         Thread[] threads = new Thread[numThreads];
         int evalCut = (int) (100 * refSimilarityFeatures.length / distToScoreMult);
@@ -100,8 +120,11 @@ public void run() {
                     int i0 = Math.min(len, itemsPerThread * threadIdx);
                     int i1 = Math.min(len, i0 + itemsPerThread);
                     for (int i = i0; i < i1; i++) {
-                        IItemId itemId = result.getItem(i);
-                        int luceneId = ipedCase.getLuceneId(itemId);
+                        int luceneId = getLuceneId(i);
+                        if (candidates != null && !candidates.contains(luceneId)) {
+                            result.setScore(i, 0);
+                            continue;
+                        }
                         BytesRef bytesRef = DocValuesUtil.getBytesRef(similarityFeaturesValues, luceneId);
                         if (bytesRef == null || bytesRef.length == 0) {
                             result.setScore(i, 0);
@@ -143,6 +166,68 @@ public void run() {
         organizeTopResults();
     }
 
+    private int getLuceneId(int i) {
+        if (ipedCase instanceof IPEDMultiSource) {
+            return ((IPEDMultiSource) ipedCase).getLuceneId(result.getSourceId(i), result.getId(i));
+        }
+        return ipedCase.getLuceneId(result.getId(i));
+    }
+
+    private RoaringBitmap getKnnCandidates() throws IOException {
+        if (refSimilarityFeatures.length != ImageSimilarity.numFeatures) {
+            return null;
+        }
+        IndexSearcher searcher = ipedCase.getSearcher();
+        // segments without the vectors (indexed before appending to the case or with
+        // the vectors disabled) are not seen by the knn search, so their docs are
+        // fully scored
+        RoaringBitmap noVectorDocs = new RoaringBitmap();
+        boolean hasVectors = false;
+        for (LeafReaderContext context : searcher.getIndexReader().leaves()) {
+            FieldInfo info = context.reader().getFieldInfos().fieldInfo(ImageSimilarityTask.IMAGE_FEATURES_KNN);
+            if (info != null && info.getVectorDimension() == ImageSimilarity.vectorDim) {
+                hasVectors = true;
+            } else {
+                noVectorDocs.add((long) context.docBase, (long) context.docBase + context.reader().maxDoc());
+            }
+        }
+        if (!hasVectors) {
+            return null;
+        }
+        // restrict the knn search to the result, it may be filtered by other criteria
+        RoaringBitmap resultDocs = new RoaringBitmap();
+        for (int i = 0; i < len; i++) {
+            resultDocs.add(getLuceneId(i));
+        }
+        RoaringBitmap candidates = getKnnCandidates(searcher, refSimilarityFeatures, knnHits,
+                new DocIdSetQuery(resultDocs));
+        if (candidates.getCardinality() < maxTop) {
+            return null;
+        }
+        noVectorDocs.and(resultDocs);
+        candidates.or(noVectorDocs);
+        return candidates;
+    }
+
+    static RoaringBitmap getKnnCandidates(IndexSearcher searcher, byte[] refFeatures, int k) throws IOException {
+        return getKnnCandidates(searcher, refFeatures, k, null);
+    }
+
+    /**
+     * @param filter
+     *            restricts the docs searched, or null to search all docs
+     */
+    static RoaringBitmap getKnnCandidates(IndexSearcher searcher, byte[] refFeatures, int k, Query filter)
+            throws IOException {
+        KnnVectorQuery query = new KnnVectorQuery(ImageSimilarityTask.IMAGE_FEATURES_KNN,
+                ImageSimilarity.toVector(refFeatures), k, filter);
+        RoaringBitmap candidates = new RoaringBitmap();
+        for (ScoreDoc hit : searcher.search(query, k).scoreDocs) {
+            candidates.add(hit.doc);
+        }
+        return candidates;
+    }
+
     private void organizeTopResults() {
         for (int i = 0; i < len; i++) {
             if (result.getScore(i) > cut) {
@@ -163,8 +248,7 @@ private void organizeTopResults() {
         // put features in a map, BinaryDocValues is not random accessible anymore
         HashMap<Integer, byte[]> idToFeaturesMap = new HashMap<>();
         for (Integer idx : topResults.stream().sorted().collect(Collectors.toList())) {
-            IItemId itemId = result.getItem(idx);
-            int luceneId = ipedCase.getLuceneId(itemId);
+            int luceneId = getLuceneId(idx);
             BytesRef bytesRef = DocValuesUtil.getBytesRef(similarityFeaturesValues, luceneId);
             byte[] currFeatures = bytesRef.bytes.clone();
             idToFeaturesMap.put(idx, currFeatures);
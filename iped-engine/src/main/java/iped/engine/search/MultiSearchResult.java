@@ -1,5 +1,6 @@
 package iped.engine.search;
 
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 
@@ -12,26 +13,52 @@
 import iped.engine.data.ItemId;
 import iped.search.IMultiSearchResult;
 
+/**
+ * Result of a search over one or more cases. Hits are kept in parallel
+ * primitive arrays (source id, item id and score), so results with dozens of
+ * millions of hits do not allocate one {@link IItemId} per hit. IItemId views
+ * are created on demand, except for subclasses carrying extra data (like
+ * timeline events), which are kept as provided. Scores are omitted for results
+ * too large to be scored.
+ */
 public class MultiSearchResult implements IMultiSearchResult {
 
-    private IItemId[] ids;
+    private int[] sourceIds;
+    private int[] ids;
     private float[] scores;
+    // only allocated if some hit is not a plain ItemId, null entries otherwise
+    private IItemId[] itemIds;
     IPEDSearcher ipedSearcher;
     IIPEDSource ipedSource;
     RoaringBitmap docids;
     RoaringBitmap[] casesBitSet = null;
 
     public MultiSearchResult() {
-        this.ids = new ItemId[0];
-        this.scores = new float[0];
+        this(new int[0], new int[0], new float[0]);
     }
 
     public MultiSearchResult(IItemId[] ids, float[] scores) {
-        this.ids = ids;
+        this.sourceIds = new int[ids.length];
+        this.ids = new int[ids.length];
         this.scores = scores;
+        for (int i = 0; i < ids.length; i++) {
+            setItem(i, ids[i]);
+        }
     }
 
     public MultiSearchResult(IIPEDSource ipedSource, IItemId[] ids, float[] scores) {
+        this(ids, scores);
+    }
+
+    /**
+     * @param scores
+     *            may be null if hits were not scored
+     */
+    public MultiSearchResult(int[] sourceIds, int[] ids, float[] scores) {
+        if (sourceIds.length != ids.length || (scores != null && scores.length != ids.length)) {
+            throw new IllegalArgumentException("Arrays of different lengths"); //$NON-NLS-1$
+        }
+        this.sourceIds = sourceIds;
         this.ids = ids;
         this.scores = scores;
     }
@@ -41,19 +68,46 @@ public final int getLength() {
     }
 
     public final IItemId getItem(int i) {
+        if (itemIds != null && itemIds[i] != null) {
+            return itemIds[i];
+        }
+        return new ItemId(sourceIds[i], ids[i]);
+    }
+
+    public final int getSourceId(int i) {
+        return sourceIds[i];
+    }
+
+    public final int getId(int i) {
         return ids[i];
     }
 
     public final float getScore(int i) {
-        return scores[i];
+        return scores != null ? scores[i] : 0;
+    }
+
+    public final boolean hasScores() {
+        return scores != null;
     }
 
     public final void setScore(int i, float score) {
+        if (scores == null) {
+            scores = new float[ids.length];
+        }
         scores[i] = score;
     }
 
     public final void setItem(int i, IItemId itemId) {
-        ids[i] = itemId;
+        sourceIds[i] = itemId.getSourceId();
+        ids[i] = itemId.getId();
+        if (itemId.getClass() != ItemId.class) {
+            if (itemIds == null) {
+                itemIds = new IItemId[ids.length];
+            }
+            itemIds[i] = itemId;
+        } else if (itemIds != null) {
+            itemIds[i] = null;
+        }
     }
 
     public Iterable<IItemId> getIterator() {
@@ -76,7 +130,7 @@ public final boolean hasNext() {
 
         @Override
         public final IItemId next() {
-            return ids[pos++];
+            return getItem(pos++);
         }
 
         @Override
@@ -93,40 +147,114 @@ public void setPos(int pos) {
         }
     }
 
-    public static MultiSearchResult get(IPEDMultiSource iSource, LuceneSearchResult luceneResult) {
+    /**
+     * Accumulates hits of filtered results without allocating one
+     * {@link IItemId} per hit.
+     */
+    public static class Builder {
 
-        // System.out.println("multi Result");
+        private int length = 0;
+        private int[] sourceIds;
+        private int[] ids;
+        private float[] scores;
+        private IItemId[] itemIds;
 
-        MultiSearchResult result = new MultiSearchResult();
-        result.scores = luceneResult.getScores();
-        result.ids = new ItemId[luceneResult.getLength()];
+        public Builder() {
+            this(16);
+        }
 
-        if (luceneResult.getLength() <= IPEDSearcher.MAX_SIZE_TO_SCORE) {
-            int[] docs = luceneResult.getLuceneIds();
-            for (int i = 0; i < docs.length; i++) {
-                result.ids[i] = iSource.getItemId(docs[i]);
+        public Builder(int initialCapacity) {
+            initialCapacity = Math.max(initialCapacity, 1);
+            sourceIds = new int[initialCapacity];
+            ids = new int[initialCapacity];
+            scores = new float[initialCapacity];
+        }
+
+        private void ensureCapacity() {
+            if (length == ids.length) {
+                int newLength = (int) Math.min(Integer.MAX_VALUE - 8, length + (length >> 1) + 1L);
+                sourceIds = Arrays.copyOf(sourceIds, newLength);
+                ids = Arrays.copyOf(ids, newLength);
+                scores = Arrays.copyOf(scores, newLength);
+                if (itemIds != null) {
+                    itemIds = Arrays.copyOf(itemIds, newLength);
+                }
             }
+        }
 
-            // Otimização: considera que itens estão em ordem crescente do LuceneId (qdo não
-            // usa scores)
-        } else {
-            IIPEDSource atomicSource = null;
-            int baseDoc = 0;
-            int sourceId = 0;
-            int maxdoc = 0;
-            int[] docs = luceneResult.getLuceneIds();
-            for (int i = 0; i < docs.length; i++) {
-                if (atomicSource == null || docs[i] >= baseDoc + maxdoc) {
-                    atomicSource = iSource.getAtomicSource(docs[i]);
-                    sourceId = atomicSource.getSourceId();
-                    baseDoc = iSource.getBaseLuceneId(atomicSource);
-                    maxdoc = atomicSource.getReader().maxDoc();
+        public Builder add(int sourceId, int id, float score) {
+            ensureCapacity();
+            sourceIds[length] = sourceId;
+            ids[length] = id;
+            scores[length] = score;
+            length++;
+            return this;
+        }
+
+        public Builder add(IItemId itemId, float score) {
+            ensureCapacity();
+            if (itemId.getClass() != ItemId.class) {
+                if (itemIds == null) {
+                    itemIds = new IItemId[ids.length];
                 }
-                result.ids[i] = new ItemId(sourceId, atomicSource.getId(docs[i] - baseDoc));
+                itemIds[length] = itemId;
             }
+            return add(itemId.getSourceId(), itemId.getId(), score);
         }
 
-        return result;
+        /**
+         * Adds the hit at position i of the result, with its score.
+         */
+        public Builder add(MultiSearchResult result, int i) {
+            if (result.itemIds != null && result.itemIds[i] != null) {
+                return add(result.itemIds[i], result.getScore(i));
+            }
+            return add(result.sourceIds[i], result.ids[i], result.getScore(i));
+        }
+
+        public int getLength() {
+            return length;
+        }
+
+        public MultiSearchResult build() {
+            MultiSearchResult result = new MultiSearchResult(Arrays.copyOf(sourceIds, length),
+                    Arrays.copyOf(ids, length), Arrays.copyOf(scores, length));
+            if (itemIds != null) {
+                result.itemIds = Arrays.copyOf(itemIds, length);
+            }
+            return result;
+        }
+    }
+
+    public static MultiSearchResult get(IPEDMultiSource iSource, LuceneSearchResult luceneResult) {
+
+        int length = luceneResult.getLength();
+        int[] docs = luceneResult.getLuceneIds();
+        int[] sourceIds = new int[length];
+        int[] ids = new int[length];
+
+        // docs are in increasing order when not scored, so the atomic source rarely
+        // changes, otherwise it is looked up again just if the doc is out of its range
+        IIPEDSource atomicSource = null;
+        int baseDoc = 0;
+        int sourceId = 0;
+        int maxdoc = 0;
+        for (int i = 0; i < length; i++) {
+            int doc = docs[i];
+            if (atomicSource == null || doc < baseDoc || doc >= baseDoc + maxdoc) {
+                atomicSource = iSource.getAtomicSource(doc);
+                sourceId = atomicSource.getSourceId();
+                baseDoc = iSource.getBaseLuceneId(atomicSource);
+                maxdoc = atomicSource.getReader().maxDoc();
+            }
+            sourceIds[i] = sourceId;
+            ids[i] = atomicSource.getId(doc - baseDoc);
+        }
+
+        // large results are not scored, see IPEDSearcher
+        float[] scores = length <= IPEDSearcher.MAX_SIZE_TO_SCORE ? luceneResult.getScores() : null;
+
+        return new MultiSearchResult(sourceIds, ids, scores);
     }
 
     public static LuceneSearchResult get(IMultiSearchResult ipedResult, IPEDMultiSource iSource) {
@@ -134,30 +262,38 @@ public static LuceneSearchResult get(IMultiSearchResult ipedResult, IPEDMultiSou
         float[] scores = lResult.getScores();
         int[] docs = lResult.getLuceneIds();
 
-        int i = 0;
-        if (ipedResult.getLength() <= IPEDSearcher.MAX_SIZE_TO_SCORE) {
-            for (IItemId item : ipedResult.getIterator()) {
-                scores[i] = ipedResult.getScore(i);
-                docs[i] = iSource.getLuceneId(item);
-                i++;
-            }
-
-            // Otimização: considera que itens estão em ordem crescente do LuceneId (qdo não
-            // usa scores)
-        } else {
+        if (ipedResult instanceof MultiSearchResult) {
+            MultiSearchResult result = (MultiSearchResult) ipedResult;
             IIPEDSource atomicSource = null;
             int baseDoc = 0;
             int sourceId = 0;
-            for (IItemId item : ipedResult.getIterator()) {
-                if (atomicSource == null || item.getSourceId() != sourceId) {
-                    sourceId = item.getSourceId();
+            for (int i = 0; i < docs.length; i++) {
+                if (atomicSource == null || result.sourceIds[i] != sourceId) {
+                    sourceId = result.sourceIds[i];
                     atomicSource = iSource.getAtomicSourceBySourceId(sourceId);
                     baseDoc = iSource.getBaseLuceneId(atomicSource);
                 }
-                docs[i] = atomicSource.getLuceneId(item.getId()) + baseDoc;
-                scores[i] = ipedResult.getScore(i);
-                i++;
+                docs[i] = atomicSource.getLuceneId(result.ids[i]) + baseDoc;
+            }
+            if (result.scores != null) {
+                System.arraycopy(result.scores, 0, scores, 0, scores.length);
             }
+            return lResult;
+        }
+
+        int i = 0;
+        IIPEDSource atomicSource = null;
+        int baseDoc = 0;
+        int sourceId = 0;
+        for (IItemId item : ipedResult.getIterator()) {
+            if (atomicSource == null || item.getSourceId() != sourceId) {
+                sourceId = item.getSourceId();
+                atomicSource = iSource.getAtomicSourceBySourceId(sourceId);
+                baseDoc = iSource.getBaseLuceneId(atomicSource);
+            }
+            docs[i] = atomicSource.getLuceneId(item.getId()) + baseDoc;
+            scores[i] = ipedResult.getScore(i);
+            i++;
         }
 
         return lResult;
@@ -165,9 +301,11 @@ public static LuceneSearchResult get(IMultiSearchResult ipedResult, IPEDMultiSou
 
     @Override
     public MultiSearchResult clone() {
-        MultiSearchResult result = new MultiSearchResult();
-        result.ids = this.ids.clone();
-        result.scores = this.scores.clone();
+        MultiSearchResult result = new MultiSearchResult(sourceIds.clone(), ids.clone(),
+                scores != null ? scores.clone() : null);
+        if (itemIds != null) {
+            result.itemIds = itemIds.clone();
+        }
         return result;
     }
 
@@ -196,45 +334,53 @@ public void setIPEDSource(IIPEDSource ipedSource) {
         if (this.ipedSource == null || this.docids == null) {
             this.ipedSource = ipedSource;
             this.docids = new RoaringBitmap();
-            for (int i = 0; i < ids.length; i++) {
-                int lucId = ipedSource.getLuceneId(ids[i]);
-                docids.add(lucId);
+            if (ipedSource instanceof IPEDMultiSource) {
+                IPEDMultiSource multiSource = (IPEDMultiSource) ipedSource;
+                for (int i = 0; i < ids.length; i++) {
+                    docids.add(multiSource.getLuceneId(sourceIds[i], ids[i]));
+                }
+            } else {
+                for (int i = 0; i < ids.length; i++) {
+                    docids.add(ipedSource.getLuceneId(getItem(i)));
+                }
             }
         }
     }
 
     public RoaringBitmap[] getCasesBitSets(IPEDMultiSource multiSource) {
         if (casesBitSet == null) {
-            Integer lastSourceId = -1;
-            RoaringBitmap bitset = null;
-            int maxSrcId = 0;
-
             List<IPEDSource> cases = multiSource.getAtomicSources();
-            for (Iterator iterator = cases.iterator(); iterator.hasNext();) {
-                IPEDSource ipedSource = (IPEDSource) iterator.next();
-                if (ipedSource.getSourceId() > maxSrcId) {
-                    maxSrcId = ipedSource.getSourceId();
-                }
+            int[] caseSourceIds = new int[cases.size()];
+            for (int i = 0; i < caseSourceIds.length; i++) {
+                caseSourceIds[i] = cases.get(i).getSourceId();
             }
+            casesBitSet = getCasesBitSets(caseSourceIds);
+        }
+        return clone(casesBitSet);
+    }
 
-            casesBitSet = new RoaringBitmap[maxSrcId + 1];
-
-            for (Iterator iterator = cases.iterator(); iterator.hasNext();) {
-                IPEDSource ipedSource = (IPEDSource) iterator.next();
-                casesBitSet[ipedSource.getSourceId()] = new RoaringBitmap();
-            }
+    RoaringBitmap[] getCasesBitSets(int[] caseSourceIds) {
+        int maxSrcId = 0;
+        for (int sourceId : caseSourceIds) {
+            maxSrcId = Math.max(maxSrcId, sourceId);
+        }
+        RoaringBitmap[] bitsets = new RoaringBitmap[maxSrcId + 1];
+        for (int sourceId : caseSourceIds) {
+            bitsets[sourceId] = new RoaringBitmap();
+        }
 
-            for (int i = 0; i < ids.length; i++) {
-                int sourceId = ids[i].getSourceId();
-                if (sourceId != lastSourceId) {
-                    bitset = casesBitSet[ids[i].getSourceId()];
-                    lastSourceId = sourceId;
-                }
-                bitset.add(ids[i].getId());
+        // ids of each case are added in runs, which is much faster than one by one
+        int start = 0;
+        while (start < ids.length) {
+            int sourceId = sourceIds[start];
+            int end = start + 1;
+            while (end < ids.length && sourceIds[end] == sourceId) {
+                end++;
             }
-
+            bitsets[sourceId].addN(ids, start, end - start);
+            start = end;
         }
-        return clone(casesBitSet);
+        return bitsets;
     }
 
     private RoaringBitmap[] clone(RoaringBitmap[] casesBitSet2) {
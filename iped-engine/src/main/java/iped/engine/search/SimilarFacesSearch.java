@@ -10,12 +10,17 @@
 import java.util.List;
 import java.util.Set;
 
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.FieldInfos;
 import org.apache.lucene.index.LeafReader;
 import org.apache.lucene.index.SortedSetDocValues;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.KnnVectorQuery;
+import org.apache.lucene.search.ScoreDoc;
 import org.apache.lucene.util.BytesRef;
+import org.roaringbitmap.RoaringBitmap;
 
 import iped.data.IItem;
-import iped.data.IItemId;
 import iped.engine.data.IPEDMultiSource;
 import iped.engine.data.IPEDSource;
 
@@ -26,6 +31,12 @@ public class SimilarFacesSearch {
 
     private static final float DEFAULT_MIN_DISTANCE = 0.5f;
 
+    // number of nearest faces first asked to the knn index, grows while all are matches
+    private static final int INITIAL_KNN_HITS = 128;
+
+    // above this, the knn index is not selective and all faces are scored
+    private static final int MAX_KNN_HITS = 1 << 17;
+
     private static float minDistSquared = DEFAULT_MIN_DISTANCE * DEFAULT_MIN_DISTANCE;
     private static int mode = 0; // Mode 0 = OR, Mode 1 = AND
     private static Set<Integer> selectedIdxs;
@@ -33,6 +44,9 @@ public class SimilarFacesSearch {
     private IPEDMultiSource ipedCase;
     private float[][] refSimilarityFeatures;
 
+    private RoaringBitmap knnCandidates;
+    private float knnCandidatesDist = -1;
+
     public SimilarFacesSearch(IPEDSource ipedCase, IItem refImage) {
         this.ipedCase = ipedCase instanceof IPEDMultiSource ? (IPEDMultiSource) ipedCase
                 : new IPEDMultiSource(Collections.singletonList(ipedCase));
@@ -46,6 +60,10 @@ public MultiSearchResult search() throws IOException {
     }
 
     public MultiSearchResult filter(MultiSearchResult result) throws IOException {
+        RoaringBitmap candidates = getKnnCandidates();
+        if (candidates != null) {
+            result = filterCandidates(result, candidates);
+        }
         score(result);
         return ImageSimilarityLowScoreFilter.filter(result, squaredDistToScore(minDistSquared));
     }
@@ -97,8 +115,7 @@ public void run() {
                         if (i % 1000 == 0 && this.isInterrupted()) {
                             return;
                         }
-                        IItemId itemId = result.getItem(i);
-                        int luceneId = ipedCase.getLuceneId(itemId);
+                        int luceneId = ipedCase.getLuceneId(result.getSourceId(i), result.getId(i));
                         long ordinal;
                         float score = 0;
                         Arrays.fill(distsPerFace, minDistSquared + 1);
@@ -177,7 +194,88 @@ public void run() {
 
     }
 
-    private static float[] convToFloatVec(byte[] bytes) {
+    /**
+     * Gets the lucene ids of items with faces possibly closer than the minimum
+     * distance to the reference faces, using the knn vector fields (HNSW graphs)
+     * of the index, so just them need to be scored. Returns null if the index has
+     * no vector fields (old cases) or if too many faces are close to the
+     * reference ones.
+     */
+    private synchronized RoaringBitmap getKnnCandidates() throws IOException {
+        if (refSimilarityFeatures.length == 0) {
+            return null;
+        }
+        if (knnCandidatesDist != minDistSquared) {
+            List<String> fields = getKnnFields(ipedCase.getLeafReader().getFieldInfos(),
+                    refSimilarityFeatures[0].length);
+            knnCandidates = fields.isEmpty() ? null
+                    : getKnnCandidates(ipedCase.getSearcher(), fields, refSimilarityFeatures, minDistSquared);
+            knnCandidatesDist = minDistSquared;
+        }
+        return knnCandidates;
+    }
+
+    private MultiSearchResult filterCandidates(MultiSearchResult result, RoaringBitmap candidates) {
+        MultiSearchResult.Builder filtered = new MultiSearchResult.Builder(candidates.getCardinality());
+        int len = result.getLength();
+        for (int i = 0; i < len; i++) {
+            if (candidates.contains(ipedCase.getLuceneId(result.getSourceId(i), result.getId(i)))) {
+                filtered.add(result, i);
+            }
+        }
+        return filtered.build();
+    }
+
+    /**
+     * KnnVectorField is not multivalued, the i-th face of an item is indexed into
+     * the field FACE_FEATURES + i (just FACE_FEATURES for the first one).
+     */
+    static List<String> getKnnFields(FieldInfos fieldInfos, int dimension) {
+        List<String> fields = new ArrayList<>();
+        for (FieldInfo info : fieldInfos) {
+            if (info.name.startsWith(FACE_FEATURES) && info.getVectorDimension() == dimension) {
+                fields.add(info.name);
+            }
+        }
+        return fields;
+    }
+
+    static RoaringBitmap getKnnCandidates(IndexSearcher searcher, List<String> fields, float[][] refFeatures,
+            float maxSquaredDist) throws IOException {
+        RoaringBitmap candidates = new RoaringBitmap();
+        for (float[] refFeature : refFeatures) {
+            for (String field : fields) {
+                int k = INITIAL_KNN_HITS;
+                ScoreDoc[] hits;
+                // hits are sorted by distance, ask for more while the farthest is a match
+                while ((hits = searcher.search(new KnnVectorQuery(field, refFeature, k), k).scoreDocs).length == k
+                        && knnScoreToSquaredDist(hits[k - 1].score) <= maxSquaredDist) {
+                    if (k >= MAX_KNN_HITS) {
+                        return null;
+                    }
+                    k = Math.min(k * 4, MAX_KNN_HITS);
+                }
+                for (ScoreDoc hit : hits) {
+                    if (knnScoreToSquaredDist(hit.score) > maxSquaredDist) {
+                        break;
+                    }
+                    candidates.add(hit.doc);
+                }
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * Inverse of the EUCLIDEAN similarity used by KnnVectorField, 1 / (1 +
+     * squaredDist).
+     */
+    private static float knnScoreToSquaredDist(float score) {
+        // rounding errors must not exclude faces at the limit, they are scored again
+        return (1 / score - 1) * 0.999f;
+    }
+
+    static float[] convToFloatVec(byte[] bytes) {
         float[] result = new float[bytes.length / 4];
         ByteBuffer bb = ByteBuffer.wrap(bytes);
         for (int i = 0; i < result.length; i++) {
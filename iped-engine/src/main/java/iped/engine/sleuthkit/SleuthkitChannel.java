@@ -0,0 +1,292 @@
+package iped.engine.sleuthkit;
+
+import static iped.engine.sleuthkit.SleuthkitServer.ARG;
+import static iped.engine.sleuthkit.SleuthkitServer.CMD;
+import static iped.engine.sleuthkit.SleuthkitServer.DATA;
+import static iped.engine.sleuthkit.SleuthkitServer.NUM_SLOTS;
+import static iped.engine.sleuthkit.SleuthkitServer.PING_MIN;
+import static iped.engine.sleuthkit.SleuthkitServer.SLEUTH_ID;
+import static iped.engine.sleuthkit.SleuthkitServer.SLOT_SIZE;
+import static iped.engine.sleuthkit.SleuthkitServer.STREAM_ID;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import iped.engine.sleuthkit.SleuthkitServer.FLAGS;
+
+/**
+ * Client side of the shared memory protocol with one SleuthkitServer process.
+ * Each request uses a free slot of the shared memory, so requests of different
+ * threads are served concurrently. The process pipes are used as doorbells
+ * carrying the slot number. A thread waiting for a response spins for a while,
+ * then parks until the pipe reader thread wakes it up.
+ */
+class SleuthkitChannel {
+
+    private static Logger logger = LoggerFactory.getLogger(SleuthkitChannel.class);
+
+    private static final int SPINS = Runtime.getRuntime().availableProcessors() > 1 ? 1 << 12 : 0;
+
+    private static final long WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private static final int PING_TIMEOUT_SECONDS = 60;
+
+    private final int serverId;
+    private final MappedByteBuffer mbb;
+    private final InputStream is;
+    private final OutputStream os;
+
+    private final BlockingQueue<Integer> freeSlots = new ArrayBlockingQueue<>(NUM_SLOTS);
+    private final AtomicReferenceArray<Thread> waiters = new AtomicReferenceArray<>(NUM_SLOTS);
+    private final AtomicLongArray requestTimes = new AtomicLongArray(NUM_SLOTS);
+    private final BlockingQueue<Integer> pings = new ArrayBlockingQueue<>(1);
+
+    private volatile boolean closed = false;
+
+    /**
+     * @param is
+     *            server output, the startup notification must be already consumed
+     * @param os
+     *            server input
+     */
+    SleuthkitChannel(int serverId, MappedByteBuffer mbb, InputStream is, OutputStream os) {
+        this.serverId = serverId;
+        this.mbb = mbb;
+        this.is = is;
+        this.os = os;
+        for (int i = 0; i < NUM_SLOTS; i++) {
+            freeSlots.add(i);
+        }
+        Thread reader = new Thread("SleuthkitServer " + serverId + " pipe reader") { //$NON-NLS-1$ //$NON-NLS-2$
+            @Override
+            public void run() {
+                readPipe();
+            }
+        };
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    private void readPipe() {
+        try {
+            int b;
+            while ((b = is.read()) != -1) {
+                if (b >= PING_MIN) {
+                    pings.offer(b);
+                } else if (b < NUM_SLOTS) {
+                    Thread waiter = waiters.get(b);
+                    if (waiter != null) {
+                        LockSupport.unpark(waiter);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            if (!closed) {
+                logger.warn("Error reading SleuthkitServer {} pipe: {}", serverId, e.toString()); //$NON-NLS-1$
+            }
+        }
+        close();
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Stops using this channel, threads waiting responses get an IOException.
+     */
+    void close() {
+        synchronized (this) {
+            closed = true;
+        }
+        for (int i = 0; i < NUM_SLOTS; i++) {
+            Thread waiter = waiters.get(i);
+            if (waiter != null) {
+                LockSupport.unpark(waiter);
+            }
+        }
+    }
+
+    boolean ping() {
+        int i = PING_MIN + (int) (Math.random() * (256 - PING_MIN));
+        synchronized (pings) {
+            try {
+                pings.clear();
+                synchronized (os) {
+                    os.write(i);
+                    os.flush();
+                }
+                Integer r = pings.poll(PING_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                return r != null && r == i;
+
+            } catch (IOException e) {
+                e.printStackTrace();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return false;
+        }
+    }
+
+    int acquireSlot() throws IOException {
+        try {
+            Integer slot;
+            while ((slot = freeSlots.poll(1, TimeUnit.SECONDS)) == null) {
+                if (closed) {
+                    throw new IOException(getClosedMsg());
+                }
+            }
+            return slot;
+
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException(e.toString());
+        }
+    }
+
+    void releaseSlot(int slot) {
+        freeSlots.add(slot);
+    }
+
+    /**
+     * Sends a command in the slot and waits the server response.
+     *
+     * @return the server response flag
+     */
+    byte execute(int slot, byte cmd, int sleuthId, long streamId, long arg) throws IOException {
+        int base = slot * SLOT_SIZE;
+        waiters.set(slot, Thread.currentThread());
+        try {
+            synchronized (this) {
+                // after closed, the file may be already mapped by a new server process
+                if (closed) {
+                    throw new IOException(getClosedMsg());
+                }
+                mbb.putInt(base + SLEUTH_ID, sleuthId);
+                mbb.putLong(base + STREAM_ID, streamId);
+                mbb.putLong(base + ARG, arg);
+                SleuthkitServer.commitByte(mbb, base + CMD, cmd);
+                requestTimes.set(slot, System.currentTimeMillis() / 1000);
+                try {
+                    SleuthkitServer.notify(os, slot);
+                } catch (IOException e) {
+                    close();
+                    throw e;
+                }
+            }
+            return waitResponse(base);
+
+        } finally {
+            requestTimes.set(slot, 0);
+            waiters.set(slot, null);
+        }
+    }
+
+    private byte waitResponse(int base) throws IOException {
+        boolean interrupted = false;
+        int spins = SPINS;
+        try {
+            while (true) {
+                byte state = SleuthkitServer.getByte(mbb, base + CMD);
+                if (!FLAGS.isClientCmd(state) && state != FLAGS.SQLITE_READ) {
+                    return state;
+                }
+                if (closed) {
+                    throw new IOException(getClosedMsg());
+                }
+                if (spins-- > 0) {
+                    Thread.onSpinWait();
+                    continue;
+                }
+                // the slot is not released before the response, so interruptions are delayed
+                LockSupport.parkNanos(this, WAIT_NANOS);
+                interrupted |= Thread.interrupted();
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    long getLongResult(int slot) throws IOException {
+        long result = mbb.getLong(slot * SLOT_SIZE + ARG);
+        checkNotClosed();
+        return result;
+    }
+
+    /**
+     * Copies the data of a read response to a new array.
+     */
+    byte[] getData(int slot) throws IOException {
+        int base = slot * SLOT_SIZE;
+        int len = (int) mbb.getLong(base + ARG);
+        byte[] data = new byte[len];
+        // duplicate has its own position, slots are read concurrently
+        ByteBuffer bb = mbb.duplicate();
+        bb.position(base + DATA);
+        bb.get(data);
+        checkNotClosed();
+        return data;
+    }
+
+    String getExceptionMsg(int slot) throws IOException {
+        try {
+            return new String(getData(slot), "UTF-8"); //$NON-NLS-1$
+        } catch (UnsupportedEncodingException e) {
+            return e.toString();
+        }
+    }
+
+    /**
+     * @return true if some request is taking more than timeoutSeconds, not
+     *         counting the time waiting the server database
+     */
+    boolean isTimedOut(long timeoutSeconds) {
+        long now = System.currentTimeMillis() / 1000;
+        for (int i = 0; i < NUM_SLOTS; i++) {
+            long requestTime = requestTimes.get(i);
+            if (requestTime == 0) {
+                continue;
+            }
+            byte state = SleuthkitServer.getByte(mbb, i * SLOT_SIZE + CMD);
+            if (FLAGS.isClientCmd(state)) {
+                logger.info("Waiting SleuthkitServer {} database read...", serverId); //$NON-NLS-1$
+                continue;
+            }
+            if (state != FLAGS.SQLITE_READ) {
+                // just answered
+                continue;
+            }
+            if (now - requestTime >= timeoutSeconds) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void checkNotClosed() throws IOException {
+        // a new server process could have written into the slot
+        if (closed) {
+            throw new IOException(getClosedMsg());
+        }
+    }
+
+    private String getClosedMsg() {
+        return "SleuthkitServer " + serverId + " pipe closed!"; //$NON-NLS-1$ //$NON-NLS-2$
+    }
+
+}
@@ -73,13 +73,13 @@ public class SleuthkitClient implements Comparable<SleuthkitClient> {
     File pipe;
     MappedByteBuffer mbb;
     OutputStream os;
+    volatile SleuthkitChannel channel;
     Random rand = new Random();
 
     private boolean serverError = false;
     private int openedStreams = 0;
     private Set<SleuthkitClientInputStream> currentStreams = new HashSet<>();
     private int priority = 0;
-    private long requestTime = 0;
 
     static class TimeoutMonitor extends Thread {
         public void run() {
@@ -96,7 +96,7 @@ public void run() {
     }
 
     synchronized boolean isServerError() {
-        return serverError;
+        return serverError || channel == null || channel.isClosed();
     }
 
     synchronized void setServerError(boolean error) {
@@ -104,27 +104,16 @@ synchronized void setServerError(boolean error) {
     }
 
     private synchronized void checkTimeout() {
-        if (requestTime == 0)
-            return;
-        if (SleuthkitServer.getByte(mbb, 0) != FLAGS.SQLITE_READ) {
-            logger.info("Waiting SleuthkitServer {} database read...", id); //$NON-NLS-1$
+        if (channel == null || channel.isClosed()) {
             return;
         }
-        if (System.currentTimeMillis() / 1000 - requestTime >= TIMEOUT_SECONDS) {
+        if (channel.isTimedOut(TIMEOUT_SECONDS)) {
             logger.error("Timeout waiting SleuthkitServer " + id + " response! Restarting...");
             serverError = true;
-            requestTime = 0;
             finishProcess(false);
         }
     }
 
-    synchronized void enableTimeoutCheck(boolean enable) {
-        if (enable)
-            requestTime = System.currentTimeMillis() / 1000;
-        else
-            requestTime = 0;
-    }
-
     public static synchronized void addEnvVar(String key, String value) {
         newEnvVars.put(key, value);
     }
@@ -191,6 +180,23 @@ private SleuthkitClient() {
         }
     }
 
+    /**
+     * Uses an already started server, for tests.
+     */
+    SleuthkitClient(SleuthkitChannel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * @return the channel to the server, restarting it if needed
+     */
+    synchronized SleuthkitChannel getChannel() throws IOException {
+        if (isServerError()) {
+            restartServer();
+        }
+        return channel;
+    }
+
     private synchronized void start() {
 
         LocalConfig localConfig = ConfigurationManager.get().findObject(LocalConfig.class);
@@ -244,6 +250,8 @@ private synchronized void start() {
                 throw new Exception("Error starting SleuthkitServer " + id); //$NON-NLS-1$
             }
 
+            channel = new SleuthkitChannel(id, mbb, is, os);
+
             logger.info("Starting SleuthkitServer {} started.", id);
 
         } catch (Exception e) {
@@ -272,22 +280,11 @@ public void run() {
     }
 
     private synchronized boolean ping() {
-        int i = rand.nextInt(255) + 1;
-        try {
-            os.write(i);
-            os.flush();
-            int r = is.read();
-            if (r == i)
-                return true;
-
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-        return false;
+        return channel != null && channel.ping();
     }
 
     private synchronized boolean isFineToUse() {
-        if (serverError) {
+        if (isServerError()) {
             return false;
         }
         if (!ping()) {
@@ -338,6 +335,9 @@ synchronized void removeStream(SleuthkitClientInputStream stream) {
     }
 
     private synchronized void finishProcess(boolean deletemmapFile) {
+        if (channel != null) {
+            channel.close();
+        }
         if (process != null) {
             process.destroyForcibly();
             try {
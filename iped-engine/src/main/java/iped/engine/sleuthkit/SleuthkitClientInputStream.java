@@ -2,7 +2,6 @@
 
 import java.io.IOException;
 import java.io.InterruptedIOException;
-import java.io.UnsupportedEncodingException;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
@@ -17,8 +16,6 @@ public class SleuthkitClientInputStream extends SeekableInputStream {
 
     private static AtomicLong next = new AtomicLong();
 
-    private static int TIMEOUT = 10000;
-
     int sleuthId;
     String path;
     SleuthkitClient client;
@@ -28,7 +25,7 @@ public class SleuthkitClientInputStream extends SeekableInputStream {
     boolean closed = false, empty = true;
     long position = 0;
     Long size;
-    boolean seekAfterRestart = false;
+    volatile boolean seekAfterRestart = false;
 
     public SleuthkitClientInputStream(int id, String path, SleuthkitClient client) {
         this.sleuthId = id;
@@ -55,25 +52,23 @@ public int read(byte b[], int off, int len) throws IOException {
     private int readIn(byte b[], int off, int len) throws IOException {
 
         if (empty) {
-            synchronized (client) {
-                if (client.isServerError()) {
-                    client.restartServer();
-                }
-                if (seekAfterRestart) {
-                    seek(position);
-                    seekAfterRestart = false;
-                }
-                byte cmd = sendRead(len);
+            SleuthkitChannel channel = client.getChannel();
+            if (seekAfterRestart) {
+                seekAfterRestart = false;
+                execute(channel, FLAGS.SEEK, position, false);
+            }
+            int slot = channel.acquireSlot();
+            try {
+                byte cmd = execute(channel, slot, FLAGS.READ, len);
                 if (cmd == FLAGS.EOF) {
                     return -1;
                 }
-                int size = client.mbb.getInt(13);
-                buf = new byte[size];
-                client.mbb.position(17);
-                client.mbb.get(buf, 0, size);
-                bufPos = 0;
-                empty = false;
+                buf = channel.getData(slot);
+            } finally {
+                channel.releaseSlot(slot);
             }
+            bufPos = 0;
+            empty = false;
         }
 
         int copyLen = Math.min(len, buf.length - bufPos);
@@ -88,75 +83,40 @@ private int readIn(byte b[], int off, int len) throws IOException {
         return copyLen;
     }
 
-    private byte sendRead(int len) throws IOException {
-        client.mbb.putInt(1, sleuthId);
-        client.mbb.putLong(5, streamId);
-        client.mbb.putInt(13, len);
-        SleuthkitServer.commitByte(client.mbb, 0, FLAGS.READ);
-        notifyServer();
-        return waitServerResponse();
+    /**
+     * Executes a command using a free slot.
+     *
+     * @return the long result of the command if getResult is true
+     */
+    private long execute(SleuthkitChannel channel, byte cmd, long arg, boolean getResult) throws IOException {
+        int slot = channel.acquireSlot();
+        try {
+            execute(channel, slot, cmd, arg);
+            return getResult ? channel.getLongResult(slot) : 0;
+        } finally {
+            channel.releaseSlot(slot);
+        }
     }
 
-    private byte waitServerResponse() throws IOException {
-
-        client.enableTimeoutCheck(true);
+    private byte execute(SleuthkitChannel channel, int slot, byte cmd, long arg) throws IOException {
+        byte response;
         try {
-            int b = client.is.read();
-            if (b == -1)
-                throw new IOException(getServerId() + " pipe closed!"); //$NON-NLS-1$
+            response = channel.execute(slot, cmd, sleuthId, streamId, arg);
+
+        } catch (InterruptedIOException e) {
+            throw e;
 
         } catch (IOException e) {
             client.setServerError(true);
-            LOGGER.error("Wait response error: " + getCrashMsg());
+            LOGGER.error("Request error: " + getCrashMsg());
             throw e;
-
-        } finally {
-            client.enableTimeoutCheck(false);
-        }
-
-        byte cmd;
-        long time = 0;
-        while (FLAGS.isClientCmd(cmd = SleuthkitServer.getByte(client.mbb, 0)) || cmd == FLAGS.SQLITE_READ) {
-            try {
-                if (time == 0) {
-                    time = System.currentTimeMillis();
-                }
-                Thread.sleep(1);
-                LOGGER.warn("Waiting " + getServerId() + " memory write..."); //$NON-NLS-1$
-
-                if (System.currentTimeMillis() - time >= TIMEOUT) {
-                    client.setServerError(true);
-                    LOGGER.error("MemoryReadTimeout waiting " + getServerId() + ": " + path); //$NON-NLS-1$
-                    throw new IOException("MemoryReadTimeout waiting " + getServerId() + ": " + path); //$NON-NLS-1$
-                }
-
-            } catch (InterruptedException e) {
-                throw new InterruptedIOException(e.toString());
-            }
         }
 
-        if (cmd == FLAGS.EXCEPTION) {
-            int len = client.mbb.getInt(13);
-            byte[] b = new byte[len];
-            client.mbb.position(17);
-            client.mbb.get(b);
-            try {
-                throw new IOException(getServerId() + " error: " + new String(b, "UTF-8")); //$NON-NLS-1$ //$NON-NLS-2$
-            } catch (UnsupportedEncodingException e) {
-            }
+        if (response == FLAGS.EXCEPTION) {
+            throw new IOException(getServerId() + " error: " + channel.getExceptionMsg(slot)); //$NON-NLS-1$
         }
 
-        return cmd;
-    }
-
-    private void notifyServer() throws IOException {
-        try {
-            SleuthkitServer.notify(client.os);
-        } catch (IOException e) {
-            client.setServerError(true);
-            LOGGER.error("Notify error: " + getCrashMsg());
-            throw e;
-        }
+        return response;
     }
 
     private String getCrashMsg() {
@@ -175,20 +135,11 @@ public void seek(long pos) throws IOException {
             bufPos += dif;
 
         } else {
-            synchronized (client) {
-                if (client.isServerError()) {
-                    client.restartServer();
-                }
-                client.mbb.putInt(1, sleuthId);
-                client.mbb.putLong(5, streamId);
-                client.mbb.putLong(13, pos);
-                SleuthkitServer.commitByte(client.mbb, 0, FLAGS.SEEK);
-                notifyServer();
-                waitServerResponse();
-                empty = true;
-                bufPos = 0;
-                seekAfterRestart = false;
-            }
+            SleuthkitChannel channel = client.getChannel();
+            execute(channel, FLAGS.SEEK, pos, false);
+            empty = true;
+            bufPos = 0;
+            seekAfterRestart = false;
         }
         position = pos;
 
@@ -209,18 +160,8 @@ public long size() throws IOException {
             throw new IOException("Stream is closed!"); //$NON-NLS-1$
         }
 
-        synchronized (client) {
-            if (client.isServerError()) {
-                client.restartServer();
-            }
-            client.mbb.putInt(1, sleuthId);
-            client.mbb.putLong(5, streamId);
-            SleuthkitServer.commitByte(client.mbb, 0, FLAGS.SIZE);
-            notifyServer();
-            waitServerResponse();
-            size = client.mbb.getLong(13);
-            return size;
-        }
+        size = execute(client.getChannel(), FLAGS.SIZE, 0, true);
+        return size;
 
     }
 
@@ -250,14 +191,11 @@ public void close() throws IOException {
         if (closed) {
             return;
         }
-        synchronized (client) {
+        try {
             if (!client.isServerError()) {
-                client.mbb.putInt(1, sleuthId);
-                client.mbb.putLong(5, streamId);
-                SleuthkitServer.commitByte(client.mbb, 0, FLAGS.CLOSE);
-                notifyServer();
-                waitServerResponse();
+                execute(client.channel, FLAGS.CLOSE, 0, false);
             }
+        } finally {
             client.removeStream(this);
         }
         empty = true;
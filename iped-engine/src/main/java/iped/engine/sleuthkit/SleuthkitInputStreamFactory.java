@@ -4,8 +4,10 @@
 import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.sleuthkit.datamodel.Content;
 import org.sleuthkit.datamodel.SleuthkitCase;
@@ -26,6 +28,9 @@ public class SleuthkitInputStreamFactory extends SeekableInputStreamFactory {
 
     private static final Logger logger = LoggerFactory.getLogger(SleuthkitInputStreamFactory.class);
 
+    private static final Map<SleuthkitCase, SleuthkitInputStreamFactory> sharedFactories = new ConcurrentHashMap<>();
+    private static final Map<SleuthkitCase, SleuthkitInputStreamFactory> sharedEmptyFactories = new ConcurrentHashMap<>();
+
     private SleuthkitCase sleuthkitCase;
     private Content content;
     private boolean emptyContent = false;
@@ -56,6 +61,21 @@ public SleuthkitInputStreamFactory(SleuthkitCase sleuthkitCase, Content content)
         }
     }
 
+    /**
+     * @return an equivalent factory which does not hold the item content and can
+     *         be shared by all items of the same case, contents are looked up by
+     *         id when opening streams
+     */
+    public SleuthkitInputStreamFactory getSharedFactory() {
+        if (sleuthkitCase == null || (content == null && !emptyContent)) {
+            return this;
+        }
+        if (emptyContent) {
+            return sharedEmptyFactories.computeIfAbsent(sleuthkitCase, c -> new SleuthkitInputStreamFactory(c, null));
+        }
+        return sharedFactories.computeIfAbsent(sleuthkitCase, SleuthkitInputStreamFactory::new);
+    }
+
     @Override
     public boolean returnsEmptyInputStream() {
         return this.emptyContent;
@@ -6,11 +6,17 @@
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileChannel.MapMode;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.sleuthkit.datamodel.Content;
 import org.sleuthkit.datamodel.SleuthkitCase;
@@ -19,11 +25,35 @@
 import iped.engine.config.ConfigurationManager;
 import iped.engine.config.LocalConfig;
 import iped.engine.util.DirectMemory;
+import iped.io.SeekableInputStream;
 
 public class SleuthkitServer {
 
-    public static final int MMAP_FILE_SIZE = 10 * 1024 * 1024;
-    private static final int MAX_BUF_SIZE = 8 * 1024 * 1024; // must be less than MMAP_FILE_SIZE
+    /**
+     * The shared memory is split into slots, so many client threads can have
+     * requests being served at the same time. Each slot has the layout below,
+     * followed by the data of read responses or the message of exceptions.
+     */
+    static final int NUM_SLOTS = 16;
+    static final int CMD = 0; // byte, client command or server response
+    static final int SLEUTH_ID = 1; // int
+    static final int STREAM_ID = 5; // long
+    static final int ARG = 13; // long, read len, seek position, size, position or message len
+    static final int DATA = 21;
+
+    private static final int MIN_BUF_SIZE = 64 * 1024;
+    private static final int MAX_BUF_SIZE = 1024 * 1024;
+
+    // rounded to keep slots in different cache lines
+    static final int SLOT_SIZE = (DATA + MAX_BUF_SIZE + 63) / 64 * 64;
+
+    public static final int MMAP_FILE_SIZE = NUM_SLOTS * SLOT_SIZE;
+
+    /**
+     * Pipe bytes lower than NUM_SLOTS notify a command or response in that slot,
+     * bytes from PING_MIN are pings echoed by the server.
+     */
+    static final int PING_MIN = 128;
 
     static class FLAGS {
 
@@ -47,6 +77,22 @@ final static boolean isClientCmd(int cmd) {
         }
     }
 
+    interface StreamOpener {
+        SeekableInputStream open(int sleuthId) throws Exception;
+    }
+
+    private static class ServerStream {
+
+        private final SeekableInputStream sis;
+
+        // grows while the stream is read sequentially, so large reads need less round trips
+        private int readAhead = MIN_BUF_SIZE;
+
+        private ServerStream(SeekableInputStream sis) {
+            this.sis = sis;
+        }
+    }
+
     static boolean useUnsafe = true;
 
     public static void main(String args[]) {
@@ -77,134 +123,164 @@ public static void main(String args[]) {
             Configuration.getInstance().loadNativeLibs();
 
             SleuthkitCase sleuthCase = SleuthkitInputStreamFactory.openSleuthkitCase(dbPath);
-            HashMap<Long, SleuthkitInputStream> sisMap = new HashMap<>();
 
             java.util.logging.Logger.getLogger("org.sleuthkit").setLevel(java.util.logging.Level.SEVERE); //$NON-NLS-1$
 
-            commitByte(out, 0, FLAGS.DONE);
-            notify(os);
+            serve(out, in, os, id -> openSis(sleuthCase, id));
+
+        } catch (Throwable e) {
+            e.printStackTrace();
+            commitByte(out, CMD, FLAGS.ERROR);
+            try {
+                if (os != null)
+                    notify(os, 0);
+            } catch (IOException e1) {
+                e1.printStackTrace();
+            }
+        }
+    }
 
-            byte[] buf = new byte[MAX_BUF_SIZE];
-            int minToRead = 64 * 1024;
-            SleuthkitInputStream sis = null;
+    /**
+     * Serves client requests until the input pipe is closed. Requests in different
+     * slots are processed concurrently.
+     */
+    static void serve(MappedByteBuffer mbb, InputStream in, OutputStream os, StreamOpener opener)
+            throws IOException {
+
+        Map<Long, ServerStream> streams = new ConcurrentHashMap<>();
+        ExecutorService executor = Executors.newFixedThreadPool(NUM_SLOTS, r -> {
+            Thread t = new Thread(r);
+            t.setDaemon(true);
+            return t;
+        });
+        ThreadLocal<byte[]> buffers = ThreadLocal.withInitial(() -> new byte[MAX_BUF_SIZE]);
+
+        for (int slot = 0; slot < NUM_SLOTS; slot++) {
+            commitByte(mbb, slot * SLOT_SIZE + CMD, FLAGS.DONE);
+        }
+        notify(os, 0);
 
+        try {
             while (true) {
-                try {
-                    int read = in.read();
-                    if (read == -1)
-                        break;
-                    if (read > 0) {
-                        // ping response
+                int read = in.read();
+                if (read == -1)
+                    break;
+                if (read >= PING_MIN) {
+                    // ping response
+                    synchronized (os) {
                         os.write(read);
                         os.flush();
-                        continue;
                     }
-                    byte cmd = waitCmd(out, in);
-                    sis = getSis(out, sleuthCase, sisMap);
-                    commitByte(out, 0, FLAGS.SQLITE_READ);
-
-                    if (cmd == FLAGS.SEEK) {
-                        sis.seek(out.getLong(13));
-                    } else if (cmd == FLAGS.CLOSE) {
-                        sis = sisMap.remove(out.getLong(5));
-                        sis.close();
-                    } else if (cmd == FLAGS.READ) {
-                        int len = out.getInt(13);
-                        len = Math.max(minToRead, Math.min(len, buf.length));
-                        len = readIn(sis, buf, len);
-                        if (len == -1) {
-                            commitByte(out, 0, FLAGS.EOF);
-                            notify(os);
-                            continue;
-                        } else {
-                            writeOut(out, buf, len);
+                    continue;
+                }
+                int slot = read;
+                executor.execute(() -> {
+                    try {
+                        if (process(mbb, slot * SLOT_SIZE, buffers.get(), streams, opener)) {
+                            notify(os, slot);
                         }
-                    } else if (cmd == FLAGS.SIZE) {
-                        out.putLong(13, sis.size());
-                    } else if (cmd == FLAGS.POSITION) {
-                        out.putLong(13, sis.position());
+                    } catch (IOException e) {
+                        // client pipe closed
+                        e.printStackTrace();
                     }
+                });
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
 
-                    commitByte(out, 0, FLAGS.DONE);
-                    notify(os);
-
-                } catch (Throwable e) {
-                    // e.printStackTrace(System.err);
-                    byte[] msgBytes = e.getMessage().getBytes("UTF-8"); //$NON-NLS-1$
-                    out.putInt(13, msgBytes.length);
-                    out.position(17);
-                    out.put(msgBytes);
-                    commitByte(out, 0, FLAGS.EXCEPTION);
-                    notify(os);
+    /**
+     * @return false if the slot has no pending command
+     */
+    private static boolean process(MappedByteBuffer mbb, int base, byte[] buf, Map<Long, ServerStream> streams,
+            StreamOpener opener) throws IOException {
+        try {
+            byte cmd = getByte(mbb, base + CMD);
+            if (!FLAGS.isClientCmd(cmd)) {
+                return false;
+            }
+            long streamId = mbb.getLong(base + STREAM_ID);
+            ServerStream stream = streams.get(streamId);
+            if (stream == null) {
+                stream = new ServerStream(opener.open(mbb.getInt(base + SLEUTH_ID)));
+                streams.put(streamId, stream);
+            }
+            commitByte(mbb, base + CMD, FLAGS.SQLITE_READ);
+
+            if (cmd == FLAGS.SEEK) {
+                stream.sis.seek(mbb.getLong(base + ARG));
+                stream.readAhead = MIN_BUF_SIZE;
+            } else if (cmd == FLAGS.CLOSE) {
+                streams.remove(streamId);
+                stream.sis.close();
+            } else if (cmd == FLAGS.READ) {
+                int len = (int) Math.min(mbb.getLong(base + ARG), MAX_BUF_SIZE);
+                len = readIn(stream.sis, buf, Math.max(stream.readAhead, len));
+                if (len == -1) {
+                    commitByte(mbb, base + CMD, FLAGS.EOF);
+                    return true;
                 }
+                writeOut(mbb, base, buf, len);
+                stream.readAhead = Math.min(stream.readAhead * 2, MAX_BUF_SIZE);
+            } else if (cmd == FLAGS.SIZE) {
+                mbb.putLong(base + ARG, stream.sis.size());
+            } else if (cmd == FLAGS.POSITION) {
+                mbb.putLong(base + ARG, stream.sis.position());
             }
 
+            commitByte(mbb, base + CMD, FLAGS.DONE);
+
         } catch (Throwable e) {
-            e.printStackTrace();
-            commitByte(out, 0, FLAGS.ERROR);
-            try {
-                if (os != null)
-                    notify(os);
-            } catch (IOException e1) {
-                e1.printStackTrace();
-            }
+            // e.printStackTrace(System.err);
+            String msg = e.getMessage() != null ? e.getMessage() : e.toString();
+            byte[] msgBytes = msg.getBytes("UTF-8"); //$NON-NLS-1$
+            int len = Math.min(msgBytes.length, MAX_BUF_SIZE);
+            writeOut(mbb, base, msgBytes, len);
+            commitByte(mbb, base + CMD, FLAGS.EXCEPTION);
         }
+        return true;
     }
 
-    private static HashSet<Long> warmedDataSources = new HashSet<>();
+    private static Set<Long> warmedDataSources = Collections.synchronizedSet(new HashSet<>());
 
-    private static SleuthkitInputStream getSis(MappedByteBuffer out, SleuthkitCase sleuthCase,
-            HashMap<Long, SleuthkitInputStream> sisMap) throws Exception {
-        long streamId = out.getLong(5);
-        SleuthkitInputStream sis = sisMap.get(streamId);
-        if (sis == null) {
-            int id = out.getInt(1);
-            Content content = sleuthCase.getAbstractFileById(id);
+    private static SleuthkitInputStream openSis(SleuthkitCase sleuthCase, int id) throws Exception {
+        Content content;
+        synchronized (sleuthCase) {
+            content = sleuthCase.getAbstractFileById(id);
             if (content == null) {
                 content = sleuthCase.getContentById(id);
             }
-            sis = new SleuthkitInputStream(content);
-            sisMap.put(streamId, sis);
-
-            // first read can take a long time, so do it here to prevent timeouts on client
-            // side
-            Long sourceId = content.getDataSource().getId();
-            if (!warmedDataSources.contains(sourceId)) {
-                sis.read();
-                sis.seek(0);
-                warmedDataSources.add(sourceId);
-            }
         }
-        return sis;
-    }
-
-    private static byte waitCmd(MappedByteBuffer out, InputStream in) throws Exception {
-        byte cmd;
-        long t = 0;
-        while (!FLAGS.isClientCmd(cmd = getByte(out, 0))) {
-            if (t == 0)
-                t = System.currentTimeMillis();
-            long time = (System.currentTimeMillis() - t) / 1000;
-            if (time >= 10)
-                throw new IOException("MemoryReadTimeout waiting SleuthkitClient!"); //$NON-NLS-1$
-            Thread.sleep(1);
+        SleuthkitInputStream sis = new SleuthkitInputStream(content);
+
+        // first read can take a long time, so do it here to prevent timeouts on client
+        // side
+        Long sourceId = content.getDataSource().getId();
+        if (warmedDataSources.add(sourceId)) {
+            sis.read();
+            sis.seek(0);
         }
-        return cmd;
+        return sis;
     }
 
-    private static int readIn(SleuthkitInputStream sis, byte[] buf, int len) throws IOException {
+    private static int readIn(SeekableInputStream sis, byte[] buf, int len) throws IOException {
         return sis.read(buf, 0, len);
     }
 
-    private static void writeOut(MappedByteBuffer out, byte[] buf, int len) throws Exception {
-        out.position(17);
-        out.put(buf, 0, len);
-        out.putInt(13, len);
+    private static void writeOut(MappedByteBuffer out, int base, byte[] buf, int len) {
+        // duplicate has its own position, slots are written concurrently
+        ByteBuffer bb = out.duplicate();
+        bb.position(base + DATA);
+        bb.put(buf, 0, len);
+        out.putLong(base + ARG, len);
     }
 
-    static void notify(OutputStream os) throws IOException {
-        os.write(0);
-        os.flush();
+    static void notify(OutputStream os, int slot) throws IOException {
+        synchronized (os) {
+            os.write(slot);
+            os.flush();
+        }
     }
 
     static final void commitByte(MappedByteBuffer mbb, int pos, byte val) {
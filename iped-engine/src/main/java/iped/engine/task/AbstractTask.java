@@ -13,9 +13,11 @@
 import iped.engine.config.ConfigurationManager;
 import iped.engine.core.QueuesProcessingOrder;
 import iped.engine.core.Statistics;
+import iped.engine.core.TaskTimeStats;
 import iped.engine.core.Worker;
 import iped.engine.core.Worker.STATE;
 import iped.engine.data.CaseData;
+import iped.engine.data.Item;
 import iped.engine.io.TimeoutException;
 import iped.parsers.util.CorruptedCarvedException;
 
@@ -64,6 +66,8 @@ public abstract class AbstractTask {
 
     private long taskTime;
 
+    private TaskTimeStats taskTimeStats;
+
     private HashMap<Integer, Long> subitemProcessingTime = new HashMap<Integer, Long>();
 
     public long getTaskTime() {
@@ -201,7 +205,14 @@ public final void processAndSendToNextTask(IItem evidence) throws Exception {
             if (subitensTime == null) {
                 subitensTime = 0L;
             }
-            taskTime += System.nanoTime() / 1000 - t - subitensTime;
+            long time = System.nanoTime() / 1000 - t - subitensTime;
+            taskTime += time;
+            if (stats != null) {
+                if (taskTimeStats == null) {
+                    taskTimeStats = stats.getTaskTimeStats(getName());
+                }
+                taskTimeStats.record(evidence.getMediaType(), time);
+            }
         }
 
         if (sendToNextTask) {
@@ -235,6 +246,9 @@ protected void sendToNextTask(IItem evidence) throws Exception {
 
             // clear resources
             evidence.dispose();
+            if (evidence instanceof Item) {
+                ((Item) evidence).releaseSpooledContent();
+            }
 
             // update statistics
             stats.incProcessed();
@@ -257,6 +271,7 @@ protected void reEnqueueItem(IItem item) throws InterruptedException {
     }
 
     private void reEnqueueItem(IItem item, int queue) throws InterruptedException {
+        persistSpooledContent(item);
         item.dispose();
         SkipCommitedTask.checkAgainLaterProcessedParents(item);
         worker.manager.getProcessingQueues().addItemToQueue(item, queue);
@@ -265,6 +280,21 @@ private void reEnqueueItem(IItem item, int queue) throws InterruptedException {
         }
     }
 
+    /**
+     * Deferred items may wait long in the queues, so their spooled content is
+     * written to the storage, to not hold spool pages and to allow spilling them.
+     */
+    private void persistSpooledContent(IItem item) {
+        if (item instanceof Item && ((Item) item).isContentSpooled()) {
+            for (AbstractTask task : worker.tasks) {
+                if (task instanceof ExportFileTask) {
+                    ((ExportFileTask) task).persistSpooledContent(item);
+                    break;
+                }
+            }
+        }
+    }
+
     /**
      * Processa o item monitorando timeout durante parsing. Caso ocorra timeout, o
      * item é reprocessado na tarefa com um parser seguro, sem risco de timeout.
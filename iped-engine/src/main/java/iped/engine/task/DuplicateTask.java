@@ -1,7 +1,7 @@
 package iped.engine.task;
 
+import java.io.File;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.List;
 
 import org.apache.lucene.index.DirectoryReader;
@@ -13,10 +13,12 @@
 import iped.configuration.Configurable;
 import iped.data.IHashValue;
 import iped.data.IItem;
+import iped.engine.CmdLineArgs;
 import iped.engine.config.ConfigurationManager;
 import iped.engine.config.EnableTaskProperty;
 import iped.engine.lucene.SlowCompositeReaderWrapper;
 import iped.engine.task.index.IndexItem;
+import iped.engine.util.MappedHashSet;
 import iped.utils.HashValue;
 
 /**
@@ -30,7 +32,9 @@ public class DuplicateTask extends AbstractTask {
 
     private static final String ENABLE_PARAM = "ignoreDuplicates"; //$NON-NLS-1$
 
-    private HashMap<IHashValue, IHashValue> hashMap;
+    private static final String HASHES_DIR = "data/hashes"; //$NON-NLS-1$
+
+    private MappedHashSet hashSet;
 
     private static boolean ignoreDuplicates = false;
 
@@ -49,14 +53,7 @@ public void process(IItem evidence) {
         boolean isDuplicate = false;
         IHashValue hashValue = evidence.getHashValue();
         if (hashValue != null) {
-            synchronized (hashMap) {
-                if (!hashMap.containsKey(hashValue)) {
-                    hashMap.put(hashValue, hashValue);
-                } else {
-                    isDuplicate = true;
-                }
-
-            }
+            isDuplicate = !hashSet.add(hashValue.getBytes());
         }
 
         if (ignoreDuplicates && isDuplicate && !evidence.isDir() && !evidence.isRoot()
@@ -71,25 +68,30 @@ public void init(ConfigurationManager configurationManager) throws Exception {
 
         ignoreDuplicates = configurationManager.getEnableTaskProperty(ENABLE_PARAM);
 
-        hashMap = (HashMap<IHashValue, IHashValue>) caseData.getCaseObject(HASH_MAP);
-        if (hashMap == null) {
-            hashMap = new HashMap<IHashValue, IHashValue>();
-            caseData.putCaseObject(HASH_MAP, hashMap);
-
-            try (IndexReader reader = DirectoryReader.open(worker.writer, true, true)) {
-                LeafReader aReader = SlowCompositeReaderWrapper.wrap(reader);
-                SortedDocValues sdv = aReader.getSortedDocValues(IndexItem.HASH);
-                if (sdv != null) {
-                    for (int ord = 0; ord < sdv.getValueCount(); ord++) {
-                        String hash = sdv.lookupOrd(ord).utf8ToString();
-                        if (hash != null && !hash.isEmpty()) {
-                            IHashValue hValue = new HashValue(hash);
-                            hashMap.put(hValue, hValue);
+        hashSet = (MappedHashSet) caseData.getCaseObject(HASH_MAP);
+        if (hashSet == null) {
+            // hashes persisted by a previous processing are reused only when appending to
+            // a finished case, otherwise they could include items not committed to index
+            CmdLineArgs args = (CmdLineArgs) caseData.getCaseObject(CmdLineArgs.class.getName());
+            boolean reuse = args != null && args.isAppendIndex() && !args.isContinue() && !args.isRestart();
+            hashSet = new MappedHashSet(new File(output, HASHES_DIR), reuse);
+            caseData.putCaseObject(HASH_MAP, hashSet);
+
+            if (!hashSet.isLoaded()) {
+                try (IndexReader reader = DirectoryReader.open(worker.writer, true, true)) {
+                    LeafReader aReader = SlowCompositeReaderWrapper.wrap(reader);
+                    SortedDocValues sdv = aReader.getSortedDocValues(IndexItem.HASH);
+                    if (sdv != null) {
+                        for (int ord = 0; ord < sdv.getValueCount(); ord++) {
+                            String hash = sdv.lookupOrd(ord).utf8ToString();
+                            if (hash != null && !hash.isEmpty()) {
+                                hashSet.add(new HashValue(hash).getBytes());
+                            }
                         }
                     }
+                } catch (IndexNotFoundException e) {
+                    // ignore
                 }
-            } catch (IndexNotFoundException e) {
-                // ignore
             }
         }
 
@@ -97,7 +99,15 @@ public void init(ConfigurationManager configurationManager) throws Exception {
 
     @Override
     public void finish() throws Exception {
-        hashMap.clear();
+        // persists hashes to be reused if more evidences are added later
+        hashSet.close();
+    }
+
+    /**
+     * Deletes the hashes persisted in the case, e.g. when an evidence is removed.
+     */
+    public static void deletePersistedHashes(File output) {
+        MappedHashSet.delete(new File(output, HASHES_DIR));
     }
 
 }
@@ -26,6 +26,7 @@
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.SequenceInputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -40,7 +41,10 @@
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -69,6 +73,10 @@
 import org.sqlite.SQLiteConfig.Pragma;
 import org.sqlite.SQLiteConfig.SynchronousMode;
 
+import com.github.luben.zstd.ZstdDictCompress;
+import com.github.luben.zstd.ZstdDictDecompress;
+import com.github.luben.zstd.ZstdDictTrainer;
+
 import iped.configuration.Configurable;
 import iped.data.ICaseData;
 import iped.data.IHashValue;
@@ -76,6 +84,7 @@
 import iped.engine.CmdLineArgs;
 import iped.engine.config.CategoryConfig;
 import iped.engine.config.ConfigurationManager;
+import iped.engine.config.ContentStorageConfig;
 import iped.engine.config.EnableTaskProperty;
 import iped.engine.config.ExportByCategoriesConfig;
 import iped.engine.config.ExportByKeywordsConfig;
@@ -83,6 +92,10 @@
 import iped.engine.config.HtmlReportTaskConfig;
 import iped.engine.data.Category;
 import iped.engine.data.IPEDSource;
+import iped.engine.data.Item;
+import iped.engine.io.SubitemSpool;
+import iped.engine.io.SubitemSpool.SpooledContent;
+import iped.engine.io.ZstdChunkedContent;
 import iped.engine.localization.Messages;
 import iped.engine.task.index.IndexItem;
 import iped.engine.util.UIPropertyListenerProvider;
@@ -123,6 +136,8 @@ public class ExportFileTask extends AbstractTask {
     private static final String CREATE_TABLE1 = "CREATE TABLE IF NOT EXISTS thumbs(id TEXT PRIMARY KEY, thumb BLOB);";
     private static final String CREATE_TABLE2 = "CREATE TABLE IF NOT EXISTS t1(id TEXT PRIMARY KEY, data BLOB);";
 
+    private static final String CREATE_TABLE3 = "CREATE TABLE IF NOT EXISTS dicts(id INTEGER PRIMARY KEY, category TEXT, dict BLOB);";
+
     private static final String INSERT_DATA = "INSERT INTO t1(id, data) VALUES(?,?) ON CONFLICT(id) DO UPDATE SET data=? WHERE data IS NULL;";
 
     private static final String CHECK_HASH = "SELECT id FROM t1 WHERE id=? AND data IS NOT NULL;";
@@ -131,9 +146,19 @@ public class ExportFileTask extends AbstractTask {
 
     private static final String CLEAR_DATA = "DELETE FROM t1 WHERE id=?;";
 
+    private static final String INSERT_DICT = "INSERT OR IGNORE INTO dicts(id, category, dict) VALUES(?,?,?);";
+
+    private static final String SELECT_MAX_DICT_ID = "SELECT MAX(id) FROM dicts;";
+
+    // zstd dictionaries trained per category, see ContentStorageConfig
+    private static final int DICT_SIZE = 64 * 1024;
+    private static final int DICT_SAMPLES_SIZE = 4 * 1024 * 1024;
+
     // maps below are used to track different storages/connections in multicases
     private static HashMap<File, HashMap<Integer, File>> storage = new HashMap<>();
     private static HashMap<File, HashMap<Integer, Connection>> storageCon = new HashMap<>();
+    private static HashMap<File, HashMap<String, CategoryDictionary>> dictionaries = new HashMap<>();
+    private static HashMap<File, AtomicInteger> lastDictId = new HashMap<>();
 
     private static AtomicInteger counter = new AtomicInteger();
 
@@ -148,11 +173,19 @@ public class ExportFileTask extends AbstractTask {
     private static File extractDir;
     private static ExportFileTask lastInstance = null;
 
-    private HashMap<IHashValue, IHashValue> hashMap;
+    // striped locks to serialize the export of items with the same hash
+    private static final Object[] hashLocks = new Object[1024];
+
+    static {
+        for (int i = 0; i < hashLocks.length; i++) {
+            hashLocks[i] = new Object();
+        }
+    }
     private List<String> noContentLabels;
     private ExportByCategoriesConfig exportByCategories;
     private ExportByKeywordsConfig exportByKeywords;
     private CategoryConfig categoryConfig;
+    private ContentStorageConfig storageConfig;
     private boolean automaticExportEnabled = false;
 
     public static ExportFileTask getLastInstance() {
@@ -224,6 +257,7 @@ private static synchronized void configureSQLiteStorage(File output) {
         }
         HashMap<Integer, Connection> tempStorageCon = new HashMap<>();
         HashMap<Integer, File> tempStorage = new HashMap<>();
+        int maxDictId = 0;
         for (int i = 0; i < Math.pow(2, DB_SUFFIX_BITS); i++) {
             String storageName = STORAGE_PREFIX + "-" + i + ".db";
             File db = new File(output, STORAGE_PREFIX + File.separator + storageName);
@@ -237,6 +271,14 @@ private static synchronized void configureSQLiteStorage(File output) {
                 try (Statement stmt = con.createStatement()) {
                     stmt.executeUpdate(CREATE_TABLE2);
                 }
+                try (Statement stmt = con.createStatement()) {
+                    stmt.executeUpdate(CREATE_TABLE3);
+                    try (ResultSet rs = stmt.executeQuery(SELECT_MAX_DICT_ID)) {
+                        if (rs.next()) {
+                            maxDictId = Math.max(maxDictId, rs.getInt(1));
+                        }
+                    }
+                }
                 tempStorageCon.put(i, con);
 
             } catch (SQLException e) {
@@ -245,6 +287,7 @@ private static synchronized void configureSQLiteStorage(File output) {
         }
         storage.put(output, tempStorage);
         storageCon.put(output, tempStorageCon);
+        lastDictId.put(output, new AtomicInteger(maxDictId));
     }
 
     private static Connection getSQLiteConnection(File storage) throws SQLException {
@@ -309,6 +352,7 @@ public void process(IItem evidence) {
 
             evidence.setToExtract(true);
             if (!doNotExport(evidence)) {
+                persistSpooledContent(evidence);
                 renameToHash(evidence);
             } else {
                 // clear path to be not indexed, continuing to point to File for processing,
@@ -318,9 +362,7 @@ public void process(IItem evidence) {
                 // store references to -nocontent items to be deleted from sqlite storages
                 IHashValue hashValue = evidence.getHashValue();
                 if (hashValue != null) {
-                    synchronized (hashMap) {
-                        // this uses less memory reusing a previous stored reference
-                        hashValue = hashMap.get(hashValue);
+                    synchronized (noContentHashes) {
                         noContentHashes.add(hashValue);
                     }
                 }
@@ -421,11 +463,7 @@ public void renameToHash(IItem evidence) {
             if (!hashFile.getParentFile().exists()) {
                 hashFile.getParentFile().mkdirs();
             }
-            IHashValue hashVal = new HashValue(hash);
-            IHashValue hashLock;
-            synchronized (hashMap) {
-                hashLock = hashMap.get(hashVal);
-            }
+            Object hashLock = getHashLock(hash);
 
             synchronized (hashLock) {
                 if (!hashFile.exists()) {
@@ -525,10 +563,7 @@ public void extractFile(InputStream inputStream, IItem evidence, Long parentSize
             outputFile = new File(getSubDir(extractDir), Util.getValidFilename(counter.getAndIncrement() + ext));
         } else if ((hash = evidence.getHash()) != null && !hash.isEmpty()) {
             outputFile = getHashFile(hash, ext);
-            IHashValue hashVal = new HashValue(hash);
-            synchronized (hashMap) {
-                hashLock = hashMap.get(hashVal);
-            }
+            hashLock = getHashLock(hash);
 
         } else {
             outputFile = new File(extractDir, Util.getValidFilename("0" + counter.getAndIncrement() + ext)); //$NON-NLS-1$
@@ -620,6 +655,94 @@ public void extractFile(InputStream inputStream, IItem evidence, Long parentSize
 
     }
 
+    /**
+     * Keeps the content of a subitem in the spool until it is processed by this
+     * task, so subitems not added to the case, like ignored duplicates, are never
+     * written to the storage. Contents bigger than the spool limit, or not fitting
+     * in a full spool, are extracted right away by
+     * {@link #extractFile(InputStream, IItem, Long)}, so they are written just once.
+     */
+    public void spoolFile(InputStream inputStream, Item evidence, Long parentSize, SubitemSpool spool)
+            throws IOException {
+
+        int maxSize = spool.getMaxItemSize();
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        Exception exception = null;
+
+        try (TemporaryResources tmp = new TemporaryResources()) {
+
+            try {
+                TikaInputStream tis = TikaInputStream.get(inputStream, tmp);
+                InputStream poiInputStream = Util.getPOIFSInputStream(tis);
+                inputStream = poiInputStream != null ? poiInputStream : tis;
+
+                byte[] buf = new byte[8 * 1024];
+                int i;
+                while (baos.size() <= maxSize && !Thread.currentThread().isInterrupted()
+                        && (i = inputStream.read(buf)) != -1) {
+                    baos.write(buf, 0, i);
+                    if (ZipBombException.isZipBomb(parentSize, baos.size())) {
+                        throw new ZipBombException("Potential zip bomb while extracting subitem!"); //$NON-NLS-1$
+                    }
+                }
+            } catch (Exception e) {
+                // catch exceptions here to spool some content, even runtime exceptions
+                exception = e;
+            }
+
+            byte[] bytes = baos.toByteArray();
+            baos = null;
+            SpooledContent content = null;
+            if (bytes.length <= maxSize) {
+                content = spool.spool(bytes, bytes.length);
+            }
+            if (content == null) {
+                InputStream is = new ByteArrayInputStream(bytes);
+                if (exception == null) {
+                    is = new SequenceInputStream(is, inputStream);
+                }
+                extractFile(is, evidence, parentSize);
+
+            } else {
+                evidence.setSpooledContent(content);
+                evidence.setIdInDataSource(SpooledContent.ID);
+                evidence.setInputStreamFactory(content);
+                evidence.setFileOffset(-1);
+                evidence.setLength((long) bytes.length);
+            }
+        }
+
+        if (exception != null) {
+            LOGGER.warn("Error exporting {}\t{}", evidence.getPath(), exception.toString()); //$NON-NLS-1$
+            LOGGER.debug("", exception);
+        }
+    }
+
+    /**
+     * Writes the spooled content of a subitem to the case storage and releases it
+     * from the spool. Also called when the item is deferred before reaching this
+     * task.
+     */
+    void persistSpooledContent(IItem evidence) {
+        if (!(evidence instanceof Item) || !((Item) evidence).isContentSpooled()) {
+            return;
+        }
+        Item item = (Item) evidence;
+        try (InputStream is = item.getBufferedInputStream()) {
+            extractFile(is, item, null);
+
+        } catch (IOException e) {
+            LOGGER.warn("{} Error exporting {} \t{}", Thread.currentThread().getName(), item.getPath(), //$NON-NLS-1$
+                    e.toString());
+        }
+        if (item.isContentSpooled()) {
+            // not written to the storage, do not index a reference to the spool
+            item.setTempAttribute(IndexItem.IGNORE_CONTENT_REF, "true");
+        } else {
+            item.releaseSpooledContent();
+        }
+    }
+
     public void insertIntoStorage(IItem evidence, byte[] buf, int len)
             throws InterruptedException, IOException, SQLException, CompressorException {
         byte[] hash = null;
@@ -645,13 +768,7 @@ public void insertIntoStorage(IItem evidence, byte[] buf, int len)
         if (!alreadyInDB) {
             try (PreparedStatement ps = storageCon.get(output).get(k).prepareStatement(INSERT_DATA)) {
                 ps.setString(1, id);
-                ByteArrayOutputStream baos = new ByteArrayOutputStream();
-                OutputStream gzippedOut = new GzipCompressorOutputStream(baos, getGzipParams());
-                // OutputStream gzippedOut = new LZ4BlockOutputStream(baos);
-                gzippedOut.write(buf, 0, len);
-                gzippedOut.close();
-                byte[] bytes = baos.toByteArray();
-                baos = null;
+                byte[] bytes = compress(evidence, buf, len);
                 ps.setBytes(2, bytes);
                 ps.setBytes(3, bytes);
                 ps.executeUpdate();
@@ -664,6 +781,90 @@ public void insertIntoStorage(IItem evidence, byte[] buf, int len)
         evidence.setLength((long) len);
     }
 
+    private byte[] compress(IItem evidence, byte[] buf, int len) throws IOException, SQLException {
+        if (storageConfig == null) {
+            storageConfig = ConfigurationManager.get().findObject(ContentStorageConfig.class);
+        }
+        if (storageConfig.isZstd()) {
+            int chunkSize = storageConfig.getChunkSize();
+            int level = storageConfig.getCompressionLevel();
+            // just small items benefit from dictionaries
+            if (storageConfig.isDictionaryPerCategory() && len <= chunkSize) {
+                CategoryDictionary dict = getCategoryDictionary(evidence, buf, len);
+                if (dict != null) {
+                    return ZstdChunkedContent.compress(buf, 0, len, chunkSize, level, dict.dict, dict.id);
+                }
+            }
+            return ZstdChunkedContent.compress(buf, 0, len, chunkSize, level);
+        }
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        OutputStream gzippedOut = new GzipCompressorOutputStream(baos, getGzipParams());
+        gzippedOut.write(buf, 0, len);
+        gzippedOut.close();
+        return baos.toByteArray();
+    }
+
+    private static class CategoryDictionary {
+        private ZstdDictTrainer trainer = new ZstdDictTrainer(DICT_SAMPLES_SIZE, DICT_SIZE);
+        private ZstdDictCompress dict;
+        private int id;
+    }
+
+    /**
+     * Returns the dictionary of the item category. Until it is trained, items are
+     * collected as samples and null is returned. The trained dictionary is stored
+     * into all storage databases, so readers find it in the same database of the
+     * items compressed with it.
+     */
+    private CategoryDictionary getCategoryDictionary(IItem evidence, byte[] buf, int len) throws SQLException {
+        Set<String> categories = evidence.getCategorySet();
+        if (categories.isEmpty()) {
+            return null;
+        }
+        String category = categories.iterator().next();
+        CategoryDictionary catDict;
+        synchronized (dictionaries) {
+            catDict = dictionaries.computeIfAbsent(output, o -> new HashMap<>()).computeIfAbsent(category,
+                    c -> new CategoryDictionary());
+        }
+        ZstdDictTrainer trainer;
+        synchronized (catDict) {
+            if (catDict.dict != null) {
+                return catDict;
+            }
+            if (catDict.trainer == null || catDict.trainer.addSample(Arrays.copyOf(buf, len))) {
+                return null;
+            }
+            // samples buffer is full, it is trained out of the lock, meanwhile
+            // other items of the category are compressed without dictionary
+            trainer = catDict.trainer;
+            catDict.trainer = null;
+        }
+        byte[] dict;
+        try {
+            dict = trainer.trainSamples();
+        } catch (RuntimeException e) {
+            LOGGER.warn("Error training zstd dictionary for category {}: {}", category, e.toString()); //$NON-NLS-1$
+            return null;
+        }
+        int id = lastDictId.get(output).incrementAndGet();
+        for (Connection con : storageCon.get(output).values()) {
+            try (PreparedStatement ps = con.prepareStatement(INSERT_DICT)) {
+                ps.setInt(1, id);
+                ps.setString(2, category);
+                ps.setBytes(3, dict);
+                ps.executeUpdate();
+            }
+        }
+        ZstdDictCompress dictCompress = new ZstdDictCompress(dict, storageConfig.getCompressionLevel());
+        synchronized (catDict) {
+            catDict.dict = dictCompress;
+            catDict.id = id;
+        }
+        LOGGER.info("Trained zstd dictionary {} for category {} with {} bytes", id, category, dict.length); //$NON-NLS-1$
+        return catDict;
+    }
+
     private GzipParameters getGzipParams() {
         GzipParameters compression = new GzipParameters();
         compression.setCompressionLevel(Deflater.BEST_SPEED);
@@ -674,6 +875,10 @@ public static class SQLiteInputStreamFactory extends SeekableInputStreamFactory
 
         private static final String SELECT_DATA = "SELECT data FROM t1 WHERE id=?;";
 
+        private static final String SELECT_DICT = "SELECT dict FROM dicts WHERE id=?;";
+
+        private static final Map<String, ZstdDictDecompress> dictCache = new ConcurrentHashMap<>();
+
         private Connection conn;
 
         public SQLiteInputStreamFactory(Path datasource) {
@@ -708,8 +913,13 @@ public SeekableInputStream getSeekableInputStream(String identifier) throws IOEx
                         }
                     }
                 }
+                if (ZstdChunkedContent.isChunked(bytes)) {
+                    int dictId = ZstdChunkedContent.getDictId(bytes);
+                    ZstdDictDecompress dict = dictId != 0 ? getDictionary(dictId) : null;
+                    return new ZstdChunkedContent.ChunkedInputStream(bytes, dict);
+                }
+                // contents stored by older versions or with gzip compression
                 InputStream gzippedIn = new GzipCompressorInputStream(new ByteArrayInputStream(bytes));
-                // gzippedIn = new LZ4BlockInputStream(new ByteArrayInputStream(bytes));
                 bytes = IOUtils.toByteArray(gzippedIn);
                 gzippedIn.close();
                 return new SeekableFileInputStream(new SeekableInMemoryByteChannel(bytes));
@@ -720,12 +930,30 @@ public SeekableInputStream getSeekableInputStream(String identifier) throws IOEx
             }
         }
 
+        private ZstdDictDecompress getDictionary(int dictId) throws SQLException, IOException {
+            String key = getDataSourceURI() + "#" + dictId; //$NON-NLS-1$
+            ZstdDictDecompress dict = dictCache.get(key);
+            if (dict == null) {
+                try (PreparedStatement ps = conn.prepareStatement(SELECT_DICT)) {
+                    ps.setInt(1, dictId);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        if (!rs.next()) {
+                            throw new IOException("Zstd dictionary " + dictId + " not found"); //$NON-NLS-1$ //$NON-NLS-2$
+                        }
+                        dict = new ZstdDictDecompress(rs.getBytes(1));
+                    }
+                }
+                dictCache.put(key, dict);
+            }
+            return dict;
+        }
+
     }
 
     @Override
     public List<Configurable<?>> getConfigurables() {
         return Arrays.asList(new EnableTaskProperty(ENABLE_PARAM), new ExportByCategoriesConfig(),
-                new ExportByKeywordsConfig());
+                new ExportByKeywordsConfig(), new ContentStorageConfig());
     }
 
     @Override
@@ -735,6 +963,7 @@ public void init(ConfigurationManager configurationManager) throws Exception {
         exportByCategories = configurationManager.findObject(ExportByCategoriesConfig.class);
         exportByKeywords = configurationManager.findObject(ExportByKeywordsConfig.class);
         categoryConfig = configurationManager.findObject(CategoryConfig.class);
+        storageConfig = configurationManager.findObject(ContentStorageConfig.class);
 
         if (automaticExportEnabled && !exportByCategories.hasCategoryToExport() && !exportByKeywords.isEnabled()) {
             throw new IPEDException("Inconsistent configuration: " + ENABLE_PARAM + "=true but " + ExportByCategoriesConfig.CONFIG_FILE + "/" + ExportByKeywordsConfig.CONFIG_FILE + " not configured!");
@@ -755,13 +984,14 @@ public void init(ConfigurationManager configurationManager) throws Exception {
         itensExtracted = 0;
         subDirCounter = 0;
 
-        hashMap = (HashMap<IHashValue, IHashValue>) caseData.getCaseObject(DuplicateTask.HASH_MAP);
+    }
 
+    private static Object getHashLock(String hash) {
+        return hashLocks[Math.floorMod(hash.toUpperCase().hashCode(), hashLocks.length)];
     }
 
     @Override
     public void finish() throws Exception {
-        hashMap.clear();
         if (storageCon.get(output) != null) {
             for (Entry<Integer, Connection> entry : storageCon.get(output).entrySet()) {
                 Connection con = entry.getValue();
@@ -773,6 +1003,9 @@ public void finish() throws Exception {
             }
             storageCon.remove(output);
         }
+        synchronized (dictionaries) {
+            dictionaries.remove(output);
+        }
     }
 
     public static void commitStorage(File output) throws SQLException {
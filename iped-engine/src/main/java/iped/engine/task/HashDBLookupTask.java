@@ -25,6 +25,8 @@
 import iped.engine.config.LocalConfig;
 import iped.engine.hashdb.HashDB;
 import iped.engine.hashdb.HashDBDataSource;
+import iped.engine.hashdb.HashDBFilter;
+import iped.engine.hashdb.HashDBIndex;
 import iped.parsers.util.ChildPornHashLookup;
 import iped.parsers.util.ChildPornHashLookup.LookupProvider;
 
@@ -49,8 +51,13 @@ public class HashDBLookupTask extends AbstractTask {
     private static final AtomicLong totTime = new AtomicLong();
     private static final AtomicLong totProcessed = new AtomicLong();
     private static final AtomicLong totFound = new AtomicLong();
+    private static final AtomicLong filterHits = new AtomicLong();
+    private static final AtomicLong filterMisses = new AtomicLong();
+    private static final AtomicLong filterFalsePositives = new AtomicLong();
 
     private static File hashDBFile;
+    private static HashDBIndex hashDBIndex;
+    private static HashDBFilter[] hashDBFilters;
     private static String[] hashesAttributes;
 
     private HashDBDataSource hashDBDataSource;
@@ -104,7 +111,9 @@ public void init(ConfigurationManager configurationManager) throws Exception {
                                 taskEnabled = false;
                             } else {
                                 excludeKnown = hashDBConfig.isExcludeKnown();
-                                hashDBDataSource = new HashDBDataSource(hashDBFile);
+                                loadIndex();
+                                loadFilters();
+                                hashDBDataSource = new HashDBDataSource(hashDBFile, hashDBIndex);
                                 addLookupProvider(hashDBDataSource);
                                 if (hashDBConfig.getNsrlConfig() != null) {
                                     loadNsrlConfig(hashDBConfig.getNsrlConfig());
@@ -124,10 +133,58 @@ public void init(ConfigurationManager configurationManager) throws Exception {
         }
         if (taskEnabled) {
             hashes = new byte[hashesAttributes.length][];
-            if (hashDBDataSource == null) hashDBDataSource = new HashDBDataSource(hashDBFile);
+            if (hashDBDataSource == null) hashDBDataSource = new HashDBDataSource(hashDBFile, hashDBIndex);
         }
     }
 
+    private void loadIndex() {
+        try {
+            hashDBIndex = HashDBIndex.open(hashDBFile);
+        } catch (Exception e) {
+            logger.warn("Error loading hashes database index", e);
+        }
+        if (hashDBIndex == null) {
+            logger.warn("Hashes database index missing or outdated, lookups will query the database. "
+                    + "Run the hash database tool again over {} to create it.", hashDBFile.getAbsolutePath());
+        } else {
+            logger.info("HashDB index: {}", HashDBIndex.getIndexFile(hashDBFile).getAbsolutePath());
+        }
+    }
+
+    private void loadFilters() {
+        try {
+            HashDBFilter[] filters = HashDBFilter.open(hashDBFile);
+            for (HashDBFilter filter : filters) {
+                if (filter != null) {
+                    logger.info("HashDB filter: {} ({} hashes)", HashDBFilter
+                            .getFilterFile(hashDBFile, filter.getHashType()).getAbsolutePath(), filter.size());
+                    hashDBFilters = filters;
+                }
+            }
+        } catch (Exception e) {
+            logger.warn("Error loading hashes database filters", e);
+        }
+        if (hashDBFilters == null) {
+            logger.warn("Hashes database filters missing or outdated, all lookups will search the database.");
+        }
+    }
+
+    /**
+     * @return true if the filters guarantee that none of the item hashes are in
+     *         the database
+     */
+    private boolean isRejectedByFilters() {
+        for (int i = 0; i < hashes.length; i++) {
+            if (hashes[i] != null) {
+                HashDBFilter filter = hashDBFilters[i];
+                if (filter == null || filter.mightContain(hashes[i])) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
     private void addLookupProvider(HashDBDataSource hashDBDataSource) {
         ChildPornHashLookup.addLookupProvider(new LookupProvider() {
             public List<String> lookupHash(String algorithm, String hash) {
@@ -148,6 +205,9 @@ public void finish() throws Exception {
                 if (hashDBDataSource != null) {
                     hashDBDataSource.close();
                 }
+                if (hashDBIndex != null) {
+                    hashDBIndex.close();
+                }
                 if (excluded > 0) {
                     logger.info("Items ignored by hash database lookup: {}", excluded);
                 }
@@ -156,6 +216,12 @@ public void finish() throws Exception {
                     logger.info("Total items found: {}", totFound.longValue());
                     logger.info("Average processing time (ms/item): {}", String.format("%.2f", totTime.longValue() / 1e6 / totProcessed.longValue()));
                 }
+                long filterPassed = filterHits.longValue() + filterFalsePositives.longValue();
+                if (filterPassed + filterMisses.longValue() > 0) {
+                    logger.info("Filter hits: {}, misses: {}, false positives: {} ({}% of the passed items)",
+                            filterHits.longValue(), filterMisses.longValue(), filterFalsePositives.longValue(),
+                            String.format("%.2f", filterPassed == 0 ? 0 : filterFalsePositives.longValue() * 100.0 / filterPassed));
+                }
                 finish.set(true);
             }
         }
@@ -203,6 +269,15 @@ protected void process(IItem evidence) throws Exception {
                 }
             }
         }
+        boolean filterPassed = false;
+        if (hasHash && hashDBFilters != null) {
+            if (isRejectedByFilters()) {
+                filterMisses.incrementAndGet();
+                hasHash = false;
+            } else {
+                filterPassed = true;
+            }
+        }
         if (hasHash) {
             properties.clear();
             try {
@@ -284,6 +359,10 @@ protected void process(IItem evidence) throws Exception {
         totTime.addAndGet(t);
         totProcessed.incrementAndGet();
         if (found) totFound.incrementAndGet();
+        if (filterPassed) {
+            if (found) filterHits.incrementAndGet();
+            else filterFalsePositives.incrementAndGet();
+        }
     }
 
     private void loadNsrlConfig(String nsrlConfig) {
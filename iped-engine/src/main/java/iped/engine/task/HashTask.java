@@ -18,18 +18,13 @@
  */
 package iped.engine.task;
 
-import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.security.MessageDigest;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.Arrays;
-import java.util.HashMap;
-import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.atomic.AtomicReference;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -38,7 +33,10 @@
 import iped.data.IItem;
 import iped.engine.config.ConfigurationManager;
 import iped.engine.config.HashTaskConfig;
+import iped.engine.task.hash.MultiDigest;
+import iped.engine.task.hash.ReadAheadHasher;
 import iped.parsers.whatsapp.WhatsAppParser;
+import iped.utils.IOUtil;
 
 /**
  * Classe para calcular e manipular hashes.
@@ -49,8 +47,6 @@ public class HashTask extends AbstractTask {
 
     private static final int HASH_BUFFER_LEN = 1024 * 1024;
 
-    private static final ExecutorService executorService = Executors.newCachedThreadPool();
-
     public enum HASH {
         MD5("md5"), //$NON-NLS-1$
         SHA1("sha-1"), //$NON-NLS-1$
@@ -70,7 +66,9 @@ public String toString() {
         }
     }
 
-    private HashMap<String, MessageDigest> digestMap = new LinkedHashMap<String, MessageDigest>();
+    private MultiDigest digests;
+
+    private ReadAheadHasher hasher;
 
     private HashTaskConfig hashConfig;
 
@@ -88,25 +86,21 @@ public List<Configurable<?>> getConfigurables() {
     public void init(ConfigurationManager configurationManager) throws Exception {
         hashConfig = configurationManager.findObject(HashTaskConfig.class);
 
-        for (String algorithm : hashConfig.getAlgorithms()) {
-            MessageDigest digest = null;
-            if (!algorithm.equalsIgnoreCase(HASH.EDONKEY.toString())) {
-                digest = MessageDigest.getInstance(algorithm.toUpperCase());
-            } else {
-                digest = MessageDigest.getInstance("MD4"); //$NON-NLS-1$
-            }
-            digestMap.put(algorithm, digest);
-            if (HASH.SHA256.toString().equals(algorithm)) {
-                System.setProperty(WhatsAppParser.SHA256_ENABLED_SYSPROP, Boolean.TRUE.toString());
-            }
+        digests = new MultiDigest(hashConfig.getAlgorithms());
+        if (hashConfig.getAlgorithms().contains(HASH.SHA256.toString())) {
+            System.setProperty(WhatsAppParser.SHA256_ENABLED_SYSPROP, Boolean.TRUE.toString());
         }
 
+        if (hashConfig.isEnabled() && !digests.isEmpty()) {
+            String name = worker != null ? worker.getName() : Thread.currentThread().getName();
+            hasher = new ReadAheadHasher(hashConfig.getReadAheadBuffers(), HASH_BUFFER_LEN, "HashReader-" + name); //$NON-NLS-1$
+        }
     }
 
     @Override
     public void finish() throws Exception {
-        if (!executorService.isShutdown()) {
-            executorService.shutdown();
+        if (hasher != null) {
+            hasher.close();
         }
     }
 
@@ -116,7 +110,7 @@ public void process(IItem evidence) {
             return;
         }
 
-        if (evidence.getHash() != null || digestMap.isEmpty()
+        if (evidence.getHash() != null || digests.isEmpty()
                 || evidence.getExtraAttribute(IgnoreHardLinkTask.IGNORE_HARDLINK_ATTR) != null) {
             return;
         }
@@ -126,75 +120,34 @@ public void process(IItem evidence) {
             return;
         }
 
-        try (InputStream in = evidence.getBufferedInputStream()) {
-
-            byte[] readBuf = new byte[HASH_BUFFER_LEN];
-            byte[] hashBuf = new byte[HASH_BUFFER_LEN];
-            byte[] tempBuf = null;
-            int len;
-
-            AtomicReference<CountDownLatch> countDown = new AtomicReference<>(null);
-            AtomicReference<Exception> ex = new AtomicReference<Exception>(null);
-
-            while ((len = in.read(readBuf)) >= 0 && !Thread.currentThread().isInterrupted()) {
-
-                if (countDown.get() != null) {
-                    countDown.get().await();
-                }
-
-                countDown.set(new CountDownLatch(digestMap.size()));
-
-                // swap hashBuf <-> readBuf
-                tempBuf = hashBuf;
-                hashBuf = readBuf;
-                readBuf = tempBuf;
-
-                final int currLen = len;
-                final byte[] currHashBuf = hashBuf;
-                for (String algo : digestMap.keySet()) {
-                    executorService.execute(() -> {
-                        try {
-                            if (!algo.equals(HASH.EDONKEY.toString())) {
-                                digestMap.get(algo).update(currHashBuf, 0, currLen);
-                            } else {
-                                updateEd2k(currHashBuf, currLen);
-                            }
-                        } catch (Exception e) {
-                            ex.set(e);
-                        } finally {
-                            countDown.get().countDown();
-                        }
-                    });
+        try {
+            File file = hashConfig.isMemoryMappedReads() ? IOUtil.getFile(evidence) : null;
+            if (file != null && file.isFile()) {
+                try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                    hasher.hash(channel, digests);
                 }
-
-                if (ex.get() != null) {
-                    throw ex.get();
+            } else {
+                try (InputStream in = evidence.getBufferedInputStream()) {
+                    hasher.hash(in, digests);
                 }
             }
 
-            if (countDown.get() != null) {
-                countDown.get().await();
-            }
-
-            boolean defaultHash = true;
-            for (String algo : digestMap.keySet()) {
-                byte[] hash;
-                if (!algo.equals(HASH.EDONKEY.toString())) {
-                    hash = digestMap.get(algo).digest();
-                } else {
-                    hash = digestEd2k();
-                }
-
-                String hashString = getHashString(hash);
-                evidence.setExtraAttribute(algo, hashString);
-
-                if (defaultHash) {
+            String[] algorithms = digests.getAlgorithms();
+            byte[][] hashes = digests.digest();
+            for (int i = 0; i < algorithms.length; i++) {
+                String hashString = getHashString(hashes[i]);
+                evidence.setExtraAttribute(algorithms[i], hashString);
+                if (i == 0) {
                     evidence.setHash(hashString);
                 }
-                defaultHash = false;
             }
 
         } catch (Exception e) {
+            // discards partial state before next item
+            digests.reset();
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
             if (e instanceof IOException) {
                 evidence.setExtraAttribute("ioError", "true"); //$NON-NLS-1$ //$NON-NLS-2$
                 stats.incIoErrors();
@@ -207,48 +160,6 @@ public void process(IItem evidence) {
 
     }
 
-    private static int CHUNK_SIZE = 9500 * 1024;
-    private int chunk = 0, total = 0;
-    private ByteArrayOutputStream out = new ByteArrayOutputStream();
-
-    private void updateEd2k(byte[] buffer, int len) throws IOException {
-
-        MessageDigest md4 = digestMap.get(HASH.EDONKEY.toString());
-        if (chunk + len >= CHUNK_SIZE) {
-            int offset = CHUNK_SIZE - chunk;
-            md4.update(buffer, 0, offset);
-            out.write(md4.digest());
-            chunk = len - offset;
-            md4.update(buffer, offset, chunk);
-        } else {
-            md4.update(buffer, 0, len);
-            chunk += len;
-        }
-        total += len;
-    }
-
-    private byte[] digestEd2k() throws IOException {
-
-        MessageDigest md4 = digestMap.get(HASH.EDONKEY.toString());
-        if (total == 0 || total % CHUNK_SIZE != 0) {
-            out.write(md4.digest());
-        }
-
-        if (out.size() > md4.getDigestLength()) {
-            md4.update(out.toByteArray());
-            out.reset();
-            out.write(md4.digest());
-        }
-
-        byte[] ed2k = out.toByteArray();
-
-        chunk = 0;
-        total = 0;
-        out = new ByteArrayOutputStream();
-
-        return ed2k;
-    }
-
     public static String getHashString(byte[] hash) {
         StringBuilder result = new StringBuilder();
         for (byte b : hash) {
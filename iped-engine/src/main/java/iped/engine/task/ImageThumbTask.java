@@ -86,6 +86,7 @@ public void init(ConfigurationManager configurationManager) throws Exception {
                 System.setProperty(ExternalImageConverter.magickAreaLimitProp, String.valueOf(imgThumbConfig.getMaxMPixelsInMemory()));
                 System.setProperty(ExternalImageConverter.minTimeoutProp, String.valueOf(imgThumbConfig.getMinTimeout()));
                 System.setProperty(ExternalImageConverter.timeoutPerMBProp, String.valueOf(imgThumbConfig.getTimeoutPerMB()));
+                System.setProperty(ExternalImageConverter.poolSizeProp, String.valueOf(imgThumbConfig.getExternalConvProcesses()));
                 
                 if (System.getProperty("os.name").toLowerCase().startsWith("windows")) { //$NON-NLS-1$ //$NON-NLS-2$
                     System.setProperty(ExternalImageConverter.winToolPathPrefixProp,
@@ -165,6 +166,7 @@ public void finish() throws Exception {
         synchronized (finished) {
             if (isEnabled() && !finished.get()) {
                 finished.set(true);
+                ExternalImageConverter.closePool();
                 if (!performanceStatsPerType.isEmpty()) {
                     List<String> types = new ArrayList<String>(performanceStatsPerType.keySet());
                     Collections.sort(types);
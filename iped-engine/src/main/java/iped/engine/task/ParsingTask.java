@@ -75,6 +75,7 @@
 import iped.engine.data.Item;
 import iped.engine.io.MetadataInputStreamFactory;
 import iped.engine.io.ParsingReader;
+import iped.engine.io.SubitemSpool;
 import iped.engine.search.ItemSearcher;
 import iped.engine.task.carver.CarverTask;
 import iped.engine.task.index.IndexItem;
@@ -177,6 +178,7 @@ public class ParsingTask extends ThumbTask implements EmbeddedDocumentExtractor
     private int numSubitems = 0;
     private StandardParser autoParser;
     private long minItemSizeToFragment;
+    private SubitemSpool subitemSpool;
 
     private static Set<MediaType> getTypesToCheckZipbomb() {
         HashSet<MediaType> set = new HashSet<>();
@@ -314,6 +316,7 @@ public void process(IItem evidence) throws Exception {
                 task = new ParsingTask(worker, autoParser);
                 task.parsingConfig = this.parsingConfig;
                 task.expandConfig = this.expandConfig;
+                task.subitemSpool = this.subitemSpool;
                 task.safeProcess(evidence);
 
             } finally {
@@ -667,7 +670,11 @@ public void parseEmbedded(InputStream inputStream, ContentHandler handler, Metad
             try {
                 ExportFileTask extractor = new ExportFileTask();
                 extractor.setWorker(worker);
-                extractor.extractFile(is, subItem, evidence.getLength());
+                if (subitemSpool != null) {
+                    extractor.spoolFile(is, subItem, evidence.getLength(), subitemSpool);
+                } else {
+                    extractor.extractFile(is, subItem, evidence.getLength());
+                }
             } finally {
                 if (updateInputStream) {
                     IOUtil.closeQuietly(is);
@@ -782,8 +789,31 @@ public void init(ConfigurationManager configurationManager) {
 
         setupParsingOptions(configurationManager);
 
+        TextCache.setMaxMemoryChars(parsingConfig.getTextCacheMaxMemoryChars());
+        TextCache.setCompressOnDisk(parsingConfig.isCompressTextCacheOnDisk());
+
         this.autoParser = new StandardParser();
 
+        if (worker != null && parsingConfig.isSubitemSpoolEnabled() && !caseData.isIpedReport()
+                && isExportedAfterParsing()) {
+            subitemSpool = new SubitemSpool(parsingConfig.getSubitemSpoolMemory(),
+                    parsingConfig.getSubitemSpoolMaxMemoryItemSize());
+        }
+
+    }
+
+    /**
+     * Spooled subitems are written to the case storage by ExportFileTask, so it
+     * must run after this task.
+     */
+    private boolean isExportedAfterParsing() {
+        int index = worker.tasks.indexOf(this);
+        for (int i = index + 1; index != -1 && i < worker.tasks.size(); i++) {
+            if (worker.tasks.get(i) instanceof ExportFileTask) {
+                return true;
+            }
+        }
+        return false;
     }
 
     public static void setupParsingOptions(ConfigurationManager configurationManager) {
@@ -874,6 +904,7 @@ private static void setupOCROptions(OCRConfig ocrConfig) {
     public void finish() throws Exception {
         if (totalText != null) {
             LOGGER.info("Total extracted text size: " + totalText.get()); //$NON-NLS-1$
+            LOGGER.info("Subitems spooled in memory: " + SubitemSpool.getItemsSpooled()); //$NON-NLS-1$
             WhatsAppParser.clearStaticResources();
         }
         totalText = null;
@@ -161,6 +161,9 @@ protected void configureOffsetItem(IItem parentItem, Item carvedItem, long offse
         if (parentItem.getIdInDataSource() != null) {
             carvedItem.setIdInDataSource(parentItem.getIdInDataSource());
             carvedItem.setInputStreamFactory(parentItem.getInputStreamFactory());
+            if (parentItem instanceof Item) {
+                carvedItem.retainParentSpooledContent((Item) parentItem);
+            }
         }
 
         // optimization to not create more temp files
@@ -0,0 +1,80 @@
+package iped.engine.task.hash;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * eDonkey hash: MD4 of the concatenated MD4 of each 9500 KB chunk, or the MD4
+ * of the single chunk for small inputs. All state is kept in this object, so
+ * an instance can be reused for any number of inputs, but not shared between
+ * threads.
+ */
+public class Ed2kDigest {
+
+    public static final int CHUNK_SIZE = 9500 * 1024;
+
+    private final MessageDigest md4;
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private int chunk = 0;
+    private long total = 0;
+
+    public Ed2kDigest() throws NoSuchAlgorithmException {
+        md4 = MessageDigest.getInstance("MD4"); //$NON-NLS-1$
+    }
+
+    public void update(byte[] buffer, int offset, int len) {
+        while (chunk + len >= CHUNK_SIZE) {
+            int remaining = CHUNK_SIZE - chunk;
+            md4.update(buffer, offset, remaining);
+            out.writeBytes(md4.digest());
+            offset += remaining;
+            len -= remaining;
+            total += remaining;
+            chunk = 0;
+        }
+        md4.update(buffer, offset, len);
+        chunk += len;
+        total += len;
+    }
+
+    public void update(ByteBuffer buffer) {
+        int limit = buffer.limit();
+        while (chunk + buffer.remaining() >= CHUNK_SIZE) {
+            int remaining = CHUNK_SIZE - chunk;
+            buffer.limit(buffer.position() + remaining);
+            md4.update(buffer);
+            buffer.limit(limit);
+            out.writeBytes(md4.digest());
+            total += remaining;
+            chunk = 0;
+        }
+        int len = buffer.remaining();
+        md4.update(buffer);
+        chunk += len;
+        total += len;
+    }
+
+    public byte[] digest() {
+        if (total == 0 || total % CHUNK_SIZE != 0) {
+            out.writeBytes(md4.digest());
+        }
+        if (out.size() > md4.getDigestLength()) {
+            md4.update(out.toByteArray());
+            out.reset();
+            out.writeBytes(md4.digest());
+        }
+        byte[] ed2k = out.toByteArray();
+        reset();
+        return ed2k;
+    }
+
+    public void reset() {
+        md4.reset();
+        out.reset();
+        chunk = 0;
+        total = 0;
+    }
+
+}
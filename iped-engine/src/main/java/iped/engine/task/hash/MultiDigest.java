@@ -0,0 +1,88 @@
+package iped.engine.task.hash;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+
+import iped.engine.task.HashTask.HASH;
+
+/**
+ * Set of digests computed together in a single pass over the data. Instances
+ * are meant to be reused by the same thread for all items it hashes, avoiding
+ * the creation of digests per item.
+ */
+public class MultiDigest {
+
+    private final String[] algorithms;
+    private final MessageDigest[] digests;
+    private final Ed2kDigest[] ed2kDigests;
+
+    public MultiDigest(List<String> algorithms) throws NoSuchAlgorithmException {
+        int size = algorithms.size();
+        this.algorithms = algorithms.toArray(new String[size]);
+        this.digests = new MessageDigest[size];
+        this.ed2kDigests = new Ed2kDigest[size];
+        for (int i = 0; i < size; i++) {
+            if (this.algorithms[i].equalsIgnoreCase(HASH.EDONKEY.toString())) {
+                ed2kDigests[i] = new Ed2kDigest();
+            } else {
+                digests[i] = MessageDigest.getInstance(this.algorithms[i].toUpperCase());
+            }
+        }
+    }
+
+    public String[] getAlgorithms() {
+        return algorithms;
+    }
+
+    public boolean isEmpty() {
+        return algorithms.length == 0;
+    }
+
+    public void update(byte[] buffer, int offset, int len) {
+        for (int i = 0; i < algorithms.length; i++) {
+            if (digests[i] != null) {
+                digests[i].update(buffer, offset, len);
+            } else {
+                ed2kDigests[i].update(buffer, offset, len);
+            }
+        }
+    }
+
+    public void update(ByteBuffer buffer) {
+        int position = buffer.position();
+        for (int i = 0; i < algorithms.length; i++) {
+            buffer.position(position);
+            if (digests[i] != null) {
+                digests[i].update(buffer);
+            } else {
+                ed2kDigests[i].update(buffer);
+            }
+        }
+    }
+
+    /**
+     * Completes the computation and resets all digests.
+     *
+     * @return the hashes in the same order of the algorithms
+     */
+    public byte[][] digest() {
+        byte[][] hashes = new byte[algorithms.length][];
+        for (int i = 0; i < algorithms.length; i++) {
+            hashes[i] = digests[i] != null ? digests[i].digest() : ed2kDigests[i].digest();
+        }
+        return hashes;
+    }
+
+    public void reset() {
+        for (int i = 0; i < algorithms.length; i++) {
+            if (digests[i] != null) {
+                digests[i].reset();
+            } else {
+                ed2kDigests[i].reset();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,233 @@
+package iped.engine.task.hash;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.SynchronousQueue;
+
+/**
+ * Hashing pipeline: a dedicated reader thread fills a ring of buffers while
+ * the calling thread updates the digests with the previously read ones, so
+ * reading and hashing are overlapped without any per buffer task submission.
+ * Each instance serves one calling thread (e.g. one worker).
+ *
+ * Streams are read into reusable heap buffers, since InputStream can only
+ * write to arrays. Files can be memory mapped instead, in that case the reader
+ * thread maps and pages in the next window while the current one is hashed.
+ *
+ * If the number of buffers is zero, no reader thread is created and data is
+ * read and hashed by the calling thread.
+ */
+public class ReadAheadHasher implements Closeable {
+
+    private static final int MMAP_WINDOW_SIZE = 64 * 1024 * 1024;
+
+    private static final ByteBuffer END = ByteBuffer.allocate(0);
+
+    private static class Job {
+        private final InputStream in;
+        private final FileChannel channel;
+        private volatile boolean cancelled = false;
+        private volatile Exception error;
+
+        private Job(InputStream in, FileChannel channel) {
+            this.in = in;
+            this.channel = channel;
+        }
+    }
+
+    private final int bufferSize;
+    private final BlockingQueue<ByteBuffer> freeBuffers;
+    private final BlockingQueue<ByteBuffer> filledBuffers;
+    private final SynchronousQueue<Job> jobs = new SynchronousQueue<>();
+    private final ByteBuffer inlineBuffer;
+    private final Thread readerThread;
+
+    public ReadAheadHasher(int numBuffers, int bufferSize, String name) {
+        this.bufferSize = bufferSize;
+        if (numBuffers > 0) {
+            freeBuffers = new ArrayBlockingQueue<>(numBuffers);
+            filledBuffers = new ArrayBlockingQueue<>(numBuffers);
+            for (int i = 0; i < numBuffers; i++) {
+                freeBuffers.add(ByteBuffer.allocate(bufferSize));
+            }
+            inlineBuffer = null;
+            readerThread = new Thread(this::readLoop, name);
+            readerThread.setDaemon(true);
+            readerThread.start();
+        } else {
+            freeBuffers = null;
+            filledBuffers = null;
+            inlineBuffer = ByteBuffer.allocate(bufferSize);
+            readerThread = null;
+        }
+    }
+
+    public void hash(InputStream in, MultiDigest digest) throws IOException, InterruptedException {
+        if (readerThread == null) {
+            byte[] buf = inlineBuffer.array();
+            int len;
+            while ((len = in.read(buf)) >= 0) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedException();
+                }
+                digest.update(buf, 0, len);
+            }
+        } else {
+            consume(new Job(in, null), digest);
+        }
+    }
+
+    public void hash(FileChannel channel, MultiDigest digest) throws IOException, InterruptedException {
+        if (readerThread == null) {
+            long size = channel.size();
+            for (long pos = 0; pos < size; pos += MMAP_WINDOW_SIZE) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedException();
+                }
+                digest.update(channel.map(MapMode.READ_ONLY, pos, Math.min(MMAP_WINDOW_SIZE, size - pos)));
+            }
+        } else {
+            consume(new Job(null, channel), digest);
+        }
+    }
+
+    private void consume(Job job, MultiDigest digest) throws IOException, InterruptedException {
+        jobs.put(job);
+        try {
+            ByteBuffer buffer;
+            while ((buffer = filledBuffers.take()) != END) {
+                try {
+                    digest.update(buffer);
+                } finally {
+                    recycle(buffer);
+                }
+            }
+        } catch (InterruptedException | RuntimeException e) {
+            job.cancelled = true;
+            drain();
+            throw e;
+        }
+        if (job.error instanceof IOException) {
+            throw (IOException) job.error;
+        } else if (job.error != null) {
+            throw new IOException(job.error);
+        }
+    }
+
+    /**
+     * Waits the reader thread to stop working on a cancelled job, recycling the
+     * buffers it has already filled.
+     */
+    private void drain() {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                ByteBuffer buffer = filledBuffers.take();
+                if (buffer == END) {
+                    break;
+                }
+                recycle(buffer);
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void recycle(ByteBuffer buffer) {
+        // mapped buffers are not reused
+        if (!buffer.isDirect()) {
+            freeBuffers.add(buffer);
+        }
+    }
+
+    private void readLoop() {
+        while (true) {
+            Job job;
+            try {
+                job = jobs.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            try {
+                if (job.channel != null) {
+                    readMapped(job);
+                } else {
+                    readStream(job);
+                }
+            } catch (Exception e) {
+                job.error = e;
+            } finally {
+                putEnd();
+            }
+        }
+    }
+
+    private void putEnd() {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                // the consumer always drains the buffers until END
+                filledBuffers.put(END);
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void readStream(Job job) throws IOException, InterruptedException {
+        while (!job.cancelled) {
+            ByteBuffer buffer = freeBuffers.take();
+            byte[] buf = buffer.array();
+            int len = 0, read = 0;
+            try {
+                while (len < bufferSize && !job.cancelled && (read = job.in.read(buf, len, bufferSize - len)) >= 0) {
+                    len += read;
+                }
+            } catch (IOException | RuntimeException e) {
+                freeBuffers.add(buffer);
+                throw e;
+            }
+            if (len == 0) {
+                freeBuffers.add(buffer);
+                return;
+            }
+            buffer.clear().limit(len);
+            filledBuffers.put(buffer);
+            if (read < 0) {
+                return;
+            }
+        }
+    }
+
+    private void readMapped(Job job) throws IOException, InterruptedException {
+        long size = job.channel.size();
+        for (long pos = 0; pos < size && !job.cancelled; pos += MMAP_WINDOW_SIZE) {
+            MappedByteBuffer buffer = job.channel.map(MapMode.READ_ONLY, pos, Math.min(MMAP_WINDOW_SIZE, size - pos));
+            // pages in the window while the previous one is being hashed
+            buffer.load();
+            filledBuffers.put(buffer);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (readerThread != null) {
+            readerThread.interrupt();
+        }
+    }
+
+}
@@ -73,6 +73,8 @@
 
 import iped.data.IItem;
 import iped.datasource.IDataSource;
+import iped.engine.config.ConfigurationManager;
+import iped.engine.config.IndexTaskConfig;
 import iped.engine.data.DataSource;
 import iped.engine.data.IPEDSource;
 import iped.engine.data.Item;
@@ -80,6 +82,7 @@
 import iped.engine.sleuthkit.SleuthkitInputStreamFactory;
 import iped.engine.task.ImageThumbTask;
 import iped.engine.task.MinIOTask.MinIOInputInputStreamFactory;
+import iped.engine.task.similarity.ImageSimilarity;
 import iped.engine.task.similarity.ImageSimilarityTask;
 import iped.engine.util.Util;
 import iped.parsers.ocr.OCRParser;
@@ -131,6 +134,8 @@ public class IndexItem extends BasicProps {
     private static FieldType storedTokenizedNoNormsField = new FieldType();
     private static FieldType dateField = new FieldType();
 
+    private static Boolean indexImageSimilarityVectors;
+
     static {
         storedTokenizedNoNormsField.setIndexOptions(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS);
         storedTokenizedNoNormsField.setOmitNorms(true);
@@ -159,6 +164,16 @@ public class IndexItem extends BasicProps {
         BasicProps.SET.add(SOURCE_DECODER);
     }
 
+    private static boolean isIndexImageSimilarityVectors() {
+        if (indexImageSimilarityVectors == null) {
+            ConfigurationManager configManager = ConfigurationManager.get();
+            IndexTaskConfig indexConfig = configManager != null ? configManager.findObject(IndexTaskConfig.class)
+                    : null;
+            indexImageSimilarityVectors = indexConfig != null && indexConfig.isIndexImageSimilarityVectors();
+        }
+        return indexImageSimilarityVectors;
+    }
+
     public static boolean isByte(String field) {
         return Byte.class.equals(typesMap.get(field));
     }
@@ -237,6 +252,14 @@ public static final String normalize(String value, boolean toLowerCase) {
     }
 
     public static Document Document(IItem evidence, File output) {
+        return Document(evidence, output, null);
+    }
+
+    /**
+     * @param timeEvents
+     *            if not null, time events of the item are also written to it
+     */
+    public static Document Document(IItem evidence, File output, TimeEventFile.Writer timeEvents) {
         Document doc = new Document();
 
         doc.add(new IntPoint(ID, evidence.getId()));
@@ -425,6 +448,10 @@ public static Document Document(IItem evidence, File output) {
             doc.add(new StoredField(ImageSimilarityTask.IMAGE_FEATURES, similarityFeatures));
             doc.add(new IntPoint(ImageSimilarityTask.IMAGE_FEATURES, similarityFeatures[0], similarityFeatures[1],
                     similarityFeatures[2], similarityFeatures[3]));
+            if (similarityFeatures.length == ImageSimilarity.numFeatures && isIndexImageSimilarityVectors()) {
+                doc.add(new KnnVectorField(ImageSimilarityTask.IMAGE_FEATURES_KNN,
+                        ImageSimilarity.toVector(similarityFeatures)));
+            }
         }
 
         long off = evidence.getFileOffset();
@@ -455,6 +482,14 @@ public static Document Document(IItem evidence, File output) {
 
         storeTimeStamps(doc, timeEventSet);
 
+        if (timeEvents != null) {
+            for (TimeStampEvent tse : timeEventSet) {
+                if (tse.timeStamp != null && !tse.timeStamp.isEmpty()) {
+                    timeEvents.add(tse.timeStamp, tse.timeEvent, evidence.getId());
+                }
+            }
+        }
+
         return doc;
     }
 
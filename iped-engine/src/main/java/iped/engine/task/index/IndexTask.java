@@ -62,6 +62,7 @@ public class IndexTask extends AbstractTask {
 
     private static final AtomicBoolean finished = new AtomicBoolean();
     private static final AtomicBoolean lastIDLoaded = new AtomicBoolean();
+    private static Boolean writeTimeEvents;
 
     private static FieldType contentField;
 
@@ -82,6 +83,8 @@ private static final FieldType getContentFieldType() {
 
     private IndexTaskConfig indexConfig;
 
+    private TimeEventFile.Writer timeEventWriter;
+
     public static boolean isTreeNodeOnly(IItem item) {
         return (!item.isToAddToCase() && (item.isDir() || item.isRoot() || item.hasChildren()))
                 || item.getExtraAttribute(IndexItem.TREENODE) != null;
@@ -209,7 +212,7 @@ public Document next() {
                         }
                         item.setExtraAttribute(TEXT_SIZE, fragReader.getTotalTextSize());
                         // parent (metadata) document
-                        Document doc = IndexItem.Document(item, output);
+                        Document doc = IndexItem.Document(item, output, timeEventWriter);
                         parentIndexed = true;
                         return doc;
                     }
@@ -260,11 +263,39 @@ public void init(ConfigurationManager configurationManager) throws Exception {
 
         this.autoParser = new StandardParser();
 
+        synchronized (IndexTask.class) {
+            if (writeTimeEvents == null) {
+                // when adding to an existing case, only write if events of previous items
+                // were completely written
+                boolean newCase = !args.isAppendIndex() && !args.isContinue() && !args.isRestart();
+                // restarting discards the items indexed after the first commit, but old files
+                // may have their events, so they are deleted. If items remain, their events
+                // are lost and files are not written anymore.
+                boolean emptyRestart = args.isRestart() && worker.writer.getDocStats().numDocs == 0;
+                if (newCase || args.isRestart()) {
+                    TimeEventFile.deleteFiles(output);
+                }
+                writeTimeEvents = newCase || emptyRestart || TimeEventFile.getFiles(output) != null;
+            }
+            if (writeTimeEvents) {
+                timeEventWriter = new TimeEventFile.Writer(output);
+            }
+        }
+
     }
 
     @Override
     public void finish() throws Exception {
 
+        if (timeEventWriter != null) {
+            timeEventWriter.close();
+            timeEventWriter = null;
+        }
+        synchronized (IndexTask.class) {
+            // decided again by the next processing in this jvm
+            writeTimeEvents = null;
+        }
+
         if (!finished.getAndSet(true)) {
             saveExtraAttributes(output);
             IndexItem.saveMetadataTypes(new File(output, "conf")); //$NON-NLS-1$
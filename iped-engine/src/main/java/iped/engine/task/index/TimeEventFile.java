@@ -0,0 +1,400 @@
+package iped.engine.task.index;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.lucene.util.IntroSorter;
+
+/**
+ * Columnar file with the time events of indexed items, written while indexing
+ * so the timeline chart does not need to iterate over timestamp doc values to
+ * build its caches. Each indexing worker writes its own file, as a sequence of
+ * blocks sorted by time. A block has a header with its event count, time range
+ * and event names, followed by the columns: epoch seconds (long), event name
+ * index (int) and item id (int).
+ * <p>
+ * Files are written with a temporary name and renamed when the worker
+ * finishes. If a temporary file is found, a previous processing was
+ * interrupted and readers must not trust the files of the case.
+ */
+public class TimeEventFile {
+
+    private static Logger logger = LogManager.getLogger(TimeEventFile.class);
+
+    public static final String DIR = "data/timeEvents"; //$NON-NLS-1$
+
+    private static final String EXT = ".bin"; //$NON-NLS-1$
+
+    private static final String TMP_EXT = ".tmp"; //$NON-NLS-1$
+
+    private static final int MAGIC = 0x54455631; // TEV1
+
+    private static final int BLOCK_SIZE = 1 << 18;
+
+    private static final AtomicInteger fileCounter = new AtomicInteger();
+
+    public interface EventConsumer {
+
+        /**
+         * Called for each event of a block, in increasing time order.
+         */
+        void accept(long epochSecond, String event, int itemId) throws IOException;
+    }
+
+    public static File getDir(File moduleDir) {
+        return new File(moduleDir, DIR);
+    }
+
+    /**
+     * @return the complete time event files of the case, or null if there is no
+     *         file or if an incomplete one exists
+     */
+    public static File[] getFiles(File moduleDir) {
+        File[] files = getDir(moduleDir).listFiles();
+        if (files == null) {
+            return null;
+        }
+        List<File> result = new ArrayList<>();
+        for (File file : files) {
+            if (file.getName().endsWith(TMP_EXT)) {
+                return null;
+            }
+            if (file.getName().endsWith(EXT)) {
+                result.add(file);
+            }
+        }
+        if (result.isEmpty()) {
+            return null;
+        }
+        File[] array = result.toArray(new File[0]);
+        Arrays.sort(array);
+        return array;
+    }
+
+    /**
+     * Deletes time event files left by a previous processing in the same output.
+     */
+    public static void deleteFiles(File moduleDir) {
+        File[] files = getDir(moduleDir).listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+
+    /**
+     * Parses the seconds since epoch of a timestamp in index format
+     * (yyyy-MM-ddTHH:mm:ssZ).
+     *
+     * @return the epoch second or null if the timestamp is not in index format
+     */
+    public static Long parseTimeStamp(String timeStamp) {
+        if (timeStamp.length() < 19) {
+            return null;
+        }
+        int year = parseDigits(timeStamp, 0, 4);
+        int month = parseDigits(timeStamp, 5, 7);
+        int day = parseDigits(timeStamp, 8, 10);
+        int hour = parseDigits(timeStamp, 11, 13);
+        int minute = parseDigits(timeStamp, 14, 16);
+        int second = parseDigits(timeStamp, 17, 19);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > 31 || hour < 0 || hour > 23 || minute < 0
+                || minute > 59 || second < 0 || second > 59) {
+            return null;
+        }
+        try {
+            return LocalDateTime.of(year, month, day, hour, minute, second).toEpochSecond(ZoneOffset.UTC);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static int parseDigits(String s, int start, int end) {
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    /**
+     * Formats the epoch second as a timestamp in index format, into the given
+     * 20 bytes array.
+     */
+    public static byte[] formatTimeStamp(long epochSecond, byte[] bytes) {
+        LocalDateTime date = LocalDateTime.ofEpochSecond(epochSecond, 0, ZoneOffset.UTC);
+        putDigits(bytes, 0, 4, date.getYear());
+        bytes[4] = '-';
+        putDigits(bytes, 5, 7, date.getMonthValue());
+        bytes[7] = '-';
+        putDigits(bytes, 8, 10, date.getDayOfMonth());
+        bytes[10] = 'T';
+        putDigits(bytes, 11, 13, date.getHour());
+        bytes[13] = ':';
+        putDigits(bytes, 14, 16, date.getMinute());
+        bytes[16] = ':';
+        putDigits(bytes, 17, 19, date.getSecond());
+        bytes[19] = 'Z';
+        return bytes;
+    }
+
+    private static void putDigits(byte[] bytes, int start, int end, int value) {
+        for (int i = end - 1; i >= start; i--) {
+            bytes[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+
+    /**
+     * Writes the time events of one indexing worker. Not thread safe. If some
+     * write fails, the file is kept with its temporary name, so the timeline falls
+     * back to doc values.
+     */
+    public static class Writer implements Closeable {
+
+        private final File tmpFile;
+        private final File file;
+        private final OutputStream out;
+
+        private final long[] seconds = new long[BLOCK_SIZE];
+        private final int[] events = new int[BLOCK_SIZE];
+        private final int[] ids = new int[BLOCK_SIZE];
+        private int size = 0;
+        private boolean failed = false;
+
+        private final HashMap<String, Integer> eventIndex = new HashMap<>();
+        private final ArrayList<String> eventNames = new ArrayList<>();
+
+        public Writer(File moduleDir) throws IOException {
+            File dir = getDir(moduleDir);
+            dir.mkdirs();
+            String name = "events-" + System.currentTimeMillis() + "-" + fileCounter.getAndIncrement(); //$NON-NLS-1$ //$NON-NLS-2$
+            this.tmpFile = new File(dir, name + TMP_EXT);
+            this.file = new File(dir, name + EXT);
+            this.out = new FileOutputStream(tmpFile);
+            DataOutputStream header = new DataOutputStream(out);
+            header.writeInt(MAGIC);
+            header.flush();
+        }
+
+        public void add(String timeStamp, String event, int itemId) {
+            Long epochSecond = parseTimeStamp(timeStamp);
+            if (epochSecond == null || failed) {
+                return;
+            }
+            Integer idx = eventIndex.get(event);
+            if (idx == null) {
+                idx = eventNames.size();
+                eventIndex.put(event, idx);
+                eventNames.add(event);
+            }
+            seconds[size] = epochSecond;
+            events[size] = idx;
+            ids[size] = itemId;
+            if (++size == BLOCK_SIZE) {
+                try {
+                    flushBlock();
+                } catch (IOException e) {
+                    failed = true;
+                    logger.warn("Error writing time events to " + tmpFile.getAbsolutePath(), e); //$NON-NLS-1$
+                }
+            }
+        }
+
+        private void flushBlock() throws IOException {
+            if (size == 0) {
+                return;
+            }
+            sortBlock();
+
+            ByteArrayOutputStream names = new ByteArrayOutputStream();
+            DataOutputStream namesOut = new DataOutputStream(names);
+            for (String event : eventNames) {
+                byte[] bytes = event.getBytes(StandardCharsets.UTF_8);
+                namesOut.writeInt(bytes.length);
+                namesOut.write(bytes);
+            }
+            namesOut.flush();
+
+            ByteBuffer bb = ByteBuffer.allocate(Block.HEADER_SIZE + names.size() + size * Block.BYTES_PER_EVENT);
+            bb.putInt(bb.capacity());
+            bb.putInt(size);
+            bb.putLong(seconds[0]);
+            bb.putLong(seconds[size - 1]);
+            bb.putInt(eventNames.size());
+            bb.put(names.toByteArray());
+            for (int i = 0; i < size; i++) {
+                bb.putLong(seconds[i]);
+            }
+            for (int i = 0; i < size; i++) {
+                bb.putInt(events[i]);
+            }
+            for (int i = 0; i < size; i++) {
+                bb.putInt(ids[i]);
+            }
+            out.write(bb.array());
+
+            size = 0;
+            eventIndex.clear();
+            eventNames.clear();
+        }
+
+        private void sortBlock() {
+            new IntroSorter() {
+
+                long pivotSecond;
+                int pivotId;
+
+                @Override
+                protected void swap(int i, int j) {
+                    long s = seconds[i];
+                    seconds[i] = seconds[j];
+                    seconds[j] = s;
+                    int e = events[i];
+                    events[i] = events[j];
+                    events[j] = e;
+                    int id = ids[i];
+                    ids[i] = ids[j];
+                    ids[j] = id;
+                }
+
+                @Override
+                protected void setPivot(int i) {
+                    pivotSecond = seconds[i];
+                    pivotId = ids[i];
+                }
+
+                @Override
+                protected int comparePivot(int j) {
+                    int cmp = Long.compare(pivotSecond, seconds[j]);
+                    return cmp != 0 ? cmp : Integer.compare(pivotId, ids[j]);
+                }
+            }.sort(0, size);
+        }
+
+        /**
+         * Writes the pending events and renames the file to its final name.
+         */
+        @Override
+        public void close() throws IOException {
+            try {
+                if (!failed) {
+                    flushBlock();
+                }
+            } finally {
+                out.close();
+            }
+            if (!failed && !tmpFile.renameTo(file)) {
+                throw new IOException("Error renaming " + tmpFile.getAbsolutePath()); //$NON-NLS-1$
+            }
+        }
+    }
+
+    /**
+     * A memory mapped block of a time event file.
+     */
+    public static class Block {
+
+        private static final int HEADER_SIZE = 28;
+
+        private static final int BYTES_PER_EVENT = 16;
+
+        private final MappedByteBuffer buffer;
+        private final int size;
+        private final long minSecond, maxSecond;
+        private final String[] eventNames;
+        private final int secondsPos, eventsPos, idsPos;
+
+        private Block(MappedByteBuffer buffer) {
+            this.buffer = buffer;
+            this.size = buffer.getInt(4);
+            this.minSecond = buffer.getLong(8);
+            this.maxSecond = buffer.getLong(16);
+            this.eventNames = new String[buffer.getInt(24)];
+            int pos = HEADER_SIZE;
+            for (int i = 0; i < eventNames.length; i++) {
+                int len = buffer.getInt(pos);
+                byte[] bytes = new byte[len];
+                buffer.position(pos + 4);
+                buffer.get(bytes);
+                eventNames[i] = new String(bytes, StandardCharsets.UTF_8);
+                pos += 4 + len;
+            }
+            this.secondsPos = pos;
+            this.eventsPos = secondsPos + size * Long.BYTES;
+            this.idsPos = eventsPos + size * Integer.BYTES;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public long getMinSecond() {
+            return minSecond;
+        }
+
+        public long getMaxSecond() {
+            return maxSecond;
+        }
+
+        public void forEach(EventConsumer consumer) throws IOException {
+            for (int i = 0; i < size; i++) {
+                long second = buffer.getLong(secondsPos + i * Long.BYTES);
+                String event = eventNames[buffer.getInt(eventsPos + i * Integer.BYTES)];
+                consumer.accept(second, event, buffer.getInt(idsPos + i * Integer.BYTES));
+            }
+        }
+    }
+
+    /**
+     * Maps the blocks of a time event file. A truncated last block is ignored.
+     */
+    public static List<Block> readBlocks(File file) throws IOException {
+        List<Block> blocks = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long length = channel.size();
+            ByteBuffer header = ByteBuffer.allocate(4);
+            channel.read(header, 0);
+            if (length < 4 || header.getInt(0) != MAGIC) {
+                throw new IOException("Invalid time event file " + file.getAbsolutePath()); //$NON-NLS-1$
+            }
+            long pos = 4;
+            while (pos + Block.HEADER_SIZE <= length) {
+                header.clear();
+                channel.read(header, pos);
+                int blockSize = header.getInt(0);
+                if (blockSize < Block.HEADER_SIZE || pos + blockSize > length) {
+                    break;
+                }
+                blocks.add(new Block(channel.map(FileChannel.MapMode.READ_ONLY, pos, blockSize)));
+                pos += blockSize;
+            }
+        }
+        return blocks;
+    }
+
+}
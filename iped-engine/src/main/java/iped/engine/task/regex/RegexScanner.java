@@ -0,0 +1,111 @@
+package iped.engine.task.regex;
+
+import java.io.IOException;
+import java.io.Reader;
+
+import dk.brics.automaton.RunAutomaton;
+
+/**
+ * Finds the same leftmost longest, non overlapping matches as
+ * {@link dk.brics.automaton.AutomatonMatcher}, but running the automaton
+ * directly over a fixed char buffer filled from a Reader. When a match attempt
+ * reaches the end of the buffer, its chars are carried over to the next
+ * window, so matches crossing window boundaries are found. Carried chars are
+ * limited to maxOverlap; longer attempts are ended at the window boundary, as
+ * if the text ended there.
+ */
+class RegexScanner {
+
+    interface MatchHandler {
+
+        /**
+         * @param buf
+         *            buffer holding the match, only valid during the call
+         * @param start
+         *            match start in buf
+         * @param end
+         *            match end in buf, exclusive
+         * @param offset
+         *            offset of the match start in the whole text
+         */
+        void onMatch(char[] buf, int start, int end, long offset) throws IOException;
+    }
+
+    private final RunAutomaton automaton;
+
+    private final char[] buf;
+
+    private final int maxOverlap;
+
+    RegexScanner(RunAutomaton automaton, int windowSize, int maxOverlap) {
+        if (maxOverlap >= windowSize) {
+            throw new IllegalArgumentException("maxOverlap must be smaller than windowSize"); //$NON-NLS-1$
+        }
+        this.automaton = automaton;
+        this.buf = new char[windowSize];
+        this.maxOverlap = maxOverlap;
+    }
+
+    void scan(Reader reader, MatchHandler handler) throws IOException {
+        final RunAutomaton automaton = this.automaton;
+        final char[] buf = this.buf;
+        final int initial = automaton.getInitialState();
+        final boolean initialAccept = automaton.isAccept(initial);
+        long bufOffset = 0;
+        int len = 0;
+        boolean eof = false;
+        while (!eof) {
+            int k = 0;
+            while (len < buf.length && (k = reader.read(buf, len, buf.length - len)) != -1) {
+                len += k;
+            }
+            eof = k == -1;
+
+            int begin = 0;
+            while (begin < len) {
+                int p = initial;
+                int matchEnd = initialAccept ? begin : -1;
+                int i = begin;
+                for (; i < len; i++) {
+                    p = automaton.step(p, buf[i]);
+                    if (p == -1) {
+                        break;
+                    }
+                    if (automaton.isAccept(p)) {
+                        matchEnd = i + 1;
+                    }
+                }
+                if (i == len && p != -1 && !eof && len - begin <= maxOverlap) {
+                    // the match may continue in the next window
+                    break;
+                }
+                if (matchEnd != -1) {
+                    handler.onMatch(buf, begin, matchEnd, bufOffset + begin);
+                    begin = matchEnd > begin ? matchEnd : begin + 1;
+                } else {
+                    begin++;
+                }
+            }
+            if (begin < len) {
+                System.arraycopy(buf, begin, buf, 0, len - begin);
+            }
+            bufOffset += begin;
+            len -= begin;
+        }
+    }
+
+    /**
+     * @return true if the automaton accepts exactly the chars from start to end
+     */
+    static boolean matches(RunAutomaton automaton, char[] buf, int start, int end) {
+        int p = automaton.getInitialState();
+        for (int i = start; i < end; i++) {
+            p = automaton.step(p, buf[i]);
+            if (p == -1) {
+                return false;
+            }
+        }
+        return automaton.isAccept(p);
+    }
+
+}
@@ -28,7 +28,6 @@
 import org.slf4j.LoggerFactory;
 
 import dk.brics.automaton.Automaton;
-import dk.brics.automaton.AutomatonMatcher;
 import dk.brics.automaton.BasicOperations;
 import dk.brics.automaton.DatatypesAutomatonProvider;
 import dk.brics.automaton.RegExp;
@@ -59,6 +58,11 @@ public class RegexTask extends AbstractTask {
 
     private static Logger logger = LoggerFactory.getLogger(RegexTask.class);
 
+    /**
+     * Changes cache key when cached automata change, 2: tableized full automaton.
+     */
+    private static final int CACHE_VERSION = 2;
+
     private static final File cacheFile = new File(System.getProperty("user.home"), ".iped/regexAutomata.cache");
 
     private static List<Regex> regexList;
@@ -87,7 +91,17 @@ public class RegexTask extends AbstractTask {
         ignoredKeys.add(PhotoDNALookup.PHOTO_DNA_NEAREAST_HASH);
     }
 
-    private char[] cbuf = new char[1 << 20];
+    private static final int WINDOW_SIZE = 1 << 20;
+
+    /**
+     * Max chars of a match attempt carried over to the next window. Longer
+     * matches crossing a window boundary are cut there.
+     */
+    private static final int MAX_OVERLAP = 1 << 16;
+
+    private RegexScanner scanner;
+
+    private List<Map<String, RegexHits>> hitList;
 
     private static RegexValidator regexValidator;
 
@@ -112,11 +126,20 @@ public Regex(String name, int prefix, int sufix, boolean ignoreCases, boolean ig
             this.sufix = sufix;
         }
 
-        public Regex(String name, Automaton automaton) {
-            this(name, automaton, false, false);
+        public Regex(String name, Automaton automaton, boolean tableize) {
+            this(name, automaton, false, false, tableize);
         }
 
         public Regex(String name, Automaton aut, boolean ignoreCases, boolean ignoreDiacritics) {
+            this(name, aut, ignoreCases, ignoreDiacritics, false);
+        }
+
+        /**
+         * @param tableize
+         *            builds a 64K entries char class table, so each step is a
+         *            direct lookup. Worth for the automaton scanning all text.
+         */
+        public Regex(String name, Automaton aut, boolean ignoreCases, boolean ignoreDiacritics, boolean tableize) {
             if (ignoreCases) {
                 aut = ignoreCases(aut);
             }
@@ -126,7 +149,7 @@ public Regex(String name, Automaton aut, boolean ignoreCases, boolean ignoreDiac
             this.ignoreCases = ignoreCases;
             this.name = name;
             this.automaton = aut;
-            this.pattern = new RunAutomaton(aut);
+            this.pattern = new RunAutomaton(aut, tableize);
         }
     }
 
@@ -205,7 +228,7 @@ public void init(ConfigurationManager configurationManager) throws Exception {
                     automatonList.add(regex.automaton);
                 }
                 Automaton automata = BasicOperations.union(automatonList);
-                regexFull = new Regex("FULL", automata); //$NON-NLS-1$
+                regexFull = new Regex("FULL", automata, true); //$NON-NLS-1$
                 logger.info("Created the unique automaton for all regexes.");
 
                 writeCache(regexConfig, exportConfig);
@@ -261,6 +284,7 @@ private byte[] getMd5FromConfigs(RegexTaskConfig regexConfig, ExportByKeywordsCo
             throws IOException {
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
         try (ObjectOutputStream oos = new ObjectOutputStream(baos)) {
+            oos.writeInt(CACHE_VERSION);
             oos.writeObject(regexConfig);
             oos.writeObject(exportConfig);
         }
@@ -310,76 +334,78 @@ private Reader getExtraAttributeReader(IItem item) {
     @SuppressWarnings("unchecked")
     private void processRegex(IItem evidence, Reader reader) throws IOException {
 
-        int k = 0;
-        long totalOffset = 0;
-        while (k != -1) {
-            int off = 0;
-            k = 0;
-            while (k != -1 && (off += k) < cbuf.length)
-                k = reader.read(cbuf, off, cbuf.length - off);
-
-            String text = new String(cbuf, 0, off);
-
-            List<Map<String, RegexHits>> hitList = new ArrayList<Map<String, RegexHits>>();
+        if (scanner == null) {
+            scanner = new RegexScanner(regexFull.pattern, WINDOW_SIZE, MAX_OVERLAP);
+            hitList = new ArrayList<>();
             for (int i = 0; i < regexList.size(); i++) {
                 hitList.add(new HashMap<>());
             }
-
-            AutomatonMatcher fullMatcher = regexFull.pattern.newMatcher(text);
-            while (fullMatcher.find()) {
-                int start = fullMatcher.start();
-                int end = fullMatcher.end();
-                String fullHit = text.substring(start, end);
-                int i = 0;
-                for (Regex regex : regexList) {
-                    if (regex.pattern.run(fullHit)) {
-                        String hit = fullHit.substring(regex.prefix, fullHit.length() - regex.sufix);
-                        if (regex.ignoreCases)
-                            hit = hit.toLowerCase();
-                        if (regexValidator.validate(regex, hit)) {
-                            if (regexConfig.isFormatRegexMatches()) {
-                                hit = regexValidator.format(regex, hit);
-                            }
-                            Map<String, RegexHits> hitMap = hitList.get(i);
-                            RegexHits hits = hitMap.get(hit);
+        }
+        for (Map<String, RegexHits> hitMap : hitList) {
+            hitMap.clear();
+        }
+        boolean[] maxHitsReached = new boolean[regexList.size()];
+
+        scanner.scan(reader, (buf, start, end, offset) -> {
+            int i = 0;
+            for (Regex regex : regexList) {
+                int hitStart = start + regex.prefix;
+                int hitEnd = end - regex.sufix;
+                if (hitStart <= hitEnd && RegexScanner.matches(regex.pattern, buf, start, end)) {
+                    String hit = new String(buf, hitStart, hitEnd - hitStart);
+                    if (regex.ignoreCases)
+                        hit = hit.toLowerCase();
+                    if (regexValidator.validate(regex, hit)) {
+                        if (regexConfig.isFormatRegexMatches()) {
+                            hit = regexValidator.format(regex, hit);
+                        }
+                        Map<String, RegexHits> hitMap = hitList.get(i);
+                        RegexHits hits = hitMap.get(hit);
+                        if (hits == null && hitMap.size() >= MAX_RESULTS) {
+                            maxHitsReached[i] = true;
+                        } else {
                             if (hits == null) {
                                 hits = new RegexHits(hit);
                                 hitMap.put(hit, hits);
                             }
-                            hits.addOffset(totalOffset + start + regex.prefix);
+                            hits.addOffset(offset + regex.prefix);
                         }
                     }
-                    i++;
                 }
+                i++;
             }
-            for (int i = 0; i < regexList.size(); i++) {
-                if (hitList.get(i).size() > 0) {
-                    String key = REGEX_PREFIX + regexList.get(i).name;
-                    Collection<RegexHits> prevHits = (Collection<RegexHits>) evidence.getExtraAttribute(key);
-                    Map<String, RegexHits> hitsMap = hitList.get(i);
-                    if (prevHits == null || prevHits.isEmpty() || !(prevHits.iterator().next() instanceof RegexHits)) {
-                        evidence.setExtraAttribute(key, hitsMap.values());
+        });
+
+        for (int i = 0; i < regexList.size(); i++) {
+            String key = REGEX_PREFIX + regexList.get(i).name;
+            if (maxHitsReached[i]) {
+                evidence.setExtraAttribute("maxHitsReached" + key, "true");
+            }
+            if (hitList.get(i).size() > 0) {
+                Collection<RegexHits> prevHits = (Collection<RegexHits>) evidence.getExtraAttribute(key);
+                // maps are reused by next calls, so hits are copied
+                Map<String, RegexHits> hitsMap = new HashMap<>(hitList.get(i));
+                if (prevHits == null || prevHits.isEmpty() || !(prevHits.iterator().next() instanceof RegexHits)) {
+                    evidence.setExtraAttribute(key, hitsMap.values());
+                } else {
+                    if (prevHits.size() >= MAX_RESULTS) {
+                        evidence.setExtraAttribute("maxHitsReached" + key, "true");
                     } else {
-                        if (prevHits.size() >= MAX_RESULTS) {
-                            evidence.setExtraAttribute("maxHitsReached" + key, "true");
-                        } else {
-                            for (RegexHits hits : prevHits) {
-                                RegexHits prev = hitsMap.get(hits.getHit());
-                                if (prev != null) {
-                                    prev.addAll(hits.getOffsets());
-                                } else {
-                                    hitsMap.put(hits.getHit(), hits);
-                                }
+                        for (RegexHits hits : prevHits) {
+                            RegexHits prev = hitsMap.get(hits.getHit());
+                            if (prev != null) {
+                                prev.addAll(hits.getOffsets());
+                            } else {
+                                hitsMap.put(hits.getHit(), hits);
                             }
-                            evidence.setExtraAttribute(key, hitsMap.values());
                         }
+                        evidence.setExtraAttribute(key, hitsMap.values());
                     }
-
-                    if (regexList.get(i).name.equals(KEYWORDS_NAME))
-                        evidence.setToExtract(true);
                 }
+
+                if (regexList.get(i).name.equals(KEYWORDS_NAME))
+                    evidence.setToExtract(true);
             }
-            totalOffset += off;
         }
     }
 
@@ -11,6 +11,12 @@ public class ImageSimilarity {
     public static final int maxDim = 256;
 
     public static final int numFeatures = 1044;
+
+    /**
+     * Dimension of the quantized features indexed as knn vectors, see
+     * {@link #toVector(byte[])}.
+     */
+    public static final int vectorDim = 2 * 128 + 16;
     private static final int maxPixels = maxDim * maxDim;
     private static final int trimTolerance = 16;
     private static final short[] sqrt = new short[1 << 20];
@@ -293,6 +299,36 @@ private void calcEdges() {
         }
     }
 
+    /**
+     * Quantizes the features to a vector small enough to be indexed by lucene
+     * (which accepts up to 1024 dimensions). Each of the 128 color bins of each
+     * region sums 4 neighbour bins of the features (same red, close green and
+     * blue) divided by 2, and the edge bins are kept. So the squared euclidean
+     * distance between two vectors is never greater than the distance between
+     * their features, and images closer than some distance are never farther in
+     * the vector space. The 4 median values are not used, as in distance().
+     */
+    public static float[] toVector(byte[] features) {
+        float[] vector = new float[vectorDim];
+        int idx = 4;
+        for (int reg = 0; reg < 2; reg++) {
+            int off = reg << 7;
+            for (int i = 0; i < 512; i++, idx++) {
+                int r = i >>> 6;
+                int g = (i >>> 3) & 7;
+                int b = i & 7;
+                vector[off | (r << 4) | ((g >>> 1) << 2) | (b >>> 1)] += features[idx];
+            }
+        }
+        for (int i = 0; i < 256; i++) {
+            vector[i] /= 2;
+        }
+        for (int i = 256; i < vectorDim; i++, idx++) {
+            vector[i] = features[idx];
+        }
+        return vector;
+    }
+
     public static int distance(byte[] a, byte[] b) {
         int distance = 0;
         for (int i = 4; i < a.length; i++) {
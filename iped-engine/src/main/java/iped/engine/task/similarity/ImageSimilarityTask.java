@@ -30,6 +30,12 @@ public class ImageSimilarityTask extends AbstractTask {
 
     public static final String IMAGE_FEATURES = "imageFeatures"; //$NON-NLS-1$
 
+    /**
+     * Field of the quantized features indexed as knn vectors, it can't be the
+     * features field, which exists without vectors in cases indexed before.
+     */
+    public static final String IMAGE_FEATURES_KNN = IMAGE_FEATURES + "Knn"; //$NON-NLS-1$
+
     private static boolean taskEnabled = false;
     private static final AtomicBoolean init = new AtomicBoolean(false);
     private static final AtomicBoolean finished = new AtomicBoolean(false);
@@ -0,0 +1,499 @@
+package iped.engine.util;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.VarHandle;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Set of fixed width hashes stored off heap, in memory mapped files, using open
+ * addressing with linear probing. There is one table per hash width. Inserts
+ * are lock free: a slot is claimed with a CAS on its control word, which then
+ * receives a fingerprint of the hash after its bytes are written. A read write
+ * lock is only used to block inserts while a table is being grown, then the
+ * replaced table is unmapped, or while the set is being closed.
+ *
+ * Tables are persisted in a directory and reused by a later processing if the
+ * set was closed cleanly, so it is not necessary to rebuild it.
+ */
+public class MappedHashSet implements Closeable {
+
+    private static Logger LOGGER = LoggerFactory.getLogger(MappedHashSet.class);
+
+    private static final String CLEAN_MARKER = "hashset.clean"; //$NON-NLS-1$
+    private static final String FILE_PREFIX = "hashset-"; //$NON-NLS-1$
+    private static final String FILE_EXT = ".bin"; //$NON-NLS-1$
+
+    private static final long MAGIC = 0x4950454448534554L; // IPEDHSET
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 4096;
+
+    private static final int SEGMENT_BITS = 22;
+    private static final int INITIAL_CAPACITY_BITS = 20;
+    private static final double MAX_LOAD_FACTOR = 0.6;
+
+    private static final int EMPTY = 0;
+    private static final int BUSY = 1;
+
+    private static final VarHandle INT = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+
+    private static final MethodHandle UNMAPPER = getUnmapper();
+
+    private final File dir;
+    private final Map<Integer, Table> tables = new ConcurrentHashMap<>();
+    private final boolean loaded;
+    private volatile boolean closed = false;
+
+    /**
+     * @param dir
+     *            directory where tables are stored
+     * @param reuse
+     *            if true, tables previously persisted in dir are loaded, otherwise
+     *            they are discarded
+     */
+    public MappedHashSet(File dir, boolean reuse) throws IOException {
+        this.dir = dir;
+        dir.mkdirs();
+        File marker = new File(dir, CLEAN_MARKER);
+        Properties files = new Properties();
+        loaded = reuse && marker.exists();
+        if (loaded) {
+            try (InputStream is = new FileInputStream(marker)) {
+                files.load(is);
+            }
+        }
+        // from now on tables may be modified
+        marker.delete();
+
+        for (String width : files.stringPropertyNames()) {
+            File file = new File(dir, files.getProperty(width));
+            tables.put(Integer.valueOf(width), new Table(file));
+        }
+        deleteStaleFiles();
+
+        if (loaded) {
+            LOGGER.info("Loaded {} hashes from {}", size(), dir.getAbsolutePath()); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * @return true if the set was loaded from a previously persisted state
+     */
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Inserts the hash if it is absent.
+     *
+     * @return true if the hash was inserted, false if it was already present
+     * @throws IllegalStateException
+     *             if the set was closed
+     */
+    public boolean add(byte[] hash) {
+        checkNotClosed();
+        if (hash.length == 0) {
+            return false;
+        }
+        Table table = tables.get(hash.length);
+        if (table == null) {
+            synchronized (this) {
+                checkNotClosed();
+                table = tables.get(hash.length);
+                if (table == null) {
+                    try {
+                        table = new Table(newTableFile(hash.length), hash.length, 1L << INITIAL_CAPACITY_BITS);
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                    tables.put(hash.length, table);
+                }
+            }
+        }
+        return table.add(hash);
+    }
+
+    public boolean contains(byte[] hash) {
+        Table table = tables.get(hash.length);
+        return table != null && table.contains(hash);
+    }
+
+    public long size() {
+        long size = 0;
+        for (Table table : tables.values()) {
+            size += table.size.get();
+        }
+        return size;
+    }
+
+    private void checkNotClosed() {
+        if (closed) {
+            throw new IllegalStateException("Hash set already closed: " + dir.getAbsolutePath()); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Flushes all tables to disk and marks the set as cleanly closed, so it can
+     * be reused later. Inserts running concurrently are finished before, later
+     * ones fail. Does nothing if it was already closed.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        Properties files = new Properties();
+        for (Table table : tables.values()) {
+            while (true) {
+                table.lock.writeLock().lock();
+                try {
+                    if (table.grown == null) {
+                        table.flush();
+                        files.setProperty(Integer.toString(table.width), table.file.getName());
+                        break;
+                    }
+                } finally {
+                    table.lock.writeLock().unlock();
+                }
+                // was growing when the set was closed
+                table = table.grown;
+            }
+        }
+        try (OutputStream os = new FileOutputStream(new File(dir, CLEAN_MARKER))) {
+            files.store(os, null);
+        }
+    }
+
+    /**
+     * Deletes a set persisted in the directory.
+     */
+    public static void delete(File dir) {
+        new File(dir, CLEAN_MARKER).delete();
+        File[] files = dir.listFiles((d, name) -> name.startsWith(FILE_PREFIX) && name.endsWith(FILE_EXT));
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+
+    private File newTableFile(int width) {
+        return new File(dir, FILE_PREFIX + width + "-" + System.nanoTime() + FILE_EXT); //$NON-NLS-1$
+    }
+
+    private void deleteStaleFiles() {
+        File[] files = dir.listFiles((d, name) -> name.startsWith(FILE_PREFIX) && name.endsWith(FILE_EXT));
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            boolean used = false;
+            for (Table table : tables.values()) {
+                used |= table.file.equals(file);
+            }
+            if (!used) {
+                deleteFile(file);
+            }
+        }
+    }
+
+    private static void deleteFile(File file) {
+        // may fail on Windows while the file is still mapped
+        if (!file.delete()) {
+            file.deleteOnExit();
+        }
+    }
+
+    private static MethodHandle getUnmapper() {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe"); //$NON-NLS-1$
+            Field field = unsafeClass.getDeclaredField("theUnsafe"); //$NON-NLS-1$
+            field.setAccessible(true);
+            return MethodHandles.lookup()
+                    .findVirtual(unsafeClass, "invokeCleaner", MethodType.methodType(void.class, ByteBuffer.class)) //$NON-NLS-1$
+                    .bindTo(field.get(null));
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            LOGGER.warn("Replaced hash set tables will be unmapped just by GC: {}", e.toString()); //$NON-NLS-1$
+            return null;
+        }
+    }
+
+    /**
+     * Releases a mapping right away, instead of waiting for GC. The buffer must
+     * not be accessed anymore.
+     */
+    private static void unmap(MappedByteBuffer buffer) {
+        if (UNMAPPER != null) {
+            try {
+                UNMAPPER.invokeExact((ByteBuffer) buffer);
+            } catch (Throwable e) {
+                LOGGER.warn("Error unmapping hash set table: {}", e.toString()); //$NON-NLS-1$
+            }
+        }
+    }
+
+    private static long mix(byte[] hash) {
+        long h = 0;
+        for (int i = 0; i < hash.length; i++) {
+            h = h * 31 + (hash[i] & 0xFF);
+            if ((i & 7) == 7) {
+                h ^= h >>> 29;
+            }
+        }
+        // fmix64 finalizer from MurmurHash3
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private static int fingerprint(long mix) {
+        int fp = (int) (mix >>> 32);
+        return fp == EMPTY || fp == BUSY ? fp + 2 : fp;
+    }
+
+    private class Table {
+
+        private final File file;
+        private final int width;
+        private final long capacity;
+        private final long mask;
+        private final int segmentBits;
+        private final int segmentMask;
+        private final int dataOffset;
+        private final MappedByteBuffer header;
+        private final MappedByteBuffer[] segments;
+        private final AtomicLong size = new AtomicLong();
+        private final long threshold;
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        private volatile Table grown;
+
+        /**
+         * Creates a new empty table.
+         */
+        private Table(File file, int width, long capacity) throws IOException {
+            this.file = file;
+            this.width = width;
+            this.capacity = capacity;
+            this.mask = capacity - 1;
+            this.segmentBits = (int) Math.min(SEGMENT_BITS, Long.numberOfTrailingZeros(capacity));
+            this.segmentMask = (1 << segmentBits) - 1;
+            this.dataOffset = 4 << segmentBits;
+            this.threshold = (long) (capacity * MAX_LOAD_FACTOR);
+            this.segments = new MappedByteBuffer[(int) (capacity >>> segmentBits)];
+            try (FileChannel fc = FileChannel.open(file.toPath(), StandardOpenOption.CREATE_NEW,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                header = fc.map(MapMode.READ_WRITE, 0, HEADER_SIZE);
+                header.putLong(0, MAGIC);
+                header.putInt(8, VERSION);
+                header.putInt(12, width);
+                header.putLong(16, capacity);
+                header.putLong(24, 0);
+                mapSegments(fc);
+            }
+        }
+
+        /**
+         * Opens a persisted table.
+         */
+        private Table(File file) throws IOException {
+            this.file = file;
+            try (FileChannel fc = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                header = fc.map(MapMode.READ_WRITE, 0, HEADER_SIZE);
+                if (header.getLong(0) != MAGIC || header.getInt(8) != VERSION) {
+                    throw new IOException("Invalid hash set file " + file.getAbsolutePath()); //$NON-NLS-1$
+                }
+                this.width = header.getInt(12);
+                this.capacity = header.getLong(16);
+                this.size.set(header.getLong(24));
+                this.mask = capacity - 1;
+                this.segmentBits = (int) Math.min(SEGMENT_BITS, Long.numberOfTrailingZeros(capacity));
+                this.segmentMask = (1 << segmentBits) - 1;
+                this.dataOffset = 4 << segmentBits;
+                this.threshold = (long) (capacity * MAX_LOAD_FACTOR);
+                this.segments = new MappedByteBuffer[(int) (capacity >>> segmentBits)];
+                mapSegments(fc);
+            }
+        }
+
+        private void mapSegments(FileChannel fc) throws IOException {
+            long segmentSize = (long) (4 + width) << segmentBits;
+            for (int i = 0; i < segments.length; i++) {
+                segments[i] = fc.map(MapMode.READ_WRITE, HEADER_SIZE + i * segmentSize, segmentSize);
+            }
+        }
+
+        private boolean add(byte[] hash) {
+            Table table = this;
+            while (true) {
+                Boolean added;
+                table.lock.readLock().lock();
+                try {
+                    checkNotClosed();
+                    added = table.grown == null ? table.insert(hash) : null;
+                } finally {
+                    table.lock.readLock().unlock();
+                }
+                if (added == null) {
+                    // table was replaced by a bigger one
+                    table = table.grown;
+                    continue;
+                }
+                if (added && table.size.get() > table.threshold) {
+                    table.grow();
+                }
+                return added;
+            }
+        }
+
+        private boolean contains(byte[] hash) {
+            Table table = this;
+            while (true) {
+                table.lock.readLock().lock();
+                try {
+                    if (table.grown == null) {
+                        return table.find(hash);
+                    }
+                } finally {
+                    table.lock.readLock().unlock();
+                }
+                table = table.grown;
+            }
+        }
+
+        private boolean find(byte[] hash) {
+            long mix = mix(hash);
+            int fp = fingerprint(mix);
+            for (long slot = mix & mask;; slot = (slot + 1) & mask) {
+                MappedByteBuffer segment = segments[(int) (slot >>> segmentBits)];
+                int idx = (int) (slot & segmentMask);
+                int control = waitNotBusy(segment, idx);
+                if (control == EMPTY) {
+                    return false;
+                }
+                if (control == fp && equalsAt(segment, idx, hash)) {
+                    return true;
+                }
+            }
+        }
+
+        /**
+         * Must be called holding the read lock.
+         */
+        private boolean insert(byte[] hash) {
+            long mix = mix(hash);
+            int fp = fingerprint(mix);
+            long slot = mix & mask;
+            while (true) {
+                MappedByteBuffer segment = segments[(int) (slot >>> segmentBits)];
+                int idx = (int) (slot & segmentMask);
+                int control = waitNotBusy(segment, idx);
+                if (control == EMPTY) {
+                    if (INT.compareAndSet(segment, idx << 2, EMPTY, BUSY)) {
+                        int pos = dataOffset + idx * width;
+                        for (int i = 0; i < width; i++) {
+                            segment.put(pos + i, hash[i]);
+                        }
+                        INT.setVolatile(segment, idx << 2, fp);
+                        size.incrementAndGet();
+                        return true;
+                    }
+                    // lost the race for this slot, check it again
+                    continue;
+                }
+                if (control == fp && equalsAt(segment, idx, hash)) {
+                    return false;
+                }
+                slot = (slot + 1) & mask;
+            }
+        }
+
+        private int waitNotBusy(MappedByteBuffer segment, int idx) {
+            int control;
+            while ((control = (int) INT.getVolatile(segment, idx << 2)) == BUSY) {
+                Thread.onSpinWait();
+            }
+            return control;
+        }
+
+        private boolean equalsAt(MappedByteBuffer segment, int idx, byte[] hash) {
+            int pos = dataOffset + idx * width;
+            for (int i = 0; i < width; i++) {
+                if (segment.get(pos + i) != hash[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void grow() {
+            lock.writeLock().lock();
+            try {
+                if (closed || grown != null || size.get() <= threshold) {
+                    return;
+                }
+                Table bigger = new Table(newTableFile(width), width, capacity << 1);
+                byte[] hash = new byte[width];
+                for (long slot = 0; slot < capacity; slot++) {
+                    MappedByteBuffer segment = segments[(int) (slot >>> segmentBits)];
+                    int idx = (int) (slot & segmentMask);
+                    if ((int) INT.getVolatile(segment, idx << 2) != EMPTY) {
+                        int pos = dataOffset + idx * width;
+                        for (int i = 0; i < width; i++) {
+                            hash[i] = segment.get(pos + i);
+                        }
+                        bigger.insert(hash);
+                    }
+                }
+                tables.put(width, bigger);
+                grown = bigger;
+                // readers hold the read lock, so none is using this table now, and
+                // later ones see it was grown without touching its buffers
+                for (MappedByteBuffer segment : segments) {
+                    unmap(segment);
+                }
+                unmap(header);
+                deleteFile(file);
+
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        private void flush() {
+            header.putLong(24, size.get());
+            for (MappedByteBuffer segment : segments) {
+                segment.force();
+            }
+            header.force();
+        }
+    }
+
+}
@@ -1,45 +1,130 @@
 package iped.engine.util;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.Closeable;
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
-import java.io.RandomAccessFile;
 import java.io.Reader;
 import java.io.StringReader;
-import java.io.Writer;
-import java.nio.charset.StandardCharsets;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.FileSystemException;
-import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.atomic.AtomicInteger;
 
-import org.apache.commons.io.input.BoundedReader;
-import org.apache.commons.io.input.RandomAccessFileInputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import iped.data.IItem;
 import iped.utils.IOUtil;
-
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FastDecompressor;
+
+/**
+ * Stores the parsed text of an item in fixed size pages of chars. The first
+ * pages, up to maxMemoryChars, are kept in heap, the next ones are spilled to
+ * a temp file (optionally LZ4 compressed) as soon as they are filled, so the
+ * heap used by each cache is bounded. Readers copy chars straight from the
+ * pages, no full copy of the text is ever built.
+ *
+ * Full pages are recycled through a small shared pool when the last reference
+ * to the text (the cache, its clones and readers) is closed.
+ */
 public class TextCache implements Closeable, Cloneable {
 
     private static Logger logger = LoggerFactory.getLogger(TextCache.class);
 
-    private static int MAX_MEMORY_CHARS = 10000000;
+    private static final int PAGE_CHARS = 32 * 1024;
+
+    private static final int MIN_PAGE_CHARS = 1024;
+
+    private static final char[] EMPTY_PAGE = new char[0];
+
+    private static final BlockingQueue<char[]> pagePool = new ArrayBlockingQueue<>(256);
+
+    private static final LZ4Compressor compressor = LZ4Factory.fastestInstance().fastCompressor();
+
+    private static final LZ4FastDecompressor decompressor = LZ4Factory.fastestInstance().fastDecompressor();
+
+    private static volatile int maxMemoryChars = 10000000;
+
+    private static volatile boolean compressOnDisk = true;
+
+    /**
+     * Pages of a text, shared by a cache and its clones.
+     */
+    private static class Pages {
+        private final List<char[]> memory = new ArrayList<>();
+        private char[] tail = EMPTY_PAGE;
+        private int tailLen = 0;
+        private int numSpilled = 0;
+        private long[] spilledOffsets = new long[16];
+        private int[] spilledLengths = new int[16];
+        private boolean compressed;
+        private boolean truncated = false;
+        private File tmp;
+        private FileChannel writer;
+        private long writerPos = 0;
+        private ByteBuffer spillBuffer;
+        private byte[] compressBuffer;
+        private final AtomicInteger refCount = new AtomicInteger(1);
+
+        private long length() {
+            return (long) (memory.size() + numSpilled) * PAGE_CHARS + tailLen;
+        }
+
+        private void closeWriter() {
+            if (writer != null) {
+                IOUtil.closeQuietly(writer);
+                writer = null;
+                spillBuffer = null;
+                compressBuffer = null;
+            }
+        }
+
+        private void release() {
+            if (refCount.decrementAndGet() == 0) {
+                closeWriter();
+                if (tmp != null) {
+                    tmp.delete();
+                }
+                for (char[] page : memory) {
+                    pagePool.offer(page);
+                }
+                memory.clear();
+                if (tail.length == PAGE_CHARS) {
+                    pagePool.offer(tail);
+                }
+            }
+        }
+    }
 
     private IItem sourceItem;
-    private StringBuilder sb = new StringBuilder();
-    private File tmp;
-    private Writer writer;
-    private long size = 0;
+    private Pages pages = new Pages();
     private boolean diskCacheEnabled = true;
-    private long offset = -1;
-    private AtomicInteger refCount = new AtomicInteger(1);
+    private long offset = 0;
+    private long size = -1;
+    private boolean closed = false;
+
+    /**
+     * Sets the max number of chars of each text kept in heap, the remaining is
+     * stored on disk if disk cache is enabled, or discarded.
+     */
+    public static void setMaxMemoryChars(int maxMemoryChars) {
+        TextCache.maxMemoryChars = maxMemoryChars;
+    }
+
+    /**
+     * Sets if text stored on disk is compressed.
+     */
+    public static void setCompressOnDisk(boolean compressOnDisk) {
+        TextCache.compressOnDisk = compressOnDisk;
+    }
 
     public void setSourceItem(IItem sourceItem) {
         this.sourceItem = sourceItem;
@@ -50,83 +135,145 @@ public void setEnableDiskCache(boolean diskCacheEnabled) {
     }
 
     public void write(String string) throws IOException {
-        this.write(string.toCharArray(), 0, string.length());
+        int off = 0, len = string.length();
+        while (len > 0 && nextFreeChars() > 0) {
+            int n = Math.min(len, pages.tail.length - pages.tailLen);
+            string.getChars(off, off + n, pages.tail, pages.tailLen);
+            pages.tailLen += n;
+            off += n;
+            len -= n;
+        }
     }
 
     public void write(char[] buf, int off, int len) throws IOException {
-        if (tmp == null && sb != null && sb.length() + len > MAX_MEMORY_CHARS && diskCacheEnabled) {
-            tmp = File.createTempFile("text", null);
-            writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmp), StandardCharsets.UTF_8));
-            writer.write(sb.toString());
-            sb = null;
+        while (len > 0 && nextFreeChars() > 0) {
+            int n = Math.min(len, pages.tail.length - pages.tailLen);
+            System.arraycopy(buf, off, pages.tail, pages.tailLen, n);
+            pages.tailLen += n;
+            off += n;
+            len -= n;
         }
+    }
 
-        if (sb != null && sb.length() < MAX_MEMORY_CHARS) {
-            if (sb.length() + len > MAX_MEMORY_CHARS)
-                len = MAX_MEMORY_CHARS - sb.length();
-            sb.append(buf, off, len);
+    /**
+     * Makes room in the tail page, growing, keeping or spilling it.
+     *
+     * @return the number of chars that can be written to the tail page, 0 if
+     *         the text was truncated
+     */
+    private int nextFreeChars() {
+        Pages p = pages;
+        if (p.truncated) {
+            return 0;
         }
-
-        if (writer != null)
-            try {
-                writer.write(buf, off, len);
-            } catch (IOException e) {
-                // maybe no space left
-                e.printStackTrace();
-                IOUtil.closeQuietly(writer);
-                writer = null;
-                tmp.delete();
-                tmp = null;
+        if (p.tailLen == p.tail.length) {
+            if (p.tail.length < PAGE_CHARS) {
+                p.tail = Arrays.copyOf(p.tail, Math.min(PAGE_CHARS, Math.max(MIN_PAGE_CHARS, p.tail.length << 1)));
+            } else {
+                if (p.numSpilled == 0 && (long) (p.memory.size() + 1) * PAGE_CHARS <= maxMemoryChars) {
+                    p.memory.add(p.tail);
+                } else if (diskCacheEnabled) {
+                    try {
+                        spill(p);
+                    } catch (IOException e) {
+                        // maybe no space left, keep just the text in memory
+                        logger.warn("Error writing text cache to disk{}: {}",
+                                sourceItem != null ? " of " + sourceItem.getPath() : "", e.toString());
+                        p.closeWriter();
+                        if (p.tmp != null) {
+                            p.tmp.delete();
+                            p.tmp = null;
+                        }
+                        p.numSpilled = 0;
+                        p.tailLen = 0;
+                        p.truncated = true;
+                        return 0;
+                    }
+                    pagePool.offer(p.tail);
+                } else {
+                    p.truncated = true;
+                    return 0;
+                }
+                p.tail = newPage();
+                p.tailLen = 0;
             }
-
-        size += len;
+        }
+        return p.tail.length - p.tailLen;
     }
 
-    public long getSize() {
-        return size;
+    private static char[] newPage() {
+        char[] page = pagePool.poll();
+        return page != null ? page : new char[PAGE_CHARS];
     }
 
-    public Reader getTextReader() throws IOException {
-        if (writer != null) {
-            writer.close();
-            writer = null;
+    private void spill(Pages p) throws IOException {
+        if (p.tmp == null) {
+            p.tmp = File.createTempFile("text", null);
+            p.compressed = compressOnDisk;
+        }
+        if (p.writer == null) {
+            p.writer = FileChannel.open(p.tmp.toPath(), StandardOpenOption.WRITE);
+            p.spillBuffer = ByteBuffer.allocate(PAGE_CHARS * 2);
+            if (p.compressed) {
+                p.compressBuffer = new byte[compressor.maxCompressedLength(PAGE_CHARS * 2)];
+            }
+        }
+        ByteBuffer bytes = p.spillBuffer;
+        bytes.clear();
+        bytes.asCharBuffer().put(p.tail, 0, PAGE_CHARS);
+        if (p.compressed) {
+            int len = compressor.compress(bytes.array(), 0, PAGE_CHARS * 2, p.compressBuffer, 0,
+                    p.compressBuffer.length);
+            bytes = ByteBuffer.wrap(p.compressBuffer, 0, len);
         }
+        int len = bytes.remaining();
+        while (bytes.hasRemaining()) {
+            p.writer.write(bytes, p.writerPos + len - bytes.remaining());
+        }
+        if (p.numSpilled == p.spilledOffsets.length) {
+            p.spilledOffsets = Arrays.copyOf(p.spilledOffsets, p.numSpilled << 1);
+            p.spilledLengths = Arrays.copyOf(p.spilledLengths, p.numSpilled << 1);
+        }
+        p.spilledOffsets[p.numSpilled] = p.writerPos;
+        p.spilledLengths[p.numSpilled] = len;
+        p.numSpilled++;
+        p.writerPos += len;
+    }
 
-        Reader reader = null;
-        if (sb != null)
-            reader = new StringReader(sb.toString());
+    public long getSize() {
+        return size >= 0 ? size : pages.length();
+    }
 
-        if (tmp != null) {
-            try {
-                if (offset == -1) {
-                    reader = Files.newBufferedReader(tmp.toPath());
-                } else {
-                    RandomAccessFile raf = new RandomAccessFile(tmp, "r");
-                    raf.seek(offset);
-                    reader = new InputStreamReader(new RandomAccessFileInputStream(raf, true), StandardCharsets.UTF_8);
-                    reader = new BufferedReader(new BoundedReader(reader, (int) size));
-                }
+    /**
+     * @return number of pages of the text stored on disk
+     */
+    int getSpilledPages() {
+        return pages.numSpilled;
+    }
 
-            } catch (FileSystemException | FileNotFoundException e) {
+    public Reader getTextReader() throws IOException {
+        Pages p = pages;
+        p.closeWriter();
+        FileChannel channel = null;
+        if (p.numSpilled > 0) {
+            try {
+                channel = FileChannel.open(p.tmp.toPath(), StandardOpenOption.READ);
+            } catch (FileSystemException e) {
                 logger.error("Error reading extracted text file{}, maybe your antivirus blocked or deleted it? {}",
                         sourceItem != null ? " from " + sourceItem.getPath() : "", e.toString());
                 e.printStackTrace();
                 return new StringReader("");
             }
         }
-
-        if (reader != null) {
-            return new KnownSizeReader(reader);
-        }
-
-        return null;
+        p.refCount.incrementAndGet();
+        return new KnownSizeReader(new PagesReader(p, channel, offset, offset + getSize()));
     }
 
     public void setTextBounds(long offset, int size) {
         if (offset < 0 || size < 0) {
             throw new IllegalArgumentException("Both offset & size must be non negative.");
         }
-        if (offset + size > this.size) {
+        if (offset + size > pages.length()) {
             throw new IllegalArgumentException("offset + size must be less than or equal to original text size.");
         }
         this.offset = offset;
@@ -135,10 +282,131 @@ public void setTextBounds(long offset, int size) {
 
     @Override
     public void close() throws IOException {
-        if (writer != null)
-            writer.close();
-        if (tmp != null && refCount.decrementAndGet() == 0)
-            tmp.delete();
+        if (!closed) {
+            closed = true;
+            pages.release();
+        }
+    }
+
+    /**
+     * Reads a range of chars of the pages. Pages in memory are read in place,
+     * spilled ones are loaded one at a time into a private page.
+     */
+    private static class PagesReader extends Reader {
+
+        private final Pages pages;
+        private final FileChannel channel;
+        private final int memoryPages;
+        private final long end;
+        private long pos, mark;
+        private char[] loaded;
+        private int loadedIndex = -1;
+        private ByteBuffer readBuffer;
+        private byte[] decompressBuffer;
+        private boolean closed = false;
+
+        private PagesReader(Pages pages, FileChannel channel, long start, long end) {
+            this.pages = pages;
+            this.channel = channel;
+            this.memoryPages = pages.memory.size();
+            this.pos = start;
+            this.mark = start;
+            this.end = end;
+        }
+
+        private char[] getPage(int index) throws IOException {
+            if (index < memoryPages) {
+                return pages.memory.get(index);
+            }
+            int spilled = index - memoryPages;
+            if (spilled >= pages.numSpilled) {
+                return pages.tail;
+            }
+            if (loadedIndex != index) {
+                if (loaded == null) {
+                    loaded = new char[PAGE_CHARS];
+                    readBuffer = ByteBuffer.allocate(pages.compressed
+                            ? compressor.maxCompressedLength(PAGE_CHARS * 2)
+                            : PAGE_CHARS * 2);
+                }
+                readBuffer.clear().limit(pages.spilledLengths[spilled]);
+                long filePos = pages.spilledOffsets[spilled];
+                while (readBuffer.hasRemaining()) {
+                    if (channel.read(readBuffer, filePos + readBuffer.position()) < 0) {
+                        throw new IOException("Unexpected end of text cache file");
+                    }
+                }
+                ByteBuffer bytes = readBuffer.flip();
+                if (pages.compressed) {
+                    if (decompressBuffer == null) {
+                        decompressBuffer = new byte[PAGE_CHARS * 2];
+                    }
+                    decompressor.decompress(readBuffer.array(), 0, decompressBuffer, 0, PAGE_CHARS * 2);
+                    bytes = ByteBuffer.wrap(decompressBuffer);
+                }
+                bytes.asCharBuffer().get(loaded, 0, PAGE_CHARS);
+                loadedIndex = index;
+            }
+            return loaded;
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) throws IOException {
+            if (closed) {
+                throw new IOException("Reader closed");
+            }
+            if (pos >= end) {
+                return -1;
+            }
+            int read = 0;
+            while (len > 0 && pos < end) {
+                int index = (int) (pos / PAGE_CHARS);
+                int inPage = (int) (pos % PAGE_CHARS);
+                int n = (int) Math.min(Math.min(len, PAGE_CHARS - inPage), end - pos);
+                System.arraycopy(getPage(index), inPage, cbuf, off, n);
+                pos += n;
+                off += n;
+                len -= n;
+                read += n;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = Math.max(0, Math.min(n, end - pos));
+            pos += skipped;
+            return skipped;
+        }
+
+        @Override
+        public boolean ready() {
+            return true;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return true;
+        }
+
+        @Override
+        public void mark(int readAheadLimit) {
+            mark = pos;
+        }
+
+        @Override
+        public void reset() {
+            pos = mark;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!closed) {
+                closed = true;
+                IOUtil.closeQuietly(channel);
+                pages.release();
+            }
+        }
     }
 
     public class KnownSizeReader extends Reader {
@@ -154,13 +422,38 @@ public int read(char[] cbuf, int off, int len) throws IOException {
             return delegate.read(cbuf, off, len);
         }
 
+        @Override
+        public long skip(long n) throws IOException {
+            return delegate.skip(n);
+        }
+
+        @Override
+        public boolean ready() throws IOException {
+            return delegate.ready();
+        }
+
+        @Override
+        public boolean markSupported() {
+            return delegate.markSupported();
+        }
+
+        @Override
+        public void mark(int readAheadLimit) throws IOException {
+            delegate.mark(readAheadLimit);
+        }
+
+        @Override
+        public void reset() throws IOException {
+            delegate.reset();
+        }
+
         @Override
         public void close() throws IOException {
             delegate.close();
         }
 
         public long getSize() {
-            return size;
+            return TextCache.this.getSize();
         }
 
     }
@@ -169,15 +462,12 @@ public long getSize() {
     public TextCache clone() {
         TextCache o = new TextCache();
         o.sourceItem = sourceItem;
-        o.sb = sb;
-        o.tmp = tmp;
         // we just use clone for reading for now
-        // o.writer = writer;
+        o.pages = pages;
         o.size = size;
         o.diskCacheEnabled = diskCacheEnabled;
         o.offset = offset;
-        o.refCount = refCount;
-        refCount.incrementAndGet();
+        pages.refCount.incrementAndGet();
         return o;
     }
 
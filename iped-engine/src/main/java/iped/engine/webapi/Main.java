@@ -57,6 +57,17 @@ public static HttpServer startServer(String host, int port, String urlToAskSourc
         return GrizzlyHttpServerFactory.createHttpServer(URI.create("http://" + host + ":" + port), rc);
     }
 
+    /**
+     * Starts a Grizzly HTTP server exposing just the {@link Metrics} resource of
+     * the processing running in this JVM, without case sources.
+     *
+     * @return Grizzly HTTP server.
+     */
+    public static HttpServer startMetricsServer(String host, int port) {
+        final ResourceConfig rc = new ResourceConfig().register(Metrics.class);
+        return GrizzlyHttpServerFactory.createHttpServer(URI.create("http://" + host + ":" + port), rc);
+    }
+
     /**
      * Main method.
      * 
@@ -0,0 +1,75 @@
+package iped.engine.webapi;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.NotFoundException;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+import iped.engine.core.Statistics;
+import iped.engine.core.TaskTimeStats;
+import iped.engine.util.TimeHistogram;
+import iped.engine.webapi.json.MediaTypeTimeJSON;
+import iped.engine.webapi.json.MetricsJSON;
+import iped.engine.webapi.json.TaskTimeJSON;
+
+/**
+ * Read only metrics of the processing running in this JVM. Only available when
+ * started by {@link Main#startMetricsServer(String, int)}.
+ */
+@Api(value = "Metrics")
+@Path("metrics")
+public class Metrics {
+
+    @ApiOperation(value = "Get processing counters and task times per media type")
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    public MetricsJSON get() {
+        Statistics stats = Statistics.get();
+        if (stats == null) {
+            throw new NotFoundException("No processing running"); //$NON-NLS-1$
+        }
+        MetricsJSON result = new MetricsJSON();
+        result.setProcessed(stats.getProcessed());
+        result.setActiveProcessed(stats.getActiveProcessed());
+        result.setVolume(stats.getVolume());
+        result.setSubitems(stats.getSubitemsDiscovered());
+        result.setIgnored(stats.getIgnored());
+        result.setTimeouts(stats.getTimeouts());
+        result.setIoErrors(stats.getIoErrors());
+
+        List<TaskTimeJSON> tasks = new ArrayList<>();
+        for (TaskTimeStats taskStats : stats.getAllTaskTimeStats()) {
+            TimeHistogram histogram = taskStats.getHistogram();
+            TaskTimeJSON task = new TaskTimeJSON();
+            task.setTask(taskStats.getTaskName());
+            task.setCount(histogram.getCount());
+            task.setTotal(histogram.getTotal());
+            task.setMean(histogram.getMean());
+            task.setP50(histogram.getPercentile(50));
+            task.setP90(histogram.getPercentile(90));
+            task.setP99(histogram.getPercentile(99));
+            task.setMax(histogram.getMax());
+
+            List<MediaTypeTimeJSON> mediaTypes = new ArrayList<>();
+            for (TaskTimeStats.MediaTypeTime time : taskStats.getTimesPerMediaType()) {
+                MediaTypeTimeJSON mediaType = new MediaTypeTimeJSON();
+                mediaType.setMediaType(time.getMediaType());
+                mediaType.setCount(time.getCount());
+                mediaType.setTotal(time.getTotal());
+                mediaType.setMax(time.getMax());
+                mediaTypes.add(mediaType);
+            }
+            task.setMediaTypes(mediaTypes);
+            tasks.add(task);
+        }
+        result.setTasks(tasks);
+
+        return result;
+    }
+}
@@ -0,0 +1,50 @@
+package iped.engine.webapi.json;
+
+import io.swagger.annotations.ApiModelProperty;
+
+/**
+ * MediaTypeTimeModel: processing time of a task for one media type, in
+ * microseconds: { "mediaType": "string", "count": 0, "total": 0, "max": 0 }
+ */
+public class MediaTypeTimeJSON {
+    private String mediaType;
+    private long count;
+    private long total;
+    private long max;
+
+    @ApiModelProperty()
+    public String getMediaType() {
+        return mediaType;
+    }
+
+    public void setMediaType(String mediaType) {
+        this.mediaType = mediaType;
+    }
+
+    @ApiModelProperty()
+    public long getCount() {
+        return count;
+    }
+
+    public void setCount(long count) {
+        this.count = count;
+    }
+
+    @ApiModelProperty()
+    public long getTotal() {
+        return total;
+    }
+
+    public void setTotal(long total) {
+        this.total = total;
+    }
+
+    @ApiModelProperty()
+    public long getMax() {
+        return max;
+    }
+
+    public void setMax(long max) {
+        this.max = max;
+    }
+}
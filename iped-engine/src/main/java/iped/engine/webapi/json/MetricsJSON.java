@@ -0,0 +1,93 @@
+package iped.engine.webapi.json;
+
+import java.util.List;
+
+import io.swagger.annotations.ApiModelProperty;
+
+/**
+ * MetricsModel: live processing counters and task times: { "processed": 0,
+ * "activeProcessed": 0, "volume": 0, "subitems": 0, "ignored": 0, "timeouts":
+ * 0, "ioErrors": 0, "tasks": [] }
+ */
+public class MetricsJSON {
+    private long processed;
+    private long activeProcessed;
+    private long volume;
+    private long subitems;
+    private long ignored;
+    private long timeouts;
+    private long ioErrors;
+    private List<TaskTimeJSON> tasks;
+
+    @ApiModelProperty()
+    public long getProcessed() {
+        return processed;
+    }
+
+    public void setProcessed(long processed) {
+        this.processed = processed;
+    }
+
+    @ApiModelProperty()
+    public long getActiveProcessed() {
+        return activeProcessed;
+    }
+
+    public void setActiveProcessed(long activeProcessed) {
+        this.activeProcessed = activeProcessed;
+    }
+
+    @ApiModelProperty()
+    public long getVolume() {
+        return volume;
+    }
+
+    public void setVolume(long volume) {
+        this.volume = volume;
+    }
+
+    @ApiModelProperty()
+    public long getSubitems() {
+        return subitems;
+    }
+
+    public void setSubitems(long subitems) {
+        this.subitems = subitems;
+    }
+
+    @ApiModelProperty()
+    public long getIgnored() {
+        return ignored;
+    }
+
+    public void setIgnored(long ignored) {
+        this.ignored = ignored;
+    }
+
+    @ApiModelProperty()
+    public long getTimeouts() {
+        return timeouts;
+    }
+
+    public void setTimeouts(long timeouts) {
+        this.timeouts = timeouts;
+    }
+
+    @ApiModelProperty()
+    public long getIoErrors() {
+        return ioErrors;
+    }
+
+    public void setIoErrors(long ioErrors) {
+        this.ioErrors = ioErrors;
+    }
+
+    @ApiModelProperty()
+    public List<TaskTimeJSON> getTasks() {
+        return tasks;
+    }
+
+    public void setTasks(List<TaskTimeJSON> tasks) {
+        this.tasks = tasks;
+    }
+}
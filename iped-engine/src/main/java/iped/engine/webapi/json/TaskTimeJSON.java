@@ -0,0 +1,103 @@
+package iped.engine.webapi.json;
+
+import java.util.List;
+
+import io.swagger.annotations.ApiModelProperty;
+
+/**
+ * TaskTimeModel: processing time of a task summed over all workers, in
+ * microseconds: { "task": "string", "count": 0, "total": 0, "mean": 0, "p50":
+ * 0, "p90": 0, "p99": 0, "max": 0, "mediaTypes": [] }
+ */
+public class TaskTimeJSON {
+    private String task;
+    private long count;
+    private long total;
+    private long mean;
+    private long p50;
+    private long p90;
+    private long p99;
+    private long max;
+    private List<MediaTypeTimeJSON> mediaTypes;
+
+    @ApiModelProperty()
+    public String getTask() {
+        return task;
+    }
+
+    public void setTask(String task) {
+        this.task = task;
+    }
+
+    @ApiModelProperty()
+    public long getCount() {
+        return count;
+    }
+
+    public void setCount(long count) {
+        this.count = count;
+    }
+
+    @ApiModelProperty()
+    public long getTotal() {
+        return total;
+    }
+
+    public void setTotal(long total) {
+        this.total = total;
+    }
+
+    @ApiModelProperty()
+    public long getMean() {
+        return mean;
+    }
+
+    public void setMean(long mean) {
+        this.mean = mean;
+    }
+
+    @ApiModelProperty()
+    public long getP50() {
+        return p50;
+    }
+
+    public void setP50(long p50) {
+        this.p50 = p50;
+    }
+
+    @ApiModelProperty()
+    public long getP90() {
+        return p90;
+    }
+
+    public void setP90(long p90) {
+        this.p90 = p90;
+    }
+
+    @ApiModelProperty()
+    public long getP99() {
+        return p99;
+    }
+
+    public void setP99(long p99) {
+        this.p99 = p99;
+    }
+
+    @ApiModelProperty()
+    public long getMax() {
+        return max;
+    }
+
+    public void setMax(long max) {
+        this.max = max;
+    }
+
+    @ApiModelProperty()
+    public List<MediaTypeTimeJSON> getMediaTypes() {
+        return mediaTypes;
+    }
+
+    public void setMediaTypes(List<MediaTypeTimeJSON> mediaTypes) {
+        this.mediaTypes = mediaTypes;
+    }
+}
@@ -0,0 +1,144 @@
+package iped.engine.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.apache.tika.mime.MediaType;
+import org.junit.Test;
+
+import iped.data.IItem;
+import iped.engine.data.DataSource;
+import iped.engine.data.Item;
+
+public class ProcessingQueueSpillTest {
+
+    private static Item newItem(int i) {
+        Item item = new Item();
+        item.setId(i);
+        item.setName("file" + i + ".txt");
+        item.setPath("/root/file" + i + ".txt");
+        item.setLength((long) i);
+        item.setModificationDate(new Date(i * 1000L));
+        item.setMediaType(MediaType.TEXT_PLAIN);
+        item.setIdInDataSource(Integer.toString(i));
+        item.setExtraAttribute("attr", i);
+        item.addCategory("Text Documents");
+        item.addParentId(0);
+        item.setDeleted(i % 2 == 0);
+        return item;
+    }
+
+    @Test
+    public void testSpillsOnlyAboveWindowAndKeepsOrder() throws IOException, InterruptedException {
+        ProcessingQueueSpill spill = new ProcessingQueueSpill(10);
+        List<IItem> memory = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            Item item = newItem(i);
+            if (!spill.offer(item, 0, memory.size())) {
+                memory.add(item);
+            }
+        }
+        assertEquals(10, memory.size());
+        assertEquals(990, spill.getSize(0));
+        assertEquals(0, spill.getSize(1));
+
+        List<IItem> refilled = new ArrayList<>();
+        while (spill.getSize(0) > 0) {
+            spill.refill(0, 100, refilled::add);
+        }
+        assertEquals(990, refilled.size());
+        for (int i = 0; i < refilled.size(); i++) {
+            Item item = (Item) refilled.get(i);
+            int id = i + 10;
+            assertEquals(id, item.getId());
+            assertEquals("/root/file" + id + ".txt", item.getPath());
+            assertEquals(Long.valueOf(id), item.getLength());
+            assertEquals(new Date(id * 1000L), item.getModDate());
+            assertEquals(MediaType.TEXT_PLAIN, item.getMediaType());
+            assertEquals(id, item.getExtraAttribute("attr"));
+            assertTrue(item.getCategorySet().contains("Text Documents"));
+            assertEquals(id % 2 == 0, item.isDeleted());
+        }
+    }
+
+    @Test
+    public void testKeepsItemsWithResourcesInMemory() throws IOException {
+        ProcessingQueueSpill spill = new ProcessingQueueSpill(1);
+        Item withTempFile = newItem(0);
+        withTempFile.setTempFile(new File("tmp"));
+        assertFalse(spill.offer(withTempFile, 0, 10));
+
+        Item queueEnd = new Item();
+        queueEnd.setQueueEnd(true);
+        assertFalse(spill.offer(queueEnd, 0, 10));
+
+        Item notSerializable = newItem(1);
+        notSerializable.setExtraAttribute("lock", new Object());
+        assertFalse(spill.offer(notSerializable, 0, 10));
+        assertEquals(0, spill.getSize(0));
+    }
+
+    @Test
+    public void testReferencesAreRestored() throws IOException, InterruptedException {
+        ProcessingQueueSpill spill = new ProcessingQueueSpill(1);
+        Item item = newItem(0);
+        assertNull(item.getDataSource());
+        assertTrue(spill.offer(item, 0, 1));
+        List<IItem> refilled = new ArrayList<>();
+        spill.refill(0, 1, refilled::add);
+        assertEquals(1, refilled.size());
+        assertNull(((Item) refilled.get(0)).getDataSource());
+        assertNull(((Item) refilled.get(0)).getInputStreamFactory());
+        assertEquals(0, spill.getSize(0));
+    }
+
+    @Test
+    public void testReferencesArePrunedWhenReadBack() throws IOException, InterruptedException {
+        ProcessingQueueSpill spill = new ProcessingQueueSpill(1);
+        DataSource[] dataSources = { new DataSource(), new DataSource() };
+        for (int i = 0; i < 10; i++) {
+            Item item = newItem(i);
+            item.setDataSource(dataSources[i / 5]);
+            assertTrue(spill.offer(item, 0, 1));
+        }
+        assertEquals(2, spill.getReferenceCount());
+
+        List<IItem> refilled = new ArrayList<>();
+        spill.refill(0, 5, refilled::add);
+        assertEquals(1, spill.getReferenceCount());
+        spill.refill(0, 5, refilled::add);
+        assertEquals(0, spill.getReferenceCount());
+        for (int i = 0; i < refilled.size(); i++) {
+            assertSame(dataSources[i / 5], refilled.get(i).getDataSource());
+        }
+    }
+
+    @Test
+    public void testCloseDeletesSpilledItems() throws IOException, InterruptedException {
+        ProcessingQueueSpill spill = new ProcessingQueueSpill(1);
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(spill.offer(newItem(i), 0, 1));
+        }
+        // flushes the log to disk
+        spill.refill(0, 1, item -> {
+        });
+        assertTrue(spill.getDir().isDirectory());
+
+        spill.close();
+        assertFalse(spill.getDir().exists());
+        assertFalse(spill.offer(newItem(1000), 0, 1));
+        List<IItem> refilled = new ArrayList<>();
+        spill.refill(0, 100, refilled::add);
+        assertTrue(refilled.isEmpty());
+    }
+
+}
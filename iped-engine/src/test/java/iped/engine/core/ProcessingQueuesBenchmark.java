@@ -0,0 +1,112 @@
+package iped.engine.core;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import iped.data.IItem;
+import iped.engine.config.ProcessingPriorityConfig;
+import iped.engine.data.CaseData;
+import iped.engine.data.Item;
+import iped.engine.task.index.IndexItem;
+import iped.utils.UTF8Properties;
+
+/**
+ * Compares the throughput of the processing queues engines with many threads
+ * adding and taking tiny items, like workers expanding subitems, with and
+ * without spilling items beyond the in memory window to disk. Run with:
+ *
+ * mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=iped.engine.core.ProcessingQueuesBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProcessingQueuesBenchmark {
+
+    private static final int PREFILLED_ITEMS = 100_000;
+
+    @Param({ "DEFAULT", "WORK_STEALING" })
+    public String engine;
+
+    @Param({ "true", "false" })
+    public boolean randomOrder;
+
+    @Param({ "false", "true" })
+    public boolean spillToDisk;
+
+    private ProcessingQueues queues;
+
+    @Setup(Level.Iteration)
+    public void setup() throws InterruptedException {
+        UTF8Properties props = new UTF8Properties();
+        props.setProperty("queueEngine", engine.equals("DEFAULT") ? "default" : "workStealing");
+        props.setProperty("randomOrder", Boolean.toString(randomOrder));
+        props.setProperty("maxQueueSize", Integer.toString(PREFILLED_ITEMS * 2));
+        props.setProperty("spillToDisk", Boolean.toString(spillToDisk));
+        ProcessingPriorityConfig config = new ProcessingPriorityConfig();
+        config.processProperties(props);
+
+        int threads = Runtime.getRuntime().availableProcessors();
+        if (config.getQueueEngine() == ProcessingPriorityConfig.QueueEngine.WORK_STEALING) {
+            queues = new WorkStealingProcessingQueues(new CaseData(), config, threads);
+        } else {
+            queues = new SynchronizedProcessingQueues(new CaseData(), config);
+        }
+        for (int i = 0; i < PREFILLED_ITEMS; i++) {
+            queues.addItem(newItem());
+        }
+    }
+
+    private static IItem newItem() {
+        Item item = new Item();
+        // avoids computing the trackID hash, not what is being measured
+        item.setExtraAttribute(IndexItem.TRACK_ID, "0");
+        return item;
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public IItem addAndTake() throws InterruptedException {
+        queues.addItemNonBlocking(newItem());
+        IItem item = queues.takeFromCurrentQueue(100, TimeUnit.MILLISECONDS);
+        if (item != null && !item.isQueueEnd()) {
+            queues.decItemsBeingProcessed();
+        }
+        return item;
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public IItem addFirstAndTake() throws InterruptedException {
+        queues.addItemFirstNonBlocking(newItem());
+        IItem item = queues.takeFromCurrentQueue(100, TimeUnit.MILLISECONDS);
+        if (item != null && !item.isQueueEnd()) {
+            queues.decItemsBeingProcessed();
+        }
+        return item;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(ProcessingQueuesBenchmark.class.getSimpleName()).build()).run();
+    }
+
+}
@@ -0,0 +1,183 @@
+package iped.engine.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import iped.data.IItem;
+import iped.engine.config.ProcessingPriorityConfig;
+import iped.engine.data.CaseData;
+import iped.engine.data.Item;
+import iped.engine.task.index.IndexItem;
+import iped.utils.UTF8Properties;
+
+public class WorkStealingProcessingQueuesTest {
+
+    private static WorkStealingProcessingQueues newQueues(boolean randomOrder, int numWorkers) {
+        UTF8Properties props = new UTF8Properties();
+        props.setProperty("queueEngine", "workStealing");
+        props.setProperty("randomOrder", Boolean.toString(randomOrder));
+        props.setProperty("maxQueueSize", "100000");
+        props.setProperty("spillToDisk", "false");
+        ProcessingPriorityConfig config = new ProcessingPriorityConfig();
+        config.processProperties(props);
+        return new WorkStealingProcessingQueues(new CaseData(), config, numWorkers);
+    }
+
+    private static Item newItem(int id) {
+        Item item = new Item();
+        item.setId(id);
+        // avoids computing the trackID hash
+        item.setExtraAttribute(IndexItem.TRACK_ID, "0");
+        return item;
+    }
+
+    private static Item newQueueEnd() {
+        Item queueEnd = newItem(-1);
+        queueEnd.setQueueEnd(true);
+        return queueEnd;
+    }
+
+    private static IItem take(ProcessingQueues queues) throws InterruptedException {
+        return queues.takeFromCurrentQueue(1, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testPriorityOrder() throws InterruptedException {
+        WorkStealingProcessingQueues queues = newQueues(false, 1);
+        for (int i = 0; i < 100; i++) {
+            queues.addItem(newItem(i));
+            queues.addItemToQueue(newItem(100 + i), 1);
+        }
+        queues.addItemFirst(newItem(1000));
+        queues.addItem(newQueueEnd());
+        assertEquals(102, queues.getCurrentQueueSize());
+
+        // items added on top first, then FIFO, lane 1 items are not taken yet
+        assertEquals(1000, take(queues).getId());
+        queues.decItemsBeingProcessed();
+        for (int i = 0; i < 100; i++) {
+            IItem item = take(queues);
+            assertEquals(i, item.getId());
+            assertEquals(1, queues.getItemsBeingProcessed());
+            queues.decItemsBeingProcessed();
+        }
+        IItem queueEnd = take(queues);
+        assertTrue(queueEnd.isQueueEnd());
+        assertTrue(queues.isNoItemInQueueOrBeingProcessed());
+
+        assertEquals(Integer.valueOf(1), queues.changeToNextQueue());
+        assertFalse(queues.isNoItemInQueueOrBeingProcessed());
+        queues.addToCurrentQueue(queueEnd);
+        for (int i = 0; i < 100; i++) {
+            assertEquals(100 + i, take(queues).getId());
+            queues.decItemsBeingProcessed();
+        }
+        assertTrue(take(queues).isQueueEnd());
+        assertTrue(queues.isNoItemInQueueOrBeingProcessed());
+
+        // empty lanes until the end
+        while (queues.changeToNextQueue() != null) {
+            assertEquals(0, queues.getCurrentQueueSize());
+            assertTrue(queues.isNoItemInQueueOrBeingProcessed());
+        }
+        assertNull(queues.getCurrentQueuePriority());
+        assertNull(take(queues));
+    }
+
+    /**
+     * Consumers are not Worker threads, so each one polls a random deque and
+     * steals from the others most of the time. Consumers behave like workers:
+     * they add subitems on top and put the queue end back after taking it, until
+     * all items are processed.
+     */
+    private void testConcurrentTake(boolean randomOrder) throws InterruptedException {
+        int numThreads = 8;
+        int numItems = 100000;
+        int numSubitems = numItems / 10;
+        WorkStealingProcessingQueues queues = newQueues(randomOrder, numThreads / 2);
+
+        ConcurrentHashMap<Integer, AtomicInteger> processed = new ConcurrentHashMap<>();
+        AtomicInteger totalProcessed = new AtomicInteger();
+        List<Integer> processedWhenDrained = new CopyOnWriteArrayList<>();
+        List<Throwable> errors = new CopyOnWriteArrayList<>();
+
+        Thread[] consumers = new Thread[numThreads];
+        for (int t = 0; t < numThreads; t++) {
+            consumers[t] = new Thread() {
+                public void run() {
+                    try {
+                        while (true) {
+                            IItem item = take(queues);
+                            if (item == null) {
+                                continue;
+                            }
+                            if (!item.isQueueEnd()) {
+                                processed.computeIfAbsent(item.getId(), k -> new AtomicInteger()).incrementAndGet();
+                                totalProcessed.incrementAndGet();
+                                if (item.getId() < numSubitems) {
+                                    queues.addItemFirst(newItem(numItems + item.getId()));
+                                }
+                                queues.decItemsBeingProcessed();
+                            } else if (queues.isNoItemInQueueOrBeingProcessed()) {
+                                processedWhenDrained.add(totalProcessed.get());
+                                queues.addToCurrentQueue(item);
+                                break;
+                            } else {
+                                queues.addToCurrentQueue(item);
+                            }
+                        }
+                    } catch (Throwable e) {
+                        errors.add(e);
+                    }
+                }
+            };
+            consumers[t].start();
+        }
+
+        for (int i = 0; i < numItems; i++) {
+            queues.addItem(newItem(i));
+        }
+        queues.addItem(newQueueEnd());
+
+        for (Thread consumer : consumers) {
+            consumer.join(TimeUnit.SECONDS.toMillis(60));
+            assertFalse("Consumer did not get the queue end", consumer.isAlive());
+        }
+        assertEquals(0, errors.size());
+
+        // each item processed exactly once
+        assertEquals(numItems + numSubitems, processed.size());
+        for (AtomicInteger count : processed.values()) {
+            assertEquals(1, count.get());
+        }
+
+        // every consumer got the queue end, only after all items were processed
+        assertEquals(numThreads, processedWhenDrained.size());
+        for (int count : processedWhenDrained) {
+            assertEquals(numItems + numSubitems, count);
+        }
+        assertEquals(0, queues.getItemsBeingProcessed());
+        assertTrue(queues.peekItemFromCurrentQueue().isQueueEnd());
+    }
+
+    @Test
+    public void testConcurrentTakeRandomOrder() throws InterruptedException {
+        testConcurrentTake(true);
+    }
+
+    @Test
+    public void testConcurrentTakeRoundRobin() throws InterruptedException {
+        testConcurrentTake(false);
+    }
+
+}
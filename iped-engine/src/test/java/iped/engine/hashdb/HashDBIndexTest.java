@@ -0,0 +1,144 @@
+package iped.engine.hashdb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.Random;
+
+import org.junit.Test;
+
+import iped.utils.IOUtil;
+
+public class HashDBIndexTest {
+
+    private static final int MD5 = 0;
+    private static final int SHA1 = 1;
+    private static final int SHA256 = 2;
+
+    private static final int NUM_HASHES = 1000;
+
+    private static byte[] randomHash(Random random, int hashType) {
+        byte[] hash = new byte[HashDB.hashBytesLen[hashType]];
+        random.nextBytes(hash);
+        return hash;
+    }
+
+    /**
+     * Creates a database with the HASHES table of HashDBTool. All hashes have
+     * MD5, just the even ones have SHA1 and there is no SHA256.
+     */
+    private static void createDatabase(File dbFile, byte[][] md5, byte[][] sha1) throws Exception {
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + dbFile.getAbsolutePath())) {
+            try (Statement stmt = connection.createStatement()) {
+                StringBuilder sb = new StringBuilder("create table HASHES (HASH_ID integer primary key");
+                for (String hashType : HashDB.hashTypes) {
+                    sb.append(", ").append(hashType).append(" blob");
+                }
+                stmt.executeUpdate(sb.append(")").toString());
+                for (String hashType : HashDB.hashTypes) {
+                    stmt.executeUpdate("create unique index IDX_" + hashType + " on HASHES (" + hashType + ")");
+                }
+            }
+            connection.setAutoCommit(false);
+            try (PreparedStatement stmt = connection
+                    .prepareStatement("insert into HASHES (HASH_ID, MD5, SHA1) values (?, ?, ?)")) {
+                for (int i = 0; i < md5.length; i++) {
+                    stmt.setInt(1, i + 1);
+                    stmt.setBytes(2, md5[i]);
+                    stmt.setBytes(3, sha1[i]);
+                    stmt.executeUpdate();
+                }
+            }
+            connection.commit();
+        }
+    }
+
+    @Test
+    public void testIndexAndFilter() throws Exception {
+        File dir = Files.createTempDirectory("hashdb").toFile();
+        try {
+            Random random = new Random(0);
+            byte[][] md5 = new byte[NUM_HASHES][];
+            byte[][] sha1 = new byte[NUM_HASHES][];
+            for (int i = 0; i < NUM_HASHES; i++) {
+                md5[i] = randomHash(random, MD5);
+                sha1[i] = i % 2 == 0 ? randomHash(random, SHA1) : null;
+            }
+            File dbFile = new File(dir, "hashes.db");
+            createDatabase(dbFile, md5, sha1);
+            assertNull(HashDBIndex.open(dbFile));
+
+            HashDBIndex.build(dbFile);
+            HashDBFilter.build(dbFile);
+            HashDBFilter[] filters = HashDBFilter.open(dbFile);
+            try (HashDBIndex index = HashDBIndex.open(dbFile)) {
+                assertNotNull(index);
+                assertEquals(NUM_HASHES, index.size(MD5));
+                assertEquals(NUM_HASHES / 2, index.size(SHA1));
+                assertTrue(index.isEmpty(SHA256));
+
+                for (int i = 0; i < NUM_HASHES; i++) {
+                    assertEquals(i + 1, index.find(MD5, md5[i]));
+                    assertTrue(filters[MD5].mightContain(md5[i]));
+                    if (sha1[i] != null) {
+                        assertEquals(i + 1, index.find(SHA1, sha1[i]));
+                        assertTrue(filters[SHA1].mightContain(sha1[i]));
+                    }
+                }
+                int falsePositives = 0;
+                for (int i = 0; i < NUM_HASHES; i++) {
+                    byte[] absent = randomHash(random, MD5);
+                    assertEquals(-1, index.find(MD5, absent));
+                    if (filters[MD5].mightContain(absent)) {
+                        falsePositives++;
+                    }
+                }
+                // about 0.5% expected
+                assertTrue(falsePositives < NUM_HASHES / 50);
+                // other hash width
+                assertEquals(-1, index.find(MD5, sha1[0]));
+                assertFalse(filters[MD5].mightContain(sha1[0]));
+                // empty type rejects everything
+                assertNotNull(filters[SHA256]);
+                assertEquals(-1, index.find(SHA256, randomHash(random, SHA256)));
+                assertFalse(filters[SHA256].mightContain(randomHash(random, SHA256)));
+
+                index.close();
+                try {
+                    index.find(MD5, md5[0]);
+                    fail("Lookup in closed index should fail");
+                } catch (IllegalStateException e) {
+                    // expected
+                }
+            }
+
+            // index and filters are not used after the database changes
+            try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + dbFile.getAbsolutePath());
+                    Statement stmt = connection.createStatement()) {
+                stmt.executeUpdate("delete from HASHES where HASH_ID = 1");
+            }
+            assertNull(HashDBIndex.open(dbFile));
+            assertNull(HashDBFilter.open(dbFile)[MD5]);
+            try {
+                HashDBFilter.build(dbFile);
+                fail("Filters should not be built from an outdated index");
+            } catch (IOException e) {
+                // expected
+            }
+        } finally {
+            IOUtil.deleteDirectory(dir);
+        }
+    }
+
+}
@@ -0,0 +1,120 @@
+package iped.engine.io;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures chars/s transferred from a writer thread to a reader thread through
+ * the monitor based {@link FastPipedReader} and the ring buffer
+ * {@link RingPipedReader}, with the pipe size used by {@link ParsingReader}.
+ * Run with:
+ *
+ * mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=iped.engine.io.PipeBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PipeBenchmark {
+
+    private static final int TOTAL_CHARS = 64 * 1024 * 1024;
+
+    private static final int PIPE_SIZE = 128 * 1024;
+
+    @Param({ "fast", "ring" })
+    public String pipe;
+
+    /** Chars per write, parsers usually write small text runs. */
+    @Param({ "16", "256", "8192" })
+    public int writeSize;
+
+    /** Chars per read, 8192 is the BufferedReader default. */
+    @Param({ "8192" })
+    public int readSize;
+
+    private ExecutorService executor;
+
+    private char[] writeBuf;
+
+    private char[] readBuf;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        executor = Executors.newSingleThreadExecutor();
+        writeBuf = new char[writeSize];
+        for (int i = 0; i < writeSize; i++) {
+            writeBuf[i] = (char) ('a' + i % 26);
+        }
+        readBuf = new char[readSize];
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TOTAL_CHARS)
+    public long transfer() throws Exception {
+        Reader reader;
+        Writer writer;
+        if (pipe.equals("fast")) {
+            FastPipedReader fastReader = new FastPipedReader(PIPE_SIZE, 60, 0);
+            writer = new FastPipedWriter(fastReader);
+            reader = fastReader;
+        } else {
+            RingPipedReader ringReader = new RingPipedReader(PIPE_SIZE, 60, 0);
+            writer = new RingPipedWriter(ringReader);
+            reader = ringReader;
+        }
+        Future<?> producer = executor.submit(() -> {
+            for (int written = 0; written < TOTAL_CHARS; written += writeSize) {
+                writer.write(writeBuf, 0, Math.min(writeSize, TOTAL_CHARS - written));
+            }
+            writer.close();
+            return null;
+        });
+        long total = 0;
+        int read;
+        while ((read = reader.read(readBuf, 0, readSize)) != -1) {
+            total += read;
+        }
+        reader.close();
+        producer.get();
+        if (total != TOTAL_CHARS) {
+            throw new IOException("Expected " + TOTAL_CHARS + " chars, read " + total);
+        }
+        return total;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(PipeBenchmark.class.getSimpleName()).build()).run();
+    }
+
+}
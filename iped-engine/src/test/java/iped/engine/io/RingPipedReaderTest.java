@@ -0,0 +1,146 @@
+package iped.engine.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+public class RingPipedReaderTest {
+
+    private static char[] content(int len) {
+        Random random = new Random(len);
+        char[] chars = new char[len];
+        for (int i = 0; i < len; i++) {
+            chars[i] = (char) ('a' + random.nextInt(26));
+        }
+        return chars;
+    }
+
+    @Test
+    public void testWrapAround() throws Exception {
+        // 16 chars ring, chunks not aligned to it
+        RingPipedReader reader = new RingPipedReader(10, 60, 0);
+        RingPipedWriter writer = new RingPipedWriter(reader);
+        char[] expected = content(100000);
+        AtomicReference<Exception> error = new AtomicReference<>();
+        Thread writerThread = new Thread() {
+            public void run() {
+                try {
+                    int[] chunks = { 1, 7, 13, 16 };
+                    int off = 0;
+                    for (int i = 0; off < expected.length; i++) {
+                        int len = Math.min(chunks[i % chunks.length], expected.length - off);
+                        writer.write(expected, off, len);
+                        off += len;
+                    }
+                    writer.close();
+                } catch (Exception e) {
+                    error.set(e);
+                }
+            }
+        };
+        writerThread.start();
+
+        char[] read = new char[expected.length];
+        char[] buf = new char[11];
+        int pos = 0, n;
+        while ((n = reader.read(buf, 0, Math.min(buf.length, 1 + pos % buf.length))) != -1) {
+            assertTrue(n > 0);
+            System.arraycopy(buf, 0, read, pos, n);
+            pos += n;
+        }
+        writerThread.join();
+        assertEquals(null, error.get());
+        assertEquals(expected.length, pos);
+        assertArrayEquals(expected, read);
+        assertEquals(-1, reader.read());
+    }
+
+    @Test
+    public void testEndOfStreamAfterWriterClosed() throws IOException {
+        RingPipedReader reader = new RingPipedReader(64, 60, 0);
+        RingPipedWriter writer = new RingPipedWriter(reader);
+        assertFalse(reader.ready());
+        writer.write("abc".toCharArray());
+        writer.write('d');
+        writer.close();
+        assertTrue(reader.ready());
+
+        // chars written before closing are still read
+        char[] buf = new char[10];
+        assertEquals(4, reader.read(buf, 0, buf.length));
+        assertEquals("abcd", new String(buf, 0, 4));
+        assertEquals(-1, reader.read(buf, 0, buf.length));
+        assertEquals(-1, reader.read());
+        try {
+            writer.write('e');
+            fail("Write after close should fail");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testWriterDied() throws Exception {
+        RingPipedReader reader = new RingPipedReader(64, 60, 0);
+        RingPipedWriter writer = new RingPipedWriter(reader);
+        // writer thread ends without closing the pipe
+        Thread writerThread = new Thread() {
+            public void run() {
+                try {
+                    writer.write("ab".toCharArray());
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+        writerThread.start();
+        writerThread.join();
+
+        char[] buf = new char[10];
+        assertEquals(2, reader.read(buf, 0, buf.length));
+        try {
+            reader.read(buf, 0, buf.length);
+            fail("Read from dead writer should fail");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testReaderDied() throws Exception {
+        RingPipedReader reader = new RingPipedReader(16, 60, 0);
+        RingPipedWriter writer = new RingPipedWriter(reader);
+        writer.write('a');
+        Thread readerThread = new Thread() {
+            public void run() {
+                try {
+                    reader.read();
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+        readerThread.start();
+        readerThread.join();
+
+        // fills the ring, then the writer must notice nobody will read it
+        char[] chars = new char[64];
+        Arrays.fill(chars, 'x');
+        try {
+            writer.write(chars);
+            fail("Write to dead reader should fail");
+        } catch (IOException e) {
+            assertEquals("Pipe broken", e.getMessage());
+        }
+    }
+
+}
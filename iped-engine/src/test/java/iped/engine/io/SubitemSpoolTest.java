@@ -0,0 +1,114 @@
+package iped.engine.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.commons.compress.utils.IOUtils;
+import org.junit.Test;
+
+import iped.engine.io.SubitemSpool.SpooledContent;
+import iped.io.SeekableInputStream;
+
+public class SubitemSpoolTest {
+
+    private static byte[] randomBytes(Random random, int len) {
+        byte[] bytes = new byte[len];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+
+    private static void assertContent(byte[] expected, SpooledContent content) throws IOException {
+        assertEquals(expected.length, content.getLength());
+        try (SeekableInputStream is = content.getSeekableInputStream(SpooledContent.ID)) {
+            assertEquals(expected.length, is.size());
+            assertArrayEquals(expected, IOUtils.toByteArray(is));
+            if (expected.length > 10) {
+                is.seek(expected.length - 10);
+                byte[] end = new byte[10];
+                IOUtils.readFully(is, end);
+                assertEquals(expected[expected.length - 1], end[9]);
+            }
+        }
+    }
+
+    @Test
+    public void testLimits() throws IOException {
+        Random random = new Random(0);
+        SubitemSpool spool = new SubitemSpool(4 << 20, 64 << 10);
+        assertEquals(64 << 10, spool.getMaxItemSize());
+
+        byte[] small = randomBytes(random, 1000);
+        try (SpooledContent content = spool.spool(small, small.length)) {
+            assertNull(content.getDataSourceURI());
+            assertContent(small, content);
+        }
+        byte[] large = randomBytes(random, (64 << 10) + 1);
+        assertNull(spool.spool(large, large.length));
+
+        try (SpooledContent content = spool.spool(new byte[0], 0)) {
+            try (InputStream is = content.getSeekableInputStream(SpooledContent.ID)) {
+                assertEquals(-1, is.read());
+            }
+        }
+
+        SubitemSpool disabled = new SubitemSpool(0, 64 << 10);
+        assertEquals(0, disabled.getMaxItemSize());
+        assertNull(disabled.spool(new byte[0], 0));
+    }
+
+    @Test
+    public void testReleasedPagesAreReused() throws IOException {
+        Random random = new Random(1);
+        SubitemSpool spool = new SubitemSpool(2 << 20, 256 << 10);
+
+        // fill the 2 pages of the arena
+        List<byte[]> expected = new ArrayList<>();
+        List<SpooledContent> contents = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            byte[] bytes = randomBytes(random, 256 << 10);
+            SpooledContent content = spool.spool(bytes, bytes.length);
+            assertNotNull(content);
+            expected.add(bytes);
+            contents.add(content);
+        }
+        byte[] bytes = randomBytes(random, 1000);
+        assertNull(spool.spool(bytes, bytes.length));
+
+        // a retained content is kept after being closed by its first holder, so only
+        // the second page is reused
+        SpooledContent retained = contents.get(0).retain();
+        for (SpooledContent content : contents) {
+            content.close();
+        }
+        contents.clear();
+        for (int i = 0; i < 4; i++) {
+            byte[] other = randomBytes(random, 256 << 10);
+            contents.add(spool.spool(other, other.length));
+            assertContent(other, contents.get(i));
+        }
+        assertNull(spool.spool(bytes, bytes.length));
+        assertContent(expected.get(0), retained);
+
+        retained.close();
+        try {
+            retained.getSeekableInputStream(SpooledContent.ID);
+            fail("Released content should not be read");
+        } catch (IOException e) {
+            // expected
+        }
+        try (SpooledContent content = spool.spool(bytes, bytes.length)) {
+            assertNotNull(content);
+            assertContent(bytes, content);
+        }
+    }
+
+}
@@ -0,0 +1,99 @@
+package iped.engine.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.compress.utils.IOUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import iped.io.SeekableInputStream;
+
+/**
+ * Reads random entries of a synthetic UFDR (mixed STORED and DEFLATED entries,
+ * optionally split in segments) from many threads, like processing workers do.
+ * A new factory is created per iteration, so the first reads of each entry are
+ * not served by caches. Run with:
+ *
+ * mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=iped.engine.io.ZIPInputStreamFactoryBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Threads(8)
+@Fork(1)
+public class ZIPInputStreamFactoryBenchmark {
+
+    private static final int NUM_ENTRIES = 2000;
+
+    @Param({ "0", "67108864" })
+    private long splitSize;
+
+    private File zipFile;
+
+    private String[] names;
+
+    private ZIPInputStreamFactory factory;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        zipFile = new File(Files.createTempDirectory("zipbenchmark").toFile(), "bench.zip");
+        names = ZIPInputStreamFactoryTest.createZip(zipFile, NUM_ENTRIES, 4 << 20, splitSize).keySet()
+                .toArray(new String[0]);
+    }
+
+    @Setup(Level.Iteration)
+    public void openFactory() {
+        factory = new ZIPInputStreamFactory(zipFile.toPath());
+    }
+
+    @TearDown(Level.Iteration)
+    public void closeFactory() throws IOException {
+        factory.close();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        ZIPInputStreamFactoryTest.deleteZip(zipFile);
+    }
+
+    @Benchmark
+    public long readEntry() throws IOException {
+        String name = names[ThreadLocalRandom.current().nextInt(names.length)];
+        long total = 0;
+        byte[] buf = new byte[8192];
+        try (SeekableInputStream is = factory.getSeekableInputStream(name)) {
+            int read;
+            while ((read = IOUtils.readFully(is, buf)) > 0) {
+                total += read;
+            }
+        }
+        return total;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(ZIPInputStreamFactoryBenchmark.class.getSimpleName()).build()).run();
+    }
+
+}
@@ -0,0 +1,136 @@
+package iped.engine.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.utils.IOUtils;
+import org.junit.Test;
+
+import iped.io.SeekableInputStream;
+
+public class ZIPInputStreamFactoryTest {
+
+    /**
+     * Creates a synthetic UFDR like zip with text like DEFLATED entries and
+     * binary STORED entries, some bigger than the small entries cache limit.
+     *
+     * @param splitSize
+     *            size of each segment, or 0 to create a single file
+     * @return entry contents by entry name
+     */
+    static Map<String, byte[]> createZip(File zipFile, int numEntries, int maxSize, long splitSize)
+            throws IOException {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        Random random = new Random(0);
+        try (ZipArchiveOutputStream out = splitSize > 0 ? new ZipArchiveOutputStream(zipFile, splitSize)
+                : new ZipArchiveOutputStream(zipFile)) {
+            for (int i = 0; i < numEntries; i++) {
+                int size = i % 10 == 0 ? maxSize : random.nextInt(64 * 1024);
+                byte[] data = new byte[size];
+                boolean stored = i % 2 == 0;
+                if (stored) {
+                    random.nextBytes(data);
+                } else {
+                    for (int j = 0; j < size; j++) {
+                        data[j] = (byte) ('a' + random.nextInt(8));
+                    }
+                }
+                String name = "files/" + i + (stored ? ".jpg" : ".txt");
+                ZipArchiveEntry entry = new ZipArchiveEntry(name);
+                if (stored) {
+                    CRC32 crc = new CRC32();
+                    crc.update(data);
+                    entry.setMethod(ZipEntry.STORED);
+                    entry.setSize(size);
+                    entry.setCrc(crc.getValue());
+                } else {
+                    entry.setMethod(ZipEntry.DEFLATED);
+                }
+                out.putArchiveEntry(entry);
+                out.write(data);
+                out.closeArchiveEntry();
+                entries.put(name, data);
+            }
+        }
+        return entries;
+    }
+
+    static void deleteZip(File zipFile) {
+        File dir = zipFile.getParentFile();
+        for (File file : dir.listFiles()) {
+            file.delete();
+        }
+        dir.delete();
+    }
+
+    private void testConcurrentReads(long splitSize) throws Exception {
+        File zipFile = new File(Files.createTempDirectory("zipfactory").toFile(), "test.zip");
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            Map<String, byte[]> entries = createZip(zipFile, 200, 3 << 20, splitSize);
+            if (splitSize > 0) {
+                assertTrue(new File(zipFile.getParentFile(), "test.z01").exists());
+            }
+            try (ZIPInputStreamFactory factory = new ZIPInputStreamFactory(zipFile.toPath())) {
+                List<Future<?>> futures = new ArrayList<>();
+                // twice to read cached entries
+                for (int n = 0; n < 2; n++) {
+                    for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+                        futures.add(executor.submit(() -> {
+                            assertEquals(entry.getValue().length, factory.getEntrySize(entry.getKey()));
+                            try (SeekableInputStream is = factory.getSeekableInputStream(entry.getKey())) {
+                                assertEquals(entry.getValue().length, is.size());
+                                assertArrayEquals(entry.getKey(), entry.getValue(), IOUtils.toByteArray(is));
+                                if (is.size() > 10) {
+                                    is.seek(is.size() - 10);
+                                    byte[] end = new byte[10];
+                                    IOUtils.readFully(is, end);
+                                    assertEquals(entry.getValue()[entry.getValue().length - 1], end[9]);
+                                }
+                            }
+                            return null;
+                        }));
+                    }
+                }
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+                try (InputStream is = factory.getSeekableInputStream("not/found")) {
+                    assertEquals(-1, is.read());
+                }
+            }
+        } finally {
+            executor.shutdown();
+            deleteZip(zipFile);
+        }
+    }
+
+    @Test
+    public void testConcurrentReads() throws Exception {
+        testConcurrentReads(0);
+    }
+
+    @Test
+    public void testConcurrentReadsSplitZip() throws Exception {
+        testConcurrentReads(4 << 20);
+    }
+
+}
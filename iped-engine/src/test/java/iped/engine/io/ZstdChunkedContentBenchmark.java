@@ -0,0 +1,135 @@
+package iped.engine.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+
+import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
+import org.apache.commons.compress.compressors.gzip.GzipParameters;
+import org.apache.commons.compress.utils.IOUtils;
+import org.apache.commons.compress.utils.SeekableInMemoryByteChannel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import iped.io.SeekableInputStream;
+import iped.utils.SeekableFileInputStream;
+
+/**
+ * Compares the gzip format of the case storage with {@link ZstdChunkedContent}:
+ * compression of a whole item (write) and opening the stored item to read 4KB
+ * at a random position (random read), as done by viewers. Divide the item size
+ * by the write score to get MB/s. Run with:
+ *
+ * mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=iped.engine.io.ZstdChunkedContentBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ZstdChunkedContentBenchmark {
+
+    @Param({ "65536", "16777216" })
+    private int size;
+
+    private byte[] data;
+
+    private byte[] gzipBlob;
+
+    private byte[] zstdBlob;
+
+    private byte[] buf = new byte[4096];
+
+    private Random random = new Random(0);
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        // mix of text like and binary like content
+        Random r = new Random(0);
+        data = new byte[size];
+        String[] words = { "lorem ", "ipsum ", "dolor ", "sit ", "amet ", "<div class=\"x\">", "</div>\n" };
+        int i = 0;
+        while (i < size) {
+            if (r.nextInt(200) == 0) {
+                int n = Math.min(size - i, 512);
+                for (int j = 0; j < n; j++) {
+                    data[i++] = (byte) r.nextInt();
+                }
+            } else {
+                byte[] w = words[r.nextInt(words.length)].getBytes();
+                int n = Math.min(size - i, w.length);
+                System.arraycopy(w, 0, data, i, n);
+                i += n;
+            }
+        }
+        gzipBlob = gzip();
+        zstdBlob = zstd();
+        System.out.println("\ngzip ratio " + (float) gzipBlob.length / size + " zstd ratio " //$NON-NLS-1$ //$NON-NLS-2$
+                + (float) zstdBlob.length / size);
+    }
+
+    @Benchmark
+    public byte[] gzip() throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        GzipParameters params = new GzipParameters();
+        params.setCompressionLevel(Deflater.BEST_SPEED);
+        try (GzipCompressorOutputStream out = new GzipCompressorOutputStream(baos, params)) {
+            out.write(data);
+        }
+        return baos.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] zstd() throws IOException {
+        return ZstdChunkedContent.compress(data, 0, data.length, 256 * 1024, 3);
+    }
+
+    @Benchmark
+    public int gzipRandomRead() throws IOException {
+        // same as SQLiteInputStreamFactory does with gzip blobs
+        byte[] bytes;
+        try (InputStream in = new GzipCompressorInputStream(new ByteArrayInputStream(gzipBlob))) {
+            bytes = IOUtils.toByteArray(in);
+        }
+        try (SeekableInputStream in = new SeekableFileInputStream(new SeekableInMemoryByteChannel(bytes))) {
+            return randomRead(in);
+        }
+    }
+
+    @Benchmark
+    public int zstdRandomRead() throws IOException {
+        try (SeekableInputStream in = new ZstdChunkedContent.ChunkedInputStream(zstdBlob, null)) {
+            return randomRead(in);
+        }
+    }
+
+    private int randomRead(SeekableInputStream in) throws IOException {
+        in.seek(random.nextInt(size - buf.length));
+        return IOUtils.readFully(in, buf);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(ZstdChunkedContentBenchmark.class.getSimpleName()).build()).run();
+    }
+
+}
@@ -0,0 +1,123 @@
+package iped.engine.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.github.luben.zstd.ZstdDictCompress;
+import com.github.luben.zstd.ZstdDictDecompress;
+import com.github.luben.zstd.ZstdDictTrainer;
+
+public class ZstdChunkedContentTest {
+
+    private static byte[] content(int len, long seed) {
+        Random random = new Random(seed);
+        byte[] data = new byte[len];
+        // half compressible text, half random bytes
+        for (int i = 0; i < len; i++) {
+            data[i] = (i / 1000) % 2 == 0 ? (byte) ('a' + random.nextInt(4)) : (byte) random.nextInt();
+        }
+        return data;
+    }
+
+    private static byte[] readAll(ZstdChunkedContent.ChunkedInputStream in) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        byte[] buf = new byte[777];
+        int i;
+        while ((i = in.read(buf)) != -1) {
+            baos.write(buf, 0, i);
+        }
+        return baos.toByteArray();
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        for (int len : new int[] { 0, 1, 4095, 4096, 4097, 100000 }) {
+            byte[] data = content(len, len);
+            byte[] blob = ZstdChunkedContent.compress(data, 0, len, 4096, 3);
+            assertTrue(ZstdChunkedContent.isChunked(blob));
+            assertEquals(0, ZstdChunkedContent.getDictId(blob));
+            try (ZstdChunkedContent.ChunkedInputStream in = new ZstdChunkedContent.ChunkedInputStream(blob, null)) {
+                assertEquals(len, in.size());
+                assertArrayEquals(data, readAll(in));
+                assertEquals(-1, in.read());
+            }
+        }
+    }
+
+    @Test
+    public void testRandomSeeks() throws IOException {
+        byte[] data = content(300000, 1);
+        byte[] blob = ZstdChunkedContent.compress(data, 0, data.length, 8192, 1);
+        Random random = new Random(2);
+        byte[] buf = new byte[20000];
+        try (ZstdChunkedContent.ChunkedInputStream in = new ZstdChunkedContent.ChunkedInputStream(blob, null)) {
+            for (int i = 0; i < 500; i++) {
+                int pos = random.nextInt(data.length);
+                in.seek(pos);
+                assertEquals(pos, in.position());
+                int len = Math.min(random.nextInt(buf.length), data.length - pos);
+                int read = 0;
+                while (read < len) {
+                    read += in.read(buf, read, len - read);
+                }
+                assertArrayEquals(Arrays.copyOfRange(data, pos, pos + len), Arrays.copyOf(buf, len));
+            }
+            in.seek(data.length + 10);
+            assertEquals(-1, in.read(buf));
+            in.seek(10);
+            in.mark(0);
+            assertEquals(data[10] & 0xFF, in.read());
+            in.reset();
+            assertEquals(10, in.position());
+        }
+    }
+
+    @Test
+    public void testOffsetAndIncompressible() throws IOException {
+        byte[] data = new byte[50000];
+        new Random(3).nextBytes(data);
+        byte[] blob = ZstdChunkedContent.compress(data, 1000, 40000, 16384, 3);
+        // random chunks are stored as is
+        assertTrue(blob.length < 40000 + 100);
+        try (ZstdChunkedContent.ChunkedInputStream in = new ZstdChunkedContent.ChunkedInputStream(blob, null)) {
+            assertArrayEquals(Arrays.copyOfRange(data, 1000, 41000), readAll(in));
+        }
+    }
+
+    @Test
+    public void testDictionary() throws IOException {
+        ZstdDictTrainer trainer = new ZstdDictTrainer(1 << 20, 16 * 1024);
+        String template = "{\"name\":\"%s\",\"phone\":\"+55 61 %08d\",\"email\":\"user%d@example.com\",\"type\":\"contact\"}";
+        Random random = new Random(4);
+        for (int i = 0; i < 2000; i++) {
+            String sample = String.format(template, "name" + random.nextInt(1000), random.nextInt(99999999), i);
+            trainer.addSample(sample.getBytes());
+        }
+        byte[] dictBytes = trainer.trainSamples();
+        byte[] data = String.format(template, "john", 12345678, 42).getBytes();
+        byte[] plain = ZstdChunkedContent.compress(data, 0, data.length, 4096, 3);
+        byte[] blob = ZstdChunkedContent.compress(data, 0, data.length, 4096, 3, new ZstdDictCompress(dictBytes, 3), 7);
+        assertEquals(7, ZstdChunkedContent.getDictId(blob));
+        assertTrue(blob.length < plain.length);
+        try (ZstdChunkedContent.ChunkedInputStream in = new ZstdChunkedContent.ChunkedInputStream(blob,
+                new ZstdDictDecompress(dictBytes))) {
+            assertArrayEquals(data, readAll(in));
+        }
+    }
+
+    @Test
+    public void testNotChunked() {
+        assertFalse(ZstdChunkedContent.isChunked(new byte[] { 0x1f, (byte) 0x8b, 8, 0 }));
+        assertFalse(ZstdChunkedContent.isChunked(null));
+    }
+
+}
@@ -0,0 +1,160 @@
+package iped.engine.search;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.document.BinaryDocValuesField;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.KnnVectorField;
+import org.apache.lucene.index.BinaryDocValues;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.util.BytesRef;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.roaringbitmap.RoaringBitmap;
+
+import iped.engine.task.similarity.ImageSimilarity;
+import iped.engine.task.similarity.ImageSimilarityTask;
+
+/**
+ * Compares the exact scan of image features doc values done by
+ * {@link ImageSimilarityScorer} with the knn query over the quantized feature
+ * vectors, over synthetic features of groups of similar images, indexed as
+ * IndexItem does. The fraction of the exact 200 nearest images returned by the
+ * knn query is printed at setup. Run with:
+ *
+ * mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=iped.engine.search.ImageSimilarityBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = { "-Xmx4g" })
+public class ImageSimilarityBenchmark {
+
+    private static final int TOP = 200;
+
+    private static final int QUERIES = 10;
+
+    @Param({ "100000" })
+    private int images;
+
+    @Param({ "2000", "8000" })
+    private int knnHits;
+
+    private ByteBuffersDirectory dir;
+
+    private DirectoryReader reader;
+
+    private IndexSearcher searcher;
+
+    private byte[][] queries = new byte[QUERIES][];
+
+    private int query = 0;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        Random random = new Random(0);
+        byte[][] scenes = new byte[Math.max(1, images / 20)][ImageSimilarity.numFeatures];
+        for (byte[] scene : scenes) {
+            for (int i = 0; i < 60; i++) {
+                scene[4 + random.nextInt(1040)] = (byte) random.nextInt(64);
+            }
+        }
+        dir = new ByteBuffersDirectory();
+        try (IndexWriter writer = new IndexWriter(dir, new IndexWriterConfig().setRAMBufferSizeMB(256))) {
+            for (int n = 0; n < images; n++) {
+                // a variation of some scene
+                byte[] features = scenes[random.nextInt(scenes.length)].clone();
+                for (int i = 4; i < features.length; i++) {
+                    if (features[i] != 0 || random.nextInt(100) == 0) {
+                        features[i] = (byte) Math.max(0, Math.min(63, features[i] + random.nextInt(13) - 6));
+                    }
+                }
+                Document doc = new Document();
+                doc.add(new BinaryDocValuesField(ImageSimilarityTask.IMAGE_FEATURES, new BytesRef(features)));
+                doc.add(new KnnVectorField(ImageSimilarityTask.IMAGE_FEATURES_KNN, ImageSimilarity.toVector(features)));
+                writer.addDocument(doc);
+                if (n % (images / QUERIES) == 0) {
+                    queries[n / (images / QUERIES)] = features;
+                }
+            }
+            writer.forceMerge(1);
+        }
+        reader = DirectoryReader.open(dir);
+        searcher = new IndexSearcher(reader);
+
+        long found = 0;
+        for (byte[] q : queries) {
+            RoaringBitmap knn = ImageSimilarityScorer.getKnnCandidates(searcher, q, knnHits);
+            for (int doc : exactTop(q, Integer.MAX_VALUE)) {
+                if (knn.contains(doc)) {
+                    found++;
+                }
+            }
+        }
+        System.out.println("\nknn recall of exact top " + TOP + ": " + (float) found / (QUERIES * TOP)); //$NON-NLS-1$ //$NON-NLS-2$
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        reader.close();
+        dir.close();
+    }
+
+    private int[] exactTop(byte[] ref, int evalCut) throws IOException {
+        // same per image work as ImageSimilarityScorer.score()
+        LeafReader leafReader = reader.leaves().get(0).reader();
+        BinaryDocValues values = leafReader.getBinaryDocValues(ImageSimilarityTask.IMAGE_FEATURES);
+        long[] distAndDoc = new long[leafReader.maxDoc()];
+        for (int doc = 0; doc < distAndDoc.length; doc++) {
+            values.advanceExact(doc);
+            int distance = ImageSimilarity.distance(ref, values.binaryValue().bytes, evalCut);
+            distAndDoc[doc] = ((long) distance << 32) | doc;
+        }
+        Arrays.sort(distAndDoc);
+        int[] top = new int[Math.min(TOP, distAndDoc.length)];
+        for (int i = 0; i < top.length; i++) {
+            top[i] = (int) distAndDoc[i];
+        }
+        return top;
+    }
+
+    @Benchmark
+    public int[] exact() throws IOException {
+        return exactTop(queries[query++ % QUERIES], 100 * ImageSimilarity.numFeatures / 4);
+    }
+
+    @Benchmark
+    public RoaringBitmap knn() throws IOException {
+        return ImageSimilarityScorer.getKnnCandidates(searcher, queries[query++ % QUERIES], knnHits);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(ImageSimilarityBenchmark.class.getSimpleName()).build()).run();
+    }
+
+}
@@ -0,0 +1,155 @@
+package iped.engine.search;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.roaringbitmap.RoaringBitmap;
+
+import iped.data.IItemId;
+import iped.engine.data.ItemId;
+
+/**
+ * Compares a 10M hits result kept as one {@link ItemId} per hit, as
+ * MultiSearchResult used to, with its primitive arrays: building the result,
+ * iterating over it, filtering by score and computing the per case bitsets.
+ * Retained heap of each layout is printed at setup, add -prof gc to compare
+ * allocations. Run with:
+ *
+ * mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=iped.engine.search.MultiSearchResultBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = { "-Xmx4g" })
+public class MultiSearchResultBenchmark {
+
+    private static final int[] CASES = { 0, 1, 2, 3 };
+
+    @Param({ "10000000" })
+    private int hits;
+
+    private int[] sourceIds;
+
+    private int[] ids;
+
+    private float[] scores;
+
+    private IItemId[] objectIds;
+
+    private MultiSearchResult result;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        // hits in case and id order, like an unscored search over a multicase
+        sourceIds = new int[hits];
+        ids = new int[hits];
+        scores = new float[hits];
+        Random random = new Random(0);
+        for (int i = 0; i < hits; i++) {
+            sourceIds[i] = (int) ((long) i * CASES.length / hits);
+            ids[i] = i * 2;
+            scores[i] = random.nextFloat() * 100;
+        }
+        long before = usedHeap();
+        objectIds = buildObjects();
+        long objects = usedHeap() - before;
+        before = usedHeap();
+        result = buildPrimitive();
+        long primitive = usedHeap() - before;
+        System.out.println("\nheap with ItemId[] " + (objects >> 20) + "MB, with int[] " + (primitive >> 20) + "MB"); //$NON-NLS-1$ //$NON-NLS-2$
+    }
+
+    private static long usedHeap() {
+        System.gc();
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    @Benchmark
+    public IItemId[] buildObjects() {
+        IItemId[] items = new IItemId[hits];
+        for (int i = 0; i < hits; i++) {
+            items[i] = new ItemId(sourceIds[i], ids[i]);
+        }
+        return items;
+    }
+
+    @Benchmark
+    public MultiSearchResult buildPrimitive() {
+        return new MultiSearchResult(sourceIds.clone(), ids.clone(), null);
+    }
+
+    @Benchmark
+    public long iterateObjects() {
+        long sum = 0;
+        for (IItemId item : objectIds) {
+            sum += item.getSourceId() + item.getId();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long iteratePrimitive() {
+        long sum = 0;
+        for (int i = 0; i < result.getLength(); i++) {
+            sum += result.getSourceId(i) + result.getId(i);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long iterateViews() {
+        long sum = 0;
+        for (IItemId item : result.getIterator()) {
+            sum += item.getSourceId() + item.getId();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public MultiSearchResult filterLowScore() {
+        MultiSearchResult scored = new MultiSearchResult(sourceIds, ids, scores);
+        return ImageSimilarityLowScoreFilter.filter(scored, 50);
+    }
+
+    @Benchmark
+    public RoaringBitmap[] casesBitSetsObjects() {
+        // same loop MultiSearchResult used to run
+        RoaringBitmap[] bitsets = new RoaringBitmap[CASES.length];
+        for (int c : CASES) {
+            bitsets[c] = new RoaringBitmap();
+        }
+        for (IItemId item : objectIds) {
+            bitsets[item.getSourceId()].add(item.getId());
+        }
+        return bitsets;
+    }
+
+    @Benchmark
+    public RoaringBitmap[] casesBitSetsPrimitive() {
+        return result.getCasesBitSets(CASES);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(MultiSearchResultBenchmark.class.getSimpleName()).build()).run();
+    }
+
+}
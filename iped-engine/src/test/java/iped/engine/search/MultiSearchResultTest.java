@@ -0,0 +1,85 @@
+package iped.engine.search;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.roaringbitmap.RoaringBitmap;
+
+import iped.data.IItemId;
+import iped.engine.data.ItemId;
+import iped.engine.search.TimelineResults.TimeItemId;
+
+public class MultiSearchResultTest {
+
+    @Test
+    public void testItemViews() {
+        TimeItemId timeItem = new TimeItemId(null, 1, 7, 10, 20);
+        MultiSearchResult result = new MultiSearchResult(new IItemId[] { new ItemId(0, 5), timeItem },
+                new float[] { 1, 2 });
+        assertEquals(2, result.getLength());
+        assertEquals(new ItemId(0, 5), result.getItem(0));
+        assertEquals(0, result.getSourceId(0));
+        assertEquals(5, result.getId(0));
+        assertSame(timeItem, result.getItem(1));
+        assertEquals(1, result.getSourceId(1));
+        assertEquals(7, result.getId(1));
+
+        int i = 0;
+        for (IItemId item : result.getIterator()) {
+            assertEquals(result.getItem(i++).getId(), item.getId());
+        }
+        assertEquals(2, i);
+
+        MultiSearchResult clone = result.clone();
+        clone.setItem(1, new ItemId(1, 8));
+        assertSame(timeItem, result.getItem(1));
+        assertFalse(clone.getItem(1) instanceof TimeItemId);
+        assertEquals(8, clone.getId(1));
+    }
+
+    @Test
+    public void testUnscored() {
+        MultiSearchResult result = new MultiSearchResult(new int[] { 0, 0 }, new int[] { 1, 2 }, null);
+        assertFalse(result.hasScores());
+        assertEquals(0, result.getScore(1), 0);
+        result.setScore(1, 3);
+        assertTrue(result.hasScores());
+        assertEquals(0, result.getScore(0), 0);
+        assertEquals(3, result.getScore(1), 0);
+    }
+
+    @Test
+    public void testBuilderAndFilter() {
+        MultiSearchResult.Builder builder = new MultiSearchResult.Builder(1);
+        for (int i = 0; i < 100; i++) {
+            builder.add(i % 2, i, i);
+        }
+        TimeItemId timeItem = new TimeItemId(null, 0, 100, 1, 1);
+        builder.add(timeItem, 100);
+        MultiSearchResult result = builder.build();
+        assertEquals(101, result.getLength());
+        assertSame(timeItem, result.getItem(100));
+
+        MultiSearchResult filtered = ImageSimilarityLowScoreFilter.filter(result, 49);
+        assertEquals(51, filtered.getLength());
+        assertEquals(50, filtered.getId(0));
+        assertEquals(50, filtered.getScore(0), 0);
+        assertSame(timeItem, filtered.getItem(50));
+    }
+
+    @Test
+    public void testCasesBitSets() {
+        MultiSearchResult result = new MultiSearchResult(new int[] { 0, 0, 2, 2, 0 }, new int[] { 3, 1, 4, 9, 2 },
+                null);
+        RoaringBitmap[] bitsets = result.getCasesBitSets(new int[] { 0, 1, 2 });
+        assertEquals(3, bitsets.length);
+        assertArrayEquals(new int[] { 1, 2, 3 }, bitsets[0].toArray());
+        assertTrue(bitsets[1].isEmpty());
+        assertArrayEquals(new int[] { 4, 9 }, bitsets[2].toArray());
+    }
+
+}
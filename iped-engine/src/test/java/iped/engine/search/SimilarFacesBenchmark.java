@@ -0,0 +1,166 @@
+package iped.engine.search;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.KnnVectorField;
+import org.apache.lucene.document.SortedSetDocValuesField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.SortedSetDocValues;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.util.BytesRef;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.roaringbitmap.RoaringBitmap;
+
+import iped.engine.task.index.IndexItem;
+
+/**
+ * Compares the exact face similarity scan over face_encodings doc values with
+ * the knn candidates query of {@link SimilarFacesSearch}, over an index with
+ * clusters of faces of the same person, indexed as IndexItem does. The recall
+ * of the knn query is printed at setup. Run with:
+ *
+ * mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=iped.engine.search.SimilarFacesBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = { "-Xmx4g" })
+public class SimilarFacesBenchmark {
+
+    private static final int DIMENSION = 128;
+
+    private static final float MAX_SQUARED_DIST = 0.5f * 0.5f;
+
+    private static final int QUERIES = 20;
+
+    @Param({ "100000" })
+    private int faces;
+
+    private ByteBuffersDirectory dir;
+
+    private DirectoryReader reader;
+
+    private IndexSearcher searcher;
+
+    private List<String> fields;
+
+    private float[][] queries = new float[QUERIES][];
+
+    private int query = 0;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        Random random = new Random(0);
+        float[][] persons = new float[faces / 10][DIMENSION];
+        for (float[] person : persons) {
+            for (int i = 0; i < DIMENSION; i++) {
+                person[i] = (float) random.nextGaussian() * 0.09f;
+            }
+        }
+        dir = new ByteBuffersDirectory();
+        try (IndexWriter writer = new IndexWriter(dir, new IndexWriterConfig().setRAMBufferSizeMB(256))) {
+            int added = 0;
+            while (added < faces) {
+                // images with 1 to 3 faces
+                Document doc = new Document();
+                int numFaces = Math.min(1 + random.nextInt(3), faces - added);
+                for (int f = 0; f < numFaces; f++) {
+                    float[] face = new float[DIMENSION];
+                    float[] person = persons[random.nextInt(persons.length)];
+                    for (int i = 0; i < DIMENSION; i++) {
+                        face[i] = person[i] + (float) random.nextGaussian() * 0.025f;
+                    }
+                    String key = SimilarFacesSearch.FACE_FEATURES;
+                    doc.add(new SortedSetDocValuesField(key, new BytesRef(IndexItem.convFloatArrayToByteArray(face))));
+                    doc.add(new KnnVectorField(f == 0 ? key : key + f, face));
+                    if (added % (faces / QUERIES) == 0) {
+                        queries[added / (faces / QUERIES)] = face;
+                    }
+                    added++;
+                }
+                writer.addDocument(doc);
+            }
+            writer.forceMerge(1);
+        }
+        reader = DirectoryReader.open(dir);
+        searcher = new IndexSearcher(reader);
+        fields = SimilarFacesSearch.getKnnFields(reader.leaves().get(0).reader().getFieldInfos(), DIMENSION);
+
+        long found = 0, expected = 0;
+        for (float[] q : queries) {
+            RoaringBitmap exact = bruteForce(q);
+            RoaringBitmap knn = SimilarFacesSearch.getKnnCandidates(searcher, fields, new float[][] { q },
+                    MAX_SQUARED_DIST);
+            expected += exact.getCardinality();
+            found += RoaringBitmap.and(exact, knn).getCardinality();
+        }
+        System.out.println("\nknn recall " + (float) found / expected + " (" + expected / QUERIES //$NON-NLS-1$ //$NON-NLS-2$
+                + " matches per query)"); //$NON-NLS-1$
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        reader.close();
+        dir.close();
+    }
+
+    private RoaringBitmap bruteForce(float[] ref) throws IOException {
+        // same per face work as SimilarFacesSearch.score()
+        RoaringBitmap result = new RoaringBitmap();
+        LeafReader leafReader = reader.leaves().get(0).reader();
+        SortedSetDocValues values = leafReader.getSortedSetDocValues(SimilarFacesSearch.FACE_FEATURES);
+        for (int doc = 0; doc < leafReader.maxDoc(); doc++) {
+            boolean hasVal = values.advanceExact(doc);
+            long ord;
+            while (hasVal && (ord = values.nextOrd()) != SortedSetDocValues.NO_MORE_ORDS) {
+                float[] face = SimilarFacesSearch.convToFloatVec(values.lookupOrd(ord).bytes);
+                if (SimilarFacesSearch.distance(ref, face, MAX_SQUARED_DIST) <= MAX_SQUARED_DIST) {
+                    result.add(doc);
+                }
+            }
+        }
+        return result;
+    }
+
+    @Benchmark
+    public RoaringBitmap exact() throws IOException {
+        return bruteForce(queries[query++ % QUERIES]);
+    }
+
+    @Benchmark
+    public RoaringBitmap knn() throws IOException {
+        return SimilarFacesSearch.getKnnCandidates(searcher, fields,
+                new float[][] { queries[query++ % QUERIES] }, MAX_SQUARED_DIST);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(SimilarFacesBenchmark.class.getSimpleName()).build()).run();
+    }
+
+}
@@ -0,0 +1,105 @@
+package iped.engine.sleuthkit;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+import iped.engine.sleuthkit.SleuthkitServer.FLAGS;
+import iped.io.SeekableInputStream;
+
+/**
+ * SleuthkitServer process serving generated contents instead of image files,
+ * to test the shared memory protocol without a sleuthkit case.
+ */
+public class FakeSleuthkitServer {
+
+    static final long CONTENT_SIZE = 256L * 1024 * 1024;
+
+    static byte expected(int sleuthId, long pos) {
+        return (byte) (pos * 31 + (pos >>> 13) + sleuthId);
+    }
+
+    private static class GeneratedInputStream extends SeekableInputStream {
+
+        private final int sleuthId;
+        private long pos;
+
+        private GeneratedInputStream(int sleuthId) {
+            this.sleuthId = sleuthId;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (pos >= CONTENT_SIZE) {
+                return -1;
+            }
+            len = (int) Math.min(len, CONTENT_SIZE - pos);
+            for (int i = 0; i < len; i++) {
+                b[off + i] = expected(sleuthId, pos++);
+            }
+            return len;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return pos < CONTENT_SIZE ? expected(sleuthId, pos++) & 0xFF : -1;
+        }
+
+        @Override
+        public void seek(long pos) throws IOException {
+            this.pos = pos;
+        }
+
+        @Override
+        public long position() throws IOException {
+            return pos;
+        }
+
+        @Override
+        public long size() throws IOException {
+            return CONTENT_SIZE;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        InputStream in = System.in;
+        try (RandomAccessFile raf = new RandomAccessFile(args[0], "rw")) { //$NON-NLS-1$
+            raf.setLength(SleuthkitServer.MMAP_FILE_SIZE);
+            MappedByteBuffer mbb = raf.getChannel().map(MapMode.READ_WRITE, 0, SleuthkitServer.MMAP_FILE_SIZE);
+            SleuthkitServer.serve(mbb, in, System.out, id -> {
+                if (id < 0) {
+                    throw new IOException("Invalid id " + id); //$NON-NLS-1$
+                }
+                return new GeneratedInputStream(id);
+            });
+        }
+    }
+
+    /**
+     * Starts a server process and returns a client connected to it.
+     */
+    static SleuthkitClient start(File mmapFile, Process[] process) throws IOException {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        ProcessBuilder pb = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), //$NON-NLS-1$ //$NON-NLS-2$
+                FakeSleuthkitServer.class.getName(), mmapFile.getAbsolutePath());
+        pb.redirectError(ProcessBuilder.Redirect.INHERIT);
+        process[0] = pb.start();
+        InputStream is = process[0].getInputStream();
+        if (is.read() != 0) {
+            throw new IOException("Server not started"); //$NON-NLS-1$
+        }
+        MappedByteBuffer mbb;
+        try (RandomAccessFile raf = new RandomAccessFile(mmapFile, "rw")) { //$NON-NLS-1$
+            mbb = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, SleuthkitServer.MMAP_FILE_SIZE);
+        }
+        if (SleuthkitServer.getByte(mbb, SleuthkitServer.CMD) != FLAGS.DONE) {
+            throw new IOException("Server not started"); //$NON-NLS-1$
+        }
+        return new SleuthkitClient(new SleuthkitChannel(0, mbb, is, process[0].getOutputStream()));
+    }
+
+}
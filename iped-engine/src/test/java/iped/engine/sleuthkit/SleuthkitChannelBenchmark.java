@@ -0,0 +1,117 @@
+package iped.engine.sleuthkit;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import iped.io.SeekableInputStream;
+
+/**
+ * Measures reads from a SleuthkitServer process through the shared memory
+ * slots: latency of 4KB reads at random positions (smallRead) and time to read
+ * 64MB sequentially (largeRead). Runs with 1 and 8 client threads sharing one
+ * server process, which serves {@link FakeSleuthkitServer} generated contents.
+ * Run with:
+ *
+ * mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=iped.engine.sleuthkit.SleuthkitChannelBenchmark
+ */
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SleuthkitChannelBenchmark {
+
+    private static final int LARGE_READ_SIZE = 64 * 1024 * 1024;
+
+    @State(Scope.Benchmark)
+    public static class Server {
+
+        private File mmapFile;
+        private Process[] process = new Process[1];
+        private SleuthkitClient client;
+        private AtomicInteger nextId = new AtomicInteger();
+
+        @Setup(Level.Trial)
+        public void start() throws IOException {
+            mmapFile = File.createTempFile("pipe", null); //$NON-NLS-1$
+            client = FakeSleuthkitServer.start(mmapFile, process);
+        }
+
+        @TearDown(Level.Trial)
+        public void stop() throws InterruptedException {
+            client.channel.close();
+            process[0].destroy();
+            process[0].waitFor();
+            mmapFile.delete();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Stream {
+
+        private SeekableInputStream is;
+        private Random random;
+        private byte[] buf = new byte[4096];
+        private byte[] largeBuf = new byte[64 * 1024];
+
+        @Setup(Level.Trial)
+        public void open(Server server) throws IOException {
+            int id = server.nextId.incrementAndGet();
+            is = server.client.getInputStream(id, "stream" + id); //$NON-NLS-1$
+            random = new Random(id);
+        }
+
+        @TearDown(Level.Trial)
+        public void close() throws IOException {
+            is.close();
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public int smallRead(Stream stream) throws IOException {
+        long pos = (long) (stream.random.nextDouble() * (FakeSleuthkitServer.CONTENT_SIZE - stream.buf.length));
+        stream.is.seek(pos);
+        return stream.is.read(stream.buf);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public long largeRead(Stream stream) throws IOException {
+        long pos = (long) (stream.random.nextDouble() * (FakeSleuthkitServer.CONTENT_SIZE - LARGE_READ_SIZE));
+        stream.is.seek(pos);
+        long total = 0;
+        while (total < LARGE_READ_SIZE) {
+            total += stream.is.read(stream.largeBuf);
+        }
+        return total;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        for (int threads : new int[] { 1, 8 }) {
+            new Runner(new OptionsBuilder().include(SleuthkitChannelBenchmark.class.getSimpleName()).threads(threads)
+                    .build()).run();
+        }
+    }
+
+}
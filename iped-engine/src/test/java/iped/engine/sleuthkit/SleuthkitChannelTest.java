@@ -0,0 +1,107 @@
+package iped.engine.sleuthkit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import iped.io.SeekableInputStream;
+
+public class SleuthkitChannelTest {
+
+    private static File mmapFile;
+    private static Process[] process = new Process[1];
+    private static SleuthkitClient client;
+
+    @BeforeClass
+    public static void startServer() throws IOException {
+        mmapFile = File.createTempFile("pipe", null); //$NON-NLS-1$
+        client = FakeSleuthkitServer.start(mmapFile, process);
+    }
+
+    @AfterClass
+    public static void stopServer() throws InterruptedException {
+        client.channel.close();
+        process[0].destroy();
+        process[0].waitFor();
+        mmapFile.delete();
+    }
+
+    private static void check(int sleuthId, long pos, byte[] buf, int len) {
+        for (int i = 0; i < len; i++) {
+            if (buf[i] != FakeSleuthkitServer.expected(sleuthId, pos + i)) {
+                fail("Wrong byte at " + (pos + i) + " of " + sleuthId);
+            }
+        }
+    }
+
+    @Test
+    public void testSequentialRead() throws IOException {
+        try (SeekableInputStream is = client.getInputStream(1, "a")) {
+            assertEquals(FakeSleuthkitServer.CONTENT_SIZE, is.size());
+            byte[] buf = new byte[100000];
+            long pos = 0;
+            int i;
+            while (pos < 20_000_000 && (i = is.read(buf)) != -1) {
+                check(1, pos, buf, i);
+                pos += i;
+            }
+            assertEquals(pos, is.position());
+            is.seek(FakeSleuthkitServer.CONTENT_SIZE - 10);
+            assertEquals(10, is.read(buf));
+            check(1, FakeSleuthkitServer.CONTENT_SIZE - 10, buf, 10);
+            assertEquals(-1, is.read(buf));
+        }
+    }
+
+    @Test
+    public void testConcurrentRandomReads() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2 * SleuthkitServer.NUM_SLOTS);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < 2 * SleuthkitServer.NUM_SLOTS; t++) {
+            int sleuthId = t;
+            futures.add(executor.submit(() -> {
+                Random random = new Random(sleuthId);
+                byte[] buf = new byte[4096];
+                try (SeekableInputStream is = client.getInputStream(sleuthId, "t" + sleuthId)) {
+                    for (int i = 0; i < 200; i++) {
+                        long pos = (long) (random.nextDouble() * (FakeSleuthkitServer.CONTENT_SIZE - buf.length));
+                        is.seek(pos);
+                        int read = is.read(buf);
+                        assertTrue(read > 0);
+                        check(sleuthId, pos, buf, read);
+                    }
+                }
+                return null;
+            }));
+        }
+        for (Future<?> f : futures) {
+            f.get();
+        }
+        executor.shutdown();
+    }
+
+    @Test
+    public void testServerException() throws IOException {
+        try (SeekableInputStream is = client.getInputStream(-1, "invalid")) {
+            is.read();
+            fail("Exception expected");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("Invalid id -1"));
+        }
+        assertTrue(client.channel.ping());
+    }
+
+}
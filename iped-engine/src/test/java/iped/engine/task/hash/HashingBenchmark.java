@@ -0,0 +1,112 @@
+package iped.engine.task.hash;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.Security;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures hashing throughput of each algorithm combination, with and without
+ * read ahead and memory mapping. As each invocation hashes a file of FILE_MB
+ * megabytes, the reported ops/s are MB/s. Run with:
+ *
+ * mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=iped.engine.task.hash.HashingBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class HashingBenchmark {
+
+    private static final int FILE_MB = 256;
+
+    private static final int BUFFER_SIZE = 1024 * 1024;
+
+    @Param({ "md5", "md5;sha-1", "md5;sha-1;sha-256", "md5;sha-1;sha-256;edonkey", "sha-512" })
+    public String algorithms;
+
+    @Param({ "0", "2", "4" })
+    public int readAheadBuffers;
+
+    private Path file;
+
+    private MultiDigest digests;
+
+    private ReadAheadHasher hasher;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        Security.addProvider(new BouncyCastleProvider());
+        digests = new MultiDigest(Arrays.asList(algorithms.split(";")));
+        hasher = new ReadAheadHasher(readAheadBuffers, BUFFER_SIZE, "HashReader-benchmark");
+
+        file = Files.createTempFile("hash-benchmark", ".bin");
+        byte[] buf = new byte[BUFFER_SIZE];
+        Random random = new Random(0);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            for (int i = 0; i < FILE_MB; i++) {
+                random.nextBytes(buf);
+                channel.write(ByteBuffer.wrap(buf));
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        hasher.close();
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FILE_MB)
+    public byte[][] stream() throws IOException, InterruptedException {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file))) {
+            hasher.hash(in, digests);
+        }
+        return digests.digest();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FILE_MB)
+    public byte[][] memoryMapped() throws IOException, InterruptedException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            hasher.hash(channel, digests);
+        }
+        return digests.digest();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(HashingBenchmark.class.getSimpleName()).build()).run();
+    }
+
+}
@@ -0,0 +1,161 @@
+package iped.engine.task.hash;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.Security;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class MultiDigestTest {
+
+    private static final List<String> ALGORITHMS = Arrays.asList("md5", "sha-1", "sha-256", "edonkey");
+
+    private static final int BUFFER_LEN = 1024 * 1024;
+
+    @BeforeClass
+    public static void addProvider() {
+        if (Security.getProvider(BouncyCastleProvider.PROVIDER_NAME) == null) {
+            Security.addProvider(new BouncyCastleProvider());
+        }
+    }
+
+    private static byte[] content(int len) {
+        byte[] data = new byte[len];
+        new Random(len).nextBytes(data);
+        return data;
+    }
+
+    /**
+     * The eDonkey hash as computed by HashTask before MultiDigest, fed with the
+     * 1 MB buffers it used to read.
+     */
+    private static byte[] previousEd2k(byte[] data) throws Exception {
+        final int CHUNK_SIZE = 9500 * 1024;
+        MessageDigest md4 = MessageDigest.getInstance("MD4");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int chunk = 0, total = 0;
+        for (int pos = 0; pos < data.length; pos += BUFFER_LEN) {
+            byte[] buffer = Arrays.copyOfRange(data, pos, Math.min(data.length, pos + BUFFER_LEN));
+            int len = buffer.length;
+            if (chunk + len >= CHUNK_SIZE) {
+                int offset = CHUNK_SIZE - chunk;
+                md4.update(buffer, 0, offset);
+                out.write(md4.digest());
+                chunk = len - offset;
+                md4.update(buffer, offset, chunk);
+            } else {
+                md4.update(buffer, 0, len);
+                chunk += len;
+            }
+            total += len;
+        }
+        if (total == 0 || total % CHUNK_SIZE != 0) {
+            out.write(md4.digest());
+        }
+        if (out.size() > md4.getDigestLength()) {
+            md4.update(out.toByteArray());
+            out.reset();
+            out.write(md4.digest());
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[][] previousHashes(byte[] data) throws Exception {
+        byte[][] hashes = new byte[ALGORITHMS.size()][];
+        for (int i = 0; i < hashes.length; i++) {
+            String algorithm = ALGORITHMS.get(i);
+            if (algorithm.equals("edonkey")) {
+                hashes[i] = previousEd2k(data);
+            } else {
+                hashes[i] = MessageDigest.getInstance(algorithm.toUpperCase()).digest(data);
+            }
+        }
+        return hashes;
+    }
+
+    private static void assertHashes(byte[][] expected, byte[][] hashes) {
+        assertEquals(expected.length, hashes.length);
+        for (int i = 0; i < expected.length; i++) {
+            assertArrayEquals(ALGORITHMS.get(i), expected[i], hashes[i]);
+        }
+    }
+
+    private static void testSize(int len) throws Exception {
+        byte[] data = content(len);
+        byte[][] expected = previousHashes(data);
+        MultiDigest digests = new MultiDigest(ALGORITHMS);
+
+        // arrays, chunk boundaries not aligned to the updates
+        for (int pos = 0; pos < len; pos += 777777) {
+            digests.update(data, pos, Math.min(len - pos, 777777));
+        }
+        assertHashes(expected, digests.digest());
+
+        // the instance is reset by digest(), direct buffer in one update
+        ByteBuffer buffer = ByteBuffer.allocateDirect(len);
+        buffer.put(data).flip();
+        digests.update(buffer);
+        assertHashes(expected, digests.digest());
+
+        // partial state is discarded by reset()
+        digests.update(data, 0, len / 2);
+        digests.reset();
+        digests.update(ByteBuffer.wrap(data));
+        assertHashes(expected, digests.digest());
+
+        // through the read ahead hasher, from a stream and memory mapped
+        Path file = Files.createTempFile("multidigest", ".bin");
+        try (ReadAheadHasher hasher = new ReadAheadHasher(2, BUFFER_LEN, "HashReader-test")) {
+            hasher.hash(new ByteArrayInputStream(data), digests);
+            assertHashes(expected, digests.digest());
+
+            Files.write(file, data);
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                hasher.hash(channel, digests);
+            }
+            assertHashes(expected, digests.digest());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testEmpty() throws Exception {
+        testSize(0);
+    }
+
+    @Test
+    public void testBelowEd2kChunk() throws Exception {
+        testSize(Ed2kDigest.CHUNK_SIZE - 1);
+    }
+
+    @Test
+    public void testExactEd2kChunk() throws Exception {
+        testSize(Ed2kDigest.CHUNK_SIZE);
+    }
+
+    @Test
+    public void testAboveEd2kChunk() throws Exception {
+        testSize(Ed2kDigest.CHUNK_SIZE + 1);
+    }
+
+    @Test
+    public void testManyEd2kChunks() throws Exception {
+        testSize(3 * Ed2kDigest.CHUNK_SIZE);
+    }
+
+}
@@ -0,0 +1,91 @@
+package iped.engine.task.index;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TimeEventFileTest {
+
+    @Test
+    public void testParseAndFormat() {
+        assertEquals(Long.valueOf(0), TimeEventFile.parseTimeStamp("1970-01-01T00:00:00Z"));
+        assertEquals(Long.valueOf(1234567890), TimeEventFile.parseTimeStamp("2009-02-13T23:31:30Z"));
+        assertNull(TimeEventFile.parseTimeStamp("2009-02-13"));
+        assertNull(TimeEventFile.parseTimeStamp("2009-13-13T23:31:30Z"));
+
+        String timeStamp = "1601-01-01T12:00:59Z";
+        long second = TimeEventFile.parseTimeStamp(timeStamp);
+        byte[] bytes = TimeEventFile.formatTimeStamp(second, new byte[20]);
+        assertEquals(timeStamp, new String(bytes, StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    public void testWriteAndRead() throws IOException {
+        File moduleDir = Files.createTempDirectory("timeEvents").toFile();
+        try {
+            assertNull(TimeEventFile.getFiles(moduleDir));
+            TimeEventFile.Writer writer = new TimeEventFile.Writer(moduleDir);
+            // incomplete files must not be used
+            assertNull(TimeEventFile.getFiles(moduleDir));
+
+            Random random = new Random(0);
+            int numEvents = 300000;
+            byte[] timeStamp = new byte[20];
+            long total = 0;
+            for (int i = 0; i < numEvents; i++) {
+                long second = random.nextInt(Integer.MAX_VALUE);
+                total += second;
+                TimeEventFile.formatTimeStamp(second, timeStamp);
+                writer.add(new String(timeStamp, StandardCharsets.US_ASCII), "event" + (i % 3), i);
+            }
+            writer.add("", "event0", numEvents);
+            writer.close();
+
+            File[] files = TimeEventFile.getFiles(moduleDir);
+            assertNotNull(files);
+            assertEquals(1, files.length);
+
+            List<long[]> events = new ArrayList<>();
+            int numBlocks = 0;
+            for (TimeEventFile.Block block : TimeEventFile.readBlocks(files[0])) {
+                numBlocks++;
+                long[] prev = { Long.MIN_VALUE };
+                block.forEach((second, event, id) -> {
+                    assertTrue(second >= prev[0]);
+                    assertTrue(second >= block.getMinSecond() && second <= block.getMaxSecond());
+                    assertEquals("event" + (id % 3), event);
+                    prev[0] = second;
+                    events.add(new long[] { second, id });
+                });
+            }
+            assertTrue(numBlocks > 1);
+            assertEquals(numEvents, events.size());
+            assertEquals(total, events.stream().mapToLong(e -> e[0]).sum());
+            assertArrayEquals(new long[] { 0, numEvents - 1 },
+                    new long[] { events.stream().mapToLong(e -> e[1]).min().getAsLong(),
+                            events.stream().mapToLong(e -> e[1]).max().getAsLong() });
+
+            TimeEventFile.deleteFiles(moduleDir);
+            assertNull(TimeEventFile.getFiles(moduleDir));
+
+        } finally {
+            TimeEventFile.deleteFiles(moduleDir);
+            TimeEventFile.getDir(moduleDir).delete();
+            new File(moduleDir, "data").delete();
+            moduleDir.delete();
+        }
+    }
+
+}
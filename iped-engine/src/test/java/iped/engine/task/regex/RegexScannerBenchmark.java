@@ -0,0 +1,112 @@
+package iped.engine.task.regex;
+
+import java.io.CharArrayReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import dk.brics.automaton.AutomatonMatcher;
+import dk.brics.automaton.RegExp;
+import dk.brics.automaton.RunAutomaton;
+
+/**
+ * Measures chars/s of text scanned for regex hits by {@link RegexScanner} and
+ * by the previous approach, which copied each 1M chars window to a String and
+ * ran an {@link AutomatonMatcher} over it. Run with:
+ *
+ * mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=iped.engine.task.regex.RegexScannerBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class RegexScannerBenchmark {
+
+    private static final int TOTAL_CHARS = 16 * 1024 * 1024;
+
+    private static final int WINDOW_SIZE = 1 << 20;
+
+    private static final String REGEX = "[0-9a-z][0-9a-z\\+\\.\\_\\%\\-]{1,64}\\@[0-9a-z\\-]{2,64}(\\.[0-9a-z\\-]{2,25}){1,3}" //$NON-NLS-1$
+            + "|((https?|ftp|file):/{2,3}|www)[-a-z0-9\\+\\&\\@\\#\\\\/\\%\\?\\=\\~_\\|!:,\\.;]+" //$NON-NLS-1$
+            + "|[^0-9][0-9]{3}\\.[0-9]{3}\\.[0-9]{3}\\-[0-9]{2}[^0-9]"; //$NON-NLS-1$
+
+    private RunAutomaton automaton;
+
+    private char[] text;
+
+    private char[] cbuf;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        // tableized like the full automaton used by RegexTask
+        automaton = new RunAutomaton(new RegExp(REGEX).toAutomaton(), true);
+        String[] words = { "lorem", "ipsum", "dolor", "sit", "amet", "john.doe@example.com", "http://www.iped.org/x",
+                "123.456.789-09", "consectetur", "adipiscing", "elit", "2023" };
+        Random random = new Random(0);
+        StringBuilder sb = new StringBuilder(TOTAL_CHARS + 32);
+        while (sb.length() < TOTAL_CHARS) {
+            // hits are rare in real text
+            String word = words[random.nextInt(words.length)];
+            if (word.length() > 12 && random.nextInt(20) != 0) {
+                word = "sed";
+            }
+            sb.append(word).append(random.nextInt(10) == 0 ? '\n' : ' ');
+        }
+        text = sb.substring(0, TOTAL_CHARS).toCharArray();
+        cbuf = new char[WINDOW_SIZE];
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TOTAL_CHARS)
+    public long stringWindows() throws IOException {
+        long hits = 0;
+        Reader reader = new CharArrayReader(text);
+        int k = 0;
+        while (k != -1) {
+            int off = 0;
+            k = 0;
+            while (k != -1 && (off += k) < cbuf.length)
+                k = reader.read(cbuf, off, cbuf.length - off);
+            String window = new String(cbuf, 0, off);
+            AutomatonMatcher matcher = automaton.newMatcher(window);
+            while (matcher.find()) {
+                hits += window.substring(matcher.start(), matcher.end()).length();
+            }
+        }
+        return hits;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TOTAL_CHARS)
+    public long scanner() throws IOException {
+        long[] hits = new long[1];
+        new RegexScanner(automaton, WINDOW_SIZE, WINDOW_SIZE / 16).scan(new CharArrayReader(text),
+                (buf, start, end, offset) -> hits[0] += end - start);
+        return hits[0];
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(RegexScannerBenchmark.class.getSimpleName()).build()).run();
+    }
+
+}
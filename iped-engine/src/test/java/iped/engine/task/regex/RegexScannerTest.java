@@ -0,0 +1,103 @@
+package iped.engine.task.regex;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import dk.brics.automaton.AutomatonMatcher;
+import dk.brics.automaton.RegExp;
+import dk.brics.automaton.RunAutomaton;
+
+public class RegexScannerTest {
+
+    private static final String EMAIL = "[0-9a-z][0-9a-z\\+\\.\\_\\%\\-]{1,64}\\@[0-9a-z\\-]{2,64}(\\.[0-9a-z\\-]{2,25}){1,3}";
+
+    private static RunAutomaton automaton(String regex) {
+        return new RunAutomaton(new RegExp(regex).toAutomaton());
+    }
+
+    private static List<String> scan(RunAutomaton automaton, String text, int window, int overlap) throws IOException {
+        List<String> matches = new ArrayList<>();
+        new RegexScanner(automaton, window, overlap).scan(new StringReader(text), (buf, start, end, offset) -> {
+            String hit = new String(buf, start, end - start);
+            assertEquals(hit, text.substring((int) offset, (int) offset + hit.length()));
+            matches.add(offset + ":" + hit);
+        });
+        return matches;
+    }
+
+    private static List<String> find(RunAutomaton automaton, String text) {
+        List<String> matches = new ArrayList<>();
+        AutomatonMatcher matcher = automaton.newMatcher(text);
+        while (matcher.find()) {
+            matches.add(matcher.start() + ":" + matcher.group());
+        }
+        return matches;
+    }
+
+    @Test
+    public void testMatchCrossingWindowBoundary() throws IOException {
+        RunAutomaton automaton = automaton(EMAIL);
+        String text = "xxxxxxxxxxxxxxxxxxxxxxxxxxxxx john.doe@example.com yyyy";
+        // the hit has 20 chars, so it always fits in the overlap
+        for (int window = 21; window <= text.length(); window++) {
+            List<String> matches = scan(automaton, text, window, window - 1);
+            assertEquals("window " + window, 1, matches.size());
+            assertEquals("30:john.doe@example.com", matches.get(0));
+        }
+    }
+
+    @Test
+    public void testSameMatchesAsAutomatonMatcher() throws IOException {
+        RunAutomaton automaton = automaton(EMAIL + "|[0-9]{3,11}|ab(cd)*");
+        Random random = new Random(0);
+        String[] tokens = { "a.b@cc.org", "12345678901", "42", "abcdcdcd", "ab", "foo", "x@y", "@" };
+        // separators end all matches, longer ones would be cut at window boundaries
+        String[] separators = { " ", "\n", "," };
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            sb.append(tokens[random.nextInt(tokens.length)]);
+            sb.append(separators[random.nextInt(separators.length)]);
+        }
+        String text = sb.toString();
+        List<String> expected = find(automaton, text);
+        assertTrue(expected.size() > 1000);
+        for (int window : new int[] { 64, 100, 1000, 1 << 20 }) {
+            assertEquals("window " + window, expected, scan(automaton, text, window, window / 2));
+        }
+    }
+
+    @Test
+    public void testLongMatchCutAtMaxOverlap() throws IOException {
+        RunAutomaton automaton = automaton("a+");
+        String text = "b" + "a".repeat(100) + "b";
+        List<String> matches = scan(automaton, text, 32, 16);
+        StringBuilder joined = new StringBuilder();
+        long nextOffset = 1;
+        for (String match : matches) {
+            int sep = match.indexOf(':');
+            assertEquals(nextOffset, Long.parseLong(match.substring(0, sep)));
+            nextOffset += match.length() - sep - 1;
+            joined.append(match.substring(sep + 1));
+        }
+        assertTrue(matches.size() > 1);
+        assertEquals("a".repeat(100), joined.toString());
+    }
+
+    @Test
+    public void testMatchesSubAutomaton() {
+        RunAutomaton automaton = automaton("[0-9]{3}");
+        char[] buf = "ab123cd".toCharArray();
+        assertTrue(RegexScanner.matches(automaton, buf, 2, 5));
+        assertTrue(!RegexScanner.matches(automaton, buf, 1, 5));
+        assertTrue(!RegexScanner.matches(automaton, buf, 2, 4));
+    }
+
+}
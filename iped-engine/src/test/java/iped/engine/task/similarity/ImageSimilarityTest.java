@@ -0,0 +1,33 @@
+package iped.engine.task.similarity;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class ImageSimilarityTest {
+
+    @Test
+    public void testVectorDistanceIsLowerBound() {
+        Random random = new Random(0);
+        for (int n = 0; n < 1000; n++) {
+            byte[] a = new byte[ImageSimilarity.numFeatures];
+            byte[] b = new byte[ImageSimilarity.numFeatures];
+            for (int i = 0; i < a.length; i++) {
+                a[i] = (byte) random.nextInt(64);
+                b[i] = (byte) (random.nextBoolean() ? a[i] : random.nextInt(64));
+            }
+            float[] va = ImageSimilarity.toVector(a);
+            float[] vb = ImageSimilarity.toVector(b);
+            assertEquals(ImageSimilarity.vectorDim, va.length);
+            double vectorDist = 0;
+            for (int i = 0; i < va.length; i++) {
+                vectorDist += (va[i] - vb[i]) * (va[i] - vb[i]);
+            }
+            assertTrue(vectorDist <= ImageSimilarity.distance(a, b) + 1e-3);
+        }
+    }
+
+}
@@ -0,0 +1,97 @@
+package iped.engine.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+
+import org.junit.Test;
+
+import iped.utils.IOUtil;
+
+public class MappedHashSetTest {
+
+    private static byte[] hash(long i) {
+        // spreads the values, as real hashes
+        return ByteBuffer.allocate(8).putLong(i * 0x9E3779B97F4A7C15L).array();
+    }
+
+    @Test
+    public void testAddAcrossGrowAndReload() throws IOException {
+        File dir = Files.createTempDirectory("hashset").toFile();
+        try {
+            // initial capacity is 2^20 with max load 0.6, so the table grows 3 times
+            int numHashes = 3000000;
+            try (MappedHashSet set = new MappedHashSet(dir, false)) {
+                assertFalse(set.isLoaded());
+                for (int i = 0; i < numHashes; i++) {
+                    assertTrue(set.add(hash(i)));
+                }
+                assertFalse(set.add(hash(0)));
+                assertFalse(set.add(hash(numHashes - 1)));
+                assertFalse(set.add(new byte[0]));
+                assertEquals(numHashes, set.size());
+
+                for (int i = 0; i < numHashes; i++) {
+                    assertTrue(set.contains(hash(i)));
+                }
+                for (int i = numHashes; i < 2 * numHashes; i++) {
+                    assertFalse(set.contains(hash(i)));
+                }
+                // other width, in its own table
+                assertFalse(set.contains(new byte[16]));
+                assertTrue(set.add(new byte[16]));
+                assertTrue(set.contains(new byte[16]));
+            }
+
+            try (MappedHashSet set = new MappedHashSet(dir, true)) {
+                assertTrue(set.isLoaded());
+                assertEquals(numHashes + 1, set.size());
+                assertTrue(set.contains(hash(12345)));
+                assertFalse(set.contains(hash(numHashes)));
+                assertFalse(set.add(hash(12345)));
+            }
+
+            try (MappedHashSet set = new MappedHashSet(dir, false)) {
+                assertFalse(set.isLoaded());
+                assertEquals(0, set.size());
+                assertFalse(set.contains(hash(12345)));
+            }
+        } finally {
+            IOUtil.deleteDirectory(dir);
+        }
+    }
+
+    @Test
+    public void testAddAfterCloseFails() throws IOException {
+        File dir = Files.createTempDirectory("hashset").toFile();
+        try {
+            MappedHashSet set = new MappedHashSet(dir, false);
+            assertTrue(set.add(hash(1)));
+            set.close();
+            try {
+                set.add(hash(2));
+                fail("Insert into closed set should fail");
+            } catch (IllegalStateException e) {
+                // expected
+            }
+            try {
+                // width without table yet
+                set.add(new byte[16]);
+                fail("Insert into closed set should fail");
+            } catch (IllegalStateException e) {
+                // expected
+            }
+            // closing again does nothing
+            set.close();
+        } finally {
+            IOUtil.deleteDirectory(dir);
+        }
+    }
+
+}
@@ -0,0 +1,135 @@
+package iped.engine.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class TextCacheTest {
+
+    private static final int PAGE_CHARS = 32 * 1024;
+
+    private static String text(int len) {
+        Random random = new Random(len);
+        StringBuilder sb = new StringBuilder(len);
+        // compressible, with some chars above 0xFF
+        while (sb.length() < len) {
+            sb.append(random.nextInt(3) == 0 ? "ação " : "word" + random.nextInt(100) + " ");
+        }
+        sb.setLength(len);
+        return sb.toString();
+    }
+
+    private static String readAll(Reader reader) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        char[] buf = new char[1000];
+        int i;
+        while ((i = reader.read(buf, 0, buf.length)) != -1) {
+            sb.append(buf, 0, i);
+        }
+        return sb.toString();
+    }
+
+    private static TextCache write(String text) throws IOException {
+        TextCache cache = new TextCache();
+        // chunks crossing page boundaries
+        for (int off = 0; off < text.length(); off += 7777) {
+            String chunk = text.substring(off, Math.min(text.length(), off + 7777));
+            if (off % 2 == 0) {
+                cache.write(chunk);
+            } else {
+                cache.write(chunk.toCharArray(), 0, chunk.length());
+            }
+        }
+        return cache;
+    }
+
+    @After
+    public void restoreDefaults() {
+        TextCache.setMaxMemoryChars(10000000);
+        TextCache.setCompressOnDisk(true);
+    }
+
+    private void testSpill(boolean compress) throws IOException {
+        TextCache.setMaxMemoryChars(2 * PAGE_CHARS);
+        TextCache.setCompressOnDisk(compress);
+        String text = text(10 * PAGE_CHARS + 123);
+        try (TextCache cache = write(text)) {
+            assertEquals(text.length(), cache.getSize());
+            // 2 pages in memory, the tail page is not full
+            assertEquals(8, cache.getSpilledPages());
+            try (Reader reader = cache.getTextReader()) {
+                assertEquals(text, readAll(reader));
+            }
+
+            // reads again after the spill file was completed, from a page on disk
+            try (Reader reader = cache.getTextReader()) {
+                long start = 5 * PAGE_CHARS - 10;
+                assertEquals(start, reader.skip(start));
+                reader.mark(0);
+                char[] buf = new char[20];
+                assertEquals(20, reader.read(buf, 0, buf.length));
+                assertEquals(text.substring((int) start, (int) start + 20), new String(buf));
+                reader.reset();
+                assertEquals(text.substring((int) start), readAll(reader));
+            }
+
+            // a clone is still readable after the original cache is closed
+            TextCache clone = cache.clone();
+            clone.setTextBounds(3 * PAGE_CHARS, 2 * PAGE_CHARS);
+            cache.close();
+            try (Reader reader = clone.getTextReader()) {
+                assertEquals(text.substring(3 * PAGE_CHARS, 5 * PAGE_CHARS), readAll(reader));
+            }
+            clone.close();
+        }
+    }
+
+    @Test
+    public void testSpillCompressed() throws IOException {
+        testSpill(true);
+    }
+
+    @Test
+    public void testSpillUncompressed() throws IOException {
+        testSpill(false);
+    }
+
+    @Test
+    public void testSmallTextInMemory() throws IOException {
+        String text = text(3 * PAGE_CHARS + 1);
+        try (TextCache cache = write(text)) {
+            assertEquals(0, cache.getSpilledPages());
+            try (Reader reader = cache.getTextReader()) {
+                assertEquals(text, readAll(reader));
+            }
+        }
+    }
+
+    @Test
+    public void testTruncatedWithoutDiskCache() throws IOException {
+        TextCache.setMaxMemoryChars(2 * PAGE_CHARS);
+        String text = text(5 * PAGE_CHARS);
+        TextCache cache = new TextCache();
+        cache.setEnableDiskCache(false);
+        cache.write(text);
+        try {
+            assertEquals(0, cache.getSpilledPages());
+            // memory pages plus the full tail page
+            assertEquals(3 * PAGE_CHARS, cache.getSize());
+            try (Reader reader = cache.getTextReader()) {
+                String read = readAll(reader);
+                assertTrue(text.startsWith(read));
+                assertEquals(3 * PAGE_CHARS, read.length());
+            }
+        } finally {
+            cache.close();
+        }
+    }
+
+}
@@ -0,0 +1,67 @@
+package iped.engine.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class TimeHistogramTest {
+
+    @Test
+    public void testBucketsCoverAllValues() {
+        long[] values = { 0, 1, 3, 4, 5, 7, 8, 9, 1000, 1023, 1024, 123456789, Long.MAX_VALUE };
+        for (long value : values) {
+            int bucket = TimeHistogram.getBucket(value);
+            assertTrue(value + " above its bucket", value <= TimeHistogram.getBucketMax(bucket));
+            if (bucket > 0) {
+                assertTrue(value + " below its bucket", value > TimeHistogram.getBucketMax(bucket - 1));
+            }
+            // at most 25% above the value
+            assertTrue(TimeHistogram.getBucketMax(bucket) - value <= value / 4);
+        }
+        assertEquals(TimeHistogram.getBucket(Long.MAX_VALUE), TimeHistogram.getBucket(Long.MAX_VALUE - 1));
+    }
+
+    @Test
+    public void testPercentiles() {
+        TimeHistogram histogram = new TimeHistogram();
+        assertEquals(0, histogram.getPercentile(50));
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i);
+        }
+        assertEquals(1000, histogram.getCount());
+        assertEquals(500500, histogram.getTotal());
+        assertEquals(500, histogram.getMean());
+        assertEquals(1000, histogram.getMax());
+        long p50 = histogram.getPercentile(50);
+        assertTrue(p50 >= 500 && p50 <= 625);
+        long p99 = histogram.getPercentile(99);
+        assertTrue(p99 >= 990 && p99 <= 1000);
+        assertEquals(1000, histogram.getPercentile(100));
+    }
+
+    @Test
+    public void testConcurrentRecords() throws InterruptedException {
+        TimeHistogram histogram = new TimeHistogram();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 100000; i++) {
+                    histogram.record(i % 100);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(400000, histogram.getCount());
+        assertEquals(4 * 1000 * 4950, histogram.getTotal());
+        assertEquals(99, histogram.getMax());
+    }
+
+}
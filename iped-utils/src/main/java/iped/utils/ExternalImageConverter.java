@@ -5,12 +5,17 @@
 import java.io.BufferedReader;
 import java.io.Closeable;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
@@ -38,6 +43,7 @@ public class ExternalImageConverter implements Closeable {
     public static final String minTimeoutProp = prefix + "minTimeout"; //$NON-NLS-1$
     public static final String timeoutPerMBProp = prefix + "timeoutPerMB"; //$NON-NLS-1$
     public static final String tmpDirProp = prefix + "tmpDir"; //$NON-NLS-1$
+    public static final String poolSizeProp = prefix + "poolSize"; //$NON-NLS-1$
 
     private static final String SAMPLE_GEOMETRY = "SAMPLE_GEOMETRY"; //$NON-NLS-1$
     private static final String RESIZE_GEOMETRY = "RESIZE_GEOMETRY"; //$NON-NLS-1$
@@ -51,6 +57,13 @@ public class ExternalImageConverter implements Closeable {
 
     private static boolean commandAdjusted = false;
 
+    // legacy imagemagick "convert" command has no script mode
+    private static boolean residentProcessSupported = false;
+
+    private static MagickWorkerPool sharedPool;
+
+    private static boolean shutdownHookAdded = false;
+
     private static final int sampleFactor = 2;
 
     private static String[] CMD = { "magick", "convert", "-limit", THREAD, NUM_THREADS, "-density", DENSITY, "-sample", //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
@@ -66,6 +79,7 @@ public class ExternalImageConverter implements Closeable {
     private final int minTimeout;
     private final int timeoutPerMB;
     private final File tmpDir;
+    private final MagickWorkerPool pool;
 
     private int numThreads = 1;
 
@@ -111,12 +125,45 @@ private ExternalImageConverter(ExecutorService executorService, boolean ownsExec
                         + File.separatorChar + (useGM ? "graphicsmagick" : "imagemagick"); //$NON-NLS-1$ //$NON-NLS-2$
 
         adjustCommand(toolPath, useGM);
+
+        int poolSize = Integer.parseInt(System.getProperty(poolSizeProp, "0").trim()); //$NON-NLS-1$
+        pool = enabled && poolSize > 0 ? getPool(useGM, getEnvironment(), tmpDir, poolSize, minTimeout) : null;
+    }
+
+    private static synchronized MagickWorkerPool getPool(boolean useGM, Map<String, String> env, File tmpDir,
+            int size, int healthCheckTimeout) {
+        if (sharedPool == null && residentProcessSupported) {
+            sharedPool = new MagickWorkerPool(CMD[0], useGM, env, tmpDir, size, healthCheckTimeout);
+            if (!shutdownHookAdded) {
+                // just one hook, closing the current pool, even if it is recreated
+                Runtime.getRuntime().addShutdownHook(new Thread() {
+                    @Override
+                    public void run() {
+                        closePool();
+                    }
+                });
+                shutdownHookAdded = true;
+            }
+        }
+        return sharedPool;
+    }
+
+    /**
+     * Kills the resident conversion processes, if any. They are started again if
+     * a new converter is created after this.
+     */
+    public static synchronized void closePool() {
+        if (sharedPool != null) {
+            sharedPool.close();
+            sharedPool = null;
+        }
     }
 
     private static synchronized void adjustCommand(String toolPath, boolean useGM) {
         if (commandAdjusted) {
             return;
         }
+        residentProcessSupported = true;
         if (useGM) {
             CMD[0] = "gm";
             for (int i = 1; i < CMD.length; i++) {
@@ -133,6 +180,7 @@ private static synchronized void adjustCommand(String toolPath, boolean useGM) {
                 cmd[0] = "convert";
                 cmd = adjustToolPath(cmd, toolPath);
                 ok = testCmd(cmd);
+                residentProcessSupported = false;
                 if (ok) {
                     // fallback to legacy imagemagick command
                     CMD = Arrays.copyOfRange(CMD, 1, CMD.length);
@@ -177,9 +225,9 @@ private String[] getCmd(int maxDimension, boolean highRes, Object objIn) {
         for (int i = 0; i < cmd.length; i++) {
             String c = CMD[i];
             if (c.equals(SAMPLE_GEOMETRY))
-                cmd[i] = String.format("%1$dx%1$d>", maxDimension * sampleFactor);
+                cmd[i] = getGeometry(maxDimension * sampleFactor);
             else if (c.equals(RESIZE_GEOMETRY))
-                cmd[i] = String.format("%1$dx%1$d>", maxDimension);
+                cmd[i] = getGeometry(maxDimension);
             else if (c.equals(NUM_THREADS))
                 cmd[i] = String.valueOf(numThreads);
             else if (c.equals(DENSITY))
@@ -190,6 +238,17 @@ else if (c.equals(INPUT))
         return cmd;
     }
 
+    private Map<String, String> getEnvironment() {
+        Map<String, String> env = new HashMap<>();
+        env.put(useGM ? GM_TEMP_PATH : IM_TEMP_PATH, tmpDir.getAbsolutePath());
+        env.put(MAGICK_AREA_LIMIT, magickAreaLimit);
+        return env;
+    }
+
+    private static String getGeometry(int maxDimension) {
+        return String.format("%1$dx%1$d>", maxDimension); //$NON-NLS-1$
+    }
+
     public BufferedImage getImage(InputStream in, int maxDimension, boolean highRes, Long imageSize) {
         try {
             return doGetImage(in, maxDimension, highRes, imageSize, false);
@@ -243,9 +302,13 @@ private BufferedImage doGetImage(Object objIn, int maxDim, boolean highRes, Long
         if (!enabled)
             return null;
 
+        MagickWorkerPool.Worker worker = pool != null ? pool.acquire() : null;
+        if (worker != null) {
+            return getImageFromWorker(worker, objIn, maxDim, highRes, imageSize, throwTimeout);
+        }
+
         ProcessBuilder pb = new ProcessBuilder();
-        pb.environment().put(useGM ? GM_TEMP_PATH : IM_TEMP_PATH, tmpDir.getAbsolutePath());
-        pb.environment().put(MAGICK_AREA_LIMIT, magickAreaLimit);
+        pb.environment().putAll(getEnvironment());
 
         pb.command(getCmd(maxDim, highRes, objIn));
         Process p = null;
@@ -261,25 +324,13 @@ private BufferedImage doGetImage(Object objIn, int maxDim, boolean highRes, Long
             Future<?> sendFuture = objIn instanceof InputStream ? sendInputStream((InputStream) objIn, p) : null;
             ignoreErrorStream(p);
             Future<BufferedImage> resultFuture = getResultFuture(p);
-            int timeout = getTotalTimeout(imageSize);
-            if (highRes) 
-                timeout *= 2;
+            int timeout = getTimeout(imageSize, highRes);
             try {
                 if (sendFuture != null)
                     sendFuture.get(timeout, TimeUnit.SECONDS);
                 result = resultFuture.get(timeout, TimeUnit.SECONDS);
             } catch (TimeoutException | InterruptedException e) {
-                if (throwTimeout) {
-                    if (e instanceof TimeoutException) {
-                        throw (TimeoutException) e;
-                    } else {
-                        TimeoutException te = new TimeoutException(e.getMessage());
-                        te.initCause(e);
-                        throw te;
-                    }
-                } else {
-                    logger.warn("Timeout converting image to PNG, elapsed {} s.", timeout); //$NON-NLS-1$
-                }
+                handleTimeout(e, timeout, throwTimeout);
             } catch (ExecutionException e) {
                 throw new RuntimeException(e);
             } finally {
@@ -297,6 +348,74 @@ private BufferedImage doGetImage(Object objIn, int maxDim, boolean highRes, Long
         return result;
     }
 
+    private BufferedImage getImageFromWorker(MagickWorkerPool.Worker worker, Object objIn, int maxDim,
+            boolean highRes, Long imageSize, boolean throwTimeout) throws TimeoutException {
+        String[] settings = { "-limit", useGM ? "threads" : "thread", String.valueOf(numThreads), "-density", //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+                String.valueOf(highRes ? highDensity : lowDensity) };
+        String[] operators = { "-sample", getGeometry(maxDim * sampleFactor), "-resize", getGeometry(maxDim) }; //$NON-NLS-1$ //$NON-NLS-2$
+        int timeout = getTimeout(imageSize, highRes);
+        File input = null, tmpInput = null, output = null;
+        boolean timedOut = false;
+        try {
+            if (objIn instanceof File && MagickWorkerPool.toScriptPath((File) objIn) != null) {
+                input = (File) objIn;
+            } else {
+                // input is written to a temp file, stdin of the process is used to send commands
+                input = tmpInput = pool.createTempFile("input", null); //$NON-NLS-1$
+                if (objIn instanceof File) {
+                    try (InputStream in = new FileInputStream((File) objIn)) {
+                        Files.copy(in, tmpInput.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                    }
+                } else {
+                    Files.copy((InputStream) objIn, tmpInput.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+            output = pool.createTempFile("output", ".png"); //$NON-NLS-1$ //$NON-NLS-2$
+            BufferedImage result = null;
+            if (pool.convert(worker, settings, operators, input, output, timeout)) {
+                result = ImageIO.read(output);
+            }
+            return result;
+
+        } catch (TimeoutException | InterruptedException e) {
+            // the process may be still converting, so it is killed
+            timedOut = true;
+            handleTimeout(e, timeout, throwTimeout);
+        } catch (IOException e) {
+            logger.debug("Error converting image to PNG", e); //$NON-NLS-1$
+        } finally {
+            pool.release(worker, !timedOut);
+            if (tmpInput != null) {
+                tmpInput.delete();
+            }
+            if (output != null) {
+                output.delete();
+            }
+        }
+        return null;
+    }
+
+    private void handleTimeout(Exception e, int timeout, boolean throwTimeout) throws TimeoutException {
+        if (throwTimeout) {
+            if (e instanceof TimeoutException) {
+                throw (TimeoutException) e;
+            } else {
+                TimeoutException te = new TimeoutException(e.getMessage());
+                te.initCause(e);
+                throw te;
+            }
+        } else {
+            logger.warn("Timeout converting image to PNG, elapsed {} s.", timeout); //$NON-NLS-1$
+        }
+    }
+
+    private int getTimeout(Long imageSize, boolean highRes) {
+        int timeout = getTotalTimeout(imageSize);
+        if (highRes)
+            timeout *= 2;
+        return timeout;
+    }
+
     public int getTotalTimeout(Long imageSize) {
         if (imageSize == null)
             return minTimeout;
@@ -0,0 +1,319 @@
+package iped.utils;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pool of resident ImageMagick ("magick -script -") or GraphicsMagick ("gm
+ * batch -") processes. Each one reads conversion commands from its stdin and
+ * runs them sequentially, so a new process is not started for each image.
+ * After each command the process writes a small "done" file, polled by the
+ * caller, because stdout of those tools may be buffered when redirected.
+ */
+class MagickWorkerPool implements Closeable {
+
+    private static Logger logger = LoggerFactory.getLogger(MagickWorkerPool.class);
+
+    /**
+     * Resident processes are restarted after this number of conversions, to
+     * release memory eventually leaked by decoders.
+     */
+    private static final int MAX_CONVERSIONS_PER_WORKER = 5000;
+
+    private static final long POLL_INTERVAL_MILLIS = 5;
+
+    private static final AtomicInteger workerIds = new AtomicInteger();
+
+    private final String tool;
+    private final boolean useGM;
+    private final Map<String, String> env;
+    private final File workDir;
+    private final int healthCheckTimeout;
+
+    private final Semaphore permits;
+    private final ConcurrentLinkedQueue<Worker> idleWorkers = new ConcurrentLinkedQueue<>();
+    private final Set<Worker> workers = ConcurrentHashMap.newKeySet();
+
+    private volatile boolean started = false;
+    private volatile boolean disabled = false;
+    private volatile boolean closed = false;
+
+    /**
+     * @param tool
+     *            magick or gm executable
+     * @param healthCheckTimeout
+     *            seconds to wait for a new process to answer its first command
+     */
+    MagickWorkerPool(String tool, boolean useGM, Map<String, String> env, File tmpDir, int size,
+            int healthCheckTimeout) {
+        this.tool = tool;
+        this.useGM = useGM;
+        this.env = env;
+        this.workDir = new File(tmpDir, "workers"); //$NON-NLS-1$
+        this.permits = new Semaphore(size);
+        this.healthCheckTimeout = healthCheckTimeout;
+        if (toScriptPath(workDir) == null) {
+            disabled = true;
+        }
+    }
+
+    boolean isDisabled() {
+        return disabled || closed;
+    }
+
+    /**
+     * @return an idle worker, starting a new one if needed, or null if all
+     *         workers are busy or if a new one could not be started. Callers
+     *         should fall back to one process per image in that case.
+     */
+    Worker acquire() {
+        if (isDisabled() || !permits.tryAcquire()) {
+            return null;
+        }
+        Worker worker;
+        while ((worker = idleWorkers.poll()) != null) {
+            if (worker.isAlive() && worker.conversions < MAX_CONVERSIONS_PER_WORKER) {
+                return worker;
+            }
+            worker.destroy();
+        }
+        try {
+            worker = new Worker();
+            if (worker.healthCheck()) {
+                started = true;
+                return worker;
+            }
+            worker.destroy();
+            onStartError(null);
+
+        } catch (IOException | InterruptedException e) {
+            if (worker != null) {
+                worker.destroy();
+            }
+            onStartError(e);
+        }
+        permits.release();
+        return null;
+    }
+
+    private void onStartError(Exception e) {
+        if (!started && !disabled) {
+            // never worked, probably not supported by the installed tool version
+            disabled = true;
+            logger.warn("Resident " + (useGM ? "graphicsMagick" : "imageMagick") //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+                    + " process not responding, converting each image in a new process.", e); //$NON-NLS-1$
+        } else {
+            logger.warn("Error restarting image conversion process", e); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Gives back a worker acquired before. Workers that failed or timed out are
+     * killed and replaced by new ones when needed.
+     */
+    void release(Worker worker, boolean reuse) {
+        if (reuse && !closed && worker.isAlive()) {
+            idleWorkers.add(worker);
+        } else {
+            worker.destroy();
+        }
+        permits.release();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        for (Worker worker : workers) {
+            worker.destroy();
+        }
+        idleWorkers.clear();
+    }
+
+    private List<String> getResidentCmd() {
+        if (useGM) {
+            return Arrays.asList(tool, "batch", "-echo", "off", "-escape", "unix", "-feedback", "off", //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$ //$NON-NLS-7$
+                    "-stop-on-error", "off", "-"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        } else {
+            return Arrays.asList(tool, "-script", "-"); //$NON-NLS-1$ //$NON-NLS-2$
+        }
+    }
+
+    /**
+     * Tokens of the command writing the done file, used after each conversion and
+     * as health check of new processes.
+     */
+    private List<String> getDoneCmd(File doneFile) {
+        String out = "gray:" + toScriptPath(doneFile); //$NON-NLS-1$
+        if (useGM) {
+            return Arrays.asList("convert", "-size", "1x1", "xc:black", out); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+        } else {
+            return Arrays.asList("-size", "1x1", "xc:black", "-write", out, "-delete", "0--1", "+size"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$ //$NON-NLS-7$
+        }
+    }
+
+    private List<String> getConvertCmd(String[] settings, String[] operators, String input, File output) {
+        List<String> cmd = new ArrayList<>();
+        String out = "png:" + toScriptPath(output); //$NON-NLS-1$
+        if (useGM) {
+            cmd.add("convert"); //$NON-NLS-1$
+            cmd.addAll(Arrays.asList(settings));
+            cmd.addAll(Arrays.asList(operators));
+            cmd.add(input);
+            cmd.add(out);
+        } else {
+            cmd.addAll(Arrays.asList(settings));
+            cmd.add("-read"); //$NON-NLS-1$
+            cmd.add(input);
+            cmd.addAll(Arrays.asList(operators));
+            cmd.addAll(Arrays.asList("-write", out, "-delete", "0--1")); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        }
+        return cmd;
+    }
+
+    /**
+     * @return the path to be used in commands, or null if it can not be safely
+     *         quoted in a command line of the resident process
+     */
+    static String toScriptPath(File file) {
+        String path = file.getAbsolutePath().replace('\\', '/');
+        for (int i = 0; i < path.length(); i++) {
+            char c = path.charAt(i);
+            if (c == '"' || c == '\'' || c == '%' || c < ' ') {
+                return null;
+            }
+        }
+        return path;
+    }
+
+    /**
+     * Converts the first frame of the input file to a PNG output file.
+     *
+     * @return true if the output file was generated
+     * @throws TimeoutException
+     *             if the conversion was not finished in time, the worker must be
+     *             released to be killed in this case
+     */
+    boolean convert(Worker worker, String[] settings, String[] operators, File input, File output, int timeout)
+            throws IOException, InterruptedException, TimeoutException {
+        String inputPath = toScriptPath(input);
+        if (inputPath == null) {
+            throw new IllegalArgumentException("Unsupported path " + input.getAbsolutePath()); //$NON-NLS-1$
+        }
+        worker.run(getConvertCmd(settings, operators, inputPath + "[0]", output), timeout); //$NON-NLS-1$
+        return output.length() > 0;
+    }
+
+    /**
+     * @return a new temp file in the working dir of resident processes, it is not
+     *         cleaned by the periodic cleaner of the converter temp dir, since
+     *         conversions may take longer than its expiration time.
+     */
+    File createTempFile(String prefix, String suffix) throws IOException {
+        workDir.mkdirs();
+        return File.createTempFile(prefix, suffix, workDir);
+    }
+
+    class Worker {
+
+        private final int id = workerIds.incrementAndGet();
+        private final Process process;
+        private final Writer stdin;
+        private int conversions = 0;
+
+        private Worker() throws IOException {
+            ProcessBuilder pb = new ProcessBuilder(getResidentCmd());
+            pb.environment().putAll(env);
+            process = pb.start();
+            workers.add(this);
+            IOUtil.ignoreInputStream(process);
+            IOUtil.ignoreErrorStream(process);
+            stdin = new BufferedWriter(new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8));
+        }
+
+        private boolean healthCheck() throws IOException, InterruptedException {
+            try {
+                run(null, healthCheckTimeout);
+                return true;
+            } catch (TimeoutException e) {
+                return false;
+            }
+        }
+
+        /**
+         * Sends a command followed by the done command, waiting for the done file.
+         */
+        private void run(List<String> cmd, int timeout) throws IOException, InterruptedException, TimeoutException {
+            File doneFile = createTempFile("w" + id + "-", ".done"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+            doneFile.delete();
+            try {
+                if (cmd != null) {
+                    writeLine(cmd);
+                    conversions++;
+                }
+                writeLine(getDoneCmd(doneFile));
+                stdin.flush();
+
+                long end = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(timeout);
+                while (doneFile.length() == 0) {
+                    if (!process.isAlive()) {
+                        // crashed, output is not valid
+                        throw new IOException("Image conversion process exited with code " + process.exitValue()); //$NON-NLS-1$
+                    }
+                    if (System.currentTimeMillis() > end) {
+                        throw new TimeoutException();
+                    }
+                    Thread.sleep(POLL_INTERVAL_MILLIS);
+                }
+            } finally {
+                doneFile.delete();
+            }
+        }
+
+        private void writeLine(List<String> tokens) throws IOException {
+            for (String token : tokens) {
+                stdin.write('"');
+                stdin.write(token);
+                stdin.write("\" "); //$NON-NLS-1$
+            }
+            stdin.write('\n');
+        }
+
+        private boolean isAlive() {
+            return process.isAlive();
+        }
+
+        private void destroy() {
+            workers.remove(this);
+            process.destroy();
+            try {
+                if (!process.waitFor(2, TimeUnit.SECONDS)) {
+                    process.destroyForcibly();
+                }
+            } catch (InterruptedException e) {
+                process.destroyForcibly();
+                Thread.currentThread().interrupt();
+            }
+            IOUtil.closeQuietly(stdin);
+        }
+    }
+
+}